@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import io.airlift.units.Duration;
+import io.trino.gateway.ha.config.RequestAnalyzerConfig;
+import io.trino.gateway.ha.router.FileBasedRoutingGroupSelector;
+import io.trino.gateway.ha.router.RoutingRuleStats;
+import io.trino.gateway.ha.router.schema.RoutingSelectorResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+@State(Scope.Thread)
+@OutputTimeUnit(MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkFileBasedRoutingGroupSelector
+{
+    @Param({"10", "100", "1000"})
+    private int ruleCount;
+
+    @Param({"true", "false"})
+    private boolean indexRules;
+
+    private Path rulesDirectory;
+    private FileBasedRoutingGroupSelector selector;
+    private HttpServletRequest request;
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        rulesDirectory = Files.createTempDirectory("routing-rules");
+        Path rulesFile = rulesDirectory.resolve("rules.yml");
+        Files.writeString(rulesFile, IntStream.range(0, ruleCount)
+                .mapToObj(BenchmarkFileBasedRoutingGroupSelector::rule)
+                .collect(Collectors.joining()));
+
+        RequestAnalyzerConfig requestAnalyzerConfig = new RequestAnalyzerConfig();
+        requestAnalyzerConfig.setAnalyzeRequest(false);
+        // Reloading is not measured, the rules file does not change
+        selector = new FileBasedRoutingGroupSelector(rulesFile.toString(), new Duration(1, HOURS), requestAnalyzerConfig, indexRules, new RoutingRuleStats());
+
+        // Match a rule in the middle, so that the unindexed rules are evaluated up to it and past it
+        request = new TestingHttpServletRequest("POST", "/v1/statement", null, ImmutableMap.of(
+                "X-Trino-User", "analyst",
+                "X-Trino-Source", "source-" + (ruleCount / 2),
+                "X-Trino-Client-Tags", "label=nightly"));
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException
+    {
+        selector.close();
+        Files.deleteIfExists(rulesDirectory.resolve("rules.yml"));
+        Files.deleteIfExists(rulesDirectory);
+    }
+
+    @Benchmark
+    public RoutingSelectorResponse findRoutingDestination()
+    {
+        return selector.findRoutingDestination(request);
+    }
+
+    private static String rule(int index)
+    {
+        return """
+                ---
+                name: "rule-%1$s"
+                description: "route source-%1$s to group-%1$s"
+                condition: "request.getHeader(\\"X-Trino-Source\\") == \\"source-%1$s\\""
+                actions:
+                  - "result.put(FileBasedRoutingGroupSelector.RESULTS_ROUTING_GROUP_KEY, \\"group-%1$s\\")"
+                """.formatted(index);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(".*" + BenchmarkFileBasedRoutingGroupSelector.class.getSimpleName() + ".*")
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.benchmark;
+
+import io.trino.gateway.ha.config.GatewayCookieConfiguration;
+import io.trino.gateway.ha.config.GatewayCookieConfigurationPropertiesProvider;
+import io.trino.gateway.ha.config.OAuth2GatewayCookieConfiguration;
+import io.trino.gateway.ha.config.OAuth2GatewayCookieConfigurationPropertiesProvider;
+import io.trino.gateway.ha.router.GatewayCookie;
+import io.trino.gateway.ha.router.OAuth2GatewayCookie;
+import jakarta.servlet.http.Cookie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+@State(Scope.Thread)
+@OutputTimeUnit(MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkGatewayCookie
+{
+    private static final String BACKEND = "https://trino-1.example.com:8443";
+
+    private Cookie cookie;
+
+    @Setup
+    public void setup()
+    {
+        GatewayCookieConfiguration configuration = new GatewayCookieConfiguration();
+        configuration.setEnabled(true);
+        configuration.setCookieSigningSecret("benchmark-signing-secret");
+        GatewayCookieConfigurationPropertiesProvider.getInstance().initialize(configuration);
+        OAuth2GatewayCookieConfigurationPropertiesProvider.getInstance().initialize(new OAuth2GatewayCookieConfiguration());
+        cookie = new OAuth2GatewayCookie(BACKEND).toCookie();
+    }
+
+    @Benchmark
+    public Cookie sign()
+    {
+        return new OAuth2GatewayCookie(BACKEND).toCookie();
+    }
+
+    @Benchmark
+    public boolean verify()
+    {
+        return GatewayCookie.fromCookie(cookie).isValid();
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(".*" + BenchmarkGatewayCookie.class.getSimpleName() + ".*")
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.benchmark;
+
+import io.trino.gateway.ha.config.DatabaseCacheConfiguration;
+import io.trino.gateway.ha.config.ProxyBackendConfiguration;
+import io.trino.gateway.ha.config.RoutingConfiguration;
+import io.trino.gateway.ha.router.HaGatewayManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+@State(Scope.Thread)
+@OutputTimeUnit(MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkHaGatewayManager
+{
+    private static final int ROUTING_GROUP_COUNT = 10;
+
+    @Param({"10", "100", "1000"})
+    private int backendCount;
+
+    @Param({"true", "false"})
+    private boolean databaseCacheEnabled;
+
+    private TestingDatabase database;
+    private HaGatewayManager gatewayManager;
+
+    @Setup
+    public void setup()
+    {
+        database = new TestingDatabase();
+        DatabaseCacheConfiguration databaseCacheConfiguration = new DatabaseCacheConfiguration();
+        databaseCacheConfiguration.setEnabled(databaseCacheEnabled);
+        gatewayManager = new HaGatewayManager(database.getJdbi(), new RoutingConfiguration(), databaseCacheConfiguration);
+        for (int index = 0; index < backendCount; index++) {
+            ProxyBackendConfiguration backend = new ProxyBackendConfiguration();
+            backend.setName("cluster-" + index);
+            backend.setProxyTo("http://cluster-" + index + ".example.com:8080");
+            backend.setExternalUrl("https://cluster-" + index + ".example.com");
+            backend.setRoutingGroup("group-" + (index % ROUTING_GROUP_COUNT));
+            // A few inactive backends, which must be filtered out
+            backend.setActive(index % 7 != 0);
+            gatewayManager.addBackend(backend);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        database.close();
+    }
+
+    @Benchmark
+    public List<ProxyBackendConfiguration> getActiveBackends()
+    {
+        return gatewayManager.getActiveBackends("group-3");
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(".*" + BenchmarkHaGatewayManager.class.getSimpleName() + ".*")
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.benchmark;
+
+import io.trino.gateway.ha.config.HaGatewayConfiguration;
+import io.trino.gateway.ha.router.PathFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Thread)
+@OutputTimeUnit(NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkPathFilter
+{
+    @Param({
+            "/v1/statement/executing/20240101_123456_00042_abcde/y0d7d5cf/3",
+            "/ui/api/stats",
+            "/extra/9/resource",
+            "/not/whitelisted"})
+    private String path;
+
+    @Param({"0", "10"})
+    private int extraWhitelistPaths;
+
+    private PathFilter pathFilter;
+
+    @Setup
+    public void setup()
+    {
+        HaGatewayConfiguration configuration = new HaGatewayConfiguration();
+        configuration.setAdditionalStatementPaths(List.of("/custom/statement"));
+        configuration.setExtraWhitelistPaths(IntStream.range(0, extraWhitelistPaths)
+                .mapToObj(index -> "/extra/" + index + "/.*")
+                .toList());
+        pathFilter = new PathFilter(configuration);
+    }
+
+    @Benchmark
+    public boolean isPathWhiteListed()
+    {
+        return pathFilter.isPathWhiteListed(path);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(".*" + BenchmarkPathFilter.class.getSimpleName() + ".*")
+                .build())
+                .run();
+    }
+}
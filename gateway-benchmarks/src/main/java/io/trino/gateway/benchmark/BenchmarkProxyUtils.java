@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.benchmark;
+
+import io.trino.gateway.ha.config.HaGatewayConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Optional;
+
+import static io.trino.gateway.ha.handler.ProxyUtils.extractQueryIdIfPresent;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@State(Scope.Thread)
+@OutputTimeUnit(NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkProxyUtils
+{
+    private static final String QUERY_ID = "20240101_123456_00042_abcde";
+
+    @Param({"STATEMENT_SUBMISSION", "STATEMENT_POLL", "PARTIAL_CANCEL", "QUERY_PARAMETER", "UI_QUERY", "OTHER"})
+    private RequestPath requestPath;
+
+    private List<String> statementPaths;
+
+    @Setup
+    public void setup()
+    {
+        HaGatewayConfiguration configuration = new HaGatewayConfiguration();
+        configuration.setAdditionalStatementPaths(List.of("/custom/statement"));
+        statementPaths = configuration.getStatementPaths();
+    }
+
+    @Benchmark
+    public Optional<String> extractQueryId()
+    {
+        return extractQueryIdIfPresent(requestPath.path, requestPath.queryString, statementPaths);
+    }
+
+    public enum RequestPath
+    {
+        STATEMENT_SUBMISSION("/v1/statement", null),
+        STATEMENT_POLL("/v1/statement/executing/" + QUERY_ID + "/y0d7d5cfc8f7a0f2b9c0d1e2f3a4b5c6d7e8f9a0/3", null),
+        PARTIAL_CANCEL("/v1/statement/executing/partialCancel/" + QUERY_ID + "/1/y0d7d5cfc8f7a0f2b9c0d1e2f3a4b5c6/3", null),
+        QUERY_PARAMETER("/ui/query.html", QUERY_ID),
+        UI_QUERY("/ui/api/query/" + QUERY_ID, null),
+        OTHER("/v1/info", null);
+
+        private final String path;
+        private final String queryString;
+
+        RequestPath(String path, String queryString)
+        {
+            this.path = path;
+            this.queryString = queryString;
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(".*" + BenchmarkProxyUtils.class.getSimpleName() + ".*")
+                .build())
+                .run();
+    }
+}
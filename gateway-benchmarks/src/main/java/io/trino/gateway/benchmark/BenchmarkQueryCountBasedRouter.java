@@ -0,0 +1,151 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.airlift.http.client.testing.TestingHttpClient;
+import io.trino.gateway.ha.clustermonitor.ClusterStats;
+import io.trino.gateway.ha.clustermonitor.TrinoStatus;
+import io.trino.gateway.ha.config.DatabaseCacheConfiguration;
+import io.trino.gateway.ha.config.ProxyBackendConfiguration;
+import io.trino.gateway.ha.config.RoutingConfiguration;
+import io.trino.gateway.ha.router.HaGatewayManager;
+import io.trino.gateway.ha.router.HaQueryHistoryManager;
+import io.trino.gateway.ha.router.QueryCountBasedRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Routes new queries from many threads at once to the same routing group, which all update the
+ * optimistic query counters of the selected clusters.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkQueryCountBasedRouter
+{
+    private static final String ROUTING_GROUP = "etl";
+    private static final int USER_COUNT = 50;
+
+    @Param({"3", "20"})
+    private int backendCount;
+
+    private TestingDatabase database;
+    private HaQueryHistoryManager historyManager;
+    private QueryCountBasedRouter router;
+
+    @Setup
+    public void setup()
+    {
+        database = new TestingDatabase();
+        RoutingConfiguration routingConfiguration = new RoutingConfiguration();
+        DatabaseCacheConfiguration databaseCacheConfiguration = new DatabaseCacheConfiguration();
+        databaseCacheConfiguration.setEnabled(true);
+        HaGatewayManager backendManager = new HaGatewayManager(database.getJdbi(), routingConfiguration, databaseCacheConfiguration);
+        historyManager = new HaQueryHistoryManager(database.getJdbi(), database.getConfiguration());
+        router = new QueryCountBasedRouter(
+                backendManager,
+                historyManager,
+                routingConfiguration,
+                new TestingHttpClient(_ -> {
+                    throw new UnsupportedOperationException();
+                }));
+
+        ImmutableList.Builder<ClusterStats> clusterStats = ImmutableList.builder();
+        for (int index = 0; index < backendCount; index++) {
+            ClusterStats stats = ClusterStats.builder("cluster-" + index)
+                    .proxyTo("http://cluster-" + index + ".example.com:8080")
+                    .routingGroup(ROUTING_GROUP)
+                    .trinoStatus(TrinoStatus.HEALTHY)
+                    .runningQueryCount(10 * index)
+                    .queuedQueryCount(index % 3)
+                    // Some users have queued queries, which changes how their queries are counted
+                    .userQueuedCount(ImmutableMap.of("user-" + index, index + 1))
+                    .build();
+            clusterStats.add(stats);
+            backendManager.addBackend(backendConfiguration(stats));
+        }
+        router.updateClusterStats(clusterStats.build());
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        historyManager.stop();
+        database.close();
+    }
+
+    @Benchmark
+    public ProxyBackendConfiguration provideBackendConfiguration(UserState userState)
+    {
+        return router.provideBackendConfiguration(ROUTING_GROUP, userState.user);
+    }
+
+    @State(Scope.Thread)
+    public static class UserState
+    {
+        private static final AtomicInteger NEXT_USER = new AtomicInteger();
+
+        private String user;
+
+        @Setup
+        public void setup()
+        {
+            user = "user-" + (NEXT_USER.getAndIncrement() % USER_COUNT);
+        }
+    }
+
+    private static ProxyBackendConfiguration backendConfiguration(ClusterStats stats)
+    {
+        ProxyBackendConfiguration backend = new ProxyBackendConfiguration();
+        backend.setName(stats.clusterId());
+        backend.setProxyTo(stats.proxyTo());
+        backend.setExternalUrl(stats.proxyTo());
+        backend.setRoutingGroup(stats.routingGroup());
+        backend.setActive(true);
+        return backend;
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(".*" + BenchmarkQueryCountBasedRouter.class.getSimpleName() + ".*")
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import io.airlift.units.DataSize;
+import io.trino.gateway.ha.config.RequestAnalyzerConfig;
+import io.trino.gateway.ha.handler.BufferedRequestBody;
+import io.trino.gateway.ha.router.QueryAnalysisCache;
+import io.trino.gateway.ha.router.TrinoQueryProperties;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+@State(Scope.Thread)
+@OutputTimeUnit(MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class BenchmarkTrinoQueryProperties
+{
+    @Param({"SIMPLE_SELECT", "JOIN_AGGREGATION", "WITH_UNION", "CREATE_TABLE_AS"})
+    private Query query;
+
+    @Param({"false", "true"})
+    private boolean analysisCacheEnabled;
+
+    private ContainerRequestContext requestContext;
+    private BufferedRequestBody requestBody;
+    private int maxBodySize;
+    private QueryAnalysisCache analysisCache;
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        RequestAnalyzerConfig config = new RequestAnalyzerConfig();
+        config.setAnalysisCacheMaxSize(DataSize.of(analysisCacheEnabled ? 16 : 0, MEGABYTE));
+        maxBodySize = config.getMaxBodySize();
+        analysisCache = new QueryAnalysisCache(config);
+        requestContext = TestingRequests.containerRequestContext("POST", ImmutableMap.of(
+                "X-Trino-User", "analyst",
+                "X-Trino-Catalog", "hive",
+                "X-Trino-Schema", "sales"));
+        requestBody = BufferedRequestBody.read(new ByteArrayInputStream(query.sql.getBytes(UTF_8)));
+    }
+
+    @Benchmark
+    public TrinoQueryProperties analyze()
+    {
+        TrinoQueryProperties properties = new TrinoQueryProperties(requestContext, requestBody, false, maxBodySize, analysisCache);
+        // The statement is only parsed once a property derived from it is read
+        properties.getTables();
+        return properties;
+    }
+
+    public enum Query
+    {
+        SIMPLE_SELECT("SELECT order_id, customer_id, total_price FROM orders WHERE order_date >= DATE '2024-01-01' LIMIT 100"),
+        JOIN_AGGREGATION("""
+                SELECT c.region, p.category, count(*) AS order_count, sum(li.quantity * li.unit_price) AS revenue
+                FROM hive.sales.orders o
+                JOIN hive.sales.line_items li ON li.order_id = o.order_id
+                JOIN hive.crm.customers c ON c.customer_id = o.customer_id
+                JOIN iceberg.catalog.products p ON p.product_id = li.product_id
+                WHERE o.order_date BETWEEN DATE '2024-01-01' AND DATE '2024-03-31'
+                  AND c.segment IN ('enterprise', 'mid_market')
+                GROUP BY c.region, p.category
+                HAVING sum(li.quantity * li.unit_price) > 10000
+                ORDER BY revenue DESC
+                LIMIT 50
+                """),
+        WITH_UNION("""
+                WITH recent AS (
+                    SELECT customer_id, max(order_date) AS last_order
+                    FROM orders
+                    GROUP BY customer_id),
+                churned AS (
+                    SELECT customer_id FROM recent WHERE last_order < current_date - INTERVAL '90' DAY)
+                SELECT 'churned' AS status, count(*) FROM churned
+                UNION ALL
+                SELECT 'active', count(*) FROM recent r LEFT JOIN churned c ON r.customer_id = c.customer_id WHERE c.customer_id IS NULL
+                UNION ALL
+                SELECT 'prospect', count(*) FROM hive.crm.leads WHERE converted = false
+                """),
+        CREATE_TABLE_AS("""
+                CREATE TABLE iceberg.reporting.daily_revenue
+                WITH (partitioning = ARRAY['day(order_date)'])
+                AS SELECT o.order_date, s.store_name, sum(o.total_price) AS revenue
+                FROM orders o
+                JOIN hive.retail.stores s ON s.store_id = o.store_id
+                GROUP BY o.order_date, s.store_name
+                """);
+
+        private final String sql;
+
+        Query(String sql)
+        {
+            this.sql = sql;
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(".*" + BenchmarkTrinoQueryProperties.class.getSimpleName() + ".*")
+                .build())
+                .run();
+    }
+}
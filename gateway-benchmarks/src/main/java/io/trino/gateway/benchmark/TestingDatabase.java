@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.benchmark;
+
+import io.trino.gateway.ha.config.DataStoreConfiguration;
+import io.trino.gateway.ha.module.HaGatewayProviderModule;
+import org.flywaydb.core.Flyway;
+import org.jdbi.v3.core.Jdbi;
+
+import java.util.UUID;
+
+/**
+ * An in-memory H2 database migrated with the gateway's MySQL migrations, so that benchmarks
+ * run against the current schema without a database server.
+ */
+final class TestingDatabase
+        implements AutoCloseable
+{
+    private static final String MIGRATIONS_LOCATION = "classpath:mysql";
+
+    private final DataStoreConfiguration configuration;
+    private final Jdbi jdbi;
+
+    TestingDatabase()
+    {
+        String jdbcUrl = "jdbc:h2:mem:gateway-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;MODE=MySQL;NON_KEYWORDS=NAME,VALUE";
+        configuration = new DataStoreConfiguration(jdbcUrl, "sa", "sa", "org.h2.Driver", true, 4, false);
+        Flyway.configure()
+                .dataSource(jdbcUrl, configuration.getUser(), configuration.getPassword())
+                .locations(MIGRATIONS_LOCATION)
+                .load()
+                .migrate();
+        jdbi = HaGatewayProviderModule.createJdbi(configuration);
+    }
+
+    DataStoreConfiguration getConfiguration()
+    {
+        return configuration;
+    }
+
+    Jdbi getJdbi()
+    {
+        return jdbi;
+    }
+
+    @Override
+    public void close()
+    {
+        jdbi.useHandle(handle -> handle.execute("SHUTDOWN"));
+    }
+}
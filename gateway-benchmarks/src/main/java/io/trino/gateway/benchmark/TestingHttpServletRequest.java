@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static io.trino.gateway.benchmark.TestingRequests.unsupported;
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A request with fixed method, path and headers. It is public so that routing rules can call it reflectively.
+ */
+public class TestingHttpServletRequest
+        extends HttpServletRequestWrapper
+{
+    private final String method;
+    private final String requestUri;
+    private final String queryString;
+    private final Map<String, String> headers = new TreeMap<>(CASE_INSENSITIVE_ORDER);
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    public TestingHttpServletRequest(String method, String requestUri, String queryString, Map<String, String> headers)
+    {
+        super(unsupported(HttpServletRequest.class));
+        this.method = requireNonNull(method, "method is null");
+        this.requestUri = requireNonNull(requestUri, "requestUri is null");
+        this.queryString = queryString;
+        this.headers.putAll(headers);
+    }
+
+    @Override
+    public String getMethod()
+    {
+        return method;
+    }
+
+    @Override
+    public String getRequestURI()
+    {
+        return requestUri;
+    }
+
+    @Override
+    public String getQueryString()
+    {
+        return queryString;
+    }
+
+    @Override
+    public String getHeader(String name)
+    {
+        return headers.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name)
+    {
+        String value = headers.get(name);
+        return Collections.enumeration(value == null ? ImmutableList.of() : ImmutableList.of(value));
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames()
+    {
+        return Collections.enumeration(headers.keySet());
+    }
+
+    @Override
+    public Object getAttribute(String name)
+    {
+        return attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames()
+    {
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String name, Object value)
+    {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void removeAttribute(String name)
+    {
+        attributes.remove(name);
+    }
+}
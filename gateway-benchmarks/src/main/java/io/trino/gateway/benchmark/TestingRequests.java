@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.benchmark;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.MultivaluedMap;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+
+final class TestingRequests
+{
+    private TestingRequests() {}
+
+    /**
+     * Returns an implementation of the interface that fails on every call, to be completed by the caller.
+     */
+    static <T> T unsupported(Class<T> type)
+    {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (_, method, _) -> {
+            throw new UnsupportedOperationException(method.getName());
+        }));
+    }
+
+    /**
+     * Returns a request context with a JSON entity, which only answers the calls made during query analysis.
+     */
+    static ContainerRequestContext containerRequestContext(String method, Map<String, String> headers)
+    {
+        MultivaluedMap<String, String> headerValues = new MultivaluedHashMap<>();
+        headers.forEach(headerValues::putSingle);
+        return (ContainerRequestContext) Proxy.newProxyInstance(
+                ContainerRequestContext.class.getClassLoader(),
+                new Class<?>[] {ContainerRequestContext.class},
+                (_, invokedMethod, args) -> switch (invokedMethod.getName()) {
+                    case "getMethod" -> method;
+                    case "getHeaderString" -> headerValues.getFirst((String) args[0]);
+                    case "getHeaders" -> headerValues;
+                    case "getMediaType" -> APPLICATION_JSON_TYPE;
+                    case "hasEntity" -> true;
+                    default -> throw new UnsupportedOperationException(invokedMethod.getName());
+                });
+    }
+}
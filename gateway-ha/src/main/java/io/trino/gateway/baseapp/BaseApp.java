@@ -141,6 +141,7 @@ public class BaseApp
                 .setDefault()
                 .to(StochasticRoutingManager.class)
                 .in(Scopes.SINGLETON);
+        newExporter(binder).export(RoutingManager.class).withGeneratedName();
         binder.bind(BackendLifecycleManager.class).in(Scopes.SINGLETON);
     }
 
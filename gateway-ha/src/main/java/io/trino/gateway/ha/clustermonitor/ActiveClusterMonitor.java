@@ -13,6 +13,9 @@
  */
 package io.trino.gateway.ha.clustermonitor;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.Inject;
 import io.airlift.log.Logger;
 import io.airlift.units.Duration;
@@ -22,29 +25,60 @@ import io.trino.gateway.ha.router.GatewayBackendManager;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 
+import static com.google.common.util.concurrent.Futures.addCallback;
+import static com.google.common.util.concurrent.Futures.withTimeout;
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.trino.gateway.ha.clustermonitor.ClusterStatsMonitor.getClusterStatsBuilder;
+import static io.trino.gateway.ha.clustermonitor.TrinoStatus.UNHEALTHY;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+/**
+ * Polls every backend on its own schedule, and publishes the stats of each backend to the
+ * observers as soon as they are available, so that a slow backend does not delay the others.
+ * <p>
+ * A poll that does not complete within {@code taskTimeout} is cancelled and reported as unhealthy.
+ * Unhealthy backends are polled with an exponential backoff up to {@code maxBackoffDelay}, and all
+ * delays are randomized by {@value #JITTER_RATIO} of their value to spread the polls over time.
+ * The list of backends is refreshed every {@code taskDelay}.
+ * <p>
+ * The monitor calls run on at most {@value #MAX_MONITOR_THREADS} threads. A call that ignores the
+ * cancellation keeps its thread, so a backend is not polled again until its previous call returns,
+ * and is reported as unhealthy meanwhile.
+ */
 public class ActiveClusterMonitor
 {
-    public static final int DEFAULT_THREAD_POOL_SIZE = 20;
     private static final Logger log = Logger.get(ActiveClusterMonitor.class);
+    private static final double JITTER_RATIO = 0.1;
+    private static final int MAX_MONITOR_THREADS = 20;
 
     private volatile boolean isInitialized;
     private final Set<TrinoClusterStatsObserver> clusterStatsObservers;
     private final GatewayBackendManager gatewayBackendManager;
 
     private final Duration taskDelay;
+    private final Duration taskTimeout;
+    private final Duration maxBackoffDelay;
     private final ClusterStatsMonitor clusterStatsMonitor;
-    private final ExecutorService executorService = Executors.newFixedThreadPool(DEFAULT_THREAD_POOL_SIZE);
-    private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+    // Runs the monitor calls, which block until the backend answers
+    private final ListeningExecutorService monitorExecutor = listeningDecorator(newFixedThreadPool(MAX_MONITOR_THREADS, daemonThreadsNamed("cluster-monitor-%s")));
+    // Schedules the polls and publishes their results one at a time, the state below is only accessed from this thread
+    private final ScheduledExecutorService scheduledExecutor = newSingleThreadScheduledExecutor(daemonThreadsNamed("cluster-monitor-scheduler-%s"));
+    private final Map<String, BackendPoller> pollers = new HashMap<>();
+    private final Set<String> awaitingFirstReport = new HashSet<>();
 
     @Inject
     public ActiveClusterMonitor(
@@ -57,50 +91,192 @@ public class ActiveClusterMonitor
         this.clusterStatsObservers = requireNonNull(clusterStatsObservers, "clusterStatsObservers is null");
         this.gatewayBackendManager = requireNonNull(gatewayBackendManager, "gatewayBackendManager is null");
         this.taskDelay = monitorConfiguration.getTaskDelay();
+        this.taskTimeout = monitorConfiguration.getTaskTimeout();
+        this.maxBackoffDelay = monitorConfiguration.getMaxBackoffDelay();
     }
 
     @PostConstruct
     public void start()
     {
         log.info("Running cluster monitor with connection task delay of %s", taskDelay);
-        scheduledExecutor.scheduleAtFixedRate(() -> {
-            try {
-                log.info("Getting stats for all clusters");
-                List<ProxyBackendConfiguration> allClusters =
-                        gatewayBackendManager.getAllBackends();
-                List<Future<ClusterStats>> futures = new ArrayList<>();
-                for (ProxyBackendConfiguration backend : allClusters) {
-                    Future<ClusterStats> call = executorService.submit(() -> clusterStatsMonitor.monitor(backend));
-                    futures.add(call);
-                }
-                List<ClusterStats> stats = new ArrayList<>();
-                for (Future<ClusterStats> clusterStatsFuture : futures) {
-                    ClusterStats clusterStats = clusterStatsFuture.get();
-                    stats.add(clusterStats);
+        scheduledExecutor.scheduleWithFixedDelay(this::refreshBackends, 0, taskDelay.toMillis(), MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        scheduledExecutor.shutdownNow();
+        monitorExecutor.shutdownNow();
+    }
+
+    public boolean isInitialized()
+    {
+        return isInitialized;
+    }
+
+    private void refreshBackends()
+    {
+        try {
+            Map<String, ProxyBackendConfiguration> backends = new HashMap<>();
+            for (ProxyBackendConfiguration backend : gatewayBackendManager.getAllBackends()) {
+                backends.putIfAbsent(backend.getName(), backend);
+            }
+
+            pollers.entrySet().removeIf(entry -> {
+                if (backends.containsKey(entry.getKey())) {
+                    return false;
                 }
+                log.info("Stopped monitoring backend %s", entry.getKey());
+                entry.getValue().cancel();
+                awaitingFirstReport.remove(entry.getKey());
+                return true;
+            });
 
-                if (clusterStatsObservers != null) {
-                    for (TrinoClusterStatsObserver observer : clusterStatsObservers) {
-                        observer.observe(stats);
-                    }
+            for (ProxyBackendConfiguration backend : backends.values()) {
+                BackendPoller poller = pollers.get(backend.getName());
+                if (poller != null) {
+                    poller.update(backend);
+                    continue;
+                }
+                poller = new BackendPoller(backend);
+                pollers.put(backend.getName(), poller);
+                if (!isInitialized) {
+                    awaitingFirstReport.add(backend.getName());
                 }
+                poller.schedule(0);
+            }
+            if (awaitingFirstReport.isEmpty()) {
                 isInitialized = true;
             }
-            catch (Exception e) {
-                log.error(e, "Error performing backend monitor tasks");
+        }
+        catch (Exception e) {
+            log.error(e, "Error refreshing the backends to monitor");
+        }
+    }
+
+    private void publish(ClusterStats stats)
+    {
+        List<ClusterStats> update = List.of(stats);
+        for (TrinoClusterStatsObserver observer : clusterStatsObservers) {
+            try {
+                observer.observe(update);
+            }
+            catch (RuntimeException e) {
+                log.error(e, "Error publishing stats of backend %s", stats.clusterId());
             }
-        }, 0, (long) taskDelay.getValue(), taskDelay.getUnit());
+        }
+        if (awaitingFirstReport.remove(stats.clusterId()) && awaitingFirstReport.isEmpty()) {
+            isInitialized = true;
+        }
     }
 
-    @PreDestroy
-    public void stop()
+    private long jitter(long delayMillis)
     {
-        executorService.shutdownNow();
-        scheduledExecutor.shutdownNow();
+        double factor = 1 + JITTER_RATIO * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return (long) (delayMillis * factor);
     }
 
-    public boolean isInitialized()
+    private final class BackendPoller
     {
-        return isInitialized;
+        private ProxyBackendConfiguration backend;
+        private int consecutiveFailures;
+        private Future<?> scheduledPoll;
+        private ListenableFuture<ClusterStats> runningPoll;
+        // Set by the monitor call itself, which may outlive its cancelled poll
+        private volatile boolean callRunning;
+        private boolean cancelled;
+
+        private BackendPoller(ProxyBackendConfiguration backend)
+        {
+            this.backend = requireNonNull(backend, "backend is null");
+        }
+
+        private void update(ProxyBackendConfiguration backend)
+        {
+            this.backend = requireNonNull(backend, "backend is null");
+        }
+
+        private void schedule(long delayMillis)
+        {
+            scheduledPoll = scheduledExecutor.schedule(this::poll, delayMillis, MILLISECONDS);
+        }
+
+        private void cancel()
+        {
+            cancelled = true;
+            scheduledPoll.cancel(false);
+            if (runningPoll != null) {
+                runningPoll.cancel(true);
+            }
+        }
+
+        private void poll()
+        {
+            ProxyBackendConfiguration target = backend;
+            if (callRunning) {
+                log.warn("Previous stats call for backend %s is still running, skipping this poll", target.getName());
+                completed(getClusterStatsBuilder(target).trinoStatus(UNHEALTHY).build());
+                return;
+            }
+            runningPoll = withTimeout(
+                    monitorExecutor.submit(() -> {
+                        callRunning = true;
+                        try {
+                            return clusterStatsMonitor.monitor(target);
+                        }
+                        finally {
+                            callRunning = false;
+                        }
+                    }),
+                    taskTimeout.toMillis(),
+                    MILLISECONDS,
+                    scheduledExecutor);
+            addCallback(runningPoll, new FutureCallback<>()
+            {
+                @Override
+                public void onSuccess(ClusterStats stats)
+                {
+                    completed(stats);
+                }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (t instanceof TimeoutException) {
+                        log.warn("Timed out after %s getting stats for backend %s", taskTimeout, target.getName());
+                    }
+                    else {
+                        log.error(t, "Error getting stats for backend %s", target.getName());
+                    }
+                    completed(getClusterStatsBuilder(target).trinoStatus(UNHEALTHY).build());
+                }
+            }, scheduledExecutor);
+        }
+
+        private void completed(ClusterStats stats)
+        {
+            if (cancelled) {
+                return;
+            }
+            runningPoll = null;
+            publish(stats);
+            consecutiveFailures = stats.trinoStatus() == UNHEALTHY ? consecutiveFailures + 1 : 0;
+            schedule(jitter(nextDelayMillis()));
+        }
+
+        private long nextDelayMillis()
+        {
+            long delay = taskDelay.toMillis();
+            if (consecutiveFailures <= 1) {
+                return delay;
+            }
+            long maxDelay = Math.max(delay, maxBackoffDelay.toMillis());
+            // Double the delay for every failure after the first one, without overflowing
+            int doublings = Math.min(consecutiveFailures - 1, Long.numberOfLeadingZeros(delay) - 1);
+            return Math.min(delay << doublings, maxDelay);
+        }
     }
 }
@@ -15,11 +15,14 @@ package io.trino.gateway.ha.clustermonitor;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.annotations.VisibleForTesting;
 import io.airlift.http.client.HttpStatus;
 import io.airlift.log.Logger;
 import io.trino.gateway.ha.config.BackendStateConfiguration;
 import io.trino.gateway.ha.config.ProxyBackendConfiguration;
-import okhttp3.Call;
+import okhttp3.ConnectionPool;
 import okhttp3.FormBody;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
@@ -31,6 +34,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.net.HttpHeaders.X_FORWARDED_PROTO;
@@ -39,6 +43,8 @@ import static io.trino.gateway.ha.handler.HttpUtils.UI_API_QUEUED_LIST_PATH;
 import static io.trino.gateway.ha.handler.HttpUtils.UI_API_STATS_PATH;
 import static io.trino.gateway.ha.handler.HttpUtils.UI_LOGIN_PATH;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
 public class ClusterStatsHttpMonitor
         implements ClusterStatsMonitor
@@ -50,20 +56,32 @@ public class ClusterStatsHttpMonitor
     private final String username;
     private final String password;
     private final boolean xForwardedProtoHeader;
+    // All sessions share the connection pool and dispatcher of this client
+    private final OkHttpClient httpClient;
+    private final Cache<String, UiSession> sessions;
 
     public ClusterStatsHttpMonitor(BackendStateConfiguration backendStateConfiguration)
     {
         username = backendStateConfiguration.getUsername();
         password = backendStateConfiguration.getPassword();
         xForwardedProtoHeader = backendStateConfiguration.getXForwardedProtoHeader();
+        httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(5, 5, MINUTES))
+                .build();
+        // Sessions of backends that are removed or renamed are dropped after a while
+        sessions = Caffeine.newBuilder()
+                .expireAfterAccess(1, HOURS)
+                .build();
     }
 
     @Override
     public ClusterStats monitor(ProxyBackendConfiguration backend)
     {
         ClusterStats.Builder clusterStats = ClusterStatsMonitor.getClusterStatsBuilder(backend);
+        UiSession session = sessions.get(backend.getProxyTo(), UiSession::new);
+
         // Fetch Cluster level Stats.
-        String response = queryCluster(backend, UI_API_STATS_PATH);
+        String response = session.get(UI_API_STATS_PATH).orElse(null);
         if (isNullOrEmpty(response)) {
             log.error("Received null/empty response for %s", UI_API_STATS_PATH);
             return clusterStats.build();
@@ -85,9 +103,9 @@ public class ClusterStatsHttpMonitor
             log.error(e, "Error parsing cluster stats from [%s]", response);
         }
 
-        // Fetch User Level Stats.
+        // Fetch User Level Stats over the same session and connection.
         Map<String, Integer> clusterUserStats = new HashMap<>();
-        response = queryCluster(backend, UI_API_QUEUED_LIST_PATH);
+        response = session.get(UI_API_QUEUED_LIST_PATH).orElse(null);
         if (isNullOrEmpty(response)) {
             log.error("Received null/empty response for %s", UI_API_QUEUED_LIST_PATH);
             return clusterStats.build();
@@ -105,65 +123,116 @@ public class ClusterStatsHttpMonitor
         return clusterStats.userQueuedCount(clusterUserStats).build();
     }
 
-    private OkHttpClient acquireClientWithCookie(String loginUrl)
+    @VisibleForTesting
+    long getSessionCount()
     {
-        UiApiCookieJar cookieJar = new UiApiCookieJar();
-        OkHttpClient client = new OkHttpClient.Builder().cookieJar(cookieJar).build();
-        RequestBody formBody = new FormBody.Builder()
-                .add("username", username)
-                .add("password", password)
-                .build();
-        Request loginRequest = new Request.Builder()
-                .url(HttpUrl.parse(loginUrl))
-                .post(formBody)
-                .build();
-
-        Call call = client.newCall(loginRequest);
-
-        try (Response res = call.execute()) {
-            log.info("login request received response code %d", res.code());
-            return client;
-        }
-        catch (IOException e) {
-            log.warn(e, "login request failed");
-        }
-        return null;
+        sessions.cleanUp();
+        return sessions.estimatedSize();
     }
 
-    private String queryCluster(ProxyBackendConfiguration backend, String path)
+    /**
+     * A logged-in UI session with a single backend. The session cookie is
+     * kept across polls and only renewed when the backend rejects it.
+     */
+    private class UiSession
     {
-        String loginUrl = backend.getProxyTo() + UI_LOGIN_PATH;
-        OkHttpClient client = acquireClientWithCookie(loginUrl);
-        if (client == null) {
-            log.error("Client received is null");
-            return null;
+        private final String proxyTo;
+        private final UiApiCookieJar cookieJar = new UiApiCookieJar();
+        private final OkHttpClient client;
+        private boolean loggedIn;
+
+        UiSession(String proxyTo)
+        {
+            this.proxyTo = requireNonNull(proxyTo, "proxyTo is null");
+            this.client = httpClient.newBuilder().cookieJar(cookieJar).build();
+        }
+
+        Optional<String> get(String path)
+        {
+            HttpUrl targetUrl = HttpUrl.parse(proxyTo + path);
+            if (targetUrl == null) {
+                log.error("Invalid backend url %s", proxyTo + path);
+                return Optional.empty();
+            }
+
+            try {
+                if (!ensureLoggedIn(false)) {
+                    return Optional.empty();
+                }
+                UiResponse response = execute(targetUrl);
+                if (response.status() == HttpStatus.UNAUTHORIZED) {
+                    // The session expired or the backend restarted, log in again and retry once
+                    if (!ensureLoggedIn(true)) {
+                        return Optional.empty();
+                    }
+                    response = execute(targetUrl);
+                }
+                return switch (response.status()) {
+                    case HttpStatus.OK -> Optional.of(response.body());
+                    case HttpStatus.UNAUTHORIZED -> {
+                        log.info("Unauthorized to fetch cluster stats");
+                        log.debug("username: %s, targetUrl: %s, cookieStore: %s", username, targetUrl, cookieJar.loadForRequest(targetUrl));
+                        yield Optional.empty();
+                    }
+                    default -> Optional.empty();
+                };
+            }
+            catch (IOException e) {
+                log.warn(e, "Failed to fetch cluster stats");
+            }
+            return Optional.empty();
         }
 
-        String targetUrl = backend.getProxyTo() + path;
-        Request.Builder requestBuilder = new Request.Builder()
-                .url(HttpUrl.parse(targetUrl))
-                .get();
-        if (xForwardedProtoHeader) {
-            requestBuilder.addHeader(X_FORWARDED_PROTO, "https");
+        private synchronized boolean ensureLoggedIn(boolean renew)
+        {
+            if (renew) {
+                cookieJar.clear();
+                loggedIn = false;
+            }
+            if (!loggedIn) {
+                loggedIn = login();
+            }
+            return loggedIn;
         }
-        Request request = requestBuilder.build();
 
-        Call call = client.newCall(request);
+        private UiResponse execute(HttpUrl targetUrl)
+                throws IOException
+        {
+            Request.Builder requestBuilder = new Request.Builder()
+                    .url(targetUrl)
+                    .get();
+            if (xForwardedProtoHeader) {
+                requestBuilder.addHeader(X_FORWARDED_PROTO, "https");
+            }
 
-        try (Response res = call.execute()) {
-            return switch (fromStatusCode(res.code())) {
-                case HttpStatus.OK -> requireNonNull(res.body(), "body is null").string();
-                case HttpStatus.UNAUTHORIZED -> {
-                    log.info("Unauthorized to fetch cluster stats");
-                    log.debug("username: %s, targetUrl: %s, cookieStore: %s", username, targetUrl, client.cookieJar().loadForRequest(HttpUrl.parse(targetUrl)));
-                    yield null;
-                }
-                default -> null;
-            };
+            try (Response res = client.newCall(requestBuilder.build()).execute()) {
+                HttpStatus status = fromStatusCode(res.code());
+                String body = status == HttpStatus.OK ? requireNonNull(res.body(), "body is null").string() : null;
+                return new UiResponse(status, body);
+            }
         }
-        catch (IOException e) {
-            log.warn(e, "Failed to fetch cluster stats");
+
+        private boolean login()
+        {
+            RequestBody formBody = new FormBody.Builder()
+                    .add("username", username)
+                    .add("password", password)
+                    .build();
+            Request loginRequest = new Request.Builder()
+                    .url(HttpUrl.parse(proxyTo + UI_LOGIN_PATH))
+                    .post(formBody)
+                    .build();
+
+            try (Response res = client.newCall(loginRequest).execute()) {
+                log.debug("login request to %s received response code %d", proxyTo, res.code());
+                return true;
+            }
+            catch (IOException e) {
+                log.warn(e, "login request failed");
+            }
+            return false;
         }
-        return null;
     }
+
+    private record UiResponse(HttpStatus status, String body) {}
 }
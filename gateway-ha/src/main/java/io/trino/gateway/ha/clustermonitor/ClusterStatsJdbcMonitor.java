@@ -13,7 +13,12 @@
  */
 package io.trino.gateway.ha.clustermonitor;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.SimpleTimeLimiter;
+import com.google.common.util.concurrent.TimeLimiter;
 import io.airlift.log.Logger;
 import io.airlift.units.Duration;
 import io.trino.gateway.ha.config.BackendStateConfiguration;
@@ -27,12 +32,16 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
 
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class ClusterStatsJdbcMonitor
@@ -40,8 +49,13 @@ public class ClusterStatsJdbcMonitor
 {
     private static final Logger log = Logger.get(ClusterStatsJdbcMonitor.class);
 
-    private final Properties properties; // TODO Avoid using a mutable field
+    // Shared by all monitors, the threads are only alive while a statement is being prepared
+    private static final TimeLimiter PREPARE_TIME_LIMITER = SimpleTimeLimiter.create(newCachedThreadPool(daemonThreadsNamed("jdbc-monitor-prepare-%s")));
+
+    private final Properties properties;
+    private final String user;
     private final Duration queryTimeout;
+    private final Cache<String, BackendConnection> connections;
 
     private static final String STATE_QUERY = "SELECT state, COUNT(*) as count "
             + "FROM runtime.queries "
@@ -51,15 +65,24 @@ public class ClusterStatsJdbcMonitor
     public ClusterStatsJdbcMonitor(BackendStateConfiguration backendStateConfiguration, MonitorConfiguration monitorConfiguration)
     {
         properties = new Properties();
-        properties.setProperty("user", backendStateConfiguration.getUsername());
+        user = backendStateConfiguration.getUsername();
+        properties.setProperty("user", user);
         properties.setProperty("password", backendStateConfiguration.getPassword());
-        properties.setProperty("SSL", String.valueOf(backendStateConfiguration.getSsl()));
         // explicitPrepare is a valid property for Trino versions >= 431. To avoid compatibility
         // issues with versions < 431, this property is left unset when explicitPrepare=true, which is the default
         if (!monitorConfiguration.isExplicitPrepare()) {
             properties.setProperty("explicitPrepare", "false");
         }
         queryTimeout = monitorConfiguration.getQueryTimeout();
+        // Connections of backends that are removed or renamed are closed after a while
+        connections = Caffeine.newBuilder()
+                .expireAfterAccess(10, MINUTES)
+                .removalListener((String _, BackendConnection connection, RemovalCause _) -> {
+                    if (connection != null) {
+                        connection.close();
+                    }
+                })
+                .build();
         log.info("state check configured");
     }
 
@@ -71,26 +94,19 @@ public class ClusterStatsJdbcMonitor
         String jdbcUrl;
         try {
             URL parsedUrl = URI.create(url).toURL();
-            jdbcUrl = "jdbc:trino://%s:%s/system".formatted(
+            jdbcUrl = "jdbc:trino://%s:%s/system?SSL=%s".formatted(
                     parsedUrl.getHost(),
-                    parsedUrl.getPort() == -1 ? parsedUrl.getDefaultPort() : parsedUrl.getPort());
-            // automatically set ssl config based on url protocol
-            properties.setProperty("SSL", String.valueOf(parsedUrl.getProtocol().equals("https")));
+                    parsedUrl.getPort() == -1 ? parsedUrl.getDefaultPort() : parsedUrl.getPort(),
+                    // automatically set ssl config based on url protocol
+                    parsedUrl.getProtocol().equals("https"));
         }
         catch (MalformedURLException e) {
             throw new IllegalArgumentException("Invalid backend URL: " + url, e);
         }
 
-        try (Connection conn = DriverManager.getConnection(jdbcUrl, properties);
-                PreparedStatement statement = SimpleTimeLimiter.create(Executors.newSingleThreadExecutor()).callWithTimeout(
-                        () -> conn.prepareStatement(STATE_QUERY), 10, SECONDS)) {
-            statement.setString(1, (String) properties.get("user"));
-            statement.setQueryTimeout((int) queryTimeout.roundTo(SECONDS));
-            Map<String, Integer> partialState = new HashMap<>();
-            ResultSet rs = statement.executeQuery();
-            while (rs.next()) {
-                partialState.put(rs.getString("state"), rs.getInt("count"));
-            }
+        BackendConnection connection = connections.get(jdbcUrl, BackendConnection::new);
+        try {
+            Map<String, Integer> partialState = connection.queryStates();
             return clusterStats
                     // at this point we can set cluster to trinoStatus because otherwise
                     // it wouldn't have gotten worker stats
@@ -105,6 +121,73 @@ public class ClusterStatsJdbcMonitor
         catch (Exception e) {
             log.error(e, "Could not fetch status for %s backend", url);
         }
+        // Start over with a new connection on the next poll
+        connections.asMap().remove(jdbcUrl, connection);
         return clusterStats.build();
     }
+
+    @VisibleForTesting
+    long getConnectionCount()
+    {
+        connections.cleanUp();
+        return connections.estimatedSize();
+    }
+
+    /**
+     * A connection to a single backend, with the state query prepared once and
+     * reused by every poll. Polls of the same backend are serialized.
+     */
+    private class BackendConnection
+    {
+        private final String jdbcUrl;
+        private Connection connection;
+        private PreparedStatement statement;
+        private boolean closed;
+
+        BackendConnection(String jdbcUrl)
+        {
+            this.jdbcUrl = requireNonNull(jdbcUrl, "jdbcUrl is null");
+        }
+
+        synchronized Map<String, Integer> queryStates()
+                throws Exception
+        {
+            if (closed) {
+                throw new SQLException("Connection to %s is closed".formatted(jdbcUrl));
+            }
+            if (statement == null) {
+                connection = DriverManager.getConnection(jdbcUrl, properties);
+                Connection conn = connection;
+                statement = PREPARE_TIME_LIMITER.callWithTimeout(() -> conn.prepareStatement(STATE_QUERY), 10, SECONDS);
+                statement.setString(1, user);
+                statement.setQueryTimeout((int) queryTimeout.roundTo(SECONDS));
+            }
+
+            Map<String, Integer> partialState = new HashMap<>();
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    partialState.put(rs.getString("state"), rs.getInt("count"));
+                }
+            }
+            return partialState;
+        }
+
+        synchronized void close()
+        {
+            closed = true;
+            try {
+                if (statement != null) {
+                    statement.close();
+                }
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+            catch (SQLException e) {
+                log.debug(e, "Failed to close connection to %s", jdbcUrl);
+            }
+            statement = null;
+            connection = null;
+        }
+    }
 }
@@ -29,16 +29,28 @@ public class UiApiCookieJar
     private final Multimap<String, Cookie> cookieStore = ArrayListMultimap.create();
 
     @Override
-    public void saveFromResponse(HttpUrl url, List<Cookie> cookies)
+    public synchronized void saveFromResponse(HttpUrl url, List<Cookie> cookies)
     {
         String addr = url.host() + ":" + url.port();
+        // A renewed cookie replaces the previous one with the same name
+        for (Cookie cookie : cookies) {
+            cookieStore.get(addr).removeIf(existing -> existing.name().equals(cookie.name()));
+        }
         cookieStore.putAll(addr, cookies);
     }
 
     @Override
-    public List<Cookie> loadForRequest(HttpUrl url)
+    public synchronized List<Cookie> loadForRequest(HttpUrl url)
     {
         String addr = url.host() + ":" + url.port();
-        return cookieStore.get(addr).stream().collect(toImmutableList());
+        long now = System.currentTimeMillis();
+        return cookieStore.get(addr).stream()
+                .filter(cookie -> cookie.expiresAt() > now)
+                .collect(toImmutableList());
+    }
+
+    public synchronized void clear()
+    {
+        cookieStore.clear();
     }
 }
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.config;
+
+import io.airlift.units.Duration;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class ConnectionPoolConfiguration
+{
+    private int minSize = 1;
+    private int maxSize = 10;
+    private Duration connectionTimeout = Duration.succinctDuration(30, SECONDS);
+    private Duration idleTimeout = Duration.succinctDuration(10, MINUTES);
+    private Duration maxLifetime = Duration.succinctDuration(30, MINUTES);
+    private Duration validationTimeout = Duration.succinctDuration(5, SECONDS);
+
+    public int getMinSize()
+    {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize)
+    {
+        this.minSize = minSize;
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    public Duration getConnectionTimeout()
+    {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(Duration connectionTimeout)
+    {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public Duration getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Duration idleTimeout)
+    {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public Duration getMaxLifetime()
+    {
+        return maxLifetime;
+    }
+
+    public void setMaxLifetime(Duration maxLifetime)
+    {
+        this.maxLifetime = maxLifetime;
+    }
+
+    public Duration getValidationTimeout()
+    {
+        return validationTimeout;
+    }
+
+    public void setValidationTimeout(Duration validationTimeout)
+    {
+        this.validationTimeout = validationTimeout;
+    }
+}
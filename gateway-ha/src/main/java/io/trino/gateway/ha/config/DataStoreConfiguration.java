@@ -22,6 +22,9 @@ public class DataStoreConfiguration
     private boolean queryHistoryEnabled = true;
     private Integer queryHistoryHoursRetention = 4;
     private boolean runMigrationsEnabled = true;
+    private QueryHistoryWriterConfiguration queryHistoryWriter = new QueryHistoryWriterConfiguration();
+    private ConnectionPoolConfiguration connectionPool = new ConnectionPoolConfiguration();
+    private QueryHistoryCleanupConfiguration queryHistoryCleanup = new QueryHistoryCleanupConfiguration();
 
     public DataStoreConfiguration(String jdbcUrl, String user, String password, String driver, boolean queryHistoryEnabled, Integer queryHistoryHoursRetention, boolean runMigrationsEnabled)
     {
@@ -105,4 +108,34 @@ public class DataStoreConfiguration
     {
         this.runMigrationsEnabled = runMigrationsEnabled;
     }
+
+    public QueryHistoryWriterConfiguration getQueryHistoryWriter()
+    {
+        return this.queryHistoryWriter;
+    }
+
+    public void setQueryHistoryWriter(QueryHistoryWriterConfiguration queryHistoryWriter)
+    {
+        this.queryHistoryWriter = queryHistoryWriter;
+    }
+
+    public ConnectionPoolConfiguration getConnectionPool()
+    {
+        return this.connectionPool;
+    }
+
+    public void setConnectionPool(ConnectionPoolConfiguration connectionPool)
+    {
+        this.connectionPool = connectionPool;
+    }
+
+    public QueryHistoryCleanupConfiguration getQueryHistoryCleanup()
+    {
+        return this.queryHistoryCleanup;
+    }
+
+    public void setQueryHistoryCleanup(QueryHistoryCleanupConfiguration queryHistoryCleanup)
+    {
+        this.queryHistoryCleanup = queryHistoryCleanup;
+    }
 }
@@ -25,6 +25,10 @@ public class MonitorConfiguration
 {
     private Duration taskDelay = new Duration(1, MINUTES);
 
+    private Duration taskTimeout = new Duration(30, SECONDS);
+
+    private Duration maxBackoffDelay = new Duration(2, MINUTES);
+
     private int retries;
 
     private Duration queryTimeout = new Duration(10, SECONDS);
@@ -56,6 +60,26 @@ public class MonitorConfiguration
         this.taskDelay = taskDelay;
     }
 
+    public Duration getTaskTimeout()
+    {
+        return taskTimeout;
+    }
+
+    public void setTaskTimeout(Duration taskTimeout)
+    {
+        this.taskTimeout = taskTimeout;
+    }
+
+    public Duration getMaxBackoffDelay()
+    {
+        return maxBackoffDelay;
+    }
+
+    public void setMaxBackoffDelay(Duration maxBackoffDelay)
+    {
+        this.maxBackoffDelay = maxBackoffDelay;
+    }
+
     public int getRetries()
     {
         return retries;
@@ -15,11 +15,14 @@ package io.trino.gateway.ha.config;
 
 import io.airlift.units.DataSize;
 
+import static io.airlift.units.DataSize.Unit.KILOBYTE;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
 
 public class ProxyResponseConfiguration
 {
     private DataSize responseSize = DataSize.of(32, MEGABYTE);
+    private boolean streamingEnabled;
+    private DataSize statementResponsePrefixSize = DataSize.of(64, KILOBYTE);
 
     public ProxyResponseConfiguration() {}
 
@@ -32,4 +35,24 @@ public class ProxyResponseConfiguration
     {
         this.responseSize = responseSize;
     }
+
+    public boolean isStreamingEnabled()
+    {
+        return streamingEnabled;
+    }
+
+    public void setStreamingEnabled(boolean streamingEnabled)
+    {
+        this.streamingEnabled = streamingEnabled;
+    }
+
+    public DataSize getStatementResponsePrefixSize()
+    {
+        return statementResponsePrefixSize;
+    }
+
+    public void setStatementResponsePrefixSize(DataSize statementResponsePrefixSize)
+    {
+        this.statementResponsePrefixSize = statementResponsePrefixSize;
+    }
 }
@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.config;
+
+import io.airlift.units.Duration;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+public class QueryHistoryCleanupConfiguration
+{
+    private Duration interval = Duration.succinctDuration(120, MINUTES);
+    private int batchSize = 5_000;
+    private Duration batchDelay = Duration.succinctDuration(100, MILLISECONDS);
+
+    public Duration getInterval()
+    {
+        return interval;
+    }
+
+    public void setInterval(Duration interval)
+    {
+        this.interval = interval;
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    public Duration getBatchDelay()
+    {
+        return batchDelay;
+    }
+
+    public void setBatchDelay(Duration batchDelay)
+    {
+        this.batchDelay = batchDelay;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.config;
+
+/**
+ * Decides what happens when a query history record is submitted while the
+ * asynchronous writer queue is full.
+ */
+public enum QueryHistoryOverflowPolicy
+{
+    /**
+     * Discard the oldest queued record to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Block the submitting thread until the writer frees up space.
+     */
+    BLOCK,
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.config;
+
+import io.airlift.units.Duration;
+
+import static io.trino.gateway.ha.config.QueryHistoryOverflowPolicy.DROP_OLDEST;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class QueryHistoryWriterConfiguration
+{
+    private boolean asyncEnabled;
+    private int queueSize = 10_000;
+    private int batchSize = 100;
+    private Duration flushInterval = Duration.succinctDuration(1, SECONDS);
+    private QueryHistoryOverflowPolicy overflowPolicy = DROP_OLDEST;
+
+    public boolean isAsyncEnabled()
+    {
+        return asyncEnabled;
+    }
+
+    public void setAsyncEnabled(boolean asyncEnabled)
+    {
+        this.asyncEnabled = asyncEnabled;
+    }
+
+    public int getQueueSize()
+    {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize)
+    {
+        this.queueSize = queueSize;
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    public Duration getFlushInterval()
+    {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval)
+    {
+        this.flushInterval = flushInterval;
+    }
+
+    public QueryHistoryOverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(QueryHistoryOverflowPolicy overflowPolicy)
+    {
+        this.overflowPolicy = overflowPolicy;
+    }
+}
@@ -13,8 +13,14 @@
  */
 package io.trino.gateway.ha.config;
 
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
 import jakarta.validation.constraints.Max;
 
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 public class RequestAnalyzerConfig
 {
     private int maxBodySize = 1_000_000;
@@ -22,7 +28,12 @@ public class RequestAnalyzerConfig
     private boolean isClientsUseV2Format;
     private String tokenUserField = "email";
     private String oauthTokenInfoUrl;
+    private long oauthTokenInfoCacheSize = 10_000;
+    private Duration oauthTokenInfoCacheTtl = new Duration(10, MINUTES);
+    private Duration oauthTokenInfoRefreshAfter = new Duration(5, MINUTES);
+    private Duration oauthTokenInfoNegativeCacheTtl = new Duration(30, SECONDS);
     private boolean isAnalyzeRequest;
+    private DataSize analysisCacheMaxSize = DataSize.of(32, MEGABYTE);
 
     public RequestAnalyzerConfig() {}
 
@@ -57,6 +68,46 @@ public class RequestAnalyzerConfig
         this.oauthTokenInfoUrl = oauthTokenInfoUrl;
     }
 
+    public long getOauthTokenInfoCacheSize()
+    {
+        return oauthTokenInfoCacheSize;
+    }
+
+    public void setOauthTokenInfoCacheSize(long oauthTokenInfoCacheSize)
+    {
+        this.oauthTokenInfoCacheSize = oauthTokenInfoCacheSize;
+    }
+
+    public Duration getOauthTokenInfoCacheTtl()
+    {
+        return oauthTokenInfoCacheTtl;
+    }
+
+    public void setOauthTokenInfoCacheTtl(Duration oauthTokenInfoCacheTtl)
+    {
+        this.oauthTokenInfoCacheTtl = oauthTokenInfoCacheTtl;
+    }
+
+    public Duration getOauthTokenInfoRefreshAfter()
+    {
+        return oauthTokenInfoRefreshAfter;
+    }
+
+    public void setOauthTokenInfoRefreshAfter(Duration oauthTokenInfoRefreshAfter)
+    {
+        this.oauthTokenInfoRefreshAfter = oauthTokenInfoRefreshAfter;
+    }
+
+    public Duration getOauthTokenInfoNegativeCacheTtl()
+    {
+        return oauthTokenInfoNegativeCacheTtl;
+    }
+
+    public void setOauthTokenInfoNegativeCacheTtl(Duration oauthTokenInfoNegativeCacheTtl)
+    {
+        this.oauthTokenInfoNegativeCacheTtl = oauthTokenInfoNegativeCacheTtl;
+    }
+
     public boolean isClientsUseV2Format()
     {
         return isClientsUseV2Format;
@@ -76,4 +127,14 @@ public class RequestAnalyzerConfig
     {
         isAnalyzeRequest = analyzeRequest;
     }
+
+    public DataSize getAnalysisCacheMaxSize()
+    {
+        return analysisCacheMaxSize;
+    }
+
+    public void setAnalysisCacheMaxSize(DataSize analysisCacheMaxSize)
+    {
+        this.analysisCacheMaxSize = analysisCacheMaxSize;
+    }
 }
@@ -13,9 +13,17 @@
  */
 package io.trino.gateway.ha.config;
 
+import com.google.common.collect.ImmutableList;
 import io.airlift.units.Duration;
 
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class RoutingConfiguration
 {
@@ -25,6 +33,20 @@ public class RoutingConfiguration
 
     private String defaultRoutingGroup = "adhoc";
 
+    private Duration queryIdSearchTimeout = new Duration(5, SECONDS);
+
+    private Duration unknownQueryIdCacheTtl = new Duration(10, SECONDS);
+
+    private long queryRouteCacheMaximumSize = 10_000;
+
+    private Duration queryRouteCacheExpireAfterAccess = new Duration(30, MINUTES);
+
+    private boolean backendTokenEnabled;
+
+    private SecretKey backendTokenSigningKey;
+
+    private List<String> directPollingRoutingGroups = ImmutableList.of();
+
     public Duration getAsyncTimeout()
     {
         return asyncTimeout;
@@ -54,4 +76,78 @@ public class RoutingConfiguration
     {
         this.defaultRoutingGroup = defaultRoutingGroup;
     }
+
+    public Duration getQueryIdSearchTimeout()
+    {
+        return queryIdSearchTimeout;
+    }
+
+    public void setQueryIdSearchTimeout(Duration queryIdSearchTimeout)
+    {
+        this.queryIdSearchTimeout = queryIdSearchTimeout;
+    }
+
+    public Duration getUnknownQueryIdCacheTtl()
+    {
+        return unknownQueryIdCacheTtl;
+    }
+
+    public void setUnknownQueryIdCacheTtl(Duration unknownQueryIdCacheTtl)
+    {
+        this.unknownQueryIdCacheTtl = unknownQueryIdCacheTtl;
+    }
+
+    public long getQueryRouteCacheMaximumSize()
+    {
+        return queryRouteCacheMaximumSize;
+    }
+
+    public void setQueryRouteCacheMaximumSize(long queryRouteCacheMaximumSize)
+    {
+        this.queryRouteCacheMaximumSize = queryRouteCacheMaximumSize;
+    }
+
+    public Duration getQueryRouteCacheExpireAfterAccess()
+    {
+        return queryRouteCacheExpireAfterAccess;
+    }
+
+    public void setQueryRouteCacheExpireAfterAccess(Duration queryRouteCacheExpireAfterAccess)
+    {
+        this.queryRouteCacheExpireAfterAccess = queryRouteCacheExpireAfterAccess;
+    }
+
+    public boolean isBackendTokenEnabled()
+    {
+        return backendTokenEnabled;
+    }
+
+    public void setBackendTokenEnabled(boolean backendTokenEnabled)
+    {
+        this.backendTokenEnabled = backendTokenEnabled;
+    }
+
+    public SecretKey getBackendTokenSigningKey()
+    {
+        return backendTokenSigningKey;
+    }
+
+    public void setBackendTokenSigningSecret(String backendTokenSigningSecret)
+    {
+        backendTokenSigningKey = new SecretKeySpec(backendTokenSigningSecret.getBytes(UTF_8), "HmacSHA256");
+    }
+
+    /**
+     * Routing groups whose clients poll the coordinator at its external URL
+     * instead of the gateway once a query is submitted.
+     */
+    public List<String> getDirectPollingRoutingGroups()
+    {
+        return directPollingRoutingGroups;
+    }
+
+    public void setDirectPollingRoutingGroups(List<String> directPollingRoutingGroups)
+    {
+        this.directPollingRoutingGroups = ImmutableList.copyOf(directPollingRoutingGroups);
+    }
 }
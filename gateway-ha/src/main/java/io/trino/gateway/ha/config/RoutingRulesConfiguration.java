@@ -25,6 +25,7 @@ public class RoutingRulesConfiguration
     private RulesExternalConfiguration rulesExternalConfiguration;
 
     private Duration rulesRefreshPeriod = new Duration(1, MINUTES);
+    private boolean rulesIndexEnabled = true;
 
     public RoutingRulesConfiguration() {}
 
@@ -77,4 +78,14 @@ public class RoutingRulesConfiguration
     {
         this.rulesRefreshPeriod = rulesRefreshPeriod;
     }
+
+    public boolean isRulesIndexEnabled()
+    {
+        return rulesIndexEnabled;
+    }
+
+    public void setRulesIndexEnabled(boolean rulesIndexEnabled)
+    {
+        this.rulesIndexEnabled = rulesIndexEnabled;
+    }
 }
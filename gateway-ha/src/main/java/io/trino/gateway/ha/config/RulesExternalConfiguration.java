@@ -13,13 +13,32 @@
  */
 package io.trino.gateway.ha.config;
 
+import io.airlift.units.Duration;
+
 import java.util.List;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 public class RulesExternalConfiguration
 {
     private String urlPath;
     private List<String> excludeHeaders;
     private boolean propagateErrors;
+    private Duration requestTimeout;
+    private Duration cacheTtl = new Duration(0, SECONDS);
+    private long cacheMaxSize = 10_000;
+    private List<String> cacheKeyHeaders = List.of(
+            "X-Trino-User",
+            "X-Trino-Source",
+            "X-Trino-Client-Tags",
+            "X-Trino-Catalog",
+            "X-Trino-Schema",
+            "X-Trino-Session",
+            "X-Trino-Prepared-Statement",
+            "X-Trino-Routing-Group");
+    private int maxConcurrentRequests;
+    private int circuitBreakerFailureThreshold = 5;
+    private Duration circuitBreakerOpenDuration = new Duration(30, SECONDS);
 
     public String getUrlPath()
     {
@@ -50,4 +69,91 @@ public class RulesExternalConfiguration
     {
         this.propagateErrors = propagateErrors;
     }
+
+    /**
+     * Time to wait for the external service before routing by header, or null to
+     * rely on the timeout of the HTTP client.
+     */
+    public Duration getRequestTimeout()
+    {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(Duration requestTimeout)
+    {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * How long routing decisions are reused for identical requests, zero disables the cache.
+     */
+    public Duration getCacheTtl()
+    {
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(Duration cacheTtl)
+    {
+        this.cacheTtl = cacheTtl;
+    }
+
+    public long getCacheMaxSize()
+    {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize(long cacheMaxSize)
+    {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
+    /**
+     * Headers that, together with the user and the query text, identify requests that get the same routing decision.
+     */
+    public List<String> getCacheKeyHeaders()
+    {
+        return cacheKeyHeaders;
+    }
+
+    public void setCacheKeyHeaders(List<String> cacheKeyHeaders)
+    {
+        this.cacheKeyHeaders = cacheKeyHeaders;
+    }
+
+    /**
+     * Maximum number of calls in flight to the external service, zero means unlimited.
+     */
+    public int getMaxConcurrentRequests()
+    {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests)
+    {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Number of consecutive failed calls after which the external service is not called
+     * for {@link #getCircuitBreakerOpenDuration()}, zero disables the circuit breaker.
+     */
+    public int getCircuitBreakerFailureThreshold()
+    {
+        return circuitBreakerFailureThreshold;
+    }
+
+    public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold)
+    {
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+    }
+
+    public Duration getCircuitBreakerOpenDuration()
+    {
+        return circuitBreakerOpenDuration;
+    }
+
+    public void setCircuitBreakerOpenDuration(Duration circuitBreakerOpenDuration)
+    {
+        this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+    }
 }
@@ -13,12 +13,15 @@
  */
 package io.trino.gateway.ha.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.List;
 
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
 public class TableData<T>
         implements Serializable
 {
@@ -35,6 +38,11 @@ public class TableData<T>
      */
     private List<T> rows;
 
+    /**
+     * Cursor to request the next page with, absent on the last page
+     */
+    private String nextCursor;
+
     public TableData(List<T> list, long total)
     {
         this.rows = list;
@@ -46,6 +54,13 @@ public class TableData<T>
         return new TableData<>(list, total);
     }
 
+    public static <T> TableData<T> build(List<T> list, long total, String nextCursor)
+    {
+        TableData<T> tableData = new TableData<>(list, total);
+        tableData.setNextCursor(nextCursor);
+        return tableData;
+    }
+
     public TableData() {}
 
     @JsonProperty
@@ -69,4 +84,16 @@ public class TableData<T>
     {
         this.rows = rows;
     }
+
+    @JsonProperty
+    @JsonInclude(NON_NULL)
+    public String getNextCursor()
+    {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor)
+    {
+        this.nextCursor = nextCursor;
+    }
 }
@@ -24,6 +24,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * @param user Query histories of specified user. ADMIN role is optional, other roles are mandatory.
  * @param externalUrl Optional, you can query the history based on the externalUrl.
  * @param queryId Optional, you can query the query history based on the queryId of Trino.
+ * @param source Optional, you can query the history based on the source.
+ * @param cursor Optional, the {@code nextCursor} of the previous page. When set, the page following
+ * the previous page is returned and {@code page} is ignored.
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record QueryHistoryRequest(
@@ -32,11 +35,17 @@ public record QueryHistoryRequest(
         @JsonProperty("user") String user,
         @JsonProperty("externalUrl") String externalUrl,
         @JsonProperty("queryId") String queryId,
-        @JsonProperty("source") String source)
+        @JsonProperty("source") String source,
+        @JsonProperty("cursor") String cursor)
 {
     public QueryHistoryRequest
     {
         page = page == null ? 1 : page;
         size = size == null ? 10 : size;
     }
+
+    public QueryHistoryRequest(Integer page, Integer size, String user, String externalUrl, String queryId, String source)
+    {
+        this(page, size, user, externalUrl, queryId, source, null);
+    }
 }
@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.handler;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.HashFunction;
+import io.airlift.log.Logger;
+import io.trino.gateway.ha.config.RoutingConfiguration;
+import io.trino.gateway.ha.handler.schema.RoutingDestination;
+
+import javax.crypto.SecretKey;
+
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.emptyToNull;
+import static com.google.common.base.Strings.nullToEmpty;
+import static com.google.common.hash.Hashing.hmacSha256;
+import static io.trino.gateway.ha.handler.ProxyUtils.rewriteStatementUris;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Encodes the backend of a query into the URIs that Trino returns for polling it, so that
+ * the gateway can route the polls from the URI alone, without looking up the query.
+ * <p>
+ * The token is appended as the last path segment of {@code nextUri} and {@code partialCancelUri}
+ * in the form {@code tg.<payload>.<signature>}, and removed again before the request is forwarded.
+ * The signature prevents clients from directing the gateway to arbitrary hosts.
+ */
+public class BackendTokenCodec
+{
+    private static final Logger log = Logger.get(BackendTokenCodec.class);
+
+    static final String SEGMENT_PREFIX = "tg.";
+    private static final int SIGNATURE_BYTES = 16;
+    private static final char FIELD_SEPARATOR = '\n';
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final HashFunction signer;
+
+    public BackendTokenCodec(SecretKey signingKey)
+    {
+        this.signer = hmacSha256(requireNonNull(signingKey, "signingKey is null"));
+    }
+
+    public static Optional<BackendTokenCodec> fromConfiguration(RoutingConfiguration routingConfiguration)
+    {
+        if (!routingConfiguration.isBackendTokenEnabled()) {
+            return Optional.empty();
+        }
+        SecretKey signingKey = routingConfiguration.getBackendTokenSigningKey();
+        checkArgument(signingKey != null, "routing.backendTokenSigningSecret must be provided when backend tokens are enabled");
+        return Optional.of(new BackendTokenCodec(signingKey));
+    }
+
+    /**
+     * Returns the path segment that identifies the destination, or empty if it cannot be encoded.
+     */
+    public Optional<String> encode(RoutingDestination destination)
+    {
+        if (destination.clusterHost() == null) {
+            return Optional.empty();
+        }
+        String payload = String.join(String.valueOf(FIELD_SEPARATOR),
+                destination.clusterHost(),
+                nullToEmpty(destination.routingGroup()),
+                nullToEmpty(destination.externalUrl()));
+        if (payload.chars().filter(c -> c == FIELD_SEPARATOR).count() != 2) {
+            return Optional.empty();
+        }
+        byte[] payloadBytes = payload.getBytes(UTF_8);
+        return Optional.of(SEGMENT_PREFIX + ENCODER.encodeToString(payloadBytes) + "." + ENCODER.encodeToString(sign(payloadBytes)));
+    }
+
+    /**
+     * Splits a token off the end of the request path. The path is returned without the token
+     * even if its signature is invalid, in which case the backend is looked up as usual.
+     */
+    public Optional<TokenizedPath> parse(String path)
+    {
+        if (path == null) {
+            return Optional.empty();
+        }
+        int lastSlash = path.lastIndexOf('/');
+        if (lastSlash < 0 || !path.startsWith(SEGMENT_PREFIX, lastSlash + 1)) {
+            return Optional.empty();
+        }
+        return Optional.of(new TokenizedPath(path.substring(0, lastSlash), decode(path.substring(lastSlash + 1))));
+    }
+
+    @VisibleForTesting
+    Optional<BackendToken> decode(String segment)
+    {
+        String[] parts = segment.substring(SEGMENT_PREFIX.length()).split("\\.", -1);
+        if (parts.length != 2) {
+            log.warn("Ignoring malformed backend token %s", segment);
+            return Optional.empty();
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(parts[0]);
+            signature = DECODER.decode(parts[1]);
+        }
+        catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed backend token %s", segment);
+            return Optional.empty();
+        }
+        if (!MessageDigest.isEqual(sign(payload), signature)) {
+            log.warn("Ignoring backend token with an invalid signature %s", segment);
+            return Optional.empty();
+        }
+        String[] fields = new String(payload, UTF_8).split(String.valueOf(FIELD_SEPARATOR), -1);
+        if (fields.length != 3 || fields[0].isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new BackendToken(fields[0], emptyToNull(fields[1]), emptyToNull(fields[2])));
+    }
+
+    /**
+     * Appends the token to the {@code partialCancelUri} and {@code nextUri} of a statement response
+     * that point back at the gateway. Returns empty if nothing was rewritten.
+     */
+    public static Optional<String> appendToStatementUris(String body, String segment, URI clusterUri, List<String> statementPaths)
+    {
+        return rewriteStatementUris(body, uri -> pointsAtGateway(uri, clusterUri, statementPaths)
+                ? Optional.of(uri + "/" + segment)
+                : Optional.empty());
+    }
+
+    // URIs that point at the backend itself are not routed through the gateway
+    private static boolean pointsAtGateway(String value, URI clusterUri, List<String> statementPaths)
+    {
+        URI uri = URI.create(value);
+        if (uri.getRawQuery() != null || uri.getRawFragment() != null || uri.getPath() == null) {
+            return false;
+        }
+        if (Objects.equals(uri.getRawAuthority(), clusterUri.getRawAuthority())) {
+            return false;
+        }
+        return statementPaths.stream().anyMatch(uri.getPath()::startsWith);
+    }
+
+    private byte[] sign(byte[] payload)
+    {
+        return Arrays.copyOf(signer.hashBytes(payload).asBytes(), SIGNATURE_BYTES);
+    }
+
+    public record BackendToken(String clusterHost, String routingGroup, String externalUrl)
+    {
+        public BackendToken
+        {
+            requireNonNull(clusterHost, "clusterHost is null");
+        }
+    }
+
+    public record TokenizedPath(String path, Optional<BackendToken> backendToken)
+    {
+        public TokenizedPath
+        {
+            requireNonNull(path, "path is null");
+            requireNonNull(backendToken, "backendToken is null");
+        }
+    }
+}
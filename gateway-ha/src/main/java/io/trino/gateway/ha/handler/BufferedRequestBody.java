@@ -0,0 +1,135 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.handler;
+
+import com.google.common.hash.HashCode;
+import io.airlift.http.client.StaticBodyGenerator;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.google.common.hash.Hashing.sha256;
+import static io.airlift.http.client.StaticBodyGenerator.createStaticBodyGenerator;
+import static io.trino.gateway.ha.handler.HttpUtils.REQUEST_BODY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The body of an incoming request, read once and shared by query id extraction,
+ * request analysis, query history and the request forwarded to the backend.
+ * The bytes are never modified after capture, and are only decoded on demand.
+ */
+public final class BufferedRequestBody
+{
+    public static final BufferedRequestBody EMPTY = new BufferedRequestBody(new byte[0]);
+
+    private final byte[] bytes;
+    private volatile String text;
+
+    private BufferedRequestBody(byte[] bytes)
+    {
+        this.bytes = requireNonNull(bytes, "bytes is null");
+    }
+
+    public static BufferedRequestBody read(InputStream inputStream)
+            throws IOException
+    {
+        if (inputStream == null) {
+            return EMPTY;
+        }
+        byte[] bytes = inputStream.readAllBytes();
+        return bytes.length == 0 ? EMPTY : new BufferedRequestBody(bytes);
+    }
+
+    /**
+     * Returns the body previously captured for this request, or reads and captures it.
+     */
+    public static BufferedRequestBody fromRequest(HttpServletRequest request)
+            throws IOException
+    {
+        if (request.getAttribute(REQUEST_BODY) instanceof BufferedRequestBody body) {
+            return body;
+        }
+        BufferedRequestBody body = read(request.getInputStream());
+        request.setAttribute(REQUEST_BODY, body);
+        return body;
+    }
+
+    public int size()
+    {
+        return bytes.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return bytes.length == 0;
+    }
+
+    public InputStream openStream()
+    {
+        return new ByteArrayInputStream(bytes);
+    }
+
+    public StaticBodyGenerator toBodyGenerator()
+    {
+        return createStaticBodyGenerator(bytes);
+    }
+
+    public String toUtf8String()
+    {
+        String value = text;
+        if (value == null) {
+            value = new String(bytes, UTF_8);
+            text = value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the SHA-256 of the raw bytes, without decoding or analyzing the body.
+     */
+    public HashCode hash()
+    {
+        return sha256().hashBytes(bytes);
+    }
+
+    /**
+     * Checks whether the body contains the given ASCII text, ignoring case, without decoding it.
+     * Bytes of multibyte UTF-8 sequences are never in the ASCII range, so they cannot produce a false match.
+     */
+    public boolean containsIgnoreCase(String asciiText)
+    {
+        byte[] needle = asciiText.getBytes(UTF_8);
+        outer:
+        for (int i = 0; i <= bytes.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (toLowerAscii(bytes[i + j]) != toLowerAscii(needle[j])) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte toLowerAscii(byte value)
+    {
+        if (value >= 'A' && value <= 'Z') {
+            return (byte) (value + ('a' - 'A'));
+        }
+        return value;
+    }
+}
@@ -28,6 +28,8 @@ public class HttpUtils
     public static final String USER_HEADER = "X-Trino-User";
     public static final String TRINO_REQUEST_USER = "trinoRequestUser";
     public static final String TRINO_QUERY_PROPERTIES = "trinoQueryProperties";
+    public static final String REQUEST_BODY = "trinoGatewayRequestBody";
+    public static final String REQUEST_START_NANOS = "trinoGatewayRequestStartNanos";
 
     private HttpUtils() {}
 }
@@ -13,23 +13,226 @@
  */
 package io.trino.gateway.ha.handler;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import io.airlift.log.Logger;
 import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import io.trino.gateway.ha.handler.schema.RoutingDestination;
+import jakarta.servlet.http.HttpServletRequest;
+import org.weakref.jmx.MBeanExporter;
 import org.weakref.jmx.Managed;
 import org.weakref.jmx.Nested;
 
+import javax.management.ObjectName;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Strings.nullToEmpty;
+import static io.trino.gateway.ha.handler.HttpUtils.REQUEST_START_NANOS;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Statistics of the requests proxied to the Trino clusters, for each stage of the handling
+ * of a request, and by routing group and cluster.
+ */
 public final class ProxyHandlerStats
 {
+    private static final Logger log = Logger.get(ProxyHandlerStats.class);
+
+    private final Optional<MBeanExporter> exporter;
+    // MBeanExporter uses weak references, so the stats are kept here as well
+    private final Map<Destination, DestinationStats> destinationStats = new ConcurrentHashMap<>();
+
     private final CounterStat requestCount = new CounterStat();
+    private final TimeStat requestFilterTime = new TimeStat(MILLISECONDS);
+    private final TimeStat routingTime = new TimeStat(MILLISECONDS);
+    private final TimeStat queryLookupTime = new TimeStat(MILLISECONDS);
+    private final TimeStat routingRulesTime = new TimeStat(MILLISECONDS);
+    private final TimeStat backendSelectionTime = new TimeStat(MILLISECONDS);
+    private final TimeStat backendResponseTime = new TimeStat(MILLISECONDS);
+    private final TimeStat responseTransferTime = new TimeStat(MILLISECONDS);
+    private final TimeStat historyRecordingTime = new TimeStat(MILLISECONDS);
+    private final TimeStat totalTime = new TimeStat(MILLISECONDS);
+
+    @Inject
+    public ProxyHandlerStats(MBeanExporter exporter)
+    {
+        this.exporter = Optional.of(requireNonNull(exporter, "exporter is null"));
+    }
+
+    /**
+     * Statistics that are collected but not exported.
+     */
+    public ProxyHandlerStats()
+    {
+        this.exporter = Optional.empty();
+    }
 
     public void recordRequest()
     {
         requestCount.update(1);
     }
 
+    /**
+     * Records the time the request spent in the request filters, such as user and query parsing.
+     */
+    public void recordRequestFilters(HttpServletRequest request)
+    {
+        if (request.getAttribute(REQUEST_START_NANOS) instanceof Long startNanos) {
+            requestFilterTime.add(System.nanoTime() - startNanos, NANOSECONDS);
+        }
+    }
+
+    public void recordBackendResponse(RoutingDestination destination, long nanos)
+    {
+        backendResponseTime.add(nanos, NANOSECONDS);
+        getDestinationStats(destination).backendResponseTime.add(nanos, NANOSECONDS);
+    }
+
+    public void recordTotal(RoutingDestination destination, long nanos)
+    {
+        totalTime.add(nanos, NANOSECONDS);
+        getDestinationStats(destination).totalTime.add(nanos, NANOSECONDS);
+    }
+
+    /**
+     * Returns when the gateway received the request, or now if the request was not timed.
+     */
+    public static long requestStartNanos(HttpServletRequest request)
+    {
+        if (request.getAttribute(REQUEST_START_NANOS) instanceof Long startNanos) {
+            return startNanos;
+        }
+        return System.nanoTime();
+    }
+
     @Managed
     @Nested
     public CounterStat getRequestCount()
     {
         return requestCount;
     }
+
+    @Managed
+    @Nested
+    public TimeStat getRequestFilterTime()
+    {
+        return requestFilterTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getRoutingTime()
+    {
+        return routingTime;
+    }
+
+    /**
+     * Time to find the cluster of a known query.
+     */
+    @Managed
+    @Nested
+    public TimeStat getQueryLookupTime()
+    {
+        return queryLookupTime;
+    }
+
+    /**
+     * Time to select the routing group of a new query.
+     */
+    @Managed
+    @Nested
+    public TimeStat getRoutingRulesTime()
+    {
+        return routingRulesTime;
+    }
+
+    /**
+     * Time to select a cluster in the routing group of a new query.
+     */
+    @Managed
+    @Nested
+    public TimeStat getBackendSelectionTime()
+    {
+        return backendSelectionTime;
+    }
+
+    /**
+     * Time until the cluster responded. Unless the response is streamed, this includes
+     * receiving the whole response.
+     */
+    @Managed
+    @Nested
+    public TimeStat getBackendResponseTime()
+    {
+        return backendResponseTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getResponseTransferTime()
+    {
+        return responseTransferTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getHistoryRecordingTime()
+    {
+        return historyRecordingTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getTotalTime()
+    {
+        return totalTime;
+    }
+
+    private DestinationStats getDestinationStats(RoutingDestination destination)
+    {
+        return destinationStats.computeIfAbsent(new Destination(nullToEmpty(destination.routingGroup()), nullToEmpty(destination.clusterHost())), key -> {
+            DestinationStats stats = new DestinationStats();
+            exporter.ifPresent(mbeanExporter -> {
+                try {
+                    mbeanExporter.exportWithGeneratedName(stats, DestinationStats.class, ImmutableMap.<String, String>builder()
+                            .put("name", "ProxyHandlerStats")
+                            .put("routingGroup", ObjectName.quote(key.routingGroup()))
+                            .put("backend", ObjectName.quote(key.clusterHost()))
+                            .build());
+                }
+                catch (RuntimeException e) {
+                    log.warn(e, "Failed to export statistics of backend %s", key.clusterHost());
+                }
+            });
+            return stats;
+        });
+    }
+
+    private record Destination(String routingGroup, String clusterHost) {}
+
+    public static class DestinationStats
+    {
+        private final TimeStat backendResponseTime = new TimeStat(MILLISECONDS);
+        private final TimeStat totalTime = new TimeStat(MILLISECONDS);
+
+        @Managed
+        @Nested
+        public TimeStat getBackendResponseTime()
+        {
+            return backendResponseTime;
+        }
+
+        @Managed
+        @Nested
+        public TimeStat getTotalTime()
+        {
+            return totalTime;
+        }
+    }
 }
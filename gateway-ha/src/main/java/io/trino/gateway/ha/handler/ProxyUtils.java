@@ -13,6 +13,9 @@
  */
 package io.trino.gateway.ha.handler;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.google.common.collect.ImmutableSet;
 import io.airlift.http.client.HeaderName;
 import io.airlift.log.Logger;
@@ -21,11 +24,11 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.HttpMethod;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.URI;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,8 +36,6 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_QUERY_PROPERTIES;
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_UI_PATH;
 import static io.trino.gateway.ha.handler.HttpUtils.V1_QUERY_PATH;
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.Locale.ENGLISH;
 
 public final class ProxyUtils
 {
@@ -57,6 +58,7 @@ public final class ProxyUtils
     private static final Pattern QUERY_ID_PARAM_PATTERN = Pattern.compile(".*(?:%2F|(?i)query_?id(?-i)=|^)(\\d+_\\d+_\\d+_\\w+).*");
     private static final Set<String> QUERY_STATE_PATH = ImmutableSet.of("queued", "scheduled", "executing");
     private static final String PARTIAL_CANCEL_PATH = "partialCancel";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
     private ProxyUtils() {}
 
@@ -71,14 +73,14 @@ public final class ProxyUtils
         if (!request.getMethod().equals(HttpMethod.POST)) {
             return extractQueryIdIfPresent(path, queryParams, statementPaths);
         }
-        String queryText;
+        BufferedRequestBody body;
         try {
-            queryText = new InputStreamReader(request.getInputStream(), UTF_8).readAllAsString();
+            body = BufferedRequestBody.fromRequest(request);
         }
         catch (IOException e) {
             throw new RuntimeException("Error reading request body", e);
         }
-        if (!isNullOrEmpty(queryText) && queryText.toLowerCase(ENGLISH).contains("kill_query")) {
+        if (body.containsIgnoreCase("kill_query")) {
             TrinoQueryProperties trinoQueryProperties = (TrinoQueryProperties) request.getAttribute(TRINO_QUERY_PROPERTIES);
             return trinoQueryProperties.getQueryId();
         }
@@ -127,4 +129,52 @@ public final class ProxyUtils
     {
         return URI.create(backendHost + request.getRequestURI() + (request.getQueryString() != null ? "?" + request.getQueryString() : ""));
     }
+
+    /**
+     * Replaces the {@code partialCancelUri} and {@code nextUri} of a statement response with the result
+     * of the rewriter, keeping the rest of the document as is. Trino writes both before the query data,
+     * so the document is not read past {@code nextUri}. Returns empty if nothing was rewritten.
+     */
+    public static Optional<String> rewriteStatementUris(String body, Function<String, Optional<String>> rewriter)
+    {
+        StringBuilder rewritten = null;
+        int copiedUpTo = 0;
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Optional.empty();
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken value = parser.nextToken();
+                boolean isNextUri = fieldName.equals("nextUri");
+                if ((isNextUri || fieldName.equals("partialCancelUri")) && value == JsonToken.VALUE_STRING) {
+                    String uri = parser.getText();
+                    // the offset is that of the opening quote, the value is only rewritten if it contains no escapes
+                    int start = (int) parser.currentTokenLocation().getCharOffset() + 1;
+                    Optional<String> replacement = body.startsWith(uri + "\"", start) ? rewriter.apply(uri) : Optional.empty();
+                    if (replacement.isPresent()) {
+                        if (rewritten == null) {
+                            rewritten = new StringBuilder(body.length() + 256);
+                        }
+                        rewritten.append(body, copiedUpTo, start).append(replacement.get());
+                        copiedUpTo = start + uri.length();
+                    }
+                    if (isNextUri) {
+                        break;
+                    }
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        catch (IOException | IllegalArgumentException e) {
+            // a truncated or invalid response is passed through unchanged
+            return Optional.empty();
+        }
+        if (rewritten == null) {
+            return Optional.empty();
+        }
+        return Optional.of(rewritten.append(body, copiedUpTo, body.length()).toString());
+    }
 }
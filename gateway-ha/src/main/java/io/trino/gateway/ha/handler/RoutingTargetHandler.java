@@ -15,9 +15,12 @@ package io.trino.gateway.ha.handler;
 
 import com.google.inject.Inject;
 import io.airlift.log.Logger;
+import io.airlift.stats.TimeStat;
 import io.trino.gateway.ha.config.GatewayCookieConfigurationPropertiesProvider;
 import io.trino.gateway.ha.config.HaGatewayConfiguration;
 import io.trino.gateway.ha.config.ProxyBackendConfiguration;
+import io.trino.gateway.ha.handler.BackendTokenCodec.BackendToken;
+import io.trino.gateway.ha.handler.BackendTokenCodec.TokenizedPath;
 import io.trino.gateway.ha.handler.schema.RoutingDestination;
 import io.trino.gateway.ha.handler.schema.RoutingTargetResponse;
 import io.trino.gateway.ha.router.GatewayCookie;
@@ -51,12 +54,23 @@ public class RoutingTargetHandler
     private final boolean requestAnalyserClientsUseV2Format;
     private final int requestAnalyserMaxBodySize;
     private final boolean cookiesEnabled;
+    private final Optional<BackendTokenCodec> backendTokenCodec;
+    private final ProxyHandlerStats stats;
 
-    @Inject
     public RoutingTargetHandler(
             RoutingManager routingManager,
             RoutingGroupSelector routingGroupSelector,
             HaGatewayConfiguration haGatewayConfiguration)
+    {
+        this(routingManager, routingGroupSelector, haGatewayConfiguration, new ProxyHandlerStats());
+    }
+
+    @Inject
+    public RoutingTargetHandler(
+            RoutingManager routingManager,
+            RoutingGroupSelector routingGroupSelector,
+            HaGatewayConfiguration haGatewayConfiguration,
+            ProxyHandlerStats stats)
     {
         this.routingManager = requireNonNull(routingManager);
         this.routingGroupSelector = requireNonNull(routingGroupSelector);
@@ -65,22 +79,60 @@ public class RoutingTargetHandler
         requestAnalyserClientsUseV2Format = haGatewayConfiguration.getRequestAnalyzerConfig().isClientsUseV2Format();
         requestAnalyserMaxBodySize = haGatewayConfiguration.getRequestAnalyzerConfig().getMaxBodySize();
         cookiesEnabled = GatewayCookieConfigurationPropertiesProvider.getInstance().isEnabled();
+        backendTokenCodec = BackendTokenCodec.fromConfiguration(haGatewayConfiguration.getRouting());
+        this.stats = requireNonNull(stats, "stats is null");
     }
 
     public RoutingTargetResponse resolveRouting(HttpServletRequest request)
     {
-        Optional<String> queryId = extractQueryIdIfPresent(request, statementPaths, requestAnalyserClientsUseV2Format, requestAnalyserMaxBodySize);
-        Optional<String> previousCluster = getPreviousCluster(queryId, request);
-
-        RoutingTargetResponse routingTargetResponse = previousCluster.map(cluster -> {
-            String routingGroup = queryId.map(routingManager::findRoutingGroupForQueryId)
-                    .orElse(defaultRoutingGroup);
-            String externalUrl = queryId.map(routingManager::findExternalUrlForQueryId)
-                    .orElse(cluster);
-            return new RoutingTargetResponse(
-                    new RoutingDestination(routingGroup, cluster, buildUriWithNewCluster(cluster, request), externalUrl),
-                    request);
-        }).orElseGet(() -> getRoutingTargetResponse(request));
+        try (TimeStat.BlockTimer _ = stats.getRoutingTime().time()) {
+            return resolveRoutingTarget(request);
+        }
+    }
+
+    private RoutingTargetResponse resolveRoutingTarget(HttpServletRequest request)
+    {
+        Optional<TokenizedPath> tokenizedPath = backendTokenCodec.flatMap(codec -> codec.parse(request.getRequestURI()));
+        if (tokenizedPath.isEmpty()) {
+            return resolveRoutingByQuery(request);
+        }
+        // The token is not part of the Trino URI and must never reach the backend
+        HttpServletRequest strippedRequest = new PathModifyingRequestWrapper(request, tokenizedPath.get().path());
+        return tokenizedPath.get().backendToken()
+                .map(backendToken -> resolveRoutingByToken(backendToken, strippedRequest))
+                .orElseGet(() -> resolveRoutingByQuery(strippedRequest));
+    }
+
+    private RoutingTargetResponse resolveRoutingByToken(BackendToken backendToken, HttpServletRequest request)
+    {
+        String cluster = backendToken.clusterHost();
+        RoutingTargetResponse routingTargetResponse = new RoutingTargetResponse(
+                new RoutingDestination(
+                        Optional.ofNullable(backendToken.routingGroup()).orElse(defaultRoutingGroup),
+                        cluster,
+                        buildUriWithNewCluster(cluster, request),
+                        Optional.ofNullable(backendToken.externalUrl()).orElse(cluster)),
+                request);
+        logRewrite(cluster, request);
+        return routingTargetResponse;
+    }
+
+    private RoutingTargetResponse resolveRoutingByQuery(HttpServletRequest request)
+    {
+        Optional<RoutingTargetResponse> previousRoutingTarget;
+        try (TimeStat.BlockTimer _ = stats.getQueryLookupTime().time()) {
+            Optional<String> queryId = extractQueryIdIfPresent(request, statementPaths, requestAnalyserClientsUseV2Format, requestAnalyserMaxBodySize);
+            previousRoutingTarget = getPreviousCluster(queryId, request).map(cluster -> {
+                String routingGroup = queryId.map(routingManager::findRoutingGroupForQueryId)
+                        .orElse(defaultRoutingGroup);
+                String externalUrl = queryId.map(routingManager::findExternalUrlForQueryId)
+                        .orElse(cluster);
+                return new RoutingTargetResponse(
+                        new RoutingDestination(routingGroup, cluster, buildUriWithNewCluster(cluster, request), externalUrl),
+                        request);
+            });
+        }
+        RoutingTargetResponse routingTargetResponse = previousRoutingTarget.orElseGet(() -> getRoutingTargetResponse(request));
 
         logRewrite(routingTargetResponse.routingDestination().clusterHost(), request);
         return routingTargetResponse;
@@ -88,14 +140,20 @@ public class RoutingTargetHandler
 
     private RoutingTargetResponse getRoutingTargetResponse(HttpServletRequest request)
     {
-        RoutingSelectorResponse routingDestination = routingGroupSelector.findRoutingDestination(request);
+        RoutingSelectorResponse routingDestination;
+        try (TimeStat.BlockTimer _ = stats.getRoutingRulesTime().time()) {
+            routingDestination = routingGroupSelector.findRoutingDestination(request);
+        }
         String user = request.getHeader(USER_HEADER);
 
         // This falls back on default routing group backend if there is no cluster found for the routing group.
         String routingGroup = !isNullOrEmpty(routingDestination.routingGroup())
                 ? routingDestination.routingGroup()
                 : defaultRoutingGroup;
-        ProxyBackendConfiguration backendConfiguration = routingManager.provideBackendConfiguration(routingGroup, user);
+        ProxyBackendConfiguration backendConfiguration;
+        try (TimeStat.BlockTimer _ = stats.getBackendSelectionTime().time()) {
+            backendConfiguration = routingManager.provideBackendConfiguration(routingGroup, user);
+        }
         String clusterHost = backendConfiguration.getProxyTo();
         String externalUrl = backendConfiguration.getExternalUrl();
         // Apply headers from RoutingDestination if there are any
@@ -150,6 +208,39 @@ public class RoutingTargetHandler
         }
     }
 
+    /**
+     * A wrapper for HttpServletRequest that replaces the request path.
+     */
+    private static class PathModifyingRequestWrapper
+            extends HttpServletRequestWrapper
+    {
+        private final String requestUri;
+
+        private PathModifyingRequestWrapper(HttpServletRequest request, String requestUri)
+        {
+            super(request);
+            this.requestUri = requestUri;
+        }
+
+        @Override
+        public String getRequestURI()
+        {
+            return requestUri;
+        }
+
+        @Override
+        public StringBuffer getRequestURL()
+        {
+            StringBuffer url = super.getRequestURL();
+            String originalUri = super.getRequestURI();
+            int start = url.lastIndexOf(originalUri);
+            if (start >= 0) {
+                url.replace(start, start + originalUri.length(), requestUri);
+            }
+            return url;
+        }
+    }
+
     private Optional<String> getPreviousCluster(Optional<String> queryId, HttpServletRequest request)
     {
         if (queryId.isPresent()) {
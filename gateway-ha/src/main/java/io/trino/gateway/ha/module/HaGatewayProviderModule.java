@@ -19,6 +19,7 @@ import com.google.inject.Scopes;
 import com.google.inject.Singleton;
 import com.google.inject.multibindings.Multibinder;
 import io.airlift.http.client.HttpClient;
+import io.airlift.log.Logger;
 import io.trino.gateway.ha.clustermonitor.ActiveClusterMonitor;
 import io.trino.gateway.ha.clustermonitor.ClusterStatsHttpMonitor;
 import io.trino.gateway.ha.clustermonitor.ClusterStatsInfoApiMonitor;
@@ -41,15 +42,20 @@ import io.trino.gateway.ha.config.OAuth2GatewayCookieConfigurationPropertiesProv
 import io.trino.gateway.ha.config.RoutingRulesConfiguration;
 import io.trino.gateway.ha.config.RulesExternalConfiguration;
 import io.trino.gateway.ha.persistence.JdbcConnectionManager;
+import io.trino.gateway.ha.persistence.PooledDataSource;
 import io.trino.gateway.ha.persistence.RecordAndAnnotatedConstructorMapper;
 import io.trino.gateway.ha.router.BackendStateManager;
+import io.trino.gateway.ha.router.ExternalRoutingStats;
 import io.trino.gateway.ha.router.ForRouter;
 import io.trino.gateway.ha.router.GatewayBackendManager;
 import io.trino.gateway.ha.router.HaGatewayManager;
 import io.trino.gateway.ha.router.HaQueryHistoryManager;
 import io.trino.gateway.ha.router.PathFilter;
+import io.trino.gateway.ha.router.QueryAnalysisCache;
 import io.trino.gateway.ha.router.QueryHistoryManager;
 import io.trino.gateway.ha.router.RoutingGroupSelector;
+import io.trino.gateway.ha.router.RoutingRuleStats;
+import io.trino.gateway.ha.router.TrinoRequestUser.TrinoRequestUserProvider;
 import io.trino.gateway.ha.security.AuthorizationManager;
 import io.trino.gateway.ha.security.LbAuthorizer;
 import io.trino.gateway.ha.security.LbFormAuthManager;
@@ -68,10 +74,13 @@ import static io.airlift.jaxrs.JaxrsBinder.jaxrsBinder;
 import static io.trino.gateway.ha.config.ClusterStatsMonitorType.INFO_API;
 import static io.trino.gateway.ha.config.ClusterStatsMonitorType.NOOP;
 import static java.util.Objects.requireNonNull;
+import static org.weakref.jmx.guice.ExportBinder.newExporter;
 
 public class HaGatewayProviderModule
         extends AbstractModule
 {
+    private static final Logger log = Logger.get(HaGatewayProviderModule.class);
+
     private final HaGatewayConfiguration configuration;
 
     @Override
@@ -80,10 +89,19 @@ public class HaGatewayProviderModule
         jaxrsBinder(binder()).bind(ResourceSecurityDynamicFeature.class);
         binder().bind(GatewayBackendManager.class).to(HaGatewayManager.class).in(Scopes.SINGLETON);
         binder().bind(QueryHistoryManager.class).to(HaQueryHistoryManager.class).in(Scopes.SINGLETON);
+        newExporter(binder()).export(QueryHistoryManager.class).withGeneratedName();
         binder().bind(BackendStateManager.class).in(Scopes.SINGLETON);
+        binder().bind(RoutingRuleStats.class).in(Scopes.SINGLETON);
+        newExporter(binder()).export(RoutingRuleStats.class).withGeneratedName();
+        binder().bind(ExternalRoutingStats.class).in(Scopes.SINGLETON);
+        newExporter(binder()).export(ExternalRoutingStats.class).withGeneratedName();
+        newExporter(binder()).export(PooledDataSource.class).withGeneratedName();
         binder().bind(JdbcConnectionManager.class).in(Scopes.SINGLETON);
+        newExporter(binder()).export(JdbcConnectionManager.class).withGeneratedName();
         binder().bind(AuthorizationManager.class).in(Scopes.SINGLETON);
         binder().bind(PathFilter.class).in(Scopes.SINGLETON);
+        newExporter(binder()).export(TrinoRequestUserProvider.class).withGeneratedName();
+        newExporter(binder()).export(QueryAnalysisCache.class).withGeneratedName();
 
         Multibinder<TrinoClusterStatsObserver> observers = newSetBinder(binder(), TrinoClusterStatsObserver.class);
         observers.addBinding().to(HealthCheckObserver.class).in(Scopes.SINGLETON);
@@ -111,14 +129,40 @@ public class HaGatewayProviderModule
 
     @Singleton
     @Provides
-    public static Jdbi createJdbi(DataStoreConfiguration config)
+    public static PooledDataSource createDataSource(DataStoreConfiguration config)
     {
-        Jdbi jdbi = Jdbi.create(config.getJdbcUrl(), config.getUser(), config.getPassword());
+        return new PooledDataSource(config.getJdbcUrl(), config.getUser(), config.getPassword(), config.getConnectionPool());
+    }
+
+    @Singleton
+    @Provides
+    public static Jdbi createJdbi(PooledDataSource dataSource)
+    {
+        Jdbi jdbi = Jdbi.create(dataSource);
         jdbi.installPlugin(new SqlObjectPlugin());
         jdbi.registerRowMapper(new RecordAndAnnotatedConstructorMapper());
         return jdbi;
     }
 
+    public static Jdbi createJdbi(DataStoreConfiguration config)
+    {
+        return createJdbi(createDataSource(config));
+    }
+
+    @Provides
+    @Singleton
+    public static TrinoRequestUserProvider getTrinoRequestUserProvider(HaGatewayConfiguration configuration)
+    {
+        return new TrinoRequestUserProvider(configuration.getRequestAnalyzerConfig());
+    }
+
+    @Provides
+    @Singleton
+    public static QueryAnalysisCache getQueryAnalysisCache(HaGatewayConfiguration configuration)
+    {
+        return new QueryAnalysisCache(configuration.getRequestAnalyzerConfig());
+    }
+
     @Provides
     @Singleton
     public static Authorizer getAuthorizer(HaGatewayConfiguration configuration)
@@ -151,23 +195,28 @@ public class HaGatewayProviderModule
 
     @Provides
     @Singleton
-    public static RoutingGroupSelector getRoutingGroupSelector(@ForRouter HttpClient httpClient, HaGatewayConfiguration configuration)
+    public static RoutingGroupSelector getRoutingGroupSelector(
+            @ForRouter HttpClient httpClient,
+            HaGatewayConfiguration configuration,
+            RoutingRuleStats routingRuleStats,
+            ExternalRoutingStats externalRoutingStats)
     {
         RoutingRulesConfiguration routingRulesConfig = configuration.getRoutingRules();
         if (routingRulesConfig.isRulesEngineEnabled()) {
             try {
                 return switch (routingRulesConfig.getRulesType()) {
                     case FILE -> RoutingGroupSelector.byRoutingRulesEngine(
-                            routingRulesConfig.getRulesConfigPath(),
-                            routingRulesConfig.getRulesRefreshPeriod(),
-                            configuration.getRequestAnalyzerConfig());
+                            routingRulesConfig,
+                            configuration.getRequestAnalyzerConfig(),
+                            routingRuleStats);
                     case EXTERNAL -> {
                         RulesExternalConfiguration rulesExternalConfiguration = routingRulesConfig.getRulesExternalConfiguration();
-                        yield RoutingGroupSelector.byRoutingExternal(httpClient, rulesExternalConfiguration, configuration.getRequestAnalyzerConfig());
+                        yield RoutingGroupSelector.byRoutingExternal(httpClient, rulesExternalConfiguration, configuration.getRequestAnalyzerConfig(), externalRoutingStats);
                     }
                 };
             }
             catch (Exception e) {
+                log.error(e, "Failed to set up the routing rules engine, routing by the %s header instead", RoutingGroupSelector.ROUTING_GROUP_HEADER);
                 return RoutingGroupSelector.byRoutingGroupHeader();
             }
         }
@@ -14,17 +14,26 @@
 package io.trino.gateway.ha.persistence;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import io.airlift.log.Logger;
 import io.trino.gateway.ha.config.DataStoreConfiguration;
-import io.trino.gateway.ha.persistence.dao.QueryHistoryDao;
 import jakarta.annotation.Nullable;
+import jakarta.annotation.PreDestroy;
 import org.jdbi.v3.core.Jdbi;
 import org.jdbi.v3.sqlobject.SqlObjectPlugin;
+import org.weakref.jmx.MBeanExporter;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.management.ObjectName;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -37,14 +46,29 @@ public class JdbcConnectionManager
 
     private final Jdbi jdbi;
     private final DataStoreConfiguration configuration;
+    private final Optional<MBeanExporter> exporter;
+    private final QueryHistoryCleaner queryHistoryCleaner;
+    private final Map<String, RoutingGroupDatabase> routingGroupDatabases = new ConcurrentHashMap<>();
     private final ScheduledExecutorService executorService =
             Executors.newSingleThreadScheduledExecutor();
 
     @Inject
+    public JdbcConnectionManager(Jdbi jdbi, DataStoreConfiguration configuration, MBeanExporter exporter)
+    {
+        this(jdbi, configuration, Optional.of(requireNonNull(exporter, "exporter is null")));
+    }
+
     public JdbcConnectionManager(Jdbi jdbi, DataStoreConfiguration configuration)
+    {
+        this(jdbi, configuration, Optional.empty());
+    }
+
+    private JdbcConnectionManager(Jdbi jdbi, DataStoreConfiguration configuration, Optional<MBeanExporter> exporter)
     {
         this.jdbi = requireNonNull(jdbi, "jdbi is null");
         this.configuration = configuration;
+        this.exporter = exporter;
+        this.queryHistoryCleaner = new QueryHistoryCleaner(jdbi, configuration);
         startCleanUps();
     }
 
@@ -59,9 +83,61 @@ public class JdbcConnectionManager
             return jdbi;
         }
 
-        return Jdbi.create(buildJdbcUrl(routingGroupDatabase), configuration.getUser(), configuration.getPassword())
+        return routingGroupDatabases.computeIfAbsent(routingGroupDatabase, this::createRoutingGroupDatabase).jdbi();
+    }
+
+    @Managed
+    @Nested
+    public QueryHistoryCleaner getQueryHistoryCleaner()
+    {
+        return queryHistoryCleaner;
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        executorService.shutdownNow();
+        routingGroupDatabases.forEach((database, routingGroupDatabase) -> {
+            exporter.ifPresent(mbeanExporter -> {
+                try {
+                    mbeanExporter.unexportWithGeneratedName(PooledDataSource.class, databaseProperties(database));
+                }
+                catch (RuntimeException e) {
+                    log.debug(e, "Failed to unexport connection pool statistics of database %s", database);
+                }
+            });
+            routingGroupDatabase.dataSource().close();
+        });
+        routingGroupDatabases.clear();
+    }
+
+    private RoutingGroupDatabase createRoutingGroupDatabase(String routingGroupDatabase)
+    {
+        PooledDataSource dataSource = new PooledDataSource(
+                buildJdbcUrl(routingGroupDatabase),
+                configuration.getUser(),
+                configuration.getPassword(),
+                configuration.getConnectionPool());
+        exporter.ifPresent(mbeanExporter -> {
+            try {
+                mbeanExporter.exportWithGeneratedName(dataSource, PooledDataSource.class, databaseProperties(routingGroupDatabase));
+            }
+            catch (RuntimeException e) {
+                log.warn(e, "Failed to export connection pool statistics of database %s", routingGroupDatabase);
+            }
+        });
+        Jdbi routingGroupJdbi = Jdbi.create(dataSource)
                 .installPlugin(new SqlObjectPlugin())
                 .registerRowMapper(new RecordAndAnnotatedConstructorMapper());
+        return new RoutingGroupDatabase(dataSource, routingGroupJdbi);
+    }
+
+    private static Map<String, String> databaseProperties(String routingGroupDatabase)
+    {
+        return ImmutableMap.<String, String>builder()
+                .put("name", "PooledDataSource")
+                .put("database", ObjectName.quote(routingGroupDatabase))
+                .build();
     }
 
     @VisibleForTesting
@@ -104,14 +180,13 @@ public class JdbcConnectionManager
 
     private void startCleanUps()
     {
+        long intervalMillis = configuration.getQueryHistoryCleanup().getInterval().toMillis();
         executorService.scheduleWithFixedDelay(
-                () -> {
-                    log.info("Performing query history cleanup task");
-                    long created = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(this.configuration.getQueryHistoryHoursRetention());
-                    jdbi.onDemand(QueryHistoryDao.class).deleteOldHistory(created);
-                },
-                1,
-                120,
-                TimeUnit.MINUTES);
+                queryHistoryCleaner::run,
+                TimeUnit.MINUTES.toMillis(1),
+                intervalMillis,
+                TimeUnit.MILLISECONDS);
     }
+
+    private record RoutingGroupDatabase(PooledDataSource dataSource, Jdbi jdbi) {}
 }
@@ -0,0 +1,410 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.persistence;
+
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import io.trino.gateway.ha.config.ConnectionPoolConfiguration;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.sql.DataSource;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.toIntExact;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A bounded pool of connections to the gateway database, shared by all DAOs. Connections idle for
+ * a moment are validated before they are handed out, and connections are closed once they are idle
+ * for longer than the idle timeout, beyond the minimum size, or older than the maximum lifetime.
+ */
+public final class PooledDataSource
+        implements DataSource, Closeable
+{
+    private static final Logger log = Logger.get(PooledDataSource.class);
+
+    // Connections returned this recently are handed out again without a round trip to validate them
+    private static final Duration VALIDATION_BYPASS_WINDOW = Duration.ofMillis(500);
+    private static final Duration EVICTION_INTERVAL = Duration.ofSeconds(30);
+
+    private final GenericObjectPool<Connection> pool;
+    private final int maxSize;
+    private final Duration connectionTimeout;
+    private final TimeStat acquisitionTime = new TimeStat(MILLISECONDS);
+    private final CounterStat acquisitionTimeouts = new CounterStat();
+    private final CounterStat validationFailures = new CounterStat();
+
+    public PooledDataSource(String jdbcUrl, String user, String password, ConnectionPoolConfiguration config)
+    {
+        requireNonNull(jdbcUrl, "jdbcUrl is null");
+        checkArgument(config.getMinSize() >= 0, "connectionPool.minSize is negative");
+        checkArgument(config.getMaxSize() > 0, "connectionPool.maxSize must be positive");
+        checkArgument(config.getMinSize() <= config.getMaxSize(), "connectionPool.minSize is greater than connectionPool.maxSize");
+        maxSize = config.getMaxSize();
+        connectionTimeout = config.getConnectionTimeout().toJavaTime();
+
+        GenericObjectPoolConfig<Connection> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(config.getMaxSize());
+        poolConfig.setMaxIdle(config.getMaxSize());
+        poolConfig.setMinIdle(config.getMinSize());
+        poolConfig.setBlockWhenExhausted(true);
+        poolConfig.setMaxWait(connectionTimeout);
+        poolConfig.setTestOnBorrow(true);
+        poolConfig.setTestWhileIdle(true);
+        poolConfig.setTimeBetweenEvictionRuns(EVICTION_INTERVAL);
+        // Idle connections are only closed down to the minimum size, a non-positive duration disables the hard limit
+        poolConfig.setSoftMinEvictableIdleDuration(config.getIdleTimeout().toJavaTime());
+        poolConfig.setMinEvictableIdleDuration(Duration.ZERO);
+        poolConfig.setNumTestsPerEvictionRun(config.getMaxSize());
+        // The statistics are exported with the gateway's own MBeans
+        poolConfig.setJmxEnabled(false);
+        pool = new GenericObjectPool<>(
+                new ConnectionFactory(jdbcUrl, user, password, config.getMaxLifetime().toJavaTime(), config.getValidationTimeout().toJavaTime()),
+                poolConfig);
+    }
+
+    @Override
+    public Connection getConnection()
+            throws SQLException
+    {
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = pool.borrowObject();
+        }
+        catch (NoSuchElementException e) {
+            acquisitionTimeouts.update(1);
+            throw new SQLTransientConnectionException("No database connection available after waiting " + connectionTimeout.toMillis() + "ms", e);
+        }
+        catch (SQLException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new SQLException("Failed to obtain a database connection", e);
+        }
+        finally {
+            acquisitionTime.add(System.nanoTime() - start, NANOSECONDS);
+        }
+        return (Connection) Proxy.newProxyInstance(
+                PooledDataSource.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                new PooledConnectionHandler(connection));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password)
+            throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Connections of the pool use the configured user");
+    }
+
+    @Override
+    public PrintWriter getLogWriter()
+    {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out)
+            throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setLogWriter");
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds)
+            throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setLoginTimeout");
+    }
+
+    @Override
+    public int getLoginTimeout()
+    {
+        return 0;
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger()
+            throws SQLFeatureNotSupportedException
+    {
+        throw new SQLFeatureNotSupportedException("getParentLogger");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> type)
+            throws SQLException
+    {
+        if (type.isInstance(this)) {
+            return type.cast(this);
+        }
+        throw new SQLException("Not a wrapper of " + type.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> type)
+    {
+        return type.isInstance(this);
+    }
+
+    @PreDestroy
+    @Override
+    public void close()
+    {
+        // Connections in use are closed when they are returned
+        pool.close();
+    }
+
+    @Managed
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    @Managed
+    public int getActiveConnections()
+    {
+        return pool.getNumActive();
+    }
+
+    @Managed
+    public int getIdleConnections()
+    {
+        return pool.getNumIdle();
+    }
+
+    @Managed
+    public int getWaitingThreads()
+    {
+        return pool.getNumWaiters();
+    }
+
+    @Managed
+    public long getCreatedConnections()
+    {
+        return pool.getCreatedCount();
+    }
+
+    @Managed
+    public long getClosedConnections()
+    {
+        return pool.getDestroyedCount();
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getAcquisitionTime()
+    {
+        return acquisitionTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getAcquisitionTimeouts()
+    {
+        return acquisitionTimeouts;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getValidationFailures()
+    {
+        return validationFailures;
+    }
+
+    private void release(Connection connection, boolean broken)
+    {
+        try {
+            if (broken) {
+                pool.invalidateObject(connection);
+            }
+            else {
+                pool.returnObject(connection);
+            }
+        }
+        catch (Exception e) {
+            log.warn(e, "Failed to release database connection");
+        }
+    }
+
+    private static boolean isConnectionError(SQLException e)
+    {
+        return e instanceof SQLNonTransientConnectionException
+                || e instanceof SQLRecoverableException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("08"));
+    }
+
+    private class ConnectionFactory
+            extends BasePooledObjectFactory<Connection>
+    {
+        private final String jdbcUrl;
+        private final String user;
+        private final String password;
+        private final Duration maxLifetime;
+        private final int validationTimeoutSeconds;
+
+        private ConnectionFactory(String jdbcUrl, String user, String password, Duration maxLifetime, Duration validationTimeout)
+        {
+            this.jdbcUrl = jdbcUrl;
+            this.user = user;
+            this.password = password;
+            this.maxLifetime = requireNonNull(maxLifetime, "maxLifetime is null");
+            this.validationTimeoutSeconds = toIntExact(Math.max(validationTimeout.toSeconds(), 1));
+        }
+
+        @Override
+        public Connection create()
+                throws SQLException
+        {
+            if (user == null) {
+                return DriverManager.getConnection(jdbcUrl);
+            }
+            return DriverManager.getConnection(jdbcUrl, user, password);
+        }
+
+        @Override
+        public PooledObject<Connection> wrap(Connection connection)
+        {
+            return new DefaultPooledObject<>(connection);
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<Connection> pooledConnection)
+        {
+            Instant now = Instant.now();
+            if (pooledConnection.getCreateInstant().plus(maxLifetime).isBefore(now)) {
+                return false;
+            }
+            if (pooledConnection.getLastReturnInstant().plus(VALIDATION_BYPASS_WINDOW).isAfter(now)) {
+                return true;
+            }
+            try {
+                if (pooledConnection.getObject().isValid(validationTimeoutSeconds)) {
+                    return true;
+                }
+            }
+            catch (SQLException e) {
+                log.debug(e, "Failed to validate database connection");
+            }
+            validationFailures.update(1);
+            return false;
+        }
+
+        @Override
+        public void passivateObject(PooledObject<Connection> pooledConnection)
+                throws SQLException
+        {
+            // Do not leak an open transaction to the next user of the connection
+            Connection connection = pooledConnection.getObject();
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+        }
+
+        @Override
+        public void destroyObject(PooledObject<Connection> pooledConnection)
+                throws SQLException
+        {
+            pooledConnection.getObject().close();
+        }
+    }
+
+    /**
+     * Returns the connection to the pool when it is closed, or discards it after a connection error.
+     */
+    private class PooledConnectionHandler
+            implements InvocationHandler
+    {
+        private final Connection connection;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean broken;
+
+        private PooledConnectionHandler(Connection connection)
+        {
+            this.connection = requireNonNull(connection, "connection is null");
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable
+        {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (closed.compareAndSet(false, true)) {
+                        release(connection, broken);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    if (closed.get()) {
+                        return true;
+                    }
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled " + connection;
+                }
+                default -> {
+                    if (closed.get()) {
+                        throw new SQLException("Connection is closed");
+                    }
+                }
+            }
+            try {
+                return method.invoke(connection, args);
+            }
+            catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException sqlException && isConnectionError(sqlException)) {
+                    broken = true;
+                }
+                throw e.getCause();
+            }
+        }
+    }
+}
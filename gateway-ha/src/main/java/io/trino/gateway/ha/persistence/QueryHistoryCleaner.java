@@ -0,0 +1,208 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.persistence;
+
+import com.google.common.collect.Iterables;
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import io.trino.gateway.ha.config.DataStoreConfiguration;
+import io.trino.gateway.ha.config.QueryHistoryCleanupConfiguration;
+import io.trino.gateway.ha.persistence.dao.QueryDistributionDao;
+import io.trino.gateway.ha.persistence.dao.QueryHistoryDao;
+import io.trino.gateway.ha.persistence.dao.QueryTextDao;
+import org.jdbi.v3.core.Jdbi;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.trino.gateway.ha.persistence.QueryTextStore.UNREFERENCED_TEXT_GRACE_PERIOD;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Deletes the query history past its retention. The oldest queries are deleted in batches of
+ * at most {@code batchSize} rows, pausing between batches, so that a large backlog does not turn
+ * into a single long running statement that locks the table while queries are recorded.
+ * Stored query texts that no remaining record refers to are deleted afterwards, in batches of the
+ * same size.
+ */
+public class QueryHistoryCleaner
+{
+    private static final Logger log = Logger.get(QueryHistoryCleaner.class);
+    // Oracle limits the number of elements of an IN list to 1000
+    private static final int MAX_TEXTS_PER_STATEMENT = 500;
+
+    private final QueryHistoryDao historyDao;
+    private final QueryDistributionDao distributionDao;
+    private final QueryTextDao textDao;
+    private final DataStoreConfiguration configuration;
+
+    private final CounterStat deletedRows = new CounterStat();
+    private final CounterStat deletedTexts = new CounterStat();
+    private final CounterStat failures = new CounterStat();
+    private final TimeStat batchTime = new TimeStat(MILLISECONDS);
+    private final TimeStat runTime = new TimeStat(MILLISECONDS);
+    private final AtomicLong lastRunDeletedRows = new AtomicLong();
+    private final AtomicLong lastRunBatches = new AtomicLong();
+
+    public QueryHistoryCleaner(Jdbi jdbi, DataStoreConfiguration configuration)
+    {
+        requireNonNull(jdbi, "jdbi is null");
+        this.historyDao = jdbi.onDemand(QueryHistoryDao.class);
+        this.distributionDao = jdbi.onDemand(QueryDistributionDao.class);
+        this.textDao = jdbi.onDemand(QueryTextDao.class);
+        this.configuration = requireNonNull(configuration, "configuration is null");
+    }
+
+    public void run()
+    {
+        long created = System.currentTimeMillis() - HOURS.toMillis(configuration.getQueryHistoryHoursRetention());
+        log.info("Performing query history cleanup task");
+        try (TimeStat.BlockTimer _ = runTime.time()) {
+            deleteHistoryBefore(created);
+            distributionDao.deleteOldDistribution(MILLISECONDS.toMinutes(created));
+            // Texts stored or reused recently are kept, their history records may not be written yet
+            deleteUnreferencedTextsBefore(Math.min(created, System.currentTimeMillis() - UNREFERENCED_TEXT_GRACE_PERIOD.toMillis()));
+        }
+        catch (RuntimeException e) {
+            failures.update(1);
+            log.error(e, "Failed to clean up query history");
+        }
+    }
+
+    public void deleteHistoryBefore(long created)
+    {
+        QueryHistoryCleanupConfiguration cleanup = configuration.getQueryHistoryCleanup();
+        checkArgument(cleanup.getBatchSize() > 0, "queryHistoryCleanup.batchSize must be positive");
+        boolean isLimitUnsupported = configuration.getJdbcUrl().startsWith("jdbc:oracle");
+        long batchDelayMillis = cleanup.getBatchDelay().toMillis();
+
+        lastRunDeletedRows.set(0);
+        lastRunBatches.set(0);
+        while (true) {
+            int deleted;
+            try (TimeStat.BlockTimer _ = batchTime.time()) {
+                // Rows sharing the creation time of the boundary are deleted in the same batch
+                Optional<Long> boundary = historyDao.findDeletionBoundary(created, cleanup.getBatchSize(), isLimitUnsupported);
+                if (boundary.isEmpty()) {
+                    break;
+                }
+                deleted = historyDao.deleteHistoryUpTo(boundary.get());
+            }
+            deletedRows.update(deleted);
+            lastRunDeletedRows.addAndGet(deleted);
+            lastRunBatches.incrementAndGet();
+            if (deleted < cleanup.getBatchSize()) {
+                break;
+            }
+            if (batchDelayMillis > 0) {
+                try {
+                    Thread.sleep(batchDelayMillis);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        log.info("Deleted %s query history records in %s batches", lastRunDeletedRows.get(), lastRunBatches.get());
+    }
+
+    public void deleteUnreferencedTextsBefore(long created)
+    {
+        QueryHistoryCleanupConfiguration cleanup = configuration.getQueryHistoryCleanup();
+        checkArgument(cleanup.getBatchSize() > 0, "queryHistoryCleanup.batchSize must be positive");
+        boolean isLimitUnsupported = configuration.getJdbcUrl().startsWith("jdbc:oracle");
+        long batchDelayMillis = cleanup.getBatchDelay().toMillis();
+
+        long deletedCount = 0;
+        while (true) {
+            List<String> textHashes;
+            try (TimeStat.BlockTimer _ = batchTime.time()) {
+                textHashes = textDao.findUnreferencedTexts(created, cleanup.getBatchSize(), isLimitUnsupported);
+                for (List<String> partition : Iterables.partition(textHashes, MAX_TEXTS_PER_STATEMENT)) {
+                    int deleted = textDao.deleteUnreferencedTexts(partition, created);
+                    deletedTexts.update(deleted);
+                    deletedCount += deleted;
+                }
+            }
+            if (textHashes.size() < cleanup.getBatchSize()) {
+                break;
+            }
+            if (batchDelayMillis > 0) {
+                try {
+                    Thread.sleep(batchDelayMillis);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        log.info("Deleted %s unreferenced query texts", deletedCount);
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getDeletedRows()
+    {
+        return deletedRows;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getDeletedTexts()
+    {
+        return deletedTexts;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFailures()
+    {
+        return failures;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getBatchTime()
+    {
+        return batchTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getRunTime()
+    {
+        return runTime;
+    }
+
+    @Managed
+    public long getLastRunDeletedRows()
+    {
+        return lastRunDeletedRows.get();
+    }
+
+    @Managed
+    public long getLastRunBatches()
+    {
+        return lastRunBatches.get();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.persistence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import io.airlift.compress.v3.zstd.ZstdCompressor;
+import io.airlift.compress.v3.zstd.ZstdDecompressor;
+import io.trino.gateway.ha.persistence.dao.CompressedQueryText;
+import io.trino.gateway.ha.persistence.dao.QueryTextDao;
+import io.trino.gateway.ha.persistence.dao.QueryTextPreview;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.hash.Hashing.sha256;
+import static java.lang.Math.toIntExact;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Stores each distinct query text once, compressed with zstd, and addressed by the SHA-256 hash
+ * of the text. The history records only refer to the hash, so that a text submitted many times,
+ * such as the queries of a dashboard, takes the space of a single compressed copy.
+ * <p>
+ * The creation time of a text is refreshed whenever it is reused, at most once per
+ * {@code STORED_HASHES_EXPIRATION}, so a text that is about to be referred to is never older
+ * than that, and is kept by the cleanup for {@link #UNREFERENCED_TEXT_GRACE_PERIOD}.
+ */
+public class QueryTextStore
+{
+    public static final int PREVIEW_LENGTH = 200;
+    // Longer than a hash stays cached, and than a record waits in the history writer queue
+    public static final Duration UNREFERENCED_TEXT_GRACE_PERIOD = Duration.ofHours(1);
+
+    // Oracle limits the number of elements of an IN list to 1000
+    private static final int MAX_HASHES_PER_STATEMENT = 500;
+    private static final int STORED_HASHES_CACHE_SIZE = 10_000;
+    private static final Duration STORED_HASHES_EXPIRATION = Duration.ofMinutes(10);
+
+    private final QueryTextDao dao;
+    // Hashes of the texts stored or refreshed recently, that are not looked up again until they expire
+    private final Cache<String, Boolean> storedHashes = Caffeine.newBuilder()
+            .maximumSize(STORED_HASHES_CACHE_SIZE)
+            .expireAfterWrite(STORED_HASHES_EXPIRATION)
+            .build();
+
+    public QueryTextStore(QueryTextDao dao)
+    {
+        this.dao = requireNonNull(dao, "dao is null");
+    }
+
+    /**
+     * Stores the texts that are not stored yet, and returns the hash of each text in order.
+     */
+    public List<String> store(List<String> queryTexts)
+    {
+        List<String> hashes = queryTexts.stream()
+                .map(QueryTextStore::hash)
+                .toList();
+        Map<String, String> uncachedTexts = new LinkedHashMap<>();
+        for (int i = 0; i < queryTexts.size(); i++) {
+            if (storedHashes.getIfPresent(hashes.get(i)) == null) {
+                uncachedTexts.putIfAbsent(hashes.get(i), queryTexts.get(i));
+            }
+        }
+        if (uncachedTexts.isEmpty()) {
+            return hashes;
+        }
+
+        long created = System.currentTimeMillis();
+        Map<String, String> missingTexts = new LinkedHashMap<>(uncachedTexts);
+        missingTexts.keySet().removeAll(refresh(missingTexts.keySet(), created));
+        if (!missingTexts.isEmpty()) {
+            try {
+                insert(missingTexts, created);
+            }
+            catch (RuntimeException e) {
+                // Another gateway may have stored some of the texts in the meantime
+                missingTexts.keySet().removeAll(refresh(missingTexts.keySet(), created));
+                if (!missingTexts.isEmpty()) {
+                    insert(missingTexts, created);
+                }
+            }
+        }
+        // Cached hashes are not refreshed again, so they must expire rather than be put again
+        uncachedTexts.keySet().forEach(hash -> storedHashes.put(hash, true));
+        return hashes;
+    }
+
+    /**
+     * Returns the first {@value #PREVIEW_LENGTH} characters of the texts with the given hashes.
+     */
+    public Map<String, QueryTextPreview> loadPreviews(Collection<String> hashes)
+    {
+        ImmutableMap.Builder<String, QueryTextPreview> previews = ImmutableMap.builder();
+        for (List<String> partition : Iterables.partition(new HashSet<>(hashes), MAX_HASHES_PER_STATEMENT)) {
+            for (QueryTextPreview preview : dao.findPreviews(partition)) {
+                previews.put(preview.textHash(), preview);
+            }
+        }
+        return previews.buildOrThrow();
+    }
+
+    /**
+     * Returns the full texts with the given hashes.
+     */
+    public Map<String, String> loadTexts(Collection<String> hashes)
+    {
+        ImmutableMap.Builder<String, String> texts = ImmutableMap.builder();
+        for (List<String> partition : Iterables.partition(new HashSet<>(hashes), MAX_HASHES_PER_STATEMENT)) {
+            for (CompressedQueryText text : dao.findCompressedTexts(partition)) {
+                texts.put(text.textHash(), decompress(text.compressedText()));
+            }
+        }
+        return texts.buildOrThrow();
+    }
+
+    /**
+     * Sets the creation time of the stored texts to {@code created}, and returns their hashes.
+     * A text deleted by the cleanup before it is refreshed is not returned, and is stored again.
+     */
+    private Set<String> refresh(Collection<String> hashes, long created)
+    {
+        Set<String> stored = new HashSet<>();
+        for (List<String> partition : Iterables.partition(ImmutableList.copyOf(hashes), MAX_HASHES_PER_STATEMENT)) {
+            dao.refreshTexts(partition, created);
+            stored.addAll(dao.findStoredHashes(partition));
+        }
+        return stored;
+    }
+
+    private void insert(Map<String, String> texts, long created)
+    {
+        List<String> textValues = ImmutableList.copyOf(texts.values());
+        dao.insertTexts(
+                ImmutableList.copyOf(texts.keySet()),
+                textValues.stream().map(QueryTextStore::compress).toList(),
+                textValues.stream().map(QueryTextStore::preview).toList(),
+                textValues.stream().map(text -> (long) text.length()).toList(),
+                textValues.stream().map(_ -> created).toList());
+    }
+
+    static String hash(String queryText)
+    {
+        return sha256().hashString(queryText, UTF_8).toString();
+    }
+
+    static String preview(String queryText)
+    {
+        if (queryText.length() <= PREVIEW_LENGTH) {
+            return queryText;
+        }
+        int end = PREVIEW_LENGTH;
+        if (Character.isHighSurrogate(queryText.charAt(end - 1))) {
+            end--;
+        }
+        return queryText.substring(0, end);
+    }
+
+    static byte[] compress(String queryText)
+    {
+        byte[] bytes = queryText.getBytes(UTF_8);
+        ZstdCompressor compressor = ZstdCompressor.create();
+        byte[] compressed = new byte[compressor.maxCompressedLength(bytes.length)];
+        int compressedLength = compressor.compress(bytes, 0, bytes.length, compressed, 0, compressed.length);
+        return Arrays.copyOf(compressed, compressedLength);
+    }
+
+    static String decompress(byte[] compressed)
+    {
+        ZstdDecompressor decompressor = ZstdDecompressor.create();
+        byte[] bytes = new byte[toIntExact(decompressor.getDecompressedSize(compressed, 0, compressed.length))];
+        decompressor.decompress(compressed, 0, compressed.length, bytes, 0, bytes.length);
+        return new String(bytes, UTF_8);
+    }
+}
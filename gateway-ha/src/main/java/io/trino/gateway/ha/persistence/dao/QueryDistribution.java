@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.persistence.dao;
+
+import org.jdbi.v3.core.mapper.reflect.ColumnName;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Number of queries routed to a backend during a minute.
+ */
+public record QueryDistribution(
+        @ColumnName("created_minute") long createdMinute,
+        @ColumnName("backend_url") String backendUrl,
+        @ColumnName("query_count") long queryCount)
+{
+    public QueryDistribution
+    {
+        requireNonNull(backendUrl, "backendUrl is null");
+    }
+}
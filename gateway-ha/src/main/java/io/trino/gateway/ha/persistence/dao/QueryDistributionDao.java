@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.persistence.dao;
+
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transaction;
+
+import java.util.List;
+
+/**
+ * Per-minute counts of routed queries, by backend, routing group and user. There is one row per
+ * key, and each gateway instance adds the counts it collected since its previous flush to it.
+ * A missing routing group or user is stored as an empty string, so that it is part of the key.
+ */
+public interface QueryDistributionDao
+{
+    @SqlQuery(
+            """
+            SELECT created_minute, backend_url, SUM(query_count) AS query_count
+            FROM query_distribution
+            WHERE created_minute >= :createdMinute
+            GROUP BY created_minute, backend_url
+            """)
+    List<QueryDistribution> findDistribution(long createdMinute);
+
+    /**
+     * Adds the counts to the rows of their keys, creating the missing rows; all lists must have
+     * the same size and the keys must be distinct. The counts are added all or none, so that a
+     * failed flush can be retried without counting a query twice.
+     */
+    @Transaction
+    default void addDistributions(
+            String jdbcUrl,
+            List<Long> createdMinutes,
+            List<String> backendUrls,
+            List<String> routingGroups,
+            List<String> userNames,
+            List<Long> queryCounts)
+    {
+        if (jdbcUrl.startsWith("jdbc:oracle")) {
+            mergeDistributionsOracle(createdMinutes, backendUrls, routingGroups, userNames, queryCounts);
+        }
+        else if (jdbcUrl.startsWith("jdbc:postgresql")) {
+            upsertDistributionsPostgresql(createdMinutes, backendUrls, routingGroups, userNames, queryCounts);
+        }
+        else {
+            upsertDistributionsMySql(createdMinutes, backendUrls, routingGroups, userNames, queryCounts);
+        }
+    }
+
+    @SqlBatch(
+            """
+            INSERT INTO query_distribution (created_minute, backend_url, routing_group, user_name, query_count)
+            VALUES (:createdMinute, :backendUrl, :routingGroup, :userName, :queryCount)
+            ON DUPLICATE KEY UPDATE query_count = query_count + VALUES(query_count)
+            """)
+    void upsertDistributionsMySql(
+            @Bind("createdMinute") List<Long> createdMinutes,
+            @Bind("backendUrl") List<String> backendUrls,
+            @Bind("routingGroup") List<String> routingGroups,
+            @Bind("userName") List<String> userNames,
+            @Bind("queryCount") List<Long> queryCounts);
+
+    @SqlBatch(
+            """
+            INSERT INTO query_distribution (created_minute, backend_url, routing_group, user_name, query_count)
+            VALUES (:createdMinute, :backendUrl, :routingGroup, :userName, :queryCount)
+            ON CONFLICT (created_minute, backend_url, routing_group, user_name)
+            DO UPDATE SET query_count = query_distribution.query_count + EXCLUDED.query_count
+            """)
+    void upsertDistributionsPostgresql(
+            @Bind("createdMinute") List<Long> createdMinutes,
+            @Bind("backendUrl") List<String> backendUrls,
+            @Bind("routingGroup") List<String> routingGroups,
+            @Bind("userName") List<String> userNames,
+            @Bind("queryCount") List<Long> queryCounts);
+
+    /**
+     * Oracle stores the empty strings as NULL, so the keys are compared with DECODE, which treats
+     * two NULLs as equal. When two instances create the same row at once, one fails on the unique
+     * key, and its rows are retried one by one, which then update the existing row.
+     */
+    @SqlBatch(
+            """
+            MERGE INTO query_distribution d
+            USING (
+                SELECT :createdMinute AS created_minute, :backendUrl AS backend_url, :routingGroup AS routing_group,
+                    :userName AS user_name, :queryCount AS query_count
+                FROM dual) s
+            ON (d.created_minute = s.created_minute
+                AND d.backend_url = s.backend_url
+                AND DECODE(d.routing_group, s.routing_group, 1, 0) = 1
+                AND DECODE(d.user_name, s.user_name, 1, 0) = 1)
+            WHEN MATCHED THEN UPDATE SET d.query_count = d.query_count + s.query_count
+            WHEN NOT MATCHED THEN INSERT (created_minute, backend_url, routing_group, user_name, query_count)
+                VALUES (s.created_minute, s.backend_url, s.routing_group, s.user_name, s.query_count)
+            """)
+    void mergeDistributionsOracle(
+            @Bind("createdMinute") List<Long> createdMinutes,
+            @Bind("backendUrl") List<String> backendUrls,
+            @Bind("routingGroup") List<String> routingGroups,
+            @Bind("userName") List<String> userNames,
+            @Bind("queryCount") List<Long> queryCounts);
+
+    @SqlUpdate(
+            """
+            DELETE FROM query_distribution
+            WHERE created_minute < :createdMinute
+            """)
+    void deleteOldDistribution(long createdMinute);
+}
@@ -18,9 +18,14 @@ import org.jdbi.v3.core.mapper.reflect.ColumnName;
 
 import static java.util.Objects.requireNonNull;
 
+/**
+ * A query history record. The text of the queries recorded before the query texts were stored
+ * separately is in {@code queryText}, the text of the others is referenced by {@code queryTextHash}.
+ */
 public record QueryHistory(
         @ColumnName("query_id") String queryId,
-        @ColumnName("query_text") String queryText,
+        @ColumnName("query_text") @Nullable String queryText,
+        @ColumnName("query_text_hash") @Nullable String queryTextHash,
         @ColumnName("backend_url") String backendUrl,
         @ColumnName("user_name") @Nullable String userName,
         @ColumnName("source") @Nullable String source,
@@ -31,7 +36,6 @@ public record QueryHistory(
     public QueryHistory
     {
         requireNonNull(queryId, "queryId is null");
-        requireNonNull(queryText, "queryText is null");
         requireNonNull(backendUrl, "backendUrl is null");
     }
 }
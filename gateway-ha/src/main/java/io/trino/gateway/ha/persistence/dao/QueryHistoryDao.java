@@ -13,14 +13,17 @@
  */
 package io.trino.gateway.ha.persistence.dao;
 
-import org.jdbi.v3.core.mapper.MapMapper;
+import com.google.common.collect.ImmutableMap;
 import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindMap;
+import org.jdbi.v3.sqlobject.customizer.Define;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
-import org.jdbi.v3.sqlobject.statement.UseRowMapper;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 public interface QueryHistoryDao
 {
@@ -76,114 +79,158 @@ public interface QueryHistoryDao
 
     @SqlQuery(
             """
-            SELECT backend_url FROM query_history
+            SELECT backend_url, routing_group, external_url FROM query_history
             WHERE query_id = :queryId
+            AND backend_url IS NOT NULL
             """)
-    String findBackendUrlByQueryId(String queryId);
+    Optional<QueryRoute> findQueryRoute(String queryId);
 
     @SqlQuery(
             """
-            SELECT routing_group FROM query_history
-            WHERE query_id = :queryId
-            """)
-    String findRoutingGroupByQueryId(String queryId);
-
-    @SqlQuery(
-            """
-            SELECT external_url FROM query_history
+            SELECT * FROM query_history
             WHERE query_id = :queryId
             """)
-    String findExternalUrlByQueryId(String queryId);
+    Optional<QueryHistory> findQueryHistory(String queryId);
 
     @SqlQuery(
             """
             SELECT * FROM query_history
-            WHERE (:userName IS NULL OR user_name = :userName)
-            AND (:externalUrl IS NULL OR external_url = :externalUrl)
-            AND (:queryId IS NULL OR query_id = :queryId)
-            AND (:source IS NULL OR source = :source)
-            ORDER BY created DESC
+            <where>
+            ORDER BY created DESC, query_id DESC
             LIMIT :limit
             OFFSET :offset
             """)
     List<QueryHistory> pageQueryHistory(
-            @Bind("userName") String userName,
-            @Bind("externalUrl") String externalUrl,
-            @Bind("queryId") String queryId,
-            @Bind("source") String source,
+            @Define("where") String whereClause,
+            @BindMap Map<String, Object> parameters,
             @Bind("limit") int limit,
             @Bind("offset") int offset);
 
     @SqlQuery(
             """
             SELECT * FROM query_history
-            WHERE (:userName IS NULL OR user_name = :userName)
-            AND (:externalUrl IS NULL OR external_url = :externalUrl)
-            AND (:queryId IS NULL OR query_id = :queryId)
-            AND (:source IS NULL OR source = :source)
-            ORDER BY created DESC
+            <where>
+            ORDER BY created DESC, query_id DESC
             OFFSET :offset ROWS FETCH NEXT :limit ROWS ONLY
             """)
     List<QueryHistory> pageQueryHistoryWithFetch(
-            @Bind("userName") String userName,
-            @Bind("externalUrl") String externalUrl,
-            @Bind("queryId") String queryId,
-            @Bind("source") String source,
+            @Define("where") String whereClause,
+            @BindMap Map<String, Object> parameters,
             @Bind("limit") int limit,
             @Bind("offset") int offset);
 
     default List<QueryHistory> pageQueryHistory(
-            String userName,
-            String externalUrl,
-            String queryId,
-            String source,
+            QueryHistoryFilter filter,
             int limit,
             int offset,
             boolean isLimitUnsupported)
     {
         if (isLimitUnsupported) {
-            return pageQueryHistoryWithFetch(userName, externalUrl, queryId, source, limit, offset);
+            return pageQueryHistoryWithFetch(filter.whereClause(), filter.parameters(), limit, offset);
+        }
+        return pageQueryHistory(filter.whereClause(), filter.parameters(), limit, offset);
+    }
+
+    /**
+     * Returns the page of queries following the query created at {@code created} with the id
+     * {@code queryId}. Unlike an offset, the position in the index is found without reading the
+     * queries of the previous pages.
+     */
+    default List<QueryHistory> pageQueryHistoryAfter(
+            QueryHistoryFilter filter,
+            long created,
+            String queryId,
+            int limit,
+            boolean isLimitUnsupported)
+    {
+        // The redundant upper bound on created lets the database use a range scan of the index
+        String whereClause = filter.whereClause(List.of(
+                "created <= :afterCreated",
+                "(created < :afterCreated OR query_id < :afterQueryId)"));
+        Map<String, Object> parameters = ImmutableMap.<String, Object>builder()
+                .putAll(filter.parameters())
+                .put("afterCreated", created)
+                .put("afterQueryId", queryId)
+                .buildOrThrow();
+        if (isLimitUnsupported) {
+            return pageQueryHistoryWithFetch(whereClause, parameters, limit, 0);
         }
-        return pageQueryHistory(userName, externalUrl, queryId, source, limit, offset);
+        return pageQueryHistory(whereClause, parameters, limit, 0);
     }
 
     @SqlQuery(
             """
             SELECT count(1) FROM query_history
-            WHERE (:userName IS NULL OR user_name = :userName)
-            AND (:externalUrl IS NULL OR external_url = :externalUrl)
-            AND (:queryId IS NULL OR query_id = :queryId)
-            AND (:source IS NULL OR source = :source)
+            <where>
             """)
-    Long count(
-            @Bind("userName") String userName,
-            @Bind("externalUrl") String externalUrl,
-            @Bind("queryId") String queryId,
-            @Bind("source") String source);
+    long count(@Define("where") String whereClause, @BindMap Map<String, Object> parameters);
+
+    default long count(QueryHistoryFilter filter)
+    {
+        return count(filter.whereClause(), filter.parameters());
+    }
+
+    @SqlUpdate(
+            """
+            INSERT INTO query_history (query_id, query_text_hash, backend_url, user_name, source, created, routing_group, external_url)
+            VALUES (:queryId, :queryTextHash, :backendUrl, :userName, :source, :created, :routingGroup, :externalUrl)
+            """)
+    void insertHistory(String queryId, String queryTextHash, String backendUrl, String userName, String source, long created, String routingGroup, String externalUrl);
+
+    /**
+     * Inserts one row per element; all lists must have the same size.
+     */
+    @SqlBatch(
+            """
+            INSERT INTO query_history (query_id, query_text_hash, backend_url, user_name, source, created, routing_group, external_url)
+            VALUES (:queryId, :queryTextHash, :backendUrl, :userName, :source, :created, :routingGroup, :externalUrl)
+            """)
+    void insertHistories(
+            @Bind("queryId") List<String> queryIds,
+            @Bind("queryTextHash") List<String> queryTextHashes,
+            @Bind("backendUrl") List<String> backendUrls,
+            @Bind("userName") List<String> userNames,
+            @Bind("source") List<String> sources,
+            @Bind("created") List<Long> created,
+            @Bind("routingGroup") List<String> routingGroups,
+            @Bind("externalUrl") List<String> externalUrls);
 
     @SqlQuery(
             """
-            SELECT FLOOR(created / 1000 / 60) AS minute,
-                   backend_url AS backend_url,
-                   COUNT(1) AS query_count
-            FROM query_history
-            WHERE created > :created
-            GROUP BY FLOOR(created / 1000 / 60), backend_url
+            SELECT MAX(created) FROM (
+                SELECT created FROM query_history
+                WHERE created < :created
+                ORDER BY created
+                LIMIT :limit) oldest
             """)
-    @UseRowMapper(MapMapper.class)
-    List<Map<String, Object>> findDistribution(long created);
+    Long findDeletionBoundary(@Bind("created") long created, @Bind("limit") int limit);
 
-    @SqlUpdate(
+    @SqlQuery(
             """
-            INSERT INTO query_history (query_id, query_text, backend_url, user_name, source, created, routing_group, external_url)
-            VALUES (:queryId, :queryText, :backendUrl, :userName, :source, :created, :routingGroup, :externalUrl)
+            SELECT MAX(created) FROM (
+                SELECT created FROM query_history
+                WHERE created < :created
+                ORDER BY created
+                FETCH FIRST :limit ROWS ONLY) oldest
             """)
-    void insertHistory(String queryId, String queryText, String backendUrl, String userName, String source, long created, String routingGroup, String externalUrl);
+    Long findDeletionBoundaryWithFetch(@Bind("created") long created, @Bind("limit") int limit);
+
+    /**
+     * Returns the creation time up to which the {@code limit} oldest queries created before
+     * {@code created} were created, if there are any such queries.
+     */
+    default Optional<Long> findDeletionBoundary(long created, int limit, boolean isLimitUnsupported)
+    {
+        if (isLimitUnsupported) {
+            return Optional.ofNullable(findDeletionBoundaryWithFetch(created, limit));
+        }
+        return Optional.ofNullable(findDeletionBoundary(created, limit));
+    }
 
     @SqlUpdate(
             """
             DELETE FROM query_history
-            WHERE created < :created
+            WHERE created <= :created
             """)
-    void deleteOldHistory(long created);
+    int deleteHistoryUpTo(long created);
 }
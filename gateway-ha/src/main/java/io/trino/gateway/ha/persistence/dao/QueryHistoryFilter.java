@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.persistence.dao;
+
+import com.google.common.collect.ImmutableMap;
+import jakarta.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filters of the query history page. Only the predicates of the filters that are set are added
+ * to the statement, so that the database can use the index of the filtered column.
+ */
+public record QueryHistoryFilter(
+        @Nullable String userName,
+        @Nullable String externalUrl,
+        @Nullable String queryId,
+        @Nullable String source)
+{
+    String whereClause()
+    {
+        return whereClause(List.of());
+    }
+
+    String whereClause(List<String> additionalPredicates)
+    {
+        List<String> predicates = new ArrayList<>();
+        if (userName != null) {
+            predicates.add("user_name = :userName");
+        }
+        if (externalUrl != null) {
+            predicates.add("external_url = :externalUrl");
+        }
+        if (queryId != null) {
+            predicates.add("query_id = :queryId");
+        }
+        if (source != null) {
+            predicates.add("source = :source");
+        }
+        predicates.addAll(additionalPredicates);
+        if (predicates.isEmpty()) {
+            return "";
+        }
+        return "WHERE " + String.join(" AND ", predicates);
+    }
+
+    Map<String, Object> parameters()
+    {
+        ImmutableMap.Builder<String, Object> parameters = ImmutableMap.builder();
+        if (userName != null) {
+            parameters.put("userName", userName);
+        }
+        if (externalUrl != null) {
+            parameters.put("externalUrl", externalUrl);
+        }
+        if (queryId != null) {
+            parameters.put("queryId", queryId);
+        }
+        if (source != null) {
+            parameters.put("source", source);
+        }
+        return parameters.buildOrThrow();
+    }
+}
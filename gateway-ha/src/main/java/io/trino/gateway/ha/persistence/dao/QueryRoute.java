@@ -0,0 +1,33 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.persistence.dao;
+
+import jakarta.annotation.Nullable;
+import org.jdbi.v3.core.mapper.reflect.ColumnName;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Where the requests of a query must be sent, as recorded when the query was submitted.
+ */
+public record QueryRoute(
+        @ColumnName("backend_url") String backend,
+        @ColumnName("routing_group") @Nullable String routingGroup,
+        @ColumnName("external_url") @Nullable String externalUrl)
+{
+    public QueryRoute
+    {
+        requireNonNull(backend, "backend is null");
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.persistence.dao;
+
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindList;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Query texts of the query history, stored once per distinct text and compressed. History
+ * records refer to their text by its hash.
+ */
+public interface QueryTextDao
+{
+    @SqlQuery(
+            """
+            SELECT text_hash FROM query_text
+            WHERE text_hash IN (<textHashes>)
+            """)
+    List<String> findStoredHashes(@BindList("textHashes") Collection<String> textHashes);
+
+    @SqlQuery(
+            """
+            SELECT text_hash, text_preview, text_length FROM query_text
+            WHERE text_hash IN (<textHashes>)
+            """)
+    List<QueryTextPreview> findPreviews(@BindList("textHashes") Collection<String> textHashes);
+
+    @SqlQuery(
+            """
+            SELECT text_hash, compressed_text FROM query_text
+            WHERE text_hash IN (<textHashes>)
+            """)
+    List<CompressedQueryText> findCompressedTexts(@BindList("textHashes") Collection<String> textHashes);
+
+    /**
+     * Inserts one row per element; all lists must have the same size.
+     */
+    @SqlBatch(
+            """
+            INSERT INTO query_text (text_hash, compressed_text, text_preview, text_length, created)
+            VALUES (:textHash, :compressedText, :textPreview, :textLength, :created)
+            """)
+    void insertTexts(
+            @Bind("textHash") List<String> textHashes,
+            @Bind("compressedText") List<byte[]> compressedTexts,
+            @Bind("textPreview") List<String> textPreviews,
+            @Bind("textLength") List<Long> textLengths,
+            @Bind("created") List<Long> created);
+
+    @SqlUpdate(
+            """
+            UPDATE query_text SET created = :created
+            WHERE text_hash IN (<textHashes>)
+            """)
+    void refreshTexts(@BindList("textHashes") Collection<String> textHashes, @Bind("created") long created);
+
+    @SqlQuery(
+            """
+            SELECT text_hash FROM query_text
+            WHERE created < :created
+            AND NOT EXISTS (
+                SELECT 1 FROM query_history
+                WHERE query_history.query_text_hash = query_text.text_hash)
+            LIMIT :limit
+            """)
+    List<String> findUnreferencedTexts(@Bind("created") long created, @Bind("limit") int limit);
+
+    @SqlQuery(
+            """
+            SELECT text_hash FROM query_text
+            WHERE created < :created
+            AND NOT EXISTS (
+                SELECT 1 FROM query_history
+                WHERE query_history.query_text_hash = query_text.text_hash)
+            FETCH FIRST :limit ROWS ONLY
+            """)
+    List<String> findUnreferencedTextsWithFetch(@Bind("created") long created, @Bind("limit") int limit);
+
+    /**
+     * Returns the hashes of at most {@code limit} texts stored before {@code created} that no
+     * history record refers to.
+     */
+    default List<String> findUnreferencedTexts(long created, int limit, boolean isLimitUnsupported)
+    {
+        if (isLimitUnsupported) {
+            return findUnreferencedTextsWithFetch(created, limit);
+        }
+        return findUnreferencedTexts(created, limit);
+    }
+
+    /**
+     * Deletes the texts with the given hashes that are still older than {@code created} and
+     * unreferenced, as they may have been reused since they were found.
+     */
+    @SqlUpdate(
+            """
+            DELETE FROM query_text
+            WHERE text_hash IN (<textHashes>)
+            AND created < :created
+            AND NOT EXISTS (
+                SELECT 1 FROM query_history
+                WHERE query_history.query_text_hash = query_text.text_hash)
+            """)
+    int deleteUnreferencedTexts(@BindList("textHashes") Collection<String> textHashes, @Bind("created") long created);
+}
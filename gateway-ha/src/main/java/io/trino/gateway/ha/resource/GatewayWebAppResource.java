@@ -26,6 +26,7 @@ import io.trino.gateway.ha.domain.RoutingRule;
 import io.trino.gateway.ha.domain.TableData;
 import io.trino.gateway.ha.domain.request.QueryDistributionRequest;
 import io.trino.gateway.ha.domain.request.QueryHistoryRequest;
+import io.trino.gateway.ha.domain.request.QueryTextRequest;
 import io.trino.gateway.ha.domain.response.BackendResponse;
 import io.trino.gateway.ha.domain.response.DistributionResponse;
 import io.trino.gateway.ha.router.BackendStateManager;
@@ -52,6 +53,7 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
@@ -128,7 +130,8 @@ public class GatewayWebAppResource
                     securityContext.getUserPrincipal().getName(),
                     query.externalUrl(),
                     query.queryId(),
-                    query.source()));
+                    query.source(),
+                    query.cursor()));
         }
         else {
             queryHistory = queryHistoryManager.findQueryHistory(query);
@@ -136,6 +139,25 @@ public class GatewayWebAppResource
         return Response.ok(Result.ok(queryHistory)).build();
     }
 
+    @POST
+    @RolesAllowed("USER")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/getQueryText")
+    public Response getQueryText(QueryTextRequest query, @Context SecurityContext securityContext)
+    {
+        Optional<QueryHistoryManager.QueryDetail> queryDetail = queryHistoryManager.findQueryDetail(query.queryId());
+        if (!securityContext.isUserInRole("ADMIN")) {
+            String user = securityContext.getUserPrincipal().getName();
+            queryDetail = queryDetail.filter(detail -> user.equals(detail.getUser()));
+        }
+        if (queryDetail.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity(Result.fail(Response.Status.NOT_FOUND)).build();
+        }
+        return Response.ok(Result.ok(queryDetail.get().getQueryText())).build();
+    }
+
     @POST
     @RolesAllowed("USER")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -13,32 +13,42 @@
  */
 package io.trino.gateway.ha.router;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Function;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.airlift.http.client.HttpClient;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.StatusResponseHandler.StatusResponse;
 import io.airlift.log.Logger;
+import io.airlift.units.Duration;
 import io.trino.gateway.ha.clustermonitor.ClusterStats;
 import io.trino.gateway.ha.clustermonitor.TrinoStatus;
 import io.trino.gateway.ha.config.ProxyBackendConfiguration;
 import io.trino.gateway.ha.config.RoutingConfiguration;
+import io.trino.gateway.ha.persistence.dao.QueryRoute;
 import jakarta.annotation.Nullable;
-import jakarta.annotation.PreDestroy;
-import jakarta.ws.rs.HttpMethod;
+import org.weakref.jmx.Managed;
 
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.http.client.Request.Builder.prepareHead;
+import static io.airlift.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static io.trino.gateway.ha.handler.HttpUtils.V1_QUERY_PATH;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * This class performs health check, stats counts for each backend and provides a backend given
@@ -48,23 +58,36 @@ public abstract class BaseRoutingManager
         implements RoutingManager
 {
     private static final Logger log = Logger.get(BaseRoutingManager.class);
-    private final ExecutorService executorService = Executors.newFixedThreadPool(5);
     private final GatewayBackendManager gatewayBackendManager;
     private final ConcurrentHashMap<String, TrinoStatus> backendToStatus;
     private final String defaultRoutingGroup;
     private final QueryHistoryManager queryHistoryManager;
-    private final LoadingCache<String, String> queryIdBackendCache;
-    private final LoadingCache<String, String> queryIdRoutingGroupCache;
-    private final LoadingCache<String, String> queryIdExternalUrlCache;
+    private final LoadingCache<String, QueryRoute> queryRouteCache;
+    // Query ids that no backend knew about recently, to avoid probing all backends for every poll
+    private final Cache<String, Boolean> unknownQueryIds;
+    private final HttpClient httpClient;
+    private final Duration queryIdSearchTimeout;
 
-    public BaseRoutingManager(GatewayBackendManager gatewayBackendManager, QueryHistoryManager queryHistoryManager, RoutingConfiguration routingConfiguration)
+    public BaseRoutingManager(
+            GatewayBackendManager gatewayBackendManager,
+            QueryHistoryManager queryHistoryManager,
+            RoutingConfiguration routingConfiguration,
+            HttpClient httpClient)
     {
         this.gatewayBackendManager = gatewayBackendManager;
         this.defaultRoutingGroup = routingConfiguration.getDefaultRoutingGroup();
         this.queryHistoryManager = queryHistoryManager;
-        this.queryIdBackendCache = buildCache(this::findBackendForUnknownQueryId);
-        this.queryIdRoutingGroupCache = buildCache(this::findRoutingGroupForUnknownQueryId);
-        this.queryIdExternalUrlCache = buildCache(this::findExternalUrlForUnknownQueryId);
+        this.httpClient = requireNonNull(httpClient, "httpClient is null");
+        this.queryIdSearchTimeout = routingConfiguration.getQueryIdSearchTimeout();
+        this.unknownQueryIds = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(routingConfiguration.getUnknownQueryIdCacheTtl().toJavaTime())
+                .build();
+        this.queryRouteCache = Caffeine.newBuilder()
+                .maximumSize(routingConfiguration.getQueryRouteCacheMaximumSize())
+                .expireAfterAccess(routingConfiguration.getQueryRouteCacheExpireAfterAccess().toJavaTime())
+                .recordStats()
+                .build(this::loadQueryRoute);
         this.backendToStatus = new ConcurrentHashMap<>();
     }
 
@@ -74,15 +97,9 @@ public abstract class BaseRoutingManager
     protected abstract Optional<ProxyBackendConfiguration> selectBackend(List<ProxyBackendConfiguration> backends, String user);
 
     @Override
-    public void setBackendForQueryId(String queryId, String backend)
+    public void setQueryRoute(String queryId, QueryRoute queryRoute)
     {
-        queryIdBackendCache.put(queryId, backend);
-    }
-
-    @Override
-    public void setRoutingGroupForQueryId(String queryId, String routingGroup)
-    {
-        queryIdRoutingGroupCache.put(queryId, routingGroup);
+        queryRouteCache.put(queryId, queryRoute);
     }
 
     /**
@@ -111,34 +128,31 @@ public abstract class BaseRoutingManager
 
     /**
      * Performs cache look up, if a backend not found, it checks with all backends and tries to find
-     * out which backend has info about given query id.
+     * out which backend has info about given query id. If no backend knows the query, the first
+     * active backend of the default routing group is returned.
      */
     @Nullable
     @Override
     public String findBackendForQueryId(String queryId)
     {
-        String backendAddress = null;
         try {
-            backendAddress = queryIdBackendCache.get(queryId);
+            return findQueryRoute(queryId)
+                    .map(QueryRoute::backend)
+                    .orElseGet(this::provideFallbackBackend);
         }
         catch (RuntimeException e) {
             log.warn("Exception while loading queryId from cache %s", e.getLocalizedMessage());
+            return null;
         }
-        return backendAddress;
     }
 
     @Nullable
     @Override
     public String findExternalUrlForQueryId(String queryId)
     {
-        String externalUrl = null;
-        try {
-            externalUrl = queryIdExternalUrlCache.get(queryId);
-        }
-        catch (RuntimeException e) {
-            log.warn("Exception while loading queryId from cache %s", e.getLocalizedMessage());
-        }
-        return externalUrl;
+        return findQueryRoute(queryId)
+                .map(QueryRoute::externalUrl)
+                .orElse(null);
     }
 
     /**
@@ -149,14 +163,21 @@ public abstract class BaseRoutingManager
     @Override
     public String findRoutingGroupForQueryId(String queryId)
     {
-        String routingGroup = null;
+        return findQueryRoute(queryId)
+                .map(QueryRoute::routingGroup)
+                .orElse(null);
+    }
+
+    @Override
+    public Optional<QueryRoute> findQueryRoute(String queryId)
+    {
         try {
-            routingGroup = queryIdRoutingGroupCache.get(queryId);
+            return Optional.ofNullable(queryRouteCache.get(queryId));
         }
         catch (RuntimeException e) {
-            log.warn("Exception while loading queryId from routing group cache %s", e.getLocalizedMessage());
+            log.warn("Exception while loading queryId from cache %s", e.getLocalizedMessage());
+            return Optional.empty();
         }
-        return routingGroup;
     }
 
     @Override
@@ -187,63 +208,99 @@ public abstract class BaseRoutingManager
         }
     }
 
-    @Override
-    public void setExternalUrlForQueryId(String queryId, String externalUrl)
-    {
-        queryIdExternalUrlCache.put(queryId, externalUrl);
-    }
-
+    /**
+     * Loads the route of a query missing from the cache, from the query history or else by asking
+     * all backends. Returns null when the query is unknown, so that the fallback is not cached and
+     * the backends are probed again once the negative cache entry expires.
+     */
     @VisibleForTesting
-    String findBackendForUnknownQueryId(String queryId)
+    @Nullable
+    QueryRoute loadQueryRoute(String queryId)
     {
-        String backend;
-        backend = queryHistoryManager.getBackendForQueryId(queryId);
-        if (Strings.isNullOrEmpty(backend)) {
-            log.debug("Unable to find backend mapping for [%s]. Searching for suitable backend", queryId);
-            backend = searchAllBackendForQuery(queryId);
+        if (unknownQueryIds.getIfPresent(queryId) != null) {
+            log.debug("Query id [%s] was recently not found on any backend", queryId);
+            return null;
         }
-        return backend;
+        try {
+            Optional<QueryRoute> queryRoute = queryHistoryManager.getQueryRoute(queryId)
+                    .filter(route -> !Strings.isNullOrEmpty(route.backend()));
+            if (queryRoute.isPresent()) {
+                return queryRoute.get();
+            }
+        }
+        catch (RuntimeException e) {
+            log.warn(e, "Failed to look up query [%s] in the query history", queryId);
+        }
+        log.debug("Unable to find backend mapping for [%s]. Searching for suitable backend", queryId);
+        String backend = searchAllBackendForQuery(queryId);
+        return backend == null ? null : new QueryRoute(backend, null, null);
     }
 
     /**
-     * This tries to find out which backend may have info about given query id. If not found returns
-     * the first healthy backend.
+     * Asks all backends about the query id concurrently, and returns the first one that knows it.
+     * The search gives up after {@code queryIdSearchTimeout}, and the remaining requests are cancelled.
      */
+    @Nullable
     private String searchAllBackendForQuery(String queryId)
     {
         List<ProxyBackendConfiguration> backends = gatewayBackendManager.getAllBackends();
-
-        Map<String, Future<Integer>> responseCodes = new HashMap<>();
-        try {
-            for (ProxyBackendConfiguration backend : backends) {
-                String target = backend.getProxyTo() + "/v1/query/" + queryId;
-
-                Future<Integer> call =
-                        executorService.submit(
-                                () -> {
-                                    URL url = URI.create(target).toURL();
-                                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                                    conn.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(5));
-                                    conn.setReadTimeout((int) TimeUnit.SECONDS.toMillis(5));
-                                    conn.setRequestMethod(HttpMethod.HEAD);
-                                    return conn.getResponseCode();
-                                });
-                responseCodes.put(backend.getProxyTo(), call);
-            }
-            for (Map.Entry<String, Future<Integer>> entry : responseCodes.entrySet()) {
-                if (entry.getValue().isDone()) {
-                    int responseCode = entry.getValue().get();
-                    if (responseCode == 200) {
-                        log.info("Found query [%s] on backend [%s]", queryId, entry.getKey());
-                        setBackendForQueryId(queryId, entry.getKey());
-                        return entry.getKey();
+        SettableFuture<String> found = SettableFuture.create();
+        List<ListenableFuture<StatusResponse>> responses = new ArrayList<>(backends.size());
+        for (ProxyBackendConfiguration backend : backends) {
+            String proxyTo = backend.getProxyTo();
+            Request request = prepareHead()
+                    .setUri(URI.create(proxyTo + V1_QUERY_PATH + "/" + queryId))
+                    .build();
+            ListenableFuture<StatusResponse> response = httpClient.executeAsync(request, createStatusResponseHandler());
+            Futures.addCallback(response, new FutureCallback<>()
+            {
+                @Override
+                public void onSuccess(StatusResponse result)
+                {
+                    if (result.getStatusCode() == 200) {
+                        found.set(proxyTo);
                     }
                 }
-            }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    log.debug(t, "Failed to look up query [%s] on backend [%s]", queryId, proxyTo);
+                }
+            }, directExecutor());
+            responses.add(response);
+        }
+        // Callbacks registered earlier run first, so a 200 response always wins over this
+        Futures.whenAllComplete(responses).run(() -> found.set(null), directExecutor());
+
+        String backend = null;
+        try {
+            backend = found.get(queryIdSearchTimeout.toMillis(), MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            log.warn("Timed out after %s searching for query [%s] on %s backends", queryIdSearchTimeout, queryId, backends.size());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        catch (Exception e) {
+        catch (ExecutionException e) {
+            log.warn(e, "Failed to search for query [%s]", queryId);
+        }
+        finally {
+            responses.forEach(response -> response.cancel(true));
+        }
+
+        if (backend == null) {
             log.warn("Query id [%s] not found", queryId);
+            unknownQueryIds.put(queryId, true);
+            return null;
         }
+        log.info("Found query [%s] on backend [%s]", queryId, backend);
+        return backend;
+    }
+
+    private String provideFallbackBackend()
+    {
         // Fallback on first active backend if queryId mapping not found.
         return gatewayBackendManager.getActiveBackends(defaultRoutingGroup).stream()
                 .findFirst()
@@ -251,28 +308,40 @@ public abstract class BaseRoutingManager
                 .orElseThrow(() -> new IllegalStateException("No active backends available for default routing group: " + defaultRoutingGroup));
     }
 
-    /**
-     * Attempts to look up the routing group associated with the query id from query history table
-     */
-    private String findRoutingGroupForUnknownQueryId(String queryId)
+    @Managed
+    public long getQueryRouteCacheSize()
     {
-        return queryHistoryManager.getRoutingGroupForQueryId(queryId);
+        return queryRouteCache.estimatedSize();
     }
 
-    /**
-     * Attempts to look up the external url associated with the query id from query history table
-     */
-    private String findExternalUrlForUnknownQueryId(String queryId)
+    @Managed
+    public long getQueryRouteCacheHitCount()
     {
-        return queryHistoryManager.getExternalUrlForQueryId(queryId);
+        return queryRouteCache.stats().hitCount();
     }
 
-    private LoadingCache<String, String> buildCache(Function<String, String> loader)
+    @Managed
+    public long getQueryRouteCacheMissCount()
     {
-        return Caffeine.newBuilder()
-                .maximumSize(10000)
-                .expireAfterAccess(30, TimeUnit.MINUTES)
-                .build(loader::apply);
+        return queryRouteCache.stats().missCount();
+    }
+
+    @Managed
+    public double getQueryRouteCacheHitRate()
+    {
+        return queryRouteCache.stats().hitRate();
+    }
+
+    @Managed
+    public long getQueryRouteCacheEvictionCount()
+    {
+        return queryRouteCache.stats().evictionCount();
+    }
+
+    @Managed
+    public double getQueryRouteCacheAverageLoadMillis()
+    {
+        return queryRouteCache.stats().averageLoadPenalty() / 1_000_000.0;
     }
 
     private boolean isBackendHealthy(String backendId)
@@ -284,10 +353,4 @@ public abstract class BaseRoutingManager
         }
         return status == TrinoStatus.HEALTHY;
     }
-
-    @PreDestroy
-    public void shutdown()
-    {
-        executorService.shutdownNow();
-    }
 }
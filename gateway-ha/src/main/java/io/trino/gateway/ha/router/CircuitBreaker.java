@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.router;
+
+import com.google.common.base.Ticker;
+import io.airlift.units.Duration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Stops calling a failing dependency for a while once it failed a number of times in a row.
+ * After the open period a single probe call is let through: its success closes the breaker,
+ * its failure opens it again.
+ */
+final class CircuitBreaker
+{
+    enum State
+    {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Ticker ticker;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    /**
+     * @param failureThreshold number of consecutive failures that open the breaker, or 0 to never open it
+     */
+    CircuitBreaker(int failureThreshold, Duration openDuration, Ticker ticker)
+    {
+        checkArgument(failureThreshold >= 0, "failureThreshold is negative");
+        this.failureThreshold = failureThreshold;
+        this.openNanos = requireNonNull(openDuration, "openDuration is null").roundTo(NANOSECONDS);
+        this.ticker = requireNonNull(ticker, "ticker is null");
+    }
+
+    /**
+     * Returns whether a call may be made. Every permitted call must be followed by
+     * {@link #recordSuccess()} or {@link #recordFailure()}.
+     */
+    synchronized boolean tryAcquire()
+    {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> {
+                if (ticker.read() - openedAt < openNanos) {
+                    yield false;
+                }
+                state = State.HALF_OPEN;
+                yield true;
+            }
+            // the probe is still in flight
+            case HALF_OPEN -> false;
+        };
+    }
+
+    synchronized void recordSuccess()
+    {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Returns whether this failure opened the breaker.
+     */
+    synchronized boolean recordFailure()
+    {
+        consecutiveFailures++;
+        if (failureThreshold == 0 || state == State.OPEN) {
+            return false;
+        }
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = ticker.read();
+            return true;
+        }
+        return false;
+    }
+
+    synchronized State getState()
+    {
+        return state;
+    }
+}
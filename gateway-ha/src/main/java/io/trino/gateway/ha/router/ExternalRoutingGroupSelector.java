@@ -13,19 +13,27 @@
  */
 package io.trino.gateway.ha.router;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.HashCode;
 import io.airlift.http.client.HeaderName;
 import io.airlift.http.client.HttpClient;
+import io.airlift.http.client.HttpClient.HttpResponseFuture;
 import io.airlift.http.client.JsonBodyGenerator;
 import io.airlift.http.client.JsonResponseHandler;
 import io.airlift.http.client.Request;
 import io.airlift.json.JsonCodec;
 import io.airlift.log.Logger;
+import io.airlift.units.Duration;
 import io.trino.gateway.ha.config.RequestAnalyzerConfig;
 import io.trino.gateway.ha.config.RulesExternalConfiguration;
+import io.trino.gateway.ha.handler.BufferedRequestBody;
 import io.trino.gateway.ha.router.schema.ExternalRouterResponse;
 import io.trino.gateway.ha.router.schema.RoutingGroupExternalBody;
 import io.trino.gateway.ha.router.schema.RoutingSelectorResponse;
@@ -35,11 +43,17 @@ import jakarta.ws.rs.core.Response;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Throwables.throwIfInstanceOf;
 import static com.google.common.net.MediaType.JSON_UTF_8;
 import static io.airlift.http.client.HeaderNames.CONTENT_TYPE;
@@ -47,10 +61,13 @@ import static io.airlift.http.client.JsonBodyGenerator.jsonBodyGenerator;
 import static io.airlift.http.client.JsonResponseHandler.createJsonResponseHandler;
 import static io.airlift.http.client.Request.Builder.preparePost;
 import static io.airlift.json.JsonCodec.jsonCodec;
+import static io.trino.gateway.ha.handler.HttpUtils.REQUEST_BODY;
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_QUERY_PROPERTIES;
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_REQUEST_USER;
 import static java.util.Collections.list;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class ExternalRoutingGroupSelector
         implements RoutingGroupSelector
@@ -61,12 +78,29 @@ public class ExternalRoutingGroupSelector
     private final boolean propagateErrors;
     private final HttpClient httpClient;
     private final RequestAnalyzerConfig requestAnalyzerConfig;
+    private final ExternalRoutingStats stats;
+    private final Optional<Duration> requestTimeout;
+    private final List<String> cacheKeyHeaders;
+    private final Optional<Cache<CacheKey, RoutingSelectorResponse>> cache;
+    private final Optional<Semaphore> concurrencyLimit;
+    private final CircuitBreaker circuitBreaker;
     private static final JsonCodec<RoutingGroupExternalBody> ROUTING_GROUP_EXTERNAL_BODY_JSON_CODEC = jsonCodec(RoutingGroupExternalBody.class);
     private static final JsonResponseHandler<ExternalRouterResponse> ROUTING_GROUP_EXTERNAL_RESPONSE_JSON_RESPONSE_HANDLER =
             createJsonResponseHandler(jsonCodec(ExternalRouterResponse.class));
 
     @VisibleForTesting
     ExternalRoutingGroupSelector(HttpClient httpClient, RulesExternalConfiguration rulesExternalConfiguration, RequestAnalyzerConfig requestAnalyzerConfig)
+    {
+        this(httpClient, rulesExternalConfiguration, requestAnalyzerConfig, new ExternalRoutingStats(), Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    ExternalRoutingGroupSelector(
+            HttpClient httpClient,
+            RulesExternalConfiguration rulesExternalConfiguration,
+            RequestAnalyzerConfig requestAnalyzerConfig,
+            ExternalRoutingStats stats,
+            Ticker ticker)
     {
         this.httpClient = requireNonNull(httpClient, "httpClient is null");
         this.excludeHeaders = ImmutableSet.<String>builder()
@@ -85,11 +119,65 @@ public class ExternalRoutingGroupSelector
             throw new RuntimeException("Invalid URL provided, using "
                     + "routing group header as default.", e);
         }
+
+        this.stats = requireNonNull(stats, "stats is null");
+        this.requestTimeout = Optional.ofNullable(rulesExternalConfiguration.getRequestTimeout());
+        this.cacheKeyHeaders = ImmutableList.copyOf(rulesExternalConfiguration.getCacheKeyHeaders());
+        Duration cacheTtl = rulesExternalConfiguration.getCacheTtl();
+        if (cacheTtl.toMillis() > 0) {
+            this.cache = Optional.of(Caffeine.newBuilder()
+                    .expireAfterWrite(cacheTtl.toJavaTime())
+                    .maximumSize(rulesExternalConfiguration.getCacheMaxSize())
+                    .ticker(ticker::read)
+                    .build());
+        }
+        else {
+            this.cache = Optional.empty();
+        }
+        int maxConcurrentRequests = rulesExternalConfiguration.getMaxConcurrentRequests();
+        checkArgument(maxConcurrentRequests >= 0, "maxConcurrentRequests is negative");
+        this.concurrencyLimit = maxConcurrentRequests == 0 ? Optional.empty() : Optional.of(new Semaphore(maxConcurrentRequests));
+        this.circuitBreaker = new CircuitBreaker(
+                rulesExternalConfiguration.getCircuitBreakerFailureThreshold(),
+                rulesExternalConfiguration.getCircuitBreakerOpenDuration(),
+                ticker);
     }
 
     @Override
     public RoutingSelectorResponse findRoutingDestination(HttpServletRequest servletRequest)
     {
+        Optional<CacheKey> cacheKey = cache.map(_ -> createCacheKey(servletRequest));
+        if (cacheKey.isPresent()) {
+            RoutingSelectorResponse cachedResponse = cache.get().getIfPresent(cacheKey.get());
+            if (cachedResponse != null) {
+                stats.getCacheHits().update(1);
+                return cachedResponse;
+            }
+            stats.getCacheMisses().update(1);
+        }
+
+        // Queueing behind a slow service only adds its latency to more queries, so route by header instead
+        if (concurrencyLimit.isPresent() && !concurrencyLimit.get().tryAcquire()) {
+            stats.getRejectedRequests().update(1);
+            return new RoutingSelectorResponse(servletRequest.getHeader(ROUTING_GROUP_HEADER));
+        }
+        try {
+            if (!circuitBreaker.tryAcquire()) {
+                stats.getShortCircuitedRequests().update(1);
+                return new RoutingSelectorResponse(servletRequest.getHeader(ROUTING_GROUP_HEADER));
+            }
+            return callExternalService(servletRequest, cacheKey);
+        }
+        finally {
+            concurrencyLimit.ifPresent(Semaphore::release);
+        }
+    }
+
+    private RoutingSelectorResponse callExternalService(HttpServletRequest servletRequest, Optional<CacheKey> cacheKey)
+    {
+        ExternalRouterResponse response;
+        boolean succeeded = false;
+        long start = System.nanoTime();
         try {
             RoutingGroupExternalBody requestBody = createRequestBody(servletRequest);
             JsonBodyGenerator<RoutingGroupExternalBody> requestBodyGenerator = jsonBodyGenerator(ROUTING_GROUP_EXTERNAL_BODY_JSON_CODEC, requestBody);
@@ -101,43 +189,111 @@ public class ExternalRoutingGroupSelector
                     .build();
 
             // Execute the request and get the response
-            ExternalRouterResponse response = httpClient.execute(request, ROUTING_GROUP_EXTERNAL_RESPONSE_JSON_RESPONSE_HANDLER);
-
-            // Check the response and return the routing group
+            response = execute(request);
             if (response == null) {
                 throw new RuntimeException("Unexpected response: null");
             }
-            else if (response.errors() != null && !response.errors().isEmpty()) {
-                if (propagateErrors) {
-                    log.warn("Query validation failed with errors: %s", String.join(", ", response.errors()));
-                    throw new WebApplicationException(
-                            Response.status(Response.Status.BAD_REQUEST)
-                                    .entity(response.errors())
-                                    .build());
+            succeeded = true;
+        }
+        catch (Exception e) {
+            log.error(e, "Error occurred while retrieving routing group "
+                    + "from external routing rules processing at " + uri);
+            return new RoutingSelectorResponse(servletRequest.getHeader(ROUTING_GROUP_HEADER));
+        }
+        finally {
+            stats.getRequestTime().add(System.nanoTime() - start, NANOSECONDS);
+            // Settle the breaker on any outcome, including errors, so a failed probe never leaves it half open
+            if (succeeded) {
+                circuitBreaker.recordSuccess();
+            }
+            else {
+                stats.getRequestFailures().update(1);
+                if (circuitBreaker.recordFailure()) {
+                    stats.getCircuitBreakerOpened().update(1);
+                    log.warn("External routing service at %s is failing, routing by the %s header until it recovers", uri, ROUTING_GROUP_HEADER);
                 }
             }
+        }
 
-            // Filter out excluded headers and null values
-            Map<String, String> filteredHeaders = new HashMap<>();
-            if (response.externalHeaders() != null) {
-                response.externalHeaders().forEach((key, value) -> {
-                    if (!excludeHeaders.contains(key) && value != null) {
-                        filteredHeaders.put(key, value);
-                    }
-                });
-                // Log the headers that will be applied
-                if (!filteredHeaders.isEmpty()) {
-                    log.info("External routing service modified headers to: %s", filteredHeaders);
+        // Check the response and return the routing group
+        boolean hasErrors = response.errors() != null && !response.errors().isEmpty();
+        if (hasErrors && propagateErrors) {
+            log.warn("Query validation failed with errors: %s", String.join(", ", response.errors()));
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity(response.errors())
+                            .build());
+        }
+
+        // Filter out excluded headers and null values
+        Map<String, String> filteredHeaders = new HashMap<>();
+        if (response.externalHeaders() != null) {
+            response.externalHeaders().forEach((key, value) -> {
+                if (!excludeHeaders.contains(key) && value != null) {
+                    filteredHeaders.put(key, value);
                 }
+            });
+            // Log the headers that will be applied
+            if (!filteredHeaders.isEmpty()) {
+                log.info("External routing service modified headers to: %s", filteredHeaders);
             }
-            return new RoutingSelectorResponse(response.routingGroup(), filteredHeaders);
         }
-        catch (Exception e) {
-            throwIfInstanceOf(e, WebApplicationException.class);
-            log.error(e, "Error occurred while retrieving routing group "
-                    + "from external routing rules processing at " + uri);
+        RoutingSelectorResponse routingSelectorResponse = new RoutingSelectorResponse(response.routingGroup(), filteredHeaders);
+        // Validation errors are reported again for each submission rather than remembered
+        if (!hasErrors) {
+            cacheKey.ifPresent(key -> cache.get().put(key, routingSelectorResponse));
+        }
+        return routingSelectorResponse;
+    }
+
+    private ExternalRouterResponse execute(Request request)
+            throws Exception
+    {
+        if (requestTimeout.isEmpty()) {
+            return httpClient.execute(request, ROUTING_GROUP_EXTERNAL_RESPONSE_JSON_RESPONSE_HANDLER);
+        }
+        HttpResponseFuture<ExternalRouterResponse> future = httpClient.executeAsync(request, ROUTING_GROUP_EXTERNAL_RESPONSE_JSON_RESPONSE_HANDLER);
+        try {
+            return future.get(requestTimeout.get().toMillis(), MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        }
+        catch (ExecutionException e) {
+            throwIfInstanceOf(e.getCause(), Exception.class);
+            throw e;
+        }
+    }
+
+    private CacheKey createCacheKey(HttpServletRequest request)
+    {
+        Optional<String> user = Optional.empty();
+        Optional<HashCode> queryHash = Optional.empty();
+        if (requestAnalyzerConfig.isAnalyzeRequest()) {
+            TrinoRequestUser trinoRequestUser = (TrinoRequestUser) request.getAttribute(TRINO_REQUEST_USER);
+            if (trinoRequestUser != null) {
+                user = trinoRequestUser.getUser();
+            }
+            // Hash the captured bytes, reading the query properties would force the query to be analyzed
+            if (request.getAttribute(REQUEST_BODY) instanceof BufferedRequestBody body && !body.isEmpty()) {
+                queryHash = Optional.of(body.hash());
+            }
         }
-        return new RoutingSelectorResponse(servletRequest.getHeader(ROUTING_GROUP_HEADER));
+
+        ImmutableList.Builder<List<String>> headerValues = ImmutableList.builderWithExpectedSize(cacheKeyHeaders.size());
+        for (String name : cacheKeyHeaders) {
+            Enumeration<String> values = request.getHeaders(name);
+            headerValues.add(values == null ? ImmutableList.of() : ImmutableList.copyOf(values.asIterator()));
+        }
+
+        return new CacheKey(
+                Optional.ofNullable(request.getMethod()),
+                Optional.ofNullable(request.getRequestURI()),
+                Optional.ofNullable(request.getRemoteUser()),
+                user,
+                headerValues.build(),
+                queryHash);
     }
 
     private RoutingGroupExternalBody createRequestBody(HttpServletRequest request)
@@ -175,4 +331,24 @@ public class ExternalRoutingGroupSelector
         }
         return headers;
     }
+
+    // The request fields and headers that the routing decision is assumed to depend on
+    private record CacheKey(
+            Optional<String> method,
+            Optional<String> requestUri,
+            Optional<String> remoteUser,
+            Optional<String> user,
+            List<List<String>> headerValues,
+            Optional<HashCode> queryHash)
+    {
+        private CacheKey
+        {
+            requireNonNull(method, "method is null");
+            requireNonNull(requestUri, "requestUri is null");
+            requireNonNull(remoteUser, "remoteUser is null");
+            requireNonNull(user, "user is null");
+            headerValues = ImmutableList.copyOf(headerValues);
+            requireNonNull(queryHash, "queryHash is null");
+        }
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.router;
+
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Statistics of the calls to the external routing service.
+ */
+public class ExternalRoutingStats
+{
+    private final TimeStat requestTime = new TimeStat(MILLISECONDS);
+    private final CounterStat requestFailures = new CounterStat();
+    private final CounterStat cacheHits = new CounterStat();
+    private final CounterStat cacheMisses = new CounterStat();
+    private final CounterStat rejectedRequests = new CounterStat();
+    private final CounterStat shortCircuitedRequests = new CounterStat();
+    private final CounterStat circuitBreakerOpened = new CounterStat();
+
+    @Managed
+    @Nested
+    public TimeStat getRequestTime()
+    {
+        return requestTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getRequestFailures()
+    {
+        return requestFailures;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getCacheHits()
+    {
+        return cacheHits;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getCacheMisses()
+    {
+        return cacheMisses;
+    }
+
+    /**
+     * Requests routed by header because too many calls were already in flight.
+     */
+    @Managed
+    @Nested
+    public CounterStat getRejectedRequests()
+    {
+        return rejectedRequests;
+    }
+
+    /**
+     * Requests routed by header because the circuit breaker was open.
+     */
+    @Managed
+    @Nested
+    public CounterStat getShortCircuitedRequests()
+    {
+        return shortCircuitedRequests;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getCircuitBreakerOpened()
+    {
+        return circuitBreakerOpened;
+    }
+}
@@ -16,26 +16,51 @@ package io.trino.gateway.ha.router;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLParser;
-import com.google.common.base.Supplier;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import io.airlift.log.Logger;
 import io.airlift.units.Duration;
 import io.trino.gateway.ha.config.RequestAnalyzerConfig;
+import io.trino.gateway.ha.router.RoutingRuleStats.RuleStats;
 import io.trino.gateway.ha.router.schema.RoutingSelectorResponse;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 
-import static com.google.common.base.Suppliers.memoizeWithExpiration;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_QUERY_PROPERTIES;
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_REQUEST_USER;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class FileBasedRoutingGroupSelector
         implements RoutingGroupSelector
@@ -45,45 +70,223 @@ public class FileBasedRoutingGroupSelector
 
     private static final ObjectMapper yamlReader = new ObjectMapper(new YAMLFactory());
 
-    private final Supplier<List<RoutingRule>> rules;
+    private final Path rulesPath;
     private final boolean analyzeRequest;
+    private final boolean indexRules;
+    private final RoutingRuleStats routingRuleStats;
+    private final AtomicReference<RuleSet> ruleSet = new AtomicReference<>();
+    private final ScheduledExecutorService reloadExecutor = newSingleThreadScheduledExecutor(daemonThreadsNamed("routing-rules-reload-%s"));
+    private final ExecutorService watcherExecutor = newSingleThreadExecutor(daemonThreadsNamed("routing-rules-watcher-%s"));
+    private final Optional<WatchService> watchService;
+
+    // Guarded by this, only used to decide whether the file needs to be read and compiled again
+    private FileState lastFileState;
 
     public FileBasedRoutingGroupSelector(String rulesPath, Duration rulesRefreshPeriod, RequestAnalyzerConfig requestAnalyzerConfig)
     {
+        this(rulesPath, rulesRefreshPeriod, requestAnalyzerConfig, true, new RoutingRuleStats());
+    }
+
+    public FileBasedRoutingGroupSelector(
+            String rulesPath,
+            Duration rulesRefreshPeriod,
+            RequestAnalyzerConfig requestAnalyzerConfig,
+            boolean indexRules,
+            RoutingRuleStats routingRuleStats)
+    {
+        this.rulesPath = Path.of(requireNonNull(rulesPath, "rulesPath is null")).toAbsolutePath();
         analyzeRequest = requestAnalyzerConfig.isAnalyzeRequest();
+        this.indexRules = indexRules;
+        this.routingRuleStats = requireNonNull(routingRuleStats, "routingRuleStats is null");
 
-        rules = memoizeWithExpiration(() -> readRulesFromPath(Path.of(rulesPath)), rulesRefreshPeriod.toJavaTime());
+        // Start without rules if the file cannot be loaded, and keep watching it so that a fixed file is picked up
+        ruleSet.set(loadRuleSet(ImmutableList.of(), hash(""), 0));
+        synchronized (this) {
+            try {
+                FileState fileState = FileState.of(this.rulesPath);
+                String content = readRulesContent(this.rulesPath);
+                lastFileState = fileState;
+                publish(content);
+            }
+            catch (RuntimeException e) {
+                routingRuleStats.getReloadFailures().update(1);
+                log.error(e, "Failed to load routing rules from %s, no rules are applied until the file is fixed", this.rulesPath);
+            }
+        }
+
+        // The file is checked when its directory changes and periodically, since not every file system reports changes.
+        // Either way the rules are only compiled again when the content changed, and never on the request path.
+        watchService = startWatching(this.rulesPath.getParent());
+        long refreshMillis = Math.max(rulesRefreshPeriod.toMillis(), 1);
+        reloadExecutor.scheduleWithFixedDelay(this::reloadIfChanged, refreshMillis, refreshMillis, MILLISECONDS);
     }
 
     @Override
     public RoutingSelectorResponse findRoutingDestination(HttpServletRequest request)
     {
-        Map<String, String> result = new HashMap<>();
-        Map<String, Object> state = new HashMap<>();
-
-        Map<String, Object> data;
-        if (analyzeRequest) {
-            TrinoQueryProperties trinoQueryProperties = (TrinoQueryProperties) request.getAttribute(TRINO_QUERY_PROPERTIES);
-            TrinoRequestUser trinoRequestUser = (TrinoRequestUser) request.getAttribute(TRINO_REQUEST_USER);
-            data = ImmutableMap.of("request", request, TRINO_QUERY_PROPERTIES, trinoQueryProperties, TRINO_REQUEST_USER, trinoRequestUser);
+        RuleSet currentRuleSet = ruleSet.get();
+        // Only bind the analyzed request when some rule may read it, so header-only rules never trigger the analysis
+        TrinoQueryProperties trinoQueryProperties = null;
+        TrinoRequestUser trinoRequestUser = null;
+        ImmutableMap.Builder<String, Object> dataBuilder = ImmutableMap.builder();
+        dataBuilder.put("request", request);
+        if (analyzeRequest && currentRuleSet.readsQueryProperties()) {
+            trinoQueryProperties = (TrinoQueryProperties) request.getAttribute(TRINO_QUERY_PROPERTIES);
+            dataBuilder.put(TRINO_QUERY_PROPERTIES, trinoQueryProperties);
         }
-        else {
-            data = ImmutableMap.of("request", request);
+        if (analyzeRequest && currentRuleSet.readsRequestUser()) {
+            trinoRequestUser = (TrinoRequestUser) request.getAttribute(TRINO_REQUEST_USER);
+            dataBuilder.put(TRINO_REQUEST_USER, trinoRequestUser);
         }
+        RoutingRuleVariables variables = new RoutingRuleVariables(dataBuilder.buildOrThrow());
 
-        rules.get().forEach(rule -> {
-            if (rule.evaluateCondition(data, state)) {
+        List<RoutingRule> rules = currentRuleSet.index().rules();
+        RoutingRuleIndex.Candidates candidates = currentRuleSet.index().findCandidates(request, trinoQueryProperties, trinoRequestUser);
+        BitSet candidateRules = candidates.rules();
+        for (int position = candidateRules.nextSetBit(0); position >= 0; position = candidateRules.nextSetBit(position + 1)) {
+            RoutingRule rule = rules.get(position);
+            RuleStats stats = currentRuleSet.ruleStats().get(position);
+            long start = System.nanoTime();
+            if (candidates.known().get(position) || rule.evaluateCondition(variables)) {
                 log.debug("%s evaluated to true on request: %s", rule, request);
-                rule.evaluateAction(result, data, state);
+                rule.evaluateAction(variables);
+                stats.getMatches().update(1);
+            }
+            stats.getEvaluationTime().add(System.nanoTime() - start, NANOSECONDS);
+        }
+        return new RoutingSelectorResponse(variables.result().get(RESULTS_ROUTING_GROUP_KEY));
+    }
+
+    /**
+     * Replaces the rules with the given rules file content, without waiting for the file to be read again.
+     * The current rules are kept if the content is not valid.
+     */
+    public synchronized void updateRules(String content)
+    {
+        publish(content);
+    }
+
+    /**
+     * Reloads the rules if the rules file changed since it was last read. The current rules are kept if
+     * the file cannot be read or the rules are not valid.
+     */
+    @VisibleForTesting
+    synchronized void reloadIfChanged()
+    {
+        try {
+            FileState fileState = FileState.of(rulesPath);
+            if (fileState.equals(lastFileState)) {
+                return;
+            }
+            String content = readRulesContent(rulesPath);
+            // Not retried until the file changes again, which also avoids logging the same error over and over
+            lastFileState = fileState;
+            if (!ruleSet.get().contentHash().equals(hash(content))) {
+                publish(content);
+            }
+        }
+        catch (RuntimeException e) {
+            routingRuleStats.getReloadFailures().update(1);
+            log.error(e, "Failed to reload routing rules from %s, keeping the rules of version %s", rulesPath, ruleSet.get().version());
+        }
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        reloadExecutor.shutdownNow();
+        watcherExecutor.shutdownNow();
+        watchService.ifPresent(service -> {
+            try {
+                service.close();
+            }
+            catch (IOException e) {
+                log.warn(e, "Failed to close the watch service of %s", rulesPath);
             }
         });
-        return new RoutingSelectorResponse(result.get(RESULTS_ROUTING_GROUP_KEY));
+    }
+
+    private Optional<WatchService> startWatching(Path directory)
+    {
+        WatchService service;
+        try {
+            service = directory.getFileSystem().newWatchService();
+            directory.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            log.warn(e, "Cannot watch %s for changes, the routing rules are only checked periodically", directory);
+            return Optional.empty();
+        }
+        watcherExecutor.execute(() -> watch(service));
+        return Optional.of(service);
+    }
+
+    private void watch(WatchService service)
+    {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                // Any change in the directory triggers a check, since the file may be replaced through a symbolic link
+                key.pollEvents();
+                key.reset();
+                reloadExecutor.execute(this::reloadIfChanged);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ClosedWatchServiceException | RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    private void publish(String content)
+    {
+        long start = System.nanoTime();
+        RuleSet previous = ruleSet.get();
+        long version = previous == null ? 1 : previous.version() + 1;
+        RuleSet current = loadRuleSet(readRules(content), hash(content), version);
+        ruleSet.set(current);
+        routingRuleStats.rulesLoaded(version, current.index().rules().size(), System.nanoTime() - start);
+        log.info("Loaded version %s of the routing rules from %s, %s rules", version, rulesPath, current.index().rules().size());
+    }
+
+    private RuleSet loadRuleSet(List<RoutingRule> rules, HashCode contentHash, long version)
+    {
+        boolean readsQueryProperties = rules.stream().anyMatch(rule -> rule.mayReadVariable(TRINO_QUERY_PROPERTIES));
+        boolean readsRequestUser = rules.stream().anyMatch(rule -> rule.mayReadVariable(TRINO_REQUEST_USER));
+        if (!analyzeRequest && (readsQueryProperties || readsRequestUser)) {
+            log.warn("Routing rules refer to %s or %s, but requestAnalyzerConfig.analyzeRequest is disabled", TRINO_QUERY_PROPERTIES, TRINO_REQUEST_USER);
+        }
+
+        RoutingRuleIndex index = indexRules ? RoutingRuleIndex.indexed(rules, analyzeRequest) : RoutingRuleIndex.sequential(rules);
+        log.debug("%s of %s routing rules are indexed", index.indexedRuleCount(), rules.size());
+
+        routingRuleStats.retainRules(rules.stream().map(RoutingRule::getName).collect(toImmutableSet()));
+        List<RuleStats> ruleStats = rules.stream()
+                .map(rule -> routingRuleStats.getRuleStats(rule.getName()))
+                .collect(toImmutableList());
+        return new RuleSet(index, ruleStats, readsQueryProperties, readsRequestUser, contentHash, version);
     }
 
     public List<RoutingRule> readRulesFromPath(Path rulesPath)
+    {
+        return readRules(readRulesContent(rulesPath));
+    }
+
+    private static String readRulesContent(Path rulesPath)
+    {
+        try {
+            return Files.readString(rulesPath, UTF_8);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to read routing rules configuration from path: " + rulesPath, e);
+        }
+    }
+
+    private static List<RoutingRule> readRules(String content)
     {
         try {
-            String content = Files.readString(rulesPath, UTF_8);
             YAMLParser parser = new YAMLFactory().createParser(content);
             List<RoutingRule> routingRulesList = new ArrayList<>();
             while (parser.nextToken() != null) {
@@ -94,7 +297,42 @@ public class FileBasedRoutingGroupSelector
             return routingRulesList;
         }
         catch (IOException e) {
-            throw new RuntimeException("Failed to read or parse routing rules configuration from path: " + rulesPath, e);
+            throw new RuntimeException("Failed to parse routing rules configuration", e);
+        }
+    }
+
+    private static HashCode hash(String content)
+    {
+        return Hashing.sha256().hashString(content, UTF_8);
+    }
+
+    private record RuleSet(
+            RoutingRuleIndex index,
+            List<RuleStats> ruleStats,
+            boolean readsQueryProperties,
+            boolean readsRequestUser,
+            HashCode contentHash,
+            long version)
+    {
+        private RuleSet
+        {
+            requireNonNull(index, "index is null");
+            ruleStats = ImmutableList.copyOf(ruleStats);
+            requireNonNull(contentHash, "contentHash is null");
+        }
+    }
+
+    private record FileState(FileTime lastModifiedTime, long size)
+    {
+        static FileState of(Path path)
+        {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new FileState(attributes.lastModifiedTime(), attributes.size());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the attributes of routing rules configuration: " + path, e);
+            }
         }
     }
 }
@@ -18,6 +18,8 @@ import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.github.benmanes.caffeine.cache.Ticker;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import io.airlift.log.Logger;
 import io.airlift.stats.CounterStat;
@@ -28,13 +30,14 @@ import io.trino.gateway.ha.persistence.dao.GatewayBackend;
 import io.trino.gateway.ha.persistence.dao.GatewayBackendDao;
 import org.jdbi.v3.core.Jdbi;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableListMultimap.toImmutableListMultimap;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static java.util.Objects.requireNonNull;
 
 public class HaGatewayManager
@@ -45,7 +48,7 @@ public class HaGatewayManager
 
     private final GatewayBackendDao dao;
     private final String defaultRoutingGroup;
-    private final LoadingCache<Object, List<GatewayBackend>> backendCache;
+    private final LoadingCache<Object, BackendIndex> backendCache;
 
     private final CounterStat backendLookupSuccesses = new CounterStat();
     private final CounterStat backendLookupFailures = new CounterStat();
@@ -79,19 +82,19 @@ public class HaGatewayManager
 
         // Load the data once during initialization. This ensures a fail-fast behavior in case of database misconfiguration.
         try {
-            List<GatewayBackend> _ = backendCache.get(ALL_BACKEND_CACHE_KEY);
+            BackendIndex _ = backendCache.get(ALL_BACKEND_CACHE_KEY);
         }
         catch (Exception e) {
             throw new RuntimeException("Failed to load gateway backend", e);
         }
     }
 
-    private List<GatewayBackend> fetchAllBackends(Object ignored)
+    private BackendIndex fetchAllBackends(Object ignored)
     {
         try {
             List<GatewayBackend> backends = dao.findAll();
             backendLookupSuccesses.update(1);
-            return backends;
+            return BackendIndex.create(backends);
         }
         catch (Exception e) {
             backendLookupFailures.update(1);
@@ -107,7 +110,7 @@ public class HaGatewayManager
         backendCache.invalidate(ALL_BACKEND_CACHE_KEY);
     }
 
-    private List<GatewayBackend> getAllBackendsInternal()
+    private BackendIndex getBackendIndex()
     {
         try {
             return backendCache.get(ALL_BACKEND_CACHE_KEY);
@@ -120,17 +123,13 @@ public class HaGatewayManager
     @Override
     public List<ProxyBackendConfiguration> getAllBackends()
     {
-        List<GatewayBackend> proxyBackendList = getAllBackendsInternal();
-        return upcast(proxyBackendList);
+        return upcast(getBackendIndex().allBackends());
     }
 
     @Override
     public List<ProxyBackendConfiguration> getAllActiveBackends()
     {
-        List<GatewayBackend> proxyBackendList = getAllBackendsInternal().stream()
-                .filter(GatewayBackend::active)
-                .collect(toImmutableList());
-        return upcast(proxyBackendList);
+        return upcast(getBackendIndex().activeBackends());
     }
 
     @Override
@@ -148,20 +147,14 @@ public class HaGatewayManager
     @Override
     public List<ProxyBackendConfiguration> getActiveBackends(String routingGroup)
     {
-        List<GatewayBackend> proxyBackendList = getAllBackendsInternal().stream()
-                .filter(GatewayBackend::active)
-                .filter(backend -> backend.routingGroup().equals(routingGroup))
-                .collect(toImmutableList());
-        return upcast(proxyBackendList);
+        return upcast(getBackendIndex().activeBackendsByRoutingGroup().get(routingGroup));
     }
 
     @Override
     public Optional<ProxyBackendConfiguration> getBackendByName(String name)
     {
-        List<GatewayBackend> proxyBackendList = getAllBackendsInternal().stream()
-                .filter(backend -> backend.name().equals(name))
-                .collect(toImmutableList());
-        return upcast(proxyBackendList).stream().findAny();
+        return Optional.ofNullable(getBackendIndex().backendsByName().get(name))
+                .map(HaGatewayManager::toConfiguration);
     }
 
     @Override
@@ -237,19 +230,51 @@ public class HaGatewayManager
         invalidateBackendCache();
     }
 
+    /**
+     * Copies the backends, so that callers are free to modify the configurations they get.
+     */
     private static List<ProxyBackendConfiguration> upcast(List<GatewayBackend> gatewayBackendList)
     {
-        List<ProxyBackendConfiguration> proxyBackendConfigurations = new ArrayList<>();
-        for (GatewayBackend model : gatewayBackendList) {
-            ProxyBackendConfiguration backendConfig = new ProxyBackendConfiguration();
-            backendConfig.setActive(model.active());
-            backendConfig.setRoutingGroup(model.routingGroup());
-            backendConfig.setProxyTo(model.backendUrl());
-            backendConfig.setExternalUrl(model.externalUrl());
-            backendConfig.setName(model.name());
-            proxyBackendConfigurations.add(backendConfig);
+        return gatewayBackendList.stream()
+                .map(HaGatewayManager::toConfiguration)
+                .collect(toImmutableList());
+    }
+
+    private static ProxyBackendConfiguration toConfiguration(GatewayBackend model)
+    {
+        ProxyBackendConfiguration backendConfig = new ProxyBackendConfiguration();
+        backendConfig.setActive(model.active());
+        backendConfig.setRoutingGroup(model.routingGroup());
+        backendConfig.setProxyTo(model.backendUrl());
+        backendConfig.setExternalUrl(model.externalUrl());
+        backendConfig.setName(model.name());
+        return backendConfig;
+    }
+
+    /**
+     * Backends indexed by routing group and name, built once per cache load and shared by all callers.
+     */
+    private record BackendIndex(
+            List<GatewayBackend> allBackends,
+            List<GatewayBackend> activeBackends,
+            ImmutableListMultimap<String, GatewayBackend> activeBackendsByRoutingGroup,
+            ImmutableMap<String, GatewayBackend> backendsByName)
+    {
+        private static BackendIndex create(List<GatewayBackend> gatewayBackends)
+        {
+            List<GatewayBackend> allBackends = ImmutableList.copyOf(gatewayBackends);
+            List<GatewayBackend> activeBackends = allBackends.stream()
+                    .filter(GatewayBackend::active)
+                    .collect(toImmutableList());
+            return new BackendIndex(
+                    allBackends,
+                    activeBackends,
+                    activeBackends.stream()
+                            .filter(backend -> backend.routingGroup() != null)
+                            .collect(toImmutableListMultimap(GatewayBackend::routingGroup, backend -> backend)),
+                    allBackends.stream()
+                            .collect(toImmutableMap(GatewayBackend::name, backend -> backend, (first, _) -> first)));
         }
-        return proxyBackendConfigurations;
     }
 
     public static String removeTrailingSlash(String url)
@@ -13,33 +13,63 @@
  */
 package io.trino.gateway.ha.router;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import io.trino.gateway.ha.config.DataStoreConfiguration;
 import io.trino.gateway.ha.domain.TableData;
 import io.trino.gateway.ha.domain.request.QueryHistoryRequest;
 import io.trino.gateway.ha.domain.response.DistributionResponse;
+import io.trino.gateway.ha.persistence.QueryTextStore;
+import io.trino.gateway.ha.persistence.dao.QueryDistribution;
+import io.trino.gateway.ha.persistence.dao.QueryDistributionDao;
 import io.trino.gateway.ha.persistence.dao.QueryHistory;
 import io.trino.gateway.ha.persistence.dao.QueryHistoryDao;
+import io.trino.gateway.ha.persistence.dao.QueryHistoryFilter;
+import io.trino.gateway.ha.persistence.dao.QueryRoute;
+import io.trino.gateway.ha.persistence.dao.QueryTextDao;
+import io.trino.gateway.ha.persistence.dao.QueryTextPreview;
+import jakarta.annotation.PreDestroy;
 import org.jdbi.v3.core.Jdbi;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
-import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Strings.nullToEmpty;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
 public class HaQueryHistoryManager
         implements QueryHistoryManager
 {
     private static final int FIRST_PAGE_NO = 1;
+    // Counting the filtered history is a scan of the index, it is repeated at most this often for each filter
+    private static final Duration TOTAL_COUNT_EXPIRATION = Duration.ofSeconds(30);
+    private static final int TOTAL_COUNT_CACHE_SIZE = 1000;
+    private static final Duration DISTRIBUTION_FLUSH_INTERVAL = Duration.ofSeconds(10);
 
     private final QueryHistoryDao dao;
     private final boolean isOracleBackend;
     private final boolean queryHistoryEnabled;
+    private final QueryHistoryWriter writer;
+    private final QueryDistributionRecorder distributionRecorder;
+    private final QueryTextStore queryTextStore;
+    private final Cache<QueryHistoryFilter, Long> totalCounts = Caffeine.newBuilder()
+            .expireAfterWrite(TOTAL_COUNT_EXPIRATION)
+            .maximumSize(TOTAL_COUNT_CACHE_SIZE)
+            .build();
 
     @Inject
     public HaQueryHistoryManager(Jdbi jdbi, DataStoreConfiguration configuration)
@@ -47,6 +77,16 @@ public class HaQueryHistoryManager
         dao = requireNonNull(jdbi, "jdbi is null").onDemand(QueryHistoryDao.class);
         this.isOracleBackend = configuration.getJdbcUrl().startsWith("jdbc:oracle");
         queryHistoryEnabled = configuration.isQueryHistoryEnabled();
+        queryTextStore = new QueryTextStore(jdbi.onDemand(QueryTextDao.class));
+        writer = new QueryHistoryWriter(dao, queryTextStore, configuration.getQueryHistoryWriter());
+        distributionRecorder = new QueryDistributionRecorder(jdbi.onDemand(QueryDistributionDao.class), configuration.getJdbcUrl(), DISTRIBUTION_FLUSH_INTERVAL);
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        writer.close();
+        distributionRecorder.close();
     }
 
     @Override
@@ -61,15 +101,22 @@ public class HaQueryHistoryManager
             return;
         }
 
-        dao.insertHistory(
-                queryDetail.getQueryId(),
-                queryDetail.getQueryText(),
-                queryDetail.getBackendUrl(),
-                queryDetail.getUser(),
-                queryDetail.getSource(),
-                queryDetail.getCaptureTime(),
-                queryDetail.getRoutingGroup(),
-                queryDetail.getExternalUrl());
+        distributionRecorder.record(queryDetail.getBackendUrl(), queryDetail.getRoutingGroup(), queryDetail.getUser(), queryDetail.getCaptureTime());
+        writer.submit(queryDetail);
+    }
+
+    @Managed
+    @Nested
+    public QueryHistoryWriter getWriter()
+    {
+        return writer;
+    }
+
+    @Managed
+    @Nested
+    public QueryDistributionRecorder getDistributionRecorder()
+    {
+        return distributionRecorder;
     }
 
     @Override
@@ -82,16 +129,46 @@ public class HaQueryHistoryManager
         else {
             histories = dao.findRecentQueries(isOracleBackend);
         }
-        return upcast(histories);
+        return upcast(histories, queryTextStore.loadTexts(storedTextHashes(histories)), ImmutableMap.of());
     }
 
-    private static List<QueryHistoryManager.QueryDetail> upcast(List<QueryHistory> queryHistoryList)
+    @Override
+    public Optional<QueryDetail> findQueryDetail(String queryId)
+    {
+        return dao.findQueryHistory(queryId)
+                .map(history -> upcast(List.of(history), queryTextStore.loadTexts(storedTextHashes(List.of(history))), ImmutableMap.of()).getFirst());
+    }
+
+    private static Set<String> storedTextHashes(List<QueryHistory> histories)
+    {
+        return histories.stream()
+                .filter(history -> history.queryText() == null && history.queryTextHash() != null)
+                .map(QueryHistory::queryTextHash)
+                .collect(toImmutableSet());
+    }
+
+    /**
+     * Converts the records, with the full texts of the stored query texts if they are in {@code texts},
+     * or else with the beginning of the texts from {@code previews}.
+     */
+    private static List<QueryHistoryManager.QueryDetail> upcast(List<QueryHistory> queryHistoryList, Map<String, String> texts, Map<String, QueryTextPreview> previews)
     {
         List<QueryHistoryManager.QueryDetail> queryDetails = new ArrayList<>();
         for (QueryHistory dao : queryHistoryList) {
             QueryHistoryManager.QueryDetail queryDetail = new QueryHistoryManager.QueryDetail();
             queryDetail.setQueryId(dao.queryId());
-            queryDetail.setQueryText(dao.queryText());
+            if (dao.queryText() != null || dao.queryTextHash() == null) {
+                queryDetail.setQueryText(dao.queryText());
+            }
+            else if (texts.containsKey(dao.queryTextHash())) {
+                queryDetail.setQueryText(texts.get(dao.queryTextHash()));
+            }
+            else if (previews.containsKey(dao.queryTextHash())) {
+                QueryTextPreview preview = previews.get(dao.queryTextHash());
+                String previewText = nullToEmpty(preview.textPreview());
+                queryDetail.setQueryText(previewText);
+                queryDetail.setQueryTextTruncated(previewText.length() < preview.textLength());
+            }
             queryDetail.setCaptureTime(dao.created());
             queryDetail.setBackendUrl(dao.backendUrl());
             queryDetail.setUser(dao.userName());
@@ -104,55 +181,92 @@ public class HaQueryHistoryManager
     }
 
     @Override
-    public String getBackendForQueryId(String queryId)
-    {
-        return dao.findBackendUrlByQueryId(queryId);
-    }
-
-    @Override
-    public String getRoutingGroupForQueryId(String queryId)
-    {
-        return dao.findRoutingGroupByQueryId(queryId);
-    }
-
-    @Override
-    public String getExternalUrlForQueryId(String queryId)
+    public Optional<QueryRoute> getQueryRoute(String queryId)
     {
-        return dao.findExternalUrlByQueryId(queryId);
+        return dao.findQueryRoute(queryId);
     }
 
     @Override
     public TableData<QueryDetail> findQueryHistory(QueryHistoryRequest query)
     {
-        int start = getStart(query.page(), query.size());
-        String userName = Strings.emptyToNull(query.user());
-        String externalUrl = Strings.emptyToNull(query.externalUrl());
-        String queryId = Strings.emptyToNull(query.queryId());
-        String source = Strings.emptyToNull(query.source());
-        List<QueryHistory> histories = dao.pageQueryHistory(userName, externalUrl, queryId, source, query.size(), start, isOracleBackend);
-        List<QueryDetail> rows = upcast(histories);
-        Long total = dao.count(userName, externalUrl, queryId, source);
-        return TableData.build(rows, total);
+        QueryHistoryFilter filter = new QueryHistoryFilter(
+                Strings.emptyToNull(query.user()),
+                Strings.emptyToNull(query.externalUrl()),
+                Strings.emptyToNull(query.queryId()),
+                Strings.emptyToNull(query.source()));
+        int size = Math.max(query.size(), 0);
+        Optional<Cursor> cursor = Cursor.decode(query.cursor());
+        List<QueryHistory> histories;
+        if (cursor.isPresent()) {
+            histories = dao.pageQueryHistoryAfter(filter, cursor.get().created(), cursor.get().queryId(), size, isOracleBackend);
+        }
+        else {
+            histories = dao.pageQueryHistory(filter, size, getStart(query.page(), size), isOracleBackend);
+        }
+        String nextCursor = null;
+        if (size > 0 && histories.size() == size) {
+            QueryHistory last = histories.getLast();
+            nextCursor = new Cursor(last.created(), last.queryId()).encode();
+        }
+        long total = totalCounts.get(filter, dao::count);
+        // Only the beginning of the texts is shown in the list, the full text is loaded on request
+        List<QueryDetail> rows = upcast(histories, ImmutableMap.of(), queryTextStore.loadPreviews(storedTextHashes(histories)));
+        return TableData.build(rows, total, nextCursor);
     }
 
     @Override
     public List<DistributionResponse.LineChart> findDistribution(Long ts)
     {
-        List<Map<String, Object>> results = dao.findDistribution(ts);
         List<DistributionResponse.LineChart> resList = new ArrayList<>();
-        for (Map<String, Object> model : results) {
+        for (QueryDistribution distribution : distributionRecorder.findDistribution(ts)) {
             DistributionResponse.LineChart lineChart = new DistributionResponse.LineChart();
-            long minute = new BigDecimal(model.get("minute").toString()).longValue();
-            Instant instant = Instant.ofEpochSecond(minute * 60L);
-            long epochMillis = instant.toEpochMilli();
-            lineChart.setEpochMillis(epochMillis);
-            lineChart.setQueryCount(Long.parseLong(model.get("query_count").toString()));
-            lineChart.setBackendUrl(model.get("backend_url").toString());
+            lineChart.setEpochMillis(Instant.ofEpochSecond(distribution.createdMinute() * 60L).toEpochMilli());
+            lineChart.setQueryCount(distribution.queryCount());
+            lineChart.setBackendUrl(distribution.backendUrl());
             resList.add(lineChart);
         }
         return resList;
     }
 
+    /**
+     * Position of the last query of a page, in the order of the query history pages.
+     */
+    private record Cursor(long created, String queryId)
+    {
+        private static final String SEPARATOR = ":";
+
+        private Cursor
+        {
+            requireNonNull(queryId, "queryId is null");
+        }
+
+        String encode()
+        {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString((created + SEPARATOR + queryId).getBytes(UTF_8));
+        }
+
+        /**
+         * An invalid cursor is ignored, and the page is then found by its number.
+         */
+        static Optional<Cursor> decode(String cursor)
+        {
+            if (isNullOrEmpty(cursor)) {
+                return Optional.empty();
+            }
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(cursor), UTF_8);
+                int separator = value.indexOf(SEPARATOR);
+                if (separator <= 0) {
+                    return Optional.empty();
+                }
+                return Optional.of(new Cursor(Long.parseLong(value.substring(0, separator)), value.substring(separator + 1)));
+            }
+            catch (IllegalArgumentException e) {
+                return Optional.empty();
+            }
+        }
+    }
+
     private static int getStart(int pageNo, int pageSize)
     {
         if (pageNo < FIRST_PAGE_NO) {
@@ -16,12 +16,18 @@ package io.trino.gateway.ha.router;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import org.mvel2.ParserContext;
 import org.mvel2.debug.DebugTools;
 
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.collect.ImmutableList.toImmutableList;
@@ -34,12 +40,17 @@ import static org.mvel2.debug.DebugTools.decompile;
 public class MVELRoutingRule
         implements RoutingRule
 {
+    private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("[\\p{javaJavaIdentifierStart}][\\p{javaJavaIdentifierPart}]*");
+
     String name;
     String description;
     Integer priority;
     Serializable condition;
     List<Serializable> actions;
     ParserContext parserContext = new ParserContext();
+    // Identifiers in the source of the condition and actions, empty if any of them was not given as source
+    Optional<Set<String>> identifiers;
+    Optional<String> conditionSource;
 
     @JsonCreator
     public MVELRoutingRule(
@@ -50,6 +61,8 @@ public class MVELRoutingRule
             @JsonProperty("actions") List<Serializable> actions)
     {
         initializeParserContext(parserContext);
+        identifiers = extractIdentifiers(condition, actions);
+        conditionSource = condition instanceof String stringCondition ? Optional.of(stringCondition) : Optional.empty();
 
         this.name = requireNonNull(name, "name is null");
         this.description = requireNonNullElse(description, "");
@@ -60,6 +73,21 @@ public class MVELRoutingRule
         this.actions = actions.stream().map(this::compileExpressionIfNecessary).collect(toImmutableList());
     }
 
+    private static Optional<Set<String>> extractIdentifiers(Serializable condition, List<Serializable> actions)
+    {
+        ImmutableSet.Builder<String> identifiers = ImmutableSet.builder();
+        for (Serializable expression : Iterables.concat(List.of(condition), actions)) {
+            if (!(expression instanceof String source)) {
+                return Optional.empty();
+            }
+            // Identifiers inside string literals are included as well, which only errs on the safe side
+            IDENTIFIER_PATTERN.matcher(source).results()
+                    .map(MatchResult::group)
+                    .forEach(identifiers::add);
+        }
+        return Optional.of(identifiers.build());
+    }
+
     private Serializable compileExpressionIfNecessary(Serializable expression)
     {
         if (expression instanceof String stringExpression) {
@@ -91,6 +119,20 @@ public class MVELRoutingRule
         parserContext.addImport(FileBasedRoutingGroupSelector.class);
     }
 
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Source of the condition, if it was given as an expression to compile.
+     */
+    Optional<String> getConditionSource()
+    {
+        return conditionSource;
+    }
+
     @Override
     public Integer getPriority()
     {
@@ -125,6 +167,24 @@ public class MVELRoutingRule
         actions.forEach(action -> executeExpression(action, variablesBuilder.build()));
     }
 
+    @Override
+    public boolean evaluateCondition(RoutingRuleVariables variables)
+    {
+        return (boolean) executeExpression(condition, variables.asMap());
+    }
+
+    @Override
+    public void evaluateAction(RoutingRuleVariables variables)
+    {
+        actions.forEach(action -> executeExpression(action, variables.asMap()));
+    }
+
+    @Override
+    public boolean mayReadVariable(String name)
+    {
+        return identifiers.map(names -> names.contains(name)).orElse(true);
+    }
+
     @Override
     public String toString()
     {
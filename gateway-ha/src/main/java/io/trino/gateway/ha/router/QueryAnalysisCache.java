@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.router;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.airlift.stats.TimeStat;
+import io.trino.gateway.ha.config.RequestAnalyzerConfig;
+import io.trino.gateway.ha.router.TrinoQueryProperties.Analysis;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Caches the analysis of statements submitted through the gateway, so that clients resubmitting
+ * the same SQL do not pay for parsing it on every request.
+ */
+public class QueryAnalysisCache
+{
+    // Rough fixed cost of an entry and of each table, in bytes, on top of the characters it holds
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int TABLE_OVERHEAD = 64;
+
+    private final Optional<Cache<Key, Analysis>> cache;
+    private final TimeStat analysisTime = new TimeStat(MILLISECONDS);
+
+    public QueryAnalysisCache(RequestAnalyzerConfig config)
+    {
+        long maximumWeight = config.getAnalysisCacheMaxSize().toBytes();
+        checkArgument(maximumWeight >= 0, "analysisCacheMaxSize is negative");
+        if (maximumWeight == 0) {
+            cache = Optional.empty();
+        }
+        else {
+            cache = Optional.of(Caffeine.newBuilder()
+                    .maximumWeight(maximumWeight)
+                    .weigher(QueryAnalysisCache::weigh)
+                    .recordStats()
+                    .build());
+        }
+    }
+
+    Analysis get(String sql, Optional<String> defaultCatalog, Optional<String> defaultSchema, Map<String, String> preparedStatements, Supplier<Analysis> analyzer)
+    {
+        if (cache.isEmpty()) {
+            return analyze(analyzer);
+        }
+        return cache.get().get(new Key(sql, defaultCatalog, defaultSchema, preparedStatements), _ -> analyze(analyzer));
+    }
+
+    private Analysis analyze(Supplier<Analysis> analyzer)
+    {
+        try (TimeStat.BlockTimer _ = analysisTime.time()) {
+            return analyzer.get();
+        }
+    }
+
+    /**
+     * Time to parse and analyze statements that were not found in the cache.
+     */
+    @Managed
+    @Nested
+    public TimeStat getAnalysisTime()
+    {
+        return analysisTime;
+    }
+
+    @Managed
+    public long getSize()
+    {
+        return cache.map(Cache::estimatedSize).orElse(0L);
+    }
+
+    @Managed
+    public long getWeightedSize()
+    {
+        return cache.flatMap(value -> value.policy().eviction())
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+    }
+
+    @Managed
+    public long getHitCount()
+    {
+        return cache.map(value -> value.stats().hitCount()).orElse(0L);
+    }
+
+    @Managed
+    public long getMissCount()
+    {
+        return cache.map(value -> value.stats().missCount()).orElse(0L);
+    }
+
+    @Managed
+    public double getHitRate()
+    {
+        return cache.map(value -> value.stats().hitRate()).orElse(0.0);
+    }
+
+    @Managed
+    public long getEvictionCount()
+    {
+        return cache.map(value -> value.stats().evictionCount()).orElse(0L);
+    }
+
+    @Managed
+    public double getAverageAnalysisMillis()
+    {
+        return cache.map(value -> value.stats().averageLoadPenalty() / 1_000_000.0).orElse(0.0);
+    }
+
+    private static int weigh(Key key, Analysis analysis)
+    {
+        long chars = key.sql().length()
+                + key.preparedStatements().entrySet().stream().mapToLong(entry -> entry.getKey().length() + entry.getValue().length()).sum()
+                // The body differs from the key for EXECUTE of a prepared statement
+                + (analysis.body().equals(key.sql()) ? 0 : analysis.body().length())
+                + analysis.errorMessage().map(String::length).orElse(0);
+        long bytes = ENTRY_OVERHEAD + (2 * chars) + ((long) TABLE_OVERHEAD * analysis.tables().size());
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    // The statement text itself is the key rather than a hash of it, so that distinct statements can never collide
+    private record Key(String sql, Optional<String> defaultCatalog, Optional<String> defaultSchema, Map<String, String> preparedStatements)
+    {
+        private Key
+        {
+            requireNonNull(sql, "sql is null");
+            requireNonNull(defaultCatalog, "defaultCatalog is null");
+            requireNonNull(defaultSchema, "defaultSchema is null");
+            preparedStatements = Map.copyOf(preparedStatements);
+        }
+    }
+}
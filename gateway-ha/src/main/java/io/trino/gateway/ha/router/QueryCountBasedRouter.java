@@ -17,38 +17,49 @@ package io.trino.gateway.ha.router;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
+import io.airlift.http.client.HttpClient;
 import io.trino.gateway.ha.clustermonitor.ClusterStats;
 import io.trino.gateway.ha.clustermonitor.TrinoStatus;
 import io.trino.gateway.ha.config.ProxyBackendConfiguration;
 import io.trino.gateway.ha.config.RoutingConfiguration;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes queries to the backend with the fewest queued and running queries.
+ * <p>
+ * Backend selection does not take any lock. The monitor publishes a new {@link LocalStats} per cluster
+ * on every refresh, and each of them only keeps optimistic counters for the queries routed since,
+ * so concurrent submissions never wait on each other or on the monitor.
+ */
 public class QueryCountBasedRouter
         extends BaseRoutingManager
 {
-    private ConcurrentHashMap<String, LocalStats> clusterStats;
+    private final ConcurrentHashMap<String, LocalStats> clusterStats;
 
     @VisibleForTesting
-    synchronized Map<String, LocalStats> clusterStats()
+    Map<String, LocalStats> clusterStats()
     {
         return ImmutableMap.copyOf(clusterStats);
     }
 
     static class LocalStats
     {
-        private int runningQueryCount;
-        private int queuedQueryCount;
-        private TrinoStatus trinoStatus;
-        private String proxyTo;
-        private String externalUrl;
-        private String routingGroup;
-        private String clusterId;
-        private Map<String, Integer> userQueuedCount;
+        private final int runningQueryCount;
+        private final int queuedQueryCount;
+        private final TrinoStatus trinoStatus;
+        private final String proxyTo;
+        private final String externalUrl;
+        private final String routingGroup;
+        private final String clusterId;
+        // Queries routed to this cluster since the stats were published, assumed to be running
+        private final AtomicInteger assumedRunningQueryCount = new AtomicInteger();
+        private final ConcurrentHashMap<String, Integer> userQueuedCount;
 
         LocalStats(ClusterStats stats)
         {
@@ -59,11 +70,13 @@ public class QueryCountBasedRouter
             proxyTo = stats.proxyTo();
             externalUrl = stats.externalUrl();
             routingGroup = stats.routingGroup();
+            userQueuedCount = new ConcurrentHashMap<>();
             if (stats.userQueuedCount() != null) {
-                userQueuedCount = new HashMap<String, Integer>(stats.userQueuedCount());
-            }
-            else {
-                userQueuedCount = new HashMap<String, Integer>();
+                stats.userQueuedCount().forEach((user, count) -> {
+                    if (user != null && count != null) {
+                        userQueuedCount.put(user, count);
+                    }
+                });
             }
         }
 
@@ -74,72 +87,57 @@ public class QueryCountBasedRouter
 
         public int runningQueryCount()
         {
-            return this.runningQueryCount;
-        }
-
-        public void runningQueryCount(int runningQueryCount)
-        {
-            this.runningQueryCount = runningQueryCount;
+            return runningQueryCount + assumedRunningQueryCount.get();
         }
 
         public int queuedQueryCount()
         {
-            return this.queuedQueryCount;
-        }
-
-        public void queuedQueryCount(int queuedQueryCount)
-        {
-            this.queuedQueryCount = queuedQueryCount;
+            return queuedQueryCount;
         }
 
         public TrinoStatus trinoStatus()
         {
-            return this.trinoStatus;
-        }
-
-        public void trinoStatus(TrinoStatus trinoStatus)
-        {
-            this.trinoStatus = trinoStatus;
+            return trinoStatus;
         }
 
         public String proxyTo()
         {
-            return this.proxyTo;
-        }
-
-        public void proxyTo(String proxyTo)
-        {
-            this.proxyTo = proxyTo;
+            return proxyTo;
         }
 
         public String getExternalUrl()
         {
-            return this.externalUrl;
-        }
-
-        public void externalUrl(String externalUrl)
-        {
-            this.externalUrl = externalUrl;
+            return externalUrl;
         }
 
         public String routingGroup()
         {
-            return this.routingGroup;
+            return routingGroup;
         }
 
-        public void routingGroup(String routingGroup)
+        public Map<String, Integer> userQueuedCount()
         {
-            this.routingGroup = routingGroup;
+            return Collections.unmodifiableMap(userQueuedCount);
         }
 
-        public Map<String, Integer> userQueuedCount()
+        int userQueuedCount(String user)
         {
-            return this.userQueuedCount;
+            return user == null ? 0 : userQueuedCount.getOrDefault(user, 0);
         }
 
-        public void userQueuedCount(Map<String, Integer> userQueuedCount)
+        // The live stats refresh every few seconds, so we update the stats immediately
+        // so that they can be used for next queries to route
+        // We assume that if a user has queued queries then newly arriving queries
+        // for that user would also be queued
+        void recordRoutedQuery(String user)
         {
-            this.userQueuedCount = userQueuedCount;
+            if (userQueuedCount(user) > 0) {
+                userQueuedCount.merge(user, 1, Integer::sum);
+                return;
+            }
+            // Else the we assume that the query would be running
+            // so update the clusterstat with the +1 running queries
+            assumedRunningQueryCount.incrementAndGet();
         }
 
         ProxyBackendConfiguration backendConfiguration()
@@ -157,18 +155,19 @@ public class QueryCountBasedRouter
     public QueryCountBasedRouter(
             GatewayBackendManager gatewayBackendManager,
             QueryHistoryManager queryHistoryManager,
-            RoutingConfiguration routingConfiguration)
+            RoutingConfiguration routingConfiguration,
+            @ForRouter HttpClient httpClient)
     {
-        super(gatewayBackendManager, queryHistoryManager, routingConfiguration);
+        super(gatewayBackendManager, queryHistoryManager, routingConfiguration, httpClient);
         clusterStats = new ConcurrentHashMap<>();
     }
 
-    private int compareStats(LocalStats lhs, LocalStats rhs, String user)
+    private static int compareStats(LocalStats lhs, LocalStats rhs, String user)
     {
         // First check if the user has any queries queued
         int compareUserQueue = Integer.compare(
-                lhs.userQueuedCount().getOrDefault(user, 0),
-                rhs.userQueuedCount().getOrDefault(user, 0));
+                lhs.userQueuedCount(user),
+                rhs.userQueuedCount(user));
 
         if (compareUserQueue != 0) {
             return compareUserQueue;
@@ -186,27 +185,12 @@ public class QueryCountBasedRouter
         return Integer.compare(lhs.runningQueryCount(), rhs.runningQueryCount());
     }
 
-    private void updateLocalStats(LocalStats stats, String user)
-    {
-        // The live stats refresh every few seconds, so we update the stats immediately
-        // so that they can be used for next queries to route
-        // We assume that if a user has queued queries then newly arriving queries
-        // for that user would also be queued
-        int count = stats.userQueuedCount() == null ? 0 : stats.userQueuedCount().getOrDefault(user, 0);
-        if (count > 0) {
-            stats.userQueuedCount().put(user, count + 1);
-            return;
-        }
-        // Else the we assume that the query would be running
-        // so update the clusterstat with the +1 running queries
-        stats.runningQueryCount(stats.runningQueryCount() + 1);
-    }
-
     @Override
-    public synchronized void updateClusterStats(List<ClusterStats> stats)
+    public void updateClusterStats(List<ClusterStats> stats)
     {
         super.updateClusterStats(stats);
         for (ClusterStats stat : stats) {
+            // Replacing the entry discards the optimistic counters, as the new stats already account for those queries
             clusterStats.put(stat.clusterId(), new LocalStats(stat));
         }
     }
@@ -230,13 +214,25 @@ public class QueryCountBasedRouter
     // if a user has queries queued then we assume that the routed query will be also queued or
     // else we assume it would be scheduled immediately and we increment the stats for the running
     // queries
+    //
+    // Concurrent submissions may observe the same counts and pick the same cluster, which is
+    // corrected by the counters of the selected cluster and the next stats refresh.
     @Override
-    protected synchronized Optional<ProxyBackendConfiguration> selectBackend(List<ProxyBackendConfiguration> backends, String user)
+    protected Optional<ProxyBackendConfiguration> selectBackend(List<ProxyBackendConfiguration> backends, String user)
     {
-        Optional<ProxyBackendConfiguration> cluster = backends.stream()
-                .filter(backend -> clusterStats.containsKey(backend.getName()))
-                .min((a, b) -> compareStats(clusterStats.get(a.getName()), clusterStats.get(b.getName()), user));
-        cluster.ifPresent(c -> updateLocalStats(clusterStats.get(c.getName()), user));
-        return cluster;
+        ProxyBackendConfiguration selected = null;
+        LocalStats selectedStats = null;
+        for (ProxyBackendConfiguration backend : backends) {
+            LocalStats stats = clusterStats.get(backend.getName());
+            if (stats != null && (selectedStats == null || compareStats(stats, selectedStats, user) < 0)) {
+                selected = backend;
+                selectedStats = stats;
+            }
+        }
+        if (selectedStats == null) {
+            return Optional.empty();
+        }
+        selectedStats.recordRoutedQuery(user);
+        return Optional.of(selected);
     }
 }
@@ -0,0 +1,228 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.router;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import io.trino.gateway.ha.persistence.dao.QueryDistribution;
+import io.trino.gateway.ha.persistence.dao.QueryDistributionDao;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.base.Strings.nullToEmpty;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Counts the routed queries per minute, backend, routing group and user in memory, and adds
+ * the counts to the query distribution rollup table periodically. The distribution chart reads
+ * the rollups, together with the counts that are not flushed yet, instead of aggregating the
+ * query history.
+ * <p>
+ * A batch that cannot be written is retried row by row, and the rows that still fail are dropped,
+ * like the query history records. At most {@value #MAX_PENDING_ROWS} keys are pending, the counts
+ * of new keys beyond that are dropped until the next flush.
+ */
+public class QueryDistributionRecorder
+{
+    private static final Logger log = Logger.get(QueryDistributionRecorder.class);
+    private static final long MILLIS_PER_MINUTE = 60_000;
+    private static final int MAX_PENDING_ROWS = 100_000;
+    // Width of the routing_group and user_name columns, which the key of the table must fit in MySQL
+    private static final int MAX_KEY_COLUMN_LENGTH = 255;
+
+    private final QueryDistributionDao dao;
+    private final String jdbcUrl;
+    private final Map<Key, Long> pendingCounts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    private final CounterStat flushedRows = new CounterStat();
+    private final CounterStat failedRows = new CounterStat();
+    private final CounterStat droppedCounts = new CounterStat();
+    private final TimeStat flushTime = new TimeStat();
+
+    public QueryDistributionRecorder(QueryDistributionDao dao, String jdbcUrl, Duration flushInterval)
+    {
+        this.dao = requireNonNull(dao, "dao is null");
+        this.jdbcUrl = requireNonNull(jdbcUrl, "jdbcUrl is null");
+        executor = newSingleThreadScheduledExecutor(daemonThreadsNamed("query-distribution-recorder-%s"));
+        executor.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(), MILLISECONDS);
+    }
+
+    public void record(String backendUrl, String routingGroup, String userName, long created)
+    {
+        if (backendUrl == null) {
+            return;
+        }
+        Key key = new Key(toMinute(created), backendUrl, toKeyColumn(routingGroup), toKeyColumn(userName));
+        if (pendingCounts.size() >= MAX_PENDING_ROWS && !pendingCounts.containsKey(key)) {
+            droppedCounts.update(1);
+            return;
+        }
+        pendingCounts.merge(key, 1L, Long::sum);
+    }
+
+    /**
+     * Returns the number of queries routed to each backend per minute since {@code created},
+     * including the counts of this gateway that are not flushed yet.
+     */
+    public List<QueryDistribution> findDistribution(long created)
+    {
+        long createdMinute = toMinute(created);
+        Map<MinuteBackend, Long> counts = new HashMap<>();
+        for (QueryDistribution distribution : dao.findDistribution(createdMinute)) {
+            counts.merge(new MinuteBackend(distribution.createdMinute(), distribution.backendUrl()), distribution.queryCount(), Long::sum);
+        }
+        pendingCounts.forEach((key, count) -> {
+            if (key.createdMinute() >= createdMinute) {
+                counts.merge(new MinuteBackend(key.createdMinute(), key.backendUrl()), count, Long::sum);
+            }
+        });
+        return counts.entrySet().stream()
+                .map(entry -> new QueryDistribution(entry.getKey().createdMinute(), entry.getKey().backendUrl(), entry.getValue()))
+                .toList();
+    }
+
+    /**
+     * Stops the periodic flush and writes the pending counts.
+     */
+    public void close()
+    {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(30, SECONDS)) {
+                log.warn("Timed out waiting for the query distribution flush");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    void flush()
+    {
+        ImmutableList.Builder<Key> keys = ImmutableList.builder();
+        ImmutableList.Builder<Long> counts = ImmutableList.builder();
+        for (Key key : pendingCounts.keySet()) {
+            // Counts recorded after the removal start a new entry, and are written by the next flush
+            Long count = pendingCounts.remove(key);
+            if (count != null) {
+                keys.add(key);
+                counts.add(count);
+            }
+        }
+        List<Key> flushedKeys = keys.build();
+        if (flushedKeys.isEmpty()) {
+            return;
+        }
+        try (TimeStat.BlockTimer _ = flushTime.time()) {
+            write(flushedKeys, counts.build());
+        }
+    }
+
+    private void write(List<Key> keys, List<Long> counts)
+    {
+        try {
+            dao.addDistributions(
+                    jdbcUrl,
+                    keys.stream().map(Key::createdMinute).toList(),
+                    keys.stream().map(Key::backendUrl).toList(),
+                    keys.stream().map(Key::routingGroup).toList(),
+                    keys.stream().map(Key::userName).toList(),
+                    counts);
+            flushedRows.update(keys.size());
+        }
+        catch (RuntimeException e) {
+            if (keys.size() == 1) {
+                failedRows.update(1);
+                log.error(e, "Failed to write query distribution row %s", keys.getFirst());
+                return;
+            }
+            // Retry row by row so that a single bad row does not discard the whole batch
+            log.warn(e, "Failed to write batch of %s query distribution rows, retrying individually", keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                write(List.of(keys.get(i)), List.of(counts.get(i)));
+            }
+        }
+    }
+
+    private static String toKeyColumn(String value)
+    {
+        String column = nullToEmpty(value);
+        if (column.length() <= MAX_KEY_COLUMN_LENGTH) {
+            return column;
+        }
+        int end = MAX_KEY_COLUMN_LENGTH;
+        if (Character.isHighSurrogate(column.charAt(end - 1))) {
+            end--;
+        }
+        return column.substring(0, end);
+    }
+
+    private static long toMinute(long epochMillis)
+    {
+        return Math.floorDiv(epochMillis, MILLIS_PER_MINUTE);
+    }
+
+    @Managed
+    public int getPendingRows()
+    {
+        return pendingCounts.size();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFlushedRows()
+    {
+        return flushedRows;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFailedRows()
+    {
+        return failedRows;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getDroppedCounts()
+    {
+        return droppedCounts;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getFlushTime()
+    {
+        return flushTime;
+    }
+
+    private record Key(long createdMinute, String backendUrl, String routingGroup, String userName) {}
+
+    private record MinuteBackend(long createdMinute, String backendUrl) {}
+}
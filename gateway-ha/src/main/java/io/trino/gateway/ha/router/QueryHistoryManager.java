@@ -17,6 +17,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import io.trino.gateway.ha.domain.TableData;
 import io.trino.gateway.ha.domain.request.QueryHistoryRequest;
 import io.trino.gateway.ha.domain.response.DistributionResponse;
+import io.trino.gateway.ha.persistence.dao.QueryRoute;
 
 import java.util.List;
 import java.util.Objects;
@@ -30,14 +31,22 @@ public interface QueryHistoryManager
 
     List<QueryDetail> fetchQueryHistory(Optional<String> user);
 
-    String getBackendForQueryId(String queryId);
-
-    String getRoutingGroupForQueryId(String queryId);
-
-    String getExternalUrlForQueryId(String queryId);
+    /**
+     * Returns the backend, routing group and external URL recorded for the query, in a single lookup.
+     */
+    Optional<QueryRoute> getQueryRoute(String queryId);
 
+    /**
+     * Returns the records of a page of the query history. Long query texts are truncated, see
+     * {@link QueryDetail#isQueryTextTruncated()}.
+     */
     TableData<QueryDetail> findQueryHistory(QueryHistoryRequest query);
 
+    /**
+     * Returns the record of the query, with its full query text.
+     */
+    Optional<QueryDetail> findQueryDetail(String queryId);
+
     List<DistributionResponse.LineChart> findDistribution(Long ts);
 
     class QueryDetail
@@ -51,6 +60,7 @@ public interface QueryHistoryManager
         private long captureTime;
         private String routingGroup;
         private String externalUrl;
+        private boolean queryTextTruncated;
 
         public QueryDetail() {}
 
@@ -153,6 +163,20 @@ public interface QueryHistoryManager
             this.externalUrl = externalUrl;
         }
 
+        /**
+         * Whether {@link #getQueryText()} holds only the beginning of the query text.
+         */
+        @JsonProperty
+        public boolean isQueryTextTruncated()
+        {
+            return queryTextTruncated;
+        }
+
+        public void setQueryTextTruncated(boolean queryTextTruncated)
+        {
+            this.queryTextTruncated = queryTextTruncated;
+        }
+
         @Override
         public boolean equals(Object o)
         {
@@ -170,13 +194,14 @@ public interface QueryHistoryManager
                     Objects.equals(source, that.source) &&
                     Objects.equals(backendUrl, that.backendUrl) &&
                     Objects.equals(routingGroup, that.routingGroup) &&
-                    Objects.equals(externalUrl, that.externalUrl);
+                    Objects.equals(externalUrl, that.externalUrl) &&
+                    queryTextTruncated == that.queryTextTruncated;
         }
 
         @Override
         public int hashCode()
         {
-            return Objects.hash(queryId, queryText, user, source, backendUrl, captureTime, routingGroup, externalUrl);
+            return Objects.hash(queryId, queryText, user, source, backendUrl, captureTime, routingGroup, externalUrl, queryTextTruncated);
         }
 
         @Override
@@ -191,6 +216,7 @@ public interface QueryHistoryManager
                     .add("captureTime", captureTime)
                     .add("routingGroup", routingGroup)
                     .add("externalUrl", externalUrl)
+                    .add("queryTextTruncated", queryTextTruncated)
                     .toString();
         }
     }
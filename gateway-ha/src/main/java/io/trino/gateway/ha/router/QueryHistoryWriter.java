@@ -0,0 +1,284 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.router;
+
+import com.google.common.collect.Lists;
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import io.trino.gateway.ha.config.QueryHistoryOverflowPolicy;
+import io.trino.gateway.ha.config.QueryHistoryWriterConfiguration;
+import io.trino.gateway.ha.persistence.QueryTextStore;
+import io.trino.gateway.ha.persistence.dao.QueryHistoryDao;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.nullToEmpty;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Writes query history records to the database. The query texts are stored separately by the
+ * {@link QueryTextStore}, and the records refer to them by hash.
+ * <p>
+ * In asynchronous mode, records are queued in memory and a single writer thread inserts them
+ * in batches of up to {@code batchSize} rows, waiting at most {@code flushInterval} for a batch
+ * to fill up. Queued records are lost if the gateway dies before they are flushed, so callers
+ * must not rely on the database to resolve a query id they have just submitted.
+ */
+public class QueryHistoryWriter
+{
+    private static final Logger log = Logger.get(QueryHistoryWriter.class);
+    private static final long BLOCK_CHECK_INTERVAL_MILLIS = 100;
+
+    private final QueryHistoryDao dao;
+    private final QueryTextStore queryTextStore;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final QueryHistoryOverflowPolicy overflowPolicy;
+    private final BlockingQueue<QueryRecord> queue;
+    private final ExecutorService executor;
+    private volatile boolean closed;
+
+    private final CounterStat writtenRows = new CounterStat();
+    private final CounterStat droppedRows = new CounterStat();
+    private final CounterStat failedRows = new CounterStat();
+    private final TimeStat flushTime = new TimeStat();
+
+    public QueryHistoryWriter(QueryHistoryDao dao, QueryTextStore queryTextStore, QueryHistoryWriterConfiguration configuration)
+    {
+        this.dao = requireNonNull(dao, "dao is null");
+        this.queryTextStore = requireNonNull(queryTextStore, "queryTextStore is null");
+        checkArgument(configuration.getBatchSize() > 0, "batchSize must be positive");
+        checkArgument(configuration.getQueueSize() > 0, "queueSize must be positive");
+        this.batchSize = configuration.getBatchSize();
+        this.flushIntervalNanos = configuration.getFlushInterval().roundTo(NANOSECONDS);
+        this.overflowPolicy = requireNonNull(configuration.getOverflowPolicy(), "overflowPolicy is null");
+        if (configuration.isAsyncEnabled()) {
+            queue = new ArrayBlockingQueue<>(configuration.getQueueSize());
+            executor = newSingleThreadExecutor(daemonThreadsNamed("query-history-writer-%s"));
+            executor.execute(this::processQueue);
+        }
+        else {
+            queue = null;
+            executor = null;
+        }
+    }
+
+    public void submit(QueryHistoryManager.QueryDetail queryDetail)
+    {
+        // Copy the fields, the caller is free to reuse the detail once this returns
+        QueryRecord record = new QueryRecord(
+                queryDetail.getQueryId(),
+                nullToEmpty(queryDetail.getQueryText()),
+                queryDetail.getBackendUrl(),
+                queryDetail.getUser(),
+                queryDetail.getSource(),
+                queryDetail.getCaptureTime(),
+                queryDetail.getRoutingGroup(),
+                queryDetail.getExternalUrl());
+        if (queue == null) {
+            write(List.of(record));
+            return;
+        }
+        if (closed) {
+            // Nothing drains the queue anymore
+            droppedRows.update(1);
+            return;
+        }
+        switch (overflowPolicy) {
+            case DROP_OLDEST -> {
+                while (!queue.offer(record)) {
+                    if (queue.poll() != null) {
+                        droppedRows.update(1);
+                    }
+                }
+            }
+            case BLOCK -> {
+                try {
+                    // Wait in steps, so that a submitter does not block forever once the writer is closed
+                    while (!queue.offer(record, BLOCK_CHECK_INTERVAL_MILLIS, MILLISECONDS)) {
+                        if (closed) {
+                            droppedRows.update(1);
+                            return;
+                        }
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedRows.update(1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the writer thread after flushing the records that are already queued. Records submitted
+     * afterwards are dropped.
+     */
+    public void close()
+    {
+        if (executor == null) {
+            return;
+        }
+        closed = true;
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(30, SECONDS)) {
+                log.warn("Timed out flushing %s queued query history records", queue.size());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processQueue()
+    {
+        List<QueryRecord> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                fillBatch(batch);
+            }
+            catch (InterruptedException e) {
+                // Shutting down: clear the interrupt so the JDBC driver does not abort the final flush
+                Thread.interrupted();
+                queue.drainTo(batch);
+                Lists.partition(batch, batchSize).forEach(this::write);
+                return;
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void fillBatch(List<QueryRecord> batch)
+            throws InterruptedException
+    {
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            QueryRecord record = queue.poll(remaining, NANOSECONDS);
+            if (record == null) {
+                return;
+            }
+            batch.add(record);
+        }
+    }
+
+    private void write(List<QueryRecord> records)
+    {
+        try (TimeStat.BlockTimer _ = flushTime.time()) {
+            insert(records);
+            writtenRows.update(records.size());
+        }
+        catch (RuntimeException e) {
+            if (records.size() == 1) {
+                failedRows.update(1);
+                log.error(e, "Failed to write query history for query %s", records.getFirst().queryId());
+                return;
+            }
+            // Retry row by row so that a single bad record does not discard the whole batch
+            log.warn(e, "Failed to write batch of %s query history records, retrying individually", records.size());
+            records.forEach(record -> write(List.of(record)));
+        }
+    }
+
+    private void insert(List<QueryRecord> records)
+    {
+        List<String> queryTextHashes = queryTextStore.store(records.stream().map(QueryRecord::queryText).toList());
+        if (records.size() == 1) {
+            QueryRecord record = records.getFirst();
+            dao.insertHistory(
+                    record.queryId(),
+                    queryTextHashes.getFirst(),
+                    record.backendUrl(),
+                    record.userName(),
+                    record.source(),
+                    record.created(),
+                    record.routingGroup(),
+                    record.externalUrl());
+            return;
+        }
+        dao.insertHistories(
+                records.stream().map(QueryRecord::queryId).toList(),
+                queryTextHashes,
+                records.stream().map(QueryRecord::backendUrl).toList(),
+                records.stream().map(QueryRecord::userName).toList(),
+                records.stream().map(QueryRecord::source).toList(),
+                records.stream().map(QueryRecord::created).toList(),
+                records.stream().map(QueryRecord::routingGroup).toList(),
+                records.stream().map(QueryRecord::externalUrl).toList());
+    }
+
+    @Managed
+    public int getQueueDepth()
+    {
+        return queue == null ? 0 : queue.size();
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getWrittenRows()
+    {
+        return writtenRows;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getDroppedRows()
+    {
+        return droppedRows;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getFailedRows()
+    {
+        return failedRows;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getFlushTime()
+    {
+        return flushTime;
+    }
+
+    private record QueryRecord(
+            String queryId,
+            String queryText,
+            String backendUrl,
+            String userName,
+            String source,
+            long created,
+            String routingGroup,
+            String externalUrl) {}
+}
@@ -13,9 +13,11 @@
  */
 package io.trino.gateway.ha.router;
 
+import com.google.common.base.Ticker;
 import io.airlift.http.client.HttpClient;
 import io.airlift.units.Duration;
 import io.trino.gateway.ha.config.RequestAnalyzerConfig;
+import io.trino.gateway.ha.config.RoutingRulesConfiguration;
 import io.trino.gateway.ha.config.RulesExternalConfiguration;
 import io.trino.gateway.ha.router.schema.RoutingSelectorResponse;
 import jakarta.servlet.http.HttpServletRequest;
@@ -45,6 +47,24 @@ public interface RoutingGroupSelector
         return new FileBasedRoutingGroupSelector(rulesConfigPath, rulesRefreshPeriod, requestAnalyzerConfig);
     }
 
+    /**
+     * Routing group selector that uses routing engine rules
+     * to determine the right routing group, and reports statistics
+     * about each rule.
+     */
+    static RoutingGroupSelector byRoutingRulesEngine(
+            RoutingRulesConfiguration routingRulesConfiguration,
+            RequestAnalyzerConfig requestAnalyzerConfig,
+            RoutingRuleStats routingRuleStats)
+    {
+        return new FileBasedRoutingGroupSelector(
+                routingRulesConfiguration.getRulesConfigPath(),
+                routingRulesConfiguration.getRulesRefreshPeriod(),
+                requestAnalyzerConfig,
+                routingRulesConfiguration.isRulesIndexEnabled(),
+                routingRuleStats);
+    }
+
     /**
      * Routing group selector that uses RESTful API
      * to determine the right routing group.
@@ -57,6 +77,20 @@ public interface RoutingGroupSelector
         return new ExternalRoutingGroupSelector(httpClient, rulesExternalConfiguration, requestAnalyzerConfig);
     }
 
+    /**
+     * Routing group selector that uses RESTful API
+     * to determine the right routing group, and reports statistics
+     * about the calls to it.
+     */
+    static RoutingGroupSelector byRoutingExternal(
+            HttpClient httpClient,
+            RulesExternalConfiguration rulesExternalConfiguration,
+            RequestAnalyzerConfig requestAnalyzerConfig,
+            ExternalRoutingStats externalRoutingStats)
+    {
+        return new ExternalRoutingGroupSelector(httpClient, rulesExternalConfiguration, requestAnalyzerConfig, externalRoutingStats, Ticker.systemTicker());
+    }
+
     /**
      * Given an HTTP request find a routing group to direct the request to. If a routing group cannot
      * be determined return null.
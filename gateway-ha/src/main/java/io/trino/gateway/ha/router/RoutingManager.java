@@ -16,6 +16,7 @@ package io.trino.gateway.ha.router;
 import io.trino.gateway.ha.clustermonitor.ClusterStats;
 import io.trino.gateway.ha.clustermonitor.TrinoStatus;
 import io.trino.gateway.ha.config.ProxyBackendConfiguration;
+import io.trino.gateway.ha.persistence.dao.QueryRoute;
 
 import java.util.List;
 import java.util.Optional;
@@ -53,28 +54,20 @@ public interface RoutingManager
     void updateClusterStats(List<ClusterStats> stats);
 
     /**
-     * Associates a backend cluster with a specific query ID for sticky routing.
+     * Associates a backend cluster, routing group and external URL with a specific query ID for sticky routing.
      *
      * @param queryId the unique identifier of the query
-     * @param backend the backend cluster to associate with the query
+     * @param queryRoute the route to associate with the query
      */
-    void setBackendForQueryId(String queryId, String backend);
+    void setQueryRoute(String queryId, QueryRoute queryRoute);
 
     /**
-     * Associates a routing group with a specific query ID.
+     * Finds the route associated with a given query ID, from the cache, the query history or the backends.
      *
      * @param queryId the unique identifier of the query
-     * @param routingGroup the routing group to associate with the query
+     * @return the route, or empty if no backend is known to have the query
      */
-    void setRoutingGroupForQueryId(String queryId, String routingGroup);
-
-    /**
-     * Associates an external URL with a specific query ID for routing.
-     *
-     * @param queryId the unique identifier of the query
-     * @param externalUrl the external URL to associate with the query
-     */
-    void setExternalUrlForQueryId(String queryId, String externalUrl);
+    Optional<QueryRoute> findQueryRoute(String queryId);
 
     /**
      * Finds the backend cluster associated with a given query ID.
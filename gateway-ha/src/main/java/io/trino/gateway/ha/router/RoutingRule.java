@@ -23,4 +23,39 @@ public interface RoutingRule
     void evaluateAction(Map<String, String> result, Map<String, Object> data, Map<String, Object> state);
 
     Integer getPriority();
+
+    /**
+     * Like {@link #evaluateCondition(Map, Map)}, for callers that evaluate many rules against the same request
+     * and prepare its variables once.
+     */
+    default boolean evaluateCondition(RoutingRuleVariables variables)
+    {
+        return evaluateCondition(variables.data(), variables.state());
+    }
+
+    /**
+     * Like {@link #evaluateAction(Map, Map, Map)}, for callers that evaluate many rules against the same request
+     * and prepare its variables once.
+     */
+    default void evaluateAction(RoutingRuleVariables variables)
+    {
+        evaluateAction(variables.result(), variables.data(), variables.state());
+    }
+
+    /**
+     * Name used to report statistics about the rule.
+     */
+    default String getName()
+    {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Whether evaluating this rule may read the given variable. Used to skip preparing
+     * variables that no rule reads, so the default conservatively answers {@code true}.
+     */
+    default boolean mayReadVariable(String name)
+    {
+        return true;
+    }
 }
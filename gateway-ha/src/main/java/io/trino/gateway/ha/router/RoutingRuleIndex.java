@@ -0,0 +1,344 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.router;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.trino.sql.parser.ParsingException;
+import io.trino.sql.tree.QualifiedName;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Finds the routing rules whose condition can be true for a request without evaluating every condition.
+ *
+ * <p>A condition whose first top level conjunct compares a header, the user, a catalog or a table with a
+ * string literal, for example {@code request.getHeader("X-Trino-Source") == "airflow" && ...}, is indexed
+ * by that literal: the rule is only a candidate when the request has the compared value. When the
+ * conjunct is the whole condition, the index decides the condition and it is not evaluated at all.
+ * The conditions of the remaining rules are opaque, and those rules are always candidates.
+ * Only the first conjunct is used, so that skipping a rule never skips a side effect of its condition.
+ */
+final class RoutingRuleIndex
+{
+    private static final String STRING_LITERAL = "\"([^\"\\\\]*)\"";
+    private static final Pattern HEADER_EQUALS = Pattern.compile("request\\s*\\.\\s*getHeader\\s*\\(\\s*" + STRING_LITERAL + "\\s*\\)\\s*==\\s*" + STRING_LITERAL);
+    private static final Pattern HEADER_EQUALS_REVERSED = Pattern.compile(STRING_LITERAL + "\\s*==\\s*request\\s*\\.\\s*getHeader\\s*\\(\\s*" + STRING_LITERAL + "\\s*\\)");
+    private static final Pattern USER_EQUALS = Pattern.compile("trinoRequestUser\\s*\\.\\s*userExistsAndEquals\\s*\\(\\s*" + STRING_LITERAL + "\\s*\\)");
+    private static final Pattern CATALOGS_CONTAIN = Pattern.compile("trinoQueryProperties\\s*\\.\\s*getCatalogs\\s*\\(\\s*\\)\\s*\\.\\s*contains\\s*\\(\\s*" + STRING_LITERAL + "\\s*\\)");
+    private static final Pattern TABLES_CONTAIN = Pattern.compile("trinoQueryProperties\\s*\\.\\s*tablesContains\\s*\\(\\s*" + STRING_LITERAL + "\\s*\\)");
+
+    // Words of MVEL constructs that bind more loosely than && or are statements, which make splitting on && unsafe
+    private static final Set<String> UNSAFE_WORDS = ImmutableSet.of(
+            "and", "or", "if", "else", "for", "foreach", "while", "until", "do", "def", "function", "return", "with", "import", "import_static", "modify");
+
+    private final List<RoutingRule> rules;
+    private final BitSet opaque = new BitSet();
+    private final BitSet decided = new BitSet();
+    private final Map<String, Map<String, BitSet>> byHeader = new HashMap<>();
+    private final Map<String, BitSet> byUser = new HashMap<>();
+    private final Map<String, BitSet> byCatalog = new HashMap<>();
+    private final Map<QualifiedName, BitSet> byTable = new HashMap<>();
+    private final BitSet userRules = new BitSet();
+    private final BitSet queryPropertiesRules = new BitSet();
+
+    private RoutingRuleIndex(List<RoutingRule> rules, boolean indexRules, boolean analyzeRequest)
+    {
+        this.rules = ImmutableList.copyOf(requireNonNull(rules, "rules is null"));
+        for (int position = 0; position < this.rules.size(); position++) {
+            Optional<Discriminator> discriminator = indexRules ? discriminator(this.rules.get(position)) : Optional.empty();
+            if (discriminator.isEmpty() || (discriminator.get().kind() != Kind.HEADER && !analyzeRequest)) {
+                // Without request analysis the user and the query are not bound, evaluating the condition reports that
+                opaque.set(position);
+                continue;
+            }
+            add(discriminator.get(), position);
+        }
+    }
+
+    /**
+     * Index of the rules, which must be in the order in which they are evaluated.
+     */
+    static RoutingRuleIndex indexed(List<RoutingRule> rules, boolean analyzeRequest)
+    {
+        return new RoutingRuleIndex(rules, true, analyzeRequest);
+    }
+
+    /**
+     * Index that treats every condition as opaque, so that every rule is evaluated.
+     */
+    static RoutingRuleIndex sequential(List<RoutingRule> rules)
+    {
+        return new RoutingRuleIndex(rules, false, false);
+    }
+
+    List<RoutingRule> rules()
+    {
+        return rules;
+    }
+
+    @VisibleForTesting
+    int indexedRuleCount()
+    {
+        return rules.size() - opaque.cardinality();
+    }
+
+    /**
+     * Finds the candidate rules for the request, with {@code queryProperties} and {@code requestUser} as bound
+     * for the rules, or {@code null} if they are not.
+     */
+    Candidates findCandidates(HttpServletRequest request, TrinoQueryProperties queryProperties, TrinoRequestUser requestUser)
+    {
+        BitSet matches = new BitSet(rules.size());
+        byHeader.forEach((name, rulesByValue) -> {
+            String value = request.getHeader(name);
+            if (value != null) {
+                orIfPresent(matches, rulesByValue.get(value));
+            }
+        });
+
+        BitSet candidates = (BitSet) opaque.clone();
+        if (!byUser.isEmpty()) {
+            if (requestUser == null) {
+                candidates.or(userRules);
+            }
+            else {
+                requestUser.getUser().ifPresent(user -> orIfPresent(matches, byUser.get(user)));
+            }
+        }
+        if (!byCatalog.isEmpty() || !byTable.isEmpty()) {
+            if (queryProperties == null) {
+                candidates.or(queryPropertiesRules);
+            }
+            else {
+                lookUpAll(matches, byCatalog, queryProperties::getCatalogs);
+                lookUpAll(matches, byTable, queryProperties::getTables);
+            }
+        }
+        candidates.or(matches);
+
+        BitSet known = (BitSet) matches.clone();
+        known.and(decided);
+        return new Candidates(candidates, known);
+    }
+
+    private static <K> void lookUpAll(BitSet matches, Map<K, BitSet> index, Supplier<Set<K>> keys)
+    {
+        if (!index.isEmpty()) {
+            keys.get().forEach(key -> orIfPresent(matches, index.get(key)));
+        }
+    }
+
+    private static void orIfPresent(BitSet matches, BitSet positions)
+    {
+        if (positions != null) {
+            matches.or(positions);
+        }
+    }
+
+    private void add(Discriminator discriminator, int position)
+    {
+        switch (discriminator.kind()) {
+            case HEADER -> byHeader.computeIfAbsent(discriminator.key(), _ -> new HashMap<>())
+                    .computeIfAbsent(discriminator.value(), _ -> new BitSet())
+                    .set(position);
+            case USER -> {
+                byUser.computeIfAbsent(discriminator.value(), _ -> new BitSet()).set(position);
+                userRules.set(position);
+            }
+            case CATALOG -> {
+                byCatalog.computeIfAbsent(discriminator.value(), _ -> new BitSet()).set(position);
+                queryPropertiesRules.set(position);
+            }
+            case TABLE -> {
+                byTable.computeIfAbsent(TrinoQueryProperties.parseIdentifierStringToQualifiedName(discriminator.value()), _ -> new BitSet()).set(position);
+                queryPropertiesRules.set(position);
+            }
+        }
+        if (discriminator.wholeCondition()) {
+            decided.set(position);
+        }
+    }
+
+    private static Optional<Discriminator> discriminator(RoutingRule rule)
+    {
+        if (!(rule instanceof MVELRoutingRule mvelRule)) {
+            return Optional.empty();
+        }
+        return mvelRule.getConditionSource().flatMap(RoutingRuleIndex::discriminator);
+    }
+
+    @VisibleForTesting
+    static Optional<Discriminator> discriminator(String condition)
+    {
+        Optional<List<String>> conjuncts = splitConjuncts(condition);
+        if (conjuncts.isEmpty()) {
+            return Optional.empty();
+        }
+        String first = conjuncts.get().getFirst();
+        boolean wholeCondition = conjuncts.get().size() == 1;
+        Map<Pattern, Function<Matcher, Discriminator>> shapes = ImmutableMap.of(
+                HEADER_EQUALS, matcher -> new Discriminator(Kind.HEADER, matcher.group(1), matcher.group(2), wholeCondition),
+                HEADER_EQUALS_REVERSED, matcher -> new Discriminator(Kind.HEADER, matcher.group(2), matcher.group(1), wholeCondition),
+                USER_EQUALS, matcher -> new Discriminator(Kind.USER, "", matcher.group(1), wholeCondition),
+                CATALOGS_CONTAIN, matcher -> new Discriminator(Kind.CATALOG, "", matcher.group(1), wholeCondition),
+                TABLES_CONTAIN, matcher -> new Discriminator(Kind.TABLE, "", matcher.group(1), wholeCondition));
+        for (Map.Entry<Pattern, Function<Matcher, Discriminator>> shape : shapes.entrySet()) {
+            Matcher matcher = shape.getKey().matcher(first);
+            if (matcher.matches()) {
+                Discriminator discriminator = shape.getValue().apply(matcher);
+                if (discriminator.kind() == Kind.TABLE && !isValidTableName(discriminator.value())) {
+                    return Optional.empty();
+                }
+                return Optional.of(discriminator);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static boolean isValidTableName(String name)
+    {
+        try {
+            TrinoQueryProperties.parseIdentifierStringToQualifiedName(name);
+            return true;
+        }
+        catch (ParsingException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Splits the expression on its top level {@code &&}, or returns empty if the expression may be anything
+     * other than a plain conjunction.
+     */
+    private static Optional<List<String>> splitConjuncts(String expression)
+    {
+        ImmutableList.Builder<String> conjuncts = ImmutableList.builder();
+        int depth = 0;
+        int start = 0;
+        char quote = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                }
+                else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            switch (c) {
+                case '"', '\'' -> quote = c;
+                case '(', '[', '{' -> depth++;
+                case ')', ']', '}' -> {
+                    depth--;
+                    if (depth < 0) {
+                        return Optional.empty();
+                    }
+                }
+                default -> {
+                    if (depth > 0) {
+                        continue;
+                    }
+                    if (c == '&' && i + 1 < expression.length() && expression.charAt(i + 1) == '&') {
+                        conjuncts.add(expression.substring(start, i).strip());
+                        start = i + 2;
+                        i++;
+                    }
+                    else if (c == '|' || c == '?' || c == ';' || isAssignment(expression, i)) {
+                        return Optional.empty();
+                    }
+                    else if (Character.isJavaIdentifierStart(c)) {
+                        int end = i + 1;
+                        while (end < expression.length() && Character.isJavaIdentifierPart(expression.charAt(end))) {
+                            end++;
+                        }
+                        if (UNSAFE_WORDS.contains(expression.substring(i, end))) {
+                            return Optional.empty();
+                        }
+                        i = end - 1;
+                    }
+                }
+            }
+        }
+        if (depth != 0 || quote != 0) {
+            return Optional.empty();
+        }
+        conjuncts.add(expression.substring(start).strip());
+        return Optional.of(conjuncts.build());
+    }
+
+    private static boolean isAssignment(String expression, int position)
+    {
+        if (expression.charAt(position) != '=') {
+            return false;
+        }
+        boolean partOfPrevious = position > 0 && "=!<>+-*/%&|^".indexOf(expression.charAt(position - 1)) >= 0;
+        boolean partOfNext = position + 1 < expression.length() && expression.charAt(position + 1) == '=';
+        if (partOfNext) {
+            return false;
+        }
+        if (partOfPrevious) {
+            // Compound assignments such as += and the second character of == or !=
+            return "+-*/%&|^".indexOf(expression.charAt(position - 1)) >= 0;
+        }
+        return true;
+    }
+
+    /**
+     * Rules to evaluate for a request, as positions in {@link #rules()}, and those whose condition
+     * is already known to be true.
+     */
+    record Candidates(BitSet rules, BitSet known)
+    {
+        Candidates
+        {
+            requireNonNull(rules, "rules is null");
+            requireNonNull(known, "known is null");
+        }
+    }
+
+    enum Kind
+    {
+        HEADER,
+        USER,
+        CATALOG,
+        TABLE,
+    }
+
+    record Discriminator(Kind kind, String key, String value, boolean wholeCondition)
+    {
+        Discriminator
+        {
+            requireNonNull(kind, "kind is null");
+            requireNonNull(key, "key is null");
+            requireNonNull(value, "value is null");
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.router;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import io.airlift.log.Logger;
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import org.weakref.jmx.MBeanExporter;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Statistics of loading the routing rules, and of each rule by name.
+ */
+public class RoutingRuleStats
+{
+    private static final Logger log = Logger.get(RoutingRuleStats.class);
+
+    private final Optional<MBeanExporter> exporter;
+    // MBeanExporter uses weak references, so the stats are kept here as well
+    private final Map<String, RuleStats> ruleStats = new ConcurrentHashMap<>();
+    private final TimeStat loadTime = new TimeStat(MILLISECONDS);
+    private final CounterStat reloadFailures = new CounterStat();
+    private volatile long rulesVersion;
+    private volatile int ruleCount;
+
+    @Inject
+    public RoutingRuleStats(MBeanExporter exporter)
+    {
+        this.exporter = Optional.of(requireNonNull(exporter, "exporter is null"));
+    }
+
+    /**
+     * Statistics that are collected but not exported.
+     */
+    public RoutingRuleStats()
+    {
+        this.exporter = Optional.empty();
+    }
+
+    public RuleStats getRuleStats(String ruleName)
+    {
+        return ruleStats.computeIfAbsent(ruleName, name -> {
+            RuleStats stats = new RuleStats();
+            exporter.ifPresent(mbeanExporter -> {
+                try {
+                    mbeanExporter.exportWithGeneratedName(stats, RuleStats.class, ruleProperties(name));
+                }
+                catch (RuntimeException e) {
+                    log.warn(e, "Failed to export statistics of routing rule %s", name);
+                }
+            });
+            return stats;
+        });
+    }
+
+    /**
+     * Drops the statistics of rules that no longer exist.
+     */
+    public synchronized void retainRules(Set<String> ruleNames)
+    {
+        for (String ruleName : Set.copyOf(ruleStats.keySet())) {
+            if (!ruleNames.contains(ruleName) && ruleStats.remove(ruleName) != null) {
+                exporter.ifPresent(mbeanExporter -> {
+                    try {
+                        mbeanExporter.unexportWithGeneratedName(RuleStats.class, ruleProperties(ruleName));
+                    }
+                    catch (RuntimeException e) {
+                        log.warn(e, "Failed to unexport statistics of routing rule %s", ruleName);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Records that a version of the rules was compiled and is now in use.
+     */
+    public void rulesLoaded(long version, int ruleCount, long loadNanos)
+    {
+        loadTime.add(loadNanos, NANOSECONDS);
+        this.rulesVersion = version;
+        this.ruleCount = ruleCount;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getLoadTime()
+    {
+        return loadTime;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getReloadFailures()
+    {
+        return reloadFailures;
+    }
+
+    @Managed
+    public long getRulesVersion()
+    {
+        return rulesVersion;
+    }
+
+    @Managed
+    public int getRuleCount()
+    {
+        return ruleCount;
+    }
+
+    private static Map<String, String> ruleProperties(String ruleName)
+    {
+        return ImmutableMap.<String, String>builder()
+                .put("name", "RoutingRuleStats")
+                .put("rule", ruleName)
+                .build();
+    }
+
+    public static class RuleStats
+    {
+        private final TimeStat evaluationTime = new TimeStat(MILLISECONDS);
+        private final CounterStat matches = new CounterStat();
+
+        @Managed
+        @Nested
+        public TimeStat getEvaluationTime()
+        {
+            return evaluationTime;
+        }
+
+        @Managed
+        @Nested
+        public CounterStat getMatches()
+        {
+            return matches;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.router;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Variables visible to the routing rules evaluated for a single request: the request data,
+ * plus the {@code state} shared between rules and the {@code result} the actions fill in.
+ */
+public final class RoutingRuleVariables
+{
+    public static final String STATE = "state";
+    public static final String RESULT = "result";
+
+    private final Map<String, Object> data;
+    private final Map<String, Object> state = new HashMap<>();
+    private final Map<String, String> result = new HashMap<>();
+    private final Map<String, Object> variables;
+
+    public RoutingRuleVariables(Map<String, Object> data)
+    {
+        this.data = requireNonNull(data, "data is null");
+        Map<String, Object> variables = new HashMap<>(data);
+        variables.put(STATE, state);
+        variables.put(RESULT, result);
+        // Rules cannot define variables, as when each rule received its own immutable copy
+        this.variables = Collections.unmodifiableMap(variables);
+    }
+
+    public Map<String, Object> data()
+    {
+        return data;
+    }
+
+    public Map<String, Object> state()
+    {
+        return state;
+    }
+
+    public Map<String, String> result()
+    {
+        return result;
+    }
+
+    /**
+     * All variables, the data together with {@code state} and {@code result}.
+     */
+    public Map<String, Object> asMap()
+    {
+        return variables;
+    }
+}
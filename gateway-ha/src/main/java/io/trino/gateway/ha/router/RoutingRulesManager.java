@@ -32,15 +32,23 @@ import java.util.List;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
 
 public class RoutingRulesManager
 {
     private final String rulesConfigPath;
+    private final RoutingGroupSelector routingGroupSelector;
 
-    @Inject
     public RoutingRulesManager(HaGatewayConfiguration configuration)
+    {
+        this(configuration, RoutingGroupSelector.byRoutingGroupHeader());
+    }
+
+    @Inject
+    public RoutingRulesManager(HaGatewayConfiguration configuration, RoutingGroupSelector routingGroupSelector)
     {
         this.rulesConfigPath = configuration.getRoutingRules().getRulesConfigPath();
+        this.routingGroupSelector = requireNonNull(routingGroupSelector, "routingGroupSelector is null");
     }
 
     public List<RoutingRule> getRoutingRules()
@@ -82,6 +90,10 @@ public class RoutingRulesManager
                 }
             }
             Files.writeString(path, yamlContent.toString(), UTF_8);
+            // Use the updated rules right away rather than once the file is found to have changed
+            if (routingGroupSelector instanceof FileBasedRoutingGroupSelector fileBasedSelector) {
+                fileBasedSelector.updateRules(yamlContent.toString());
+            }
             lock.release();
         }
         catch (IOException e) {
@@ -14,6 +14,7 @@
 package io.trino.gateway.ha.router;
 
 import com.google.inject.Inject;
+import io.airlift.http.client.HttpClient;
 import io.trino.gateway.ha.config.ProxyBackendConfiguration;
 import io.trino.gateway.ha.config.RoutingConfiguration;
 
@@ -30,9 +31,10 @@ public class StochasticRoutingManager
     public StochasticRoutingManager(
             GatewayBackendManager gatewayBackendManager,
             QueryHistoryManager queryHistoryManager,
-            RoutingConfiguration routingConfiguration)
+            RoutingConfiguration routingConfiguration,
+            @ForRouter HttpClient httpClient)
     {
-        super(gatewayBackendManager, queryHistoryManager, routingConfiguration);
+        super(gatewayBackendManager, queryHistoryManager, routingConfiguration, httpClient);
     }
 
     @Override
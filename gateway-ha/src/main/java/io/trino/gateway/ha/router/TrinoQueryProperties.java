@@ -26,6 +26,7 @@ import com.google.common.collect.ImmutableSet;
 import io.airlift.compress.v3.zstd.ZstdDecompressor;
 import io.airlift.json.JsonCodec;
 import io.airlift.log.Logger;
+import io.trino.gateway.ha.handler.BufferedRequestBody;
 import io.trino.sql.parser.ParsingException;
 import io.trino.sql.parser.SqlParser;
 import io.trino.sql.tree.AddColumn;
@@ -84,10 +85,7 @@ import jakarta.ws.rs.HttpMethod;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.MediaType;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -113,12 +111,16 @@ public class TrinoQueryProperties
     public static final String TRINO_SCHEMA_HEADER_NAME = "X-Trino-Schema";
     public static final String TRINO_PREPARED_STATEMENT_HEADER_NAME = "X-Trino-Prepared-Statement";
 
-    private final Logger log = Logger.get(TrinoQueryProperties.class);
+    // The parser holds no per-statement state and is safe to share between requests
+    private static final SqlParser SQL_PARSER = new SqlParser();
+
+    private static final Logger log = Logger.get(TrinoQueryProperties.class);
     private final boolean isClientsUseV2Format;
     private final int maxBodySize;
     private final Optional<String> defaultCatalog;
     private final Optional<String> defaultSchema;
     private final ZstdDecompressor decompressor = ZstdDecompressor.create();
+    private final Optional<QueryAnalysisCache> analysisCache;
 
     private String body = "";
     private String queryType = "";
@@ -130,6 +132,8 @@ public class TrinoQueryProperties
     private boolean isNewQuerySubmission;
     private Optional<String> errorMessage = Optional.empty();
     private Optional<String> queryId = Optional.empty();
+    // Parses the statement on first access of a property derived from it, null once done
+    private Runnable pendingAnalysis;
 
     @JsonCreator
     public TrinoQueryProperties(
@@ -149,7 +153,7 @@ public class TrinoQueryProperties
         this.queryType = requireNonNullElse(queryType, "");
         this.resourceGroupQueryType = resourceGroupQueryType;
         List<String> defaultTables = ImmutableList.of();
-        this.tables = requireNonNullElse(tables, defaultTables).stream().map(this::parseIdentifierStringToQualifiedName).collect(Collectors.toSet());
+        this.tables = requireNonNullElse(tables, defaultTables).stream().map(TrinoQueryProperties::parseIdentifierStringToQualifiedName).collect(Collectors.toSet());
         this.defaultCatalog = requireNonNullElse(defaultCatalog, Optional.empty());
         this.defaultSchema = requireNonNullElse(defaultSchema, Optional.empty());
         this.catalogs = requireNonNullElse(catalogs, ImmutableSet.of());
@@ -159,6 +163,7 @@ public class TrinoQueryProperties
         this.errorMessage = requireNonNullElse(errorMessage, Optional.empty());
         isClientsUseV2Format = false;
         maxBodySize = -1;
+        analysisCache = Optional.empty();
     }
 
     public TrinoQueryProperties()
@@ -177,57 +182,92 @@ public class TrinoQueryProperties
     }
 
     public TrinoQueryProperties(ContainerRequestContext requestContext, boolean isClientsUseV2Format, int maxBodySize)
+    {
+        this(requestContext, Optional.empty(), isClientsUseV2Format, maxBodySize, Optional.empty());
+    }
+
+    /**
+     * Analyzes a request whose body has already been captured, so that the entity stream is not read again.
+     */
+    public TrinoQueryProperties(ContainerRequestContext requestContext, BufferedRequestBody requestBody, boolean isClientsUseV2Format, int maxBodySize)
+    {
+        this(requestContext, Optional.of(requestBody), isClientsUseV2Format, maxBodySize, Optional.empty());
+    }
+
+    /**
+     * Like {@link #TrinoQueryProperties(ContainerRequestContext, BufferedRequestBody, boolean, int)}, but reuses the analysis
+     * of a previous request with the same statement, default catalog, default schema and prepared statements.
+     */
+    public TrinoQueryProperties(ContainerRequestContext requestContext, BufferedRequestBody requestBody, boolean isClientsUseV2Format, int maxBodySize, QueryAnalysisCache analysisCache)
+    {
+        this(requestContext, Optional.of(requestBody), isClientsUseV2Format, maxBodySize, Optional.of(analysisCache));
+    }
+
+    private TrinoQueryProperties(
+            ContainerRequestContext requestContext,
+            Optional<BufferedRequestBody> requestBody,
+            boolean isClientsUseV2Format,
+            int maxBodySize,
+            Optional<QueryAnalysisCache> analysisCache)
     {
         requireNonNull(requestContext, "requestContext is null");
         this.isClientsUseV2Format = isClientsUseV2Format;
         this.maxBodySize = maxBodySize;
+        this.analysisCache = requireNonNull(analysisCache, "analysisCache is null");
 
         defaultCatalog = Optional.ofNullable(requestContext.getHeaderString(TRINO_CATALOG_HEADER_NAME));
         defaultSchema = Optional.ofNullable(requestContext.getHeaderString(TRINO_SCHEMA_HEADER_NAME));
         if (requestContext.getMethod().equals(HttpMethod.POST)) {
             isNewQuerySubmission = true;
-            processRequestBody(requestContext);
+            captureRequestBody(requestContext, requestBody);
         }
     }
 
-    private void processRequestBody(BufferedReader reader, Map<String, String> preparedStatements)
+    private void processRequestBody(BufferedRequestBody requestBody, Map<String, String> preparedStatements)
     {
-        try (reader) {
-            if (reader == null) {
-                log.warn("HTTP request returned null reader");
-                body = "";
-                return;
-            }
+        if (requestBody.isEmpty()) {
+            log.warn("query text is empty");
+            return;
+        }
+        // The number of characters never exceeds the number of UTF-8 bytes, so only decode to check the length of large bodies
+        if (requestBody.size() >= maxBodySize && requestBody.toUtf8String().length() >= maxBodySize) {
+            log.warn("Query length greater or equal to requestAnalyzerConfig.maxBodySize detected");
+            return;
+            // The body is truncated - there is a chance that it could still be syntactically valid SQL, for example if truncated on
+            // whitespace preceding a UNION. Exit out of caution
+        }
+        body = requestBody.toUtf8String();
 
-            SqlParser parser = new SqlParser();
-            reader.mark(maxBodySize);
-            char[] buffer = new char[maxBodySize];
-            int nChars = reader.read(buffer, 0, maxBodySize);
-            reader.reset();
-            if (nChars <= 0) {
-                log.warn("query text is empty");
-                return;
+        if (isClientsUseV2Format) {
+            try {
+                AlternateStatementRequestBodyFormat alternateRequestBody = AlternateStatementRequestBodyFormat.ALTERNATE_STATEMENT_FORMAT_CODEC.fromJson(body);
+                body = alternateRequestBody.getQuery();
+                preparedStatements = alternateRequestBody.getPreparedStatements();
             }
-            if (nChars == maxBodySize) {
-                log.warn("Query length greater or equal to requestAnalyzerConfig.maxBodySize detected");
-                return;
-                // The body is truncated - there is a chance that it could still be syntactically valid SQL, for example if truncated on
-                // whitespace preceding a UNION. Exit out of caution
+            catch (IllegalArgumentException e) {
+                // Do nothing, request is using standard format
             }
-            body = String.valueOf(buffer, 0, nChars);
+        }
 
-            if (isClientsUseV2Format) {
-                try {
-                    AlternateStatementRequestBodyFormat requestBody = AlternateStatementRequestBodyFormat.ALTERNATE_STATEMENT_FORMAT_CODEC.fromJson(body);
-                    body = requestBody.getQuery();
-                    preparedStatements = requestBody.getPreparedStatements();
-                }
-                catch (IllegalArgumentException e) {
-                    // Do nothing, request is using standard format
-                }
-            }
+        if (analysisCache.isEmpty()) {
+            analyzeStatement(preparedStatements);
+            return;
+        }
+        Map<String, String> statementPreparedStatements = preparedStatements;
+        applyAnalysis(analysisCache.orElseThrow().get(body, defaultCatalog, defaultSchema, statementPreparedStatements, () -> {
+            analyzeStatement(statementPreparedStatements);
+            return currentAnalysis();
+        }));
+    }
 
-            Statement statement = parser.createStatement(body);
+    /**
+     * Parses {@link #body} and fills in the analysis fields. The result only depends on the body,
+     * the default catalog and schema, and the prepared statements, which makes it cacheable.
+     */
+    private void analyzeStatement(Map<String, String> preparedStatements)
+    {
+        try {
+            Statement statement = SQL_PARSER.createStatement(body);
             if (statement.getClass() == Execute.class) {
                 String statementName = ((Execute) statement).getName().getValue();
                 if (!preparedStatements.containsKey(statementName)) {
@@ -236,11 +276,11 @@ public class TrinoQueryProperties
                     return;
                 }
                 body = preparedStatements.get(statementName);
-                statement = parser.createStatement(body);
+                statement = SQL_PARSER.createStatement(body);
             }
             else if (statement instanceof ExecuteImmediate executeImmediate) {
                 body = executeImmediate.getStatement().getValue();
-                statement = parser.createStatement(body);
+                statement = SQL_PARSER.createStatement(body);
             }
 
             queryType = statement.getClass().getSimpleName();
@@ -261,10 +301,6 @@ public class TrinoQueryProperties
                     tables.stream().map(qualifiedName -> "%s.%s".formatted(qualifiedName.getParts().getFirst(), qualifiedName.getParts().get(1))).iterator());
             catalogSchemas = catalogSchemaBuilder.build();
         }
-        catch (IOException e) {
-            log.warn("Error extracting request body for rules processing: %s", e.getMessage());
-            errorMessage = Optional.of(e.getMessage());
-        }
         catch (ParsingException e) {
             log.info("Could not parse request body as SQL: %s; Message: %s", body, e.getMessage());
             errorMessage = Optional.of(e.getMessage());
@@ -275,7 +311,29 @@ public class TrinoQueryProperties
         }
     }
 
-    private void processRequestBody(ContainerRequestContext requestContext)
+    private Analysis currentAnalysis()
+    {
+        return new Analysis(body, queryType, resourceGroupQueryType, tables, catalogs, schemas, catalogSchemas, errorMessage, queryId);
+    }
+
+    private void applyAnalysis(Analysis analysis)
+    {
+        body = analysis.body();
+        queryType = analysis.queryType();
+        resourceGroupQueryType = analysis.resourceGroupQueryType();
+        tables = analysis.tables();
+        catalogs = analysis.catalogs();
+        schemas = analysis.schemas();
+        catalogSchemas = analysis.catalogSchemas();
+        errorMessage = analysis.errorMessage();
+        queryId = analysis.queryId();
+    }
+
+    /**
+     * Captures what the analysis needs from the request, but defers parsing the statement until a property
+     * derived from it is first read, so requests whose routing never looks at the statement are not parsed.
+     */
+    private void captureRequestBody(ContainerRequestContext requestContext, Optional<BufferedRequestBody> capturedRequestBody)
     {
         if (!requestContext.hasEntity()) {
             return;
@@ -294,15 +352,27 @@ public class TrinoQueryProperties
             return;
         }
 
-        InputStream entityStream = requestContext.getEntityStream();
-        try (InputStreamReader entityReader = new InputStreamReader(entityStream, UTF_8);
-                BufferedReader reader = new BufferedReader(entityReader)) {
-            processRequestBody(reader, getPreparedStatements(requestContext));
+        List<String> preparedStatementHeaders = Optional.ofNullable(requestContext.getHeaders())
+                .map(headers -> headers.get(TRINO_PREPARED_STATEMENT_HEADER_NAME))
+                .map(ImmutableList::copyOf)
+                .orElse(ImmutableList.of());
+        try {
+            BufferedRequestBody requestBody = capturedRequestBody.isPresent()
+                    ? capturedRequestBody.get()
+                    : BufferedRequestBody.read(requestContext.getEntityStream());
+            pendingAnalysis = () -> processRequestBody(requestBody, preparedStatementHeaders);
         }
         catch (IOException e) {
             log.warn("Error extracting request body for rules processing: %s", e.getMessage());
             errorMessage = Optional.of(e.getMessage());
         }
+    }
+
+    private void processRequestBody(BufferedRequestBody requestBody, List<String> preparedStatementHeaders)
+    {
+        try {
+            processRequestBody(requestBody, getPreparedStatements(preparedStatementHeaders));
+        }
         catch (ParsingException e) {
             log.info("Could not parse request body as SQL: %s; Message: %s", body, e.getMessage());
             errorMessage = Optional.of(e.getMessage());
@@ -311,6 +381,19 @@ public class TrinoQueryProperties
             log.warn(e, "Error parsing request for rules");
             errorMessage = Optional.of(e.getMessage());
         }
+        catch (RuntimeException e) {
+            log.warn(e, "Failed to analyze query text. Using empty properties.");
+            applyAnalysis(new Analysis("", "", "", ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of(), Optional.empty(), Optional.empty()));
+        }
+    }
+
+    private synchronized void ensureAnalyzed()
+    {
+        if (pendingAnalysis != null) {
+            Runnable analysis = pendingAnalysis;
+            pendingAnalysis = null;
+            analysis.run();
+        }
     }
 
     private Map<String, String> getPreparedStatements(Enumeration<String> headers)
@@ -333,14 +416,10 @@ public class TrinoQueryProperties
         return preparedStatementsMapBuilder.build();
     }
 
-    private Map<String, String> getPreparedStatements(ContainerRequestContext requestContext)
+    private Map<String, String> getPreparedStatements(List<String> headers)
             throws RequestParsingException
     {
-        if (requestContext.getHeaders() == null) {
-            return ImmutableMap.of();
-        }
-        List<String> headers = requestContext.getHeaders().get(TRINO_PREPARED_STATEMENT_HEADER_NAME);
-        if (headers == null || headers.isEmpty()) {
+        if (headers.isEmpty()) {
             return ImmutableMap.of();
         }
         return getPreparedStatements(Collections.enumeration(headers));
@@ -560,18 +639,21 @@ public class TrinoQueryProperties
     @JsonProperty
     public String getBody()
     {
+        ensureAnalyzed();
         return body;
     }
 
     @JsonProperty
     public String getQueryType()
     {
+        ensureAnalyzed();
         return queryType;
     }
 
     @JsonProperty
     public String getResourceGroupQueryType()
     {
+        ensureAnalyzed();
         return resourceGroupQueryType;
     }
 
@@ -584,10 +666,11 @@ public class TrinoQueryProperties
     @JsonSerialize(using = QualifiedNameJsonSerializer.class)
     public Set<QualifiedName> getTables()
     {
+        ensureAnalyzed();
         return tables;
     }
 
-    private QualifiedName parseIdentifierStringToQualifiedName(String name)
+    static QualifiedName parseIdentifierStringToQualifiedName(String name)
     {
         char dot = '.';
         char quote = '"';
@@ -634,6 +717,7 @@ public class TrinoQueryProperties
 
     public boolean tablesContains(String testName)
     {
+        ensureAnalyzed();
         try {
             return tables.contains(parseIdentifierStringToQualifiedName(testName));
         }
@@ -651,18 +735,21 @@ public class TrinoQueryProperties
     @JsonProperty
     public Set<String> getCatalogs()
     {
+        ensureAnalyzed();
         return catalogs;
     }
 
     @JsonProperty
     public Set<String> getSchemas()
     {
+        ensureAnalyzed();
         return schemas;
     }
 
     @JsonProperty
     public Set<String> getCatalogSchemas()
     {
+        ensureAnalyzed();
         return catalogSchemas;
     }
 
@@ -675,18 +762,21 @@ public class TrinoQueryProperties
     @JsonProperty("isQueryParsingSuccessful")
     public boolean isQueryParsingSuccessful()
     {
+        ensureAnalyzed();
         return errorMessage.isEmpty();
     }
 
     @JsonProperty
     public Optional<String> getErrorMessage()
     {
+        ensureAnalyzed();
         return errorMessage;
     }
 
     @JsonIgnore
     public Optional<String> getQueryId()
     {
+        ensureAnalyzed();
         return queryId;
     }
 
@@ -729,6 +819,33 @@ public class TrinoQueryProperties
         }
     }
 
+    /**
+     * The part of the properties derived from the statement text, shared between requests by {@link QueryAnalysisCache}.
+     */
+    record Analysis(
+            String body,
+            String queryType,
+            String resourceGroupQueryType,
+            Set<QualifiedName> tables,
+            Set<String> catalogs,
+            Set<String> schemas,
+            Set<String> catalogSchemas,
+            Optional<String> errorMessage,
+            Optional<String> queryId)
+    {
+        Analysis
+        {
+            requireNonNull(body, "body is null");
+            requireNonNull(queryType, "queryType is null");
+            tables = ImmutableSet.copyOf(tables);
+            catalogs = ImmutableSet.copyOf(catalogs);
+            schemas = ImmutableSet.copyOf(schemas);
+            catalogSchemas = ImmutableSet.copyOf(catalogSchemas);
+            requireNonNull(errorMessage, "errorMessage is null");
+            requireNonNull(queryId, "queryId is null");
+        }
+    }
+
     public static class RequestParsingException
             extends Exception
     {
@@ -22,8 +22,14 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
 import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.Request;
 import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
@@ -34,14 +40,15 @@ import io.airlift.log.Logger;
 import io.trino.gateway.ha.config.RequestAnalyzerConfig;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.HttpHeaders;
+import org.weakref.jmx.Managed;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
 import static com.nimbusds.openid.connect.sdk.UserInfoResponse.parse;
 import static java.util.Locale.ENGLISH;
@@ -53,17 +60,22 @@ public class TrinoRequestUser
     public static final String TRINO_UI_TOKEN_NAME = "Trino-UI-Token";
     public static final String TRINO_SECURE_UI_TOKEN_NAME = "__Secure-Trino-ID-Token";
 
-    private Optional<String> user = Optional.empty();
-    private Optional<UserInfo> userInfo = Optional.empty();
+    // Extracting the user may decode a token or call the userinfo endpoint, so it is done on first access
+    private final Supplier<Optional<String>> user;
+    private volatile Optional<UserInfo> userInfo = Optional.empty();
 
     private static final Logger log = Logger.get(TrinoRequestUser.class);
 
-    private final Optional<LoadingCache<String, UserInfo>> userInfoCache;
+    private final Optional<LoadingCache<String, Optional<UserInfo>>> userInfoCache;
 
-    private TrinoRequestUser(ContainerRequestContext request, String userField, Optional<LoadingCache<String, UserInfo>> userInfoCache)
+    private TrinoRequestUser(ContainerRequestContext request, String userField, Optional<LoadingCache<String, Optional<UserInfo>>> userInfoCache)
     {
         this.userInfoCache = requireNonNull(userInfoCache);
-        user = extractUser(request, userField);
+        // Only the raw values are captured, the request context is not retained
+        String userHeader = request.getHeaderString(TRINO_USER_HEADER_NAME);
+        String authorizationHeader = request.getHeaderString(HttpHeaders.AUTHORIZATION);
+        Map<String, jakarta.ws.rs.core.Cookie> cookies = request.getCookies() == null ? ImmutableMap.of() : ImmutableMap.copyOf(request.getCookies());
+        user = Suppliers.memoize(() -> extractUser(userHeader, authorizationHeader, cookies, userField));
     }
 
     @JsonCreator
@@ -71,7 +83,7 @@ public class TrinoRequestUser
             @JsonProperty("user") Optional<String> user,
             @JsonProperty("userInfo") String userInfo)
     {
-        this.user = user;
+        this.user = Suppliers.ofInstance(user);
         this.userInfo = Optional.ofNullable(userInfo).map(u -> {
             try {
                 return UserInfo.parse(u);
@@ -88,31 +100,32 @@ public class TrinoRequestUser
     @JsonProperty
     public Optional<String> getUser()
     {
-        return user;
+        return user.get();
     }
 
     @SuppressWarnings("unused")
     @JsonSerialize(using = UserInfoJsonSerializer.class)
     public Optional<UserInfo> getUserInfo()
     {
+        // The user info is obtained while extracting the user
+        user.get();
         return userInfo;
     }
 
     @SuppressWarnings("unused")
     public boolean userExistsAndEquals(String testUser)
     {
-        return user.filter(testUser::equals).isPresent();
+        return user.get().filter(testUser::equals).isPresent();
     }
 
-    private Optional<String> extractUserFromCookies(ContainerRequestContext requestContext, String userField)
+    private Optional<String> extractUserFromCookies(Map<String, jakarta.ws.rs.core.Cookie> cookies, String userField)
     {
-        Map<String, jakarta.ws.rs.core.Cookie> cookies = requestContext.getCookies();
-        if (cookies == null || cookies.isEmpty()) {
+        if (cookies.isEmpty()) {
             log.debug("cookies are empty");
             return Optional.empty();
         }
 
-        log.debug("Trying to get user from cookie from ContainerRequestContext");
+        log.debug("Trying to get user from cookie");
         Optional<jakarta.ws.rs.core.Cookie> uiToken = Optional.ofNullable(cookies.get(TRINO_UI_TOKEN_NAME))
                 .or(() -> Optional.ofNullable(cookies.get(TRINO_SECURE_UI_TOKEN_NAME)));
 
@@ -129,20 +142,18 @@ public class TrinoRequestUser
         });
     }
 
-    private Optional<String> extractUser(ContainerRequestContext requestContext, String userField)
+    private Optional<String> extractUser(String userHeader, String authorizationHeader, Map<String, jakarta.ws.rs.core.Cookie> cookies, String userField)
     {
-        String header;
-        header = requestContext.getHeaderString(TRINO_USER_HEADER_NAME);
-        if (header != null) {
-            return Optional.of(header);
+        if (userHeader != null) {
+            return Optional.of(userHeader);
         }
 
-        Optional<String> user = extractUserFromAuthorizationHeader(requestContext.getHeaderString(HttpHeaders.AUTHORIZATION), userField);
+        Optional<String> user = extractUserFromAuthorizationHeader(authorizationHeader, userField);
         if (user.isPresent()) {
             return user;
         }
 
-        return extractUserFromCookies(requestContext, userField);
+        return extractUserFromCookies(cookies, userField);
     }
 
     private Optional<String> extractUserFromAuthorizationHeader(String header, String userField)
@@ -193,8 +204,8 @@ public class TrinoRequestUser
 
         if (userInfoCache.isPresent()) {
             try {
-                userInfo = Optional.of(userInfoCache.orElseThrow().get(token));
-                return Optional.of(userInfo.orElseThrow().getSubject().toString());
+                userInfo = userInfoCache.orElseThrow().get(token);
+                return userInfo.map(info -> info.getSubject().toString());
             }
             catch (RuntimeException e) {
                 log.error(e, "Could not get userInfo");
@@ -207,16 +218,22 @@ public class TrinoRequestUser
     {
         private final String userField;
         private final Optional<URI> oauthUserInfoUrl;
-        private final Optional<LoadingCache<String, UserInfo>> userInfoCache;
+        private final Optional<LoadingCache<String, Optional<UserInfo>>> userInfoCache;
 
         public TrinoRequestUserProvider(RequestAnalyzerConfig config)
         {
             userField = config.getTokenUserField();
             if (config.getOauthTokenInfoUrl() != null) {
                 oauthUserInfoUrl = Optional.of(URI.create(config.getOauthTokenInfoUrl()));
+                java.time.Duration cacheTtl = config.getOauthTokenInfoCacheTtl().toJavaTime();
+                java.time.Duration negativeCacheTtl = config.getOauthTokenInfoNegativeCacheTtl().toJavaTime();
+                // Rejected tokens are kept for a shorter time, so that a token that becomes valid is picked up quickly.
+                // Tokens in use are refreshed in the background before they expire, failed refreshes keep the old value.
                 userInfoCache = Optional.of(Caffeine.newBuilder()
-                        .maximumSize(10000)
-                        .expireAfterAccess(10, TimeUnit.MINUTES)
+                        .maximumSize(config.getOauthTokenInfoCacheSize())
+                        .expireAfter(Expiry.<String, Optional<UserInfo>>writing((_, userInfo) -> userInfo.isPresent() ? cacheTtl : negativeCacheTtl))
+                        .refreshAfterWrite(config.getOauthTokenInfoRefreshAfter().toJavaTime())
+                        .recordStats()
                         .build(this::getUserInfo));
             }
             else {
@@ -230,24 +247,66 @@ public class TrinoRequestUser
             return new TrinoRequestUser(request, userField, userInfoCache);
         }
 
-        private UserInfo getUserInfo(String token)
+        @Managed
+        public long getUserInfoCacheSize()
+        {
+            return userInfoCache.map(Cache::estimatedSize).orElse(0L);
+        }
+
+        @Managed
+        public long getUserInfoCacheHitCount()
+        {
+            return userInfoCacheStats().hitCount();
+        }
+
+        @Managed
+        public long getUserInfoCacheMissCount()
+        {
+            return userInfoCacheStats().missCount();
+        }
+
+        @Managed
+        public double getUserInfoCacheHitRate()
+        {
+            return userInfoCacheStats().hitRate();
+        }
+
+        @Managed
+        public long getUserInfoLoadFailureCount()
+        {
+            return userInfoCacheStats().loadFailureCount();
+        }
+
+        @Managed
+        public double getUserInfoAverageLoadMillis()
+        {
+            return userInfoCacheStats().averageLoadPenalty() / 1_000_000.0;
+        }
+
+        private CacheStats userInfoCacheStats()
+        {
+            return userInfoCache.map(Cache::stats).orElse(CacheStats.empty());
+        }
+
+        private Optional<UserInfo> getUserInfo(String token)
         {
             Request nimbusRequest = new UserInfoRequest(oauthUserInfoUrl.orElseThrow(), new BearerAccessToken(token));
             try {
                 UserInfoResponse userInfoResponse = parse(nimbusRequest.toHTTPRequest().send());
                 if (!userInfoResponse.indicatesSuccess()) {
                     log.error("Received bad response from userinfo endpoint: %s", userInfoResponse.toErrorResponse().getErrorObject());
-                    return null;
+                    return Optional.empty();
                 }
-                return userInfoResponse.toSuccessResponse().getUserInfo();
+                return Optional.of(userInfoResponse.toSuccessResponse().getUserInfo());
             }
             catch (IOException ex) {
                 log.debug("Call to access token endpoint failed: %s", ex.getMessage());
+                // Not cached, the next request for this token tries again
+                throw new UncheckedIOException(ex);
             }
             catch (ParseException e) {
                 throw new RuntimeException(e);
             }
-            return null;
         }
     }
 
@@ -17,18 +17,21 @@ import com.google.inject.Inject;
 import io.airlift.log.Logger;
 import io.trino.gateway.ha.config.HaGatewayConfiguration;
 import io.trino.gateway.ha.config.RequestAnalyzerConfig;
+import io.trino.gateway.ha.handler.BufferedRequestBody;
 import io.trino.gateway.ha.router.PathFilter;
+import io.trino.gateway.ha.router.QueryAnalysisCache;
 import io.trino.gateway.ha.router.TrinoQueryProperties;
 import io.trino.gateway.ha.security.util.GatewayFilterPriorities;
 import jakarta.annotation.Priority;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.container.ContainerRequestFilter;
 import jakarta.ws.rs.container.PreMatching;
-import org.glassfish.jersey.server.ContainerRequest;
 
 import java.io.IOException;
 
+import static io.trino.gateway.ha.handler.HttpUtils.REQUEST_BODY;
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_QUERY_PROPERTIES;
+import static java.util.Objects.requireNonNull;
 
 /**
  *
@@ -46,15 +49,17 @@ public class QueryMetadataParser
     private final boolean isClientsUseV2Format;
     private final int maxBodySize;
     private final PathFilter pathFilter;
+    private final QueryAnalysisCache analysisCache;
 
     @Inject
-    public QueryMetadataParser(HaGatewayConfiguration config, PathFilter pathFilter)
+    public QueryMetadataParser(HaGatewayConfiguration config, PathFilter pathFilter, QueryAnalysisCache analysisCache)
     {
         RequestAnalyzerConfig analyzerConfig = config.getRequestAnalyzerConfig();
         this.isAnalyzeRequest = analyzerConfig.isAnalyzeRequest();
         this.isClientsUseV2Format = analyzerConfig.isClientsUseV2Format();
         this.maxBodySize = analyzerConfig.getMaxBodySize();
         this.pathFilter = pathFilter;
+        this.analysisCache = requireNonNull(analysisCache, "analysisCache is null");
     }
 
     @Override
@@ -67,18 +72,17 @@ public class QueryMetadataParser
         }
 
         log.debug("Processing query metadata for path: %s", path);
-        // Buffer the entity (aka body of the request) for future reads during request processing
-        ContainerRequest jerseyRequest = (ContainerRequest) requestContext;
-        jerseyRequest.bufferEntity();
+        // Capture the entity (aka body of the request) once, it is shared with the rest of the request processing
+        BufferedRequestBody body = captureRequestBody(requestContext);
 
         TrinoQueryProperties queryProps;
         try {
-            queryProps = new TrinoQueryProperties(requestContext, isClientsUseV2Format, maxBodySize);
+            queryProps = new TrinoQueryProperties(requestContext, body, isClientsUseV2Format, maxBodySize, analysisCache);
         }
         catch (Exception ex) {
             log.warn(ex,
                     "Failed to parse query properties for query text: [%s]. Error: %s. Using empty properties.",
-                    getQueryTextForLogging(requestContext),
+                    getQueryTextForLogging(body),
                     ex.getMessage());
             queryProps = new TrinoQueryProperties();
         }
@@ -86,13 +90,23 @@ public class QueryMetadataParser
         requestContext.setProperty(TRINO_QUERY_PROPERTIES, queryProps);
     }
 
-    private String getQueryTextForLogging(ContainerRequestContext requestContext)
+    private static BufferedRequestBody captureRequestBody(ContainerRequestContext requestContext)
+            throws IOException
     {
-        try {
-            ContainerRequest jerseyRequest = (ContainerRequest) requestContext;
+        if (!requestContext.hasEntity()) {
+            return BufferedRequestBody.EMPTY;
+        }
+        BufferedRequestBody body = BufferedRequestBody.read(requestContext.getEntityStream());
+        requestContext.setEntityStream(body.openStream());
+        requestContext.setProperty(REQUEST_BODY, body);
+        return body;
+    }
 
-            String body = jerseyRequest.readEntity(String.class);
-            if (body == null || body.isEmpty()) {
+    private String getQueryTextForLogging(BufferedRequestBody requestBody)
+    {
+        try {
+            String body = requestBody.toUtf8String();
+            if (body.isEmpty()) {
                 return "<empty>";
             }
             else if (body.length() > MAX_QUERY_TEXT_LOG_LENGTH) {
@@ -16,10 +16,9 @@ package io.trino.gateway.ha.security;
 
 import com.google.inject.Inject;
 import io.airlift.log.Logger;
-import io.trino.gateway.ha.config.HaGatewayConfiguration;
-import io.trino.gateway.ha.config.RequestAnalyzerConfig;
 import io.trino.gateway.ha.router.PathFilter;
 import io.trino.gateway.ha.router.TrinoRequestUser;
+import io.trino.gateway.ha.router.TrinoRequestUser.TrinoRequestUserProvider;
 import io.trino.gateway.ha.security.util.GatewayFilterPriorities;
 import jakarta.annotation.Priority;
 import jakarta.ws.rs.container.ContainerRequestContext;
@@ -29,6 +28,7 @@ import jakarta.ws.rs.container.PreMatching;
 import java.io.IOException;
 
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_REQUEST_USER;
+import static java.util.Objects.requireNonNull;
 
 /**
  * A filter which parses and extracts Trino user identity from incoming request headers
@@ -42,17 +42,14 @@ public class QueryUserInfoParser
         implements ContainerRequestFilter
 {
     private static final Logger log = Logger.get(QueryUserInfoParser.class);
-    private final String tokenUserField;
-    private final String oauthTokenInfoUrl;
+    private final TrinoRequestUserProvider trinoRequestUserProvider;
     private final PathFilter pathFilter;
 
     @Inject
-    public QueryUserInfoParser(HaGatewayConfiguration config, PathFilter pathFilter)
+    public QueryUserInfoParser(TrinoRequestUserProvider trinoRequestUserProvider, PathFilter pathFilter)
     {
-        RequestAnalyzerConfig requestAnalyzerConfig = config.getRequestAnalyzerConfig();
-        this.tokenUserField = requestAnalyzerConfig.getTokenUserField();
-        this.oauthTokenInfoUrl = requestAnalyzerConfig.getOauthTokenInfoUrl();
-        this.pathFilter = pathFilter;
+        this.trinoRequestUserProvider = requireNonNull(trinoRequestUserProvider, "trinoRequestUserProvider is null");
+        this.pathFilter = requireNonNull(pathFilter, "pathFilter is null");
     }
 
     @Override
@@ -64,12 +61,11 @@ public class QueryUserInfoParser
             return;
         }
 
-        RequestAnalyzerConfig requestAnalyzerConfig = new RequestAnalyzerConfig();
-        requestAnalyzerConfig.setTokenUserField(tokenUserField);
-        requestAnalyzerConfig.setOauthTokenInfoUrl(oauthTokenInfoUrl);
-
-        TrinoRequestUser user = new TrinoRequestUser.TrinoRequestUserProvider(requestAnalyzerConfig).getInstance(requestContext);
+        TrinoRequestUser user = trinoRequestUserProvider.getInstance(requestContext);
         requestContext.setProperty(TRINO_REQUEST_USER, user);
-        log.debug("Parsed user %s", user.getUser().orElse("None"));
+        // The user is resolved on first use, which may call the OAuth user info endpoint
+        if (log.isDebugEnabled()) {
+            log.debug("Parsed user %s", user.getUser().orElse("None"));
+        }
     }
 }
@@ -13,33 +13,38 @@
  */
 package io.trino.gateway.proxyserver;
 
+import io.trino.gateway.ha.handler.BufferedRequestBody;
 import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletRequestWrapper;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.Reader;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import static io.trino.gateway.ha.handler.HttpUtils.REQUEST_BODY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
 
 public class MultiReadHttpServletRequest
         extends HttpServletRequestWrapper
 {
-    private final byte[] content;
+    private final BufferedRequestBody body;
 
-    public MultiReadHttpServletRequest(HttpServletRequest request, String body)
+    public MultiReadHttpServletRequest(HttpServletRequest request, BufferedRequestBody body)
     {
         super(request);
-        content = body.getBytes(StandardCharsets.UTF_8);
+        this.body = requireNonNull(body, "body is null");
+        request.setAttribute(REQUEST_BODY, body);
     }
 
     @Override
     public ServletInputStream getInputStream()
             throws IOException
     {
-        final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(content);
+        final InputStream byteArrayInputStream = body.openStream();
         return new ServletInputStream()
         {
             @Override
@@ -87,6 +92,6 @@ public class MultiReadHttpServletRequest
     public BufferedReader getReader()
             throws IOException
     {
-        return new BufferedReader(Reader.of(new String(content, StandardCharsets.UTF_8)));
+        return new BufferedReader(new InputStreamReader(body.openStream(), UTF_8));
     }
 }
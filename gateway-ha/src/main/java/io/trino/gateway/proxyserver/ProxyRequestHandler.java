@@ -13,21 +13,34 @@
  */
 package io.trino.gateway.proxyserver;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimaps;
 import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Inject;
 import io.airlift.http.client.HeaderName;
 import io.airlift.http.client.HttpClient;
 import io.airlift.http.client.Request;
-import io.airlift.http.client.StaticBodyGenerator;
+import io.airlift.http.client.ResponseHandler;
 import io.airlift.log.Logger;
+import io.airlift.stats.TimeStat;
 import io.airlift.units.Duration;
 import io.trino.gateway.ha.config.GatewayCookieConfigurationPropertiesProvider;
 import io.trino.gateway.ha.config.HaGatewayConfiguration;
 import io.trino.gateway.ha.config.ProxyResponseConfiguration;
+import io.trino.gateway.ha.handler.BackendTokenCodec;
+import io.trino.gateway.ha.handler.BufferedRequestBody;
+import io.trino.gateway.ha.handler.ProxyHandlerStats;
 import io.trino.gateway.ha.handler.schema.RoutingDestination;
+import io.trino.gateway.ha.persistence.dao.QueryRoute;
 import io.trino.gateway.ha.router.GatewayCookie;
 import io.trino.gateway.ha.router.OAuth2GatewayCookie;
 import io.trino.gateway.ha.router.QueryHistoryManager;
@@ -45,12 +58,15 @@ import jakarta.ws.rs.core.Response;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
+import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.net.HttpHeaders.CONTENT_LENGTH;
+import static com.google.common.util.concurrent.Futures.submit;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static io.airlift.concurrent.Threads.daemonThreadsNamed;
 import static io.airlift.http.client.HeaderNames.VIA;
@@ -63,22 +79,25 @@ import static io.airlift.http.client.Request.Builder.prepareGet;
 import static io.airlift.http.client.Request.Builder.prepareHead;
 import static io.airlift.http.client.Request.Builder.preparePost;
 import static io.airlift.http.client.Request.Builder.preparePut;
-import static io.airlift.http.client.StaticBodyGenerator.createStaticBodyGenerator;
 import static io.airlift.jaxrs.AsyncResponseHandler.bindAsyncResponse;
+import static io.trino.gateway.ha.handler.BackendTokenCodec.appendToStatementUris;
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_REQUEST_USER;
 import static io.trino.gateway.ha.handler.ProxyUtils.SOURCE_HEADER;
+import static io.trino.gateway.ha.handler.ProxyUtils.rewriteStatementUris;
 import static jakarta.ws.rs.core.MediaType.TEXT_PLAIN_TYPE;
 import static jakarta.ws.rs.core.Response.Status.BAD_GATEWAY;
 import static jakarta.ws.rs.core.Response.Status.OK;
-import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.lang.Math.toIntExact;
 import static java.util.Collections.list;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 public class ProxyRequestHandler
 {
     private static final Logger log = Logger.get(ProxyRequestHandler.class);
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final HeaderName CONTENT_LENGTH_HEADER = HeaderName.of(CONTENT_LENGTH);
     private static final List<String> PRESERVED_HEADERS_TO_SKIP = List.of(
             "Accept-Encoding",
             "Host");
@@ -93,13 +112,17 @@ public class ProxyRequestHandler
     private final List<String> statementPaths;
     private final boolean includeClusterInfoInResponse;
     private final ProxyResponseConfiguration proxyResponseConfiguration;
+    private final Optional<BackendTokenCodec> backendTokenCodec;
+    private final Set<String> directPollingRoutingGroups;
+    private final ProxyHandlerStats stats;
 
     @Inject
     public ProxyRequestHandler(
             @ForProxy HttpClient httpClient,
             RoutingManager routingManager,
             QueryHistoryManager queryHistoryManager,
-            HaGatewayConfiguration haGatewayConfiguration)
+            HaGatewayConfiguration haGatewayConfiguration,
+            ProxyHandlerStats stats)
     {
         this.httpClient = requireNonNull(httpClient, "httpClient is null");
         this.routingManager = requireNonNull(routingManager, "routingManager is null");
@@ -110,6 +133,15 @@ public class ProxyRequestHandler
         statementPaths = haGatewayConfiguration.getStatementPaths();
         this.includeClusterInfoInResponse = haGatewayConfiguration.isIncludeClusterHostInResponse();
         proxyResponseConfiguration = haGatewayConfiguration.getProxyResponseConfiguration();
+        backendTokenCodec = BackendTokenCodec.fromConfiguration(haGatewayConfiguration.getRouting());
+        directPollingRoutingGroups = ImmutableSet.copyOf(haGatewayConfiguration.getRouting().getDirectPollingRoutingGroups());
+        this.stats = requireNonNull(stats, "stats is null");
+        if (proxyResponseConfiguration.isStreamingEnabled() && backendTokenCodec.isPresent()) {
+            log.warn("Streamed responses are not rewritten, backend tokens are not added to the nextUri of queries when proxyResponseConfiguration.streamingEnabled is set");
+        }
+        if (proxyResponseConfiguration.isStreamingEnabled() && !directPollingRoutingGroups.isEmpty()) {
+            log.warn("Streamed responses are not rewritten, clients of the routing groups %s poll through the gateway when proxyResponseConfiguration.streamingEnabled is set", directPollingRoutingGroups);
+        }
     }
 
     @PreDestroy
@@ -124,7 +156,7 @@ public class ProxyRequestHandler
             RoutingDestination routingDestination)
     {
         Request.Builder request = prepareDelete();
-        performRequest(routingDestination, servletRequest, asyncResponse, request);
+        performRequest(routingDestination, servletRequest, asyncResponse, request, BufferedRequestBody.EMPTY);
     }
 
     public void getRequest(
@@ -133,29 +165,29 @@ public class ProxyRequestHandler
             RoutingDestination routingDestination)
     {
         Request.Builder request = prepareGet();
-        performRequest(routingDestination, servletRequest, asyncResponse, request);
+        performRequest(routingDestination, servletRequest, asyncResponse, request, BufferedRequestBody.EMPTY);
     }
 
     public void postRequest(
-            String statement,
+            BufferedRequestBody body,
             HttpServletRequest servletRequest,
             AsyncResponse asyncResponse,
             RoutingDestination routingDestination)
     {
         Request.Builder request = preparePost()
-                .setBodyGenerator(createStaticBodyGenerator(statement, UTF_8));
-        performRequest(routingDestination, servletRequest, asyncResponse, request);
+                .setBodyGenerator(body.toBodyGenerator());
+        performRequest(routingDestination, servletRequest, asyncResponse, request, body);
     }
 
     public void putRequest(
-            String statement,
+            BufferedRequestBody body,
             HttpServletRequest servletRequest,
             AsyncResponse asyncResponse,
             RoutingDestination routingDestination)
     {
         Request.Builder request = preparePut()
-                .setBodyGenerator(createStaticBodyGenerator(statement, UTF_8));
-        performRequest(routingDestination, servletRequest, asyncResponse, request);
+                .setBodyGenerator(body.toBodyGenerator());
+        performRequest(routingDestination, servletRequest, asyncResponse, request, body);
     }
 
     public void headRequest(
@@ -164,14 +196,15 @@ public class ProxyRequestHandler
             RoutingDestination routingDestination)
     {
         Request.Builder request = prepareHead();
-        performRequest(routingDestination, servletRequest, asyncResponse, request);
+        performRequest(routingDestination, servletRequest, asyncResponse, request, BufferedRequestBody.EMPTY);
     }
 
     private void performRequest(
             RoutingDestination routingDestination,
             HttpServletRequest servletRequest,
             AsyncResponse asyncResponse,
-            Request.Builder requestBuilder)
+            Request.Builder requestBuilder,
+            BufferedRequestBody body)
     {
         URI remoteUri = routingDestination.clusterUri();
         requestBuilder.setUri(remoteUri);
@@ -185,20 +218,139 @@ public class ProxyRequestHandler
                 .setFollowRedirects(false)
                 .build();
 
-        FluentFuture<ProxyResponse> future = executeHttp(request);
+        boolean isStatementRequest = statementPaths.stream().anyMatch(request.getUri().getPath()::startsWith);
+        boolean isStatementSubmission = isStatementRequest && request.getMethod().equals(HttpMethod.POST);
+        if (isStatementSubmission && includeClusterInfoInResponse) {
+            cookieBuilder.add(new NewCookie.Builder("trinoClusterHost").value(remoteUri.getHost()).build());
+        }
+        ImmutableList<NewCookie> cookies = cookieBuilder.build();
+
+        if (proxyResponseConfiguration.isStreamingEnabled()) {
+            performStreamingRequest(request, body, servletRequest, asyncResponse, routingDestination, cookies, isStatementSubmission);
+            return;
+        }
 
-        if (statementPaths.stream().anyMatch(request.getUri().getPath()::startsWith) && request.getMethod().equals(HttpMethod.POST)) {
+        FluentFuture<ProxyResponse> future = executeHttp(request, routingDestination);
+
+        if (isStatementSubmission) {
             Optional<String> username = ((TrinoRequestUser) servletRequest.getAttribute(TRINO_REQUEST_USER)).getUser();
-            future = future.transform(response -> recordBackendForQueryId(request, response, username, routingDestination), executor);
-            if (includeClusterInfoInResponse) {
-                cookieBuilder.add(new NewCookie.Builder("trinoClusterHost").value(remoteUri.getHost()).build());
+            future = future.transform(response -> recordBackendForQueryId(request, body, response, username, routingDestination), executor);
+        }
+        if (isStatementSubmission && directPollingRoutingGroups.contains(routingDestination.routingGroup())) {
+            future = future.transform(response -> pollCoordinatorDirectly(response, routingDestination), directExecutor());
+        }
+        else if (isStatementRequest && backendTokenCodec.isPresent()) {
+            future = future.transform(response -> appendBackendToken(response, routingDestination, backendTokenCodec.get()), directExecutor());
+        }
+
+        FluentFuture<Response> responseFuture = future.transform(response -> buildResponse(response.statusCode(), response.headers(), response.body(), cookies), executor)
+                .catching(ProxyException.class, e -> handleProxyException(request, e), directExecutor());
+        recordTotalTime(responseFuture, servletRequest, routingDestination);
+        setupAsyncResponse(asyncResponse, responseFuture);
+    }
+
+    /**
+     * Pipes the remote response to the client as it arrives. The asynchronous airlift client buffers the
+     * complete response before invoking the handler, so the blocking call is issued on the proxy executor.
+     * For statement submissions only the prefix of the response needed to extract the query id is retained,
+     * and the query is recorded from it before the response is passed on.
+     */
+    private void performStreamingRequest(
+            Request request,
+            BufferedRequestBody body,
+            HttpServletRequest servletRequest,
+            AsyncResponse asyncResponse,
+            RoutingDestination routingDestination,
+            ImmutableList<NewCookie> cookies,
+            boolean isStatementSubmission)
+    {
+        asyncResponse.setTimeout(asyncTimeout.toMillis(), MILLISECONDS);
+        asyncResponse.setTimeoutHandler(response -> response.resume(timeoutResponse()));
+
+        int capturedPrefixSize = 0;
+        StreamingProxyResponseHandler.PrefixListener prefixListener = _ -> {};
+        if (isStatementSubmission) {
+            // The route must be recorded before the client receives the nextUri and polls it
+            capturedPrefixSize = toIntExact(proxyResponseConfiguration.getStatementResponsePrefixSize().toBytes());
+            Optional<String> username = ((TrinoRequestUser) servletRequest.getAttribute(TRINO_REQUEST_USER)).getUser();
+            prefixListener = prefix -> recordBackendForQueryId(request, body, prefix, username, routingDestination);
+        }
+        StreamingProxyResponseHandler responseHandler = new StreamingProxyResponseHandler(
+                capturedPrefixSize,
+                prefixListener,
+                (statusCode, headers, body) -> asyncResponse.resume(buildResponse(statusCode, headers, body, cookies)));
+
+        FluentFuture<ProxyResponse> future = FluentFuture.from(submit(() -> httpClient.execute(request, new TimedResponseHandler<>(responseHandler, routingDestination, stats)), executor));
+        recordTotalTime(future, servletRequest, routingDestination);
+
+        future.addCallback(new FutureCallback<>()
+        {
+            @Override
+            public void onSuccess(ProxyResponse response) {}
+
+            @Override
+            public void onFailure(Throwable throwable)
+            {
+                if (throwable instanceof ProxyException e) {
+                    log.warn(e, "Proxy request failed: %s %s", request.getMethod(), request.getUri());
+                    asyncResponse.resume(Response.status(BAD_GATEWAY)
+                            .type(TEXT_PLAIN_TYPE)
+                            .entity(e.getMessage())
+                            .build());
+                    return;
+                }
+                asyncResponse.resume(throwable);
             }
+        }, directExecutor());
+    }
+
+    /**
+     * Lets the client poll the query through any gateway without the backend being looked up.
+     * Streamed responses are passed through unchanged.
+     */
+    private ProxyResponse appendBackendToken(ProxyResponse response, RoutingDestination routingDestination, BackendTokenCodec codec)
+    {
+        if (response.statusCode() != OK.getStatusCode() || response.body() == null) {
+            return response;
+        }
+        return codec.encode(routingDestination)
+                .flatMap(segment -> appendToStatementUris(response.body(), segment, routingDestination.clusterUri(), statementPaths))
+                .map(body -> withBody(response, body))
+                .orElse(response);
+    }
+
+    /**
+     * Points the client at the external URL of the coordinator, so that the results of the query
+     * do not pass through the gateway. Streamed responses are passed through unchanged.
+     */
+    private static ProxyResponse pollCoordinatorDirectly(ProxyResponse response, RoutingDestination routingDestination)
+    {
+        if (response.statusCode() != OK.getStatusCode() || response.body() == null || isNullOrEmpty(routingDestination.externalUrl())) {
+            return response;
+        }
+        return rewriteStatementUris(response.body(), uri -> withExternalUrl(uri, routingDestination.externalUrl()))
+                .map(body -> withBody(response, body))
+                .orElse(response);
+    }
+
+    @VisibleForTesting
+    static Optional<String> withExternalUrl(String uri, String externalUrl)
+    {
+        URI parsed = URI.create(uri);
+        if (parsed.getRawAuthority() == null || parsed.getRawPath() == null) {
+            return Optional.empty();
         }
+        String base = externalUrl.endsWith("/") ? externalUrl.substring(0, externalUrl.length() - 1) : externalUrl;
+        return Optional.of(base + parsed.getRawPath() + (parsed.getRawQuery() != null ? "?" + parsed.getRawQuery() : ""));
+    }
 
-        setupAsyncResponse(
-                asyncResponse,
-                future.transform(response -> buildResponse(response, cookieBuilder.build()), executor)
-                        .catching(ProxyException.class, e -> handleProxyException(request, e), directExecutor()));
+    private static ProxyResponse withBody(ProxyResponse response, String body)
+    {
+        return new ProxyResponse(
+                response.statusCode(),
+                // the length of the backend response no longer applies
+                ImmutableListMultimap.copyOf(Multimaps.filterKeys(response.headers(), name -> !name.equals(CONTENT_LENGTH_HEADER))),
+                body);
     }
 
     private ImmutableList<NewCookie> getOAuth2GatewayCookie(URI remoteUri, HttpServletRequest servletRequest)
@@ -228,10 +380,10 @@ public class ProxyRequestHandler
         return "%s://%s".formatted(remoteUri.getScheme(), remoteUri.getAuthority());
     }
 
-    private Response buildResponse(ProxyResponse response, ImmutableList<NewCookie> cookie)
+    private static Response buildResponse(int statusCode, ListMultimap<HeaderName, String> headers, Object entity, ImmutableList<NewCookie> cookie)
     {
-        Response.ResponseBuilder builder = Response.status(response.statusCode()).entity(response.body());
-        response.headers().forEach((headerName, value) -> builder.header(headerName.toString(), value));
+        Response.ResponseBuilder builder = Response.status(statusCode).entity(entity);
+        headers.forEach((headerName, value) -> builder.header(headerName.toString(), value));
         cookie.forEach(builder::cookie);
         return builder.build();
     }
@@ -239,16 +391,27 @@ public class ProxyRequestHandler
     private void setupAsyncResponse(AsyncResponse asyncResponse, ListenableFuture<Response> future)
     {
         bindAsyncResponse(asyncResponse, future, executor)
-                .withTimeout(asyncTimeout, () -> Response
-                        .status(BAD_GATEWAY)
-                        .type(TEXT_PLAIN_TYPE)
-                        .entity("Request to remote Trino server timed out after" + asyncTimeout)
-                        .build());
+                .withTimeout(asyncTimeout, this::timeoutResponse);
+    }
+
+    private Response timeoutResponse()
+    {
+        return Response
+                .status(BAD_GATEWAY)
+                .type(TEXT_PLAIN_TYPE)
+                .entity("Request to remote Trino server timed out after" + asyncTimeout)
+                .build();
+    }
+
+    private FluentFuture<ProxyResponse> executeHttp(Request request, RoutingDestination routingDestination)
+    {
+        return FluentFuture.from(httpClient.executeAsync(request, new TimedResponseHandler<>(new ProxyResponseHandler(proxyResponseConfiguration), routingDestination, stats)));
     }
 
-    private FluentFuture<ProxyResponse> executeHttp(Request request)
+    private void recordTotalTime(ListenableFuture<?> future, HttpServletRequest servletRequest, RoutingDestination routingDestination)
     {
-        return FluentFuture.from(httpClient.executeAsync(request, new ProxyResponseHandler(proxyResponseConfiguration)));
+        long startNanos = ProxyHandlerStats.requestStartNanos(servletRequest);
+        future.addListener(() -> stats.recordTotal(routingDestination, System.nanoTime() - startNanos), directExecutor());
     }
 
     private static Response handleProxyException(Request request, ProxyException e)
@@ -268,23 +431,35 @@ public class ProxyRequestHandler
 
     private ProxyResponse recordBackendForQueryId(
             Request request,
+            BufferedRequestBody body,
+            ProxyResponse response,
+            Optional<String> username,
+            RoutingDestination routingDestination)
+    {
+        try (TimeStat.BlockTimer _ = stats.getHistoryRecordingTime().time()) {
+            return recordQueryDetail(request, body, response, username, routingDestination);
+        }
+    }
+
+    private ProxyResponse recordQueryDetail(
+            Request request,
+            BufferedRequestBody body,
             ProxyResponse response,
             Optional<String> username,
             RoutingDestination routingDestination)
     {
         log.debug("For Request [%s] got Response [%s]", request.getUri(), response.body());
 
-        QueryHistoryManager.QueryDetail queryDetail = getQueryDetailsFromRequest(request, username);
+        QueryHistoryManager.QueryDetail queryDetail = getQueryDetailsFromRequest(request, body, username);
 
         log.debug("Extracting proxy destination : [%s] for request : [%s]", queryDetail.getBackendUrl(), request.getUri());
 
         if (response.statusCode() == OK.getStatusCode()) {
             try {
-                HashMap<String, String> results = OBJECT_MAPPER.readValue(response.body(), HashMap.class);
-                queryDetail.setQueryId(results.get("id"));
-                routingManager.setBackendForQueryId(queryDetail.getQueryId(), queryDetail.getBackendUrl());
-                routingManager.setRoutingGroupForQueryId(queryDetail.getQueryId(), routingDestination.routingGroup());
-                routingManager.setExternalUrlForQueryId(queryDetail.getQueryId(), routingDestination.externalUrl());
+                queryDetail.setQueryId(extractQueryId(response.body()));
+                routingManager.setQueryRoute(
+                        queryDetail.getQueryId(),
+                        new QueryRoute(queryDetail.getBackendUrl(), routingDestination.routingGroup(), routingDestination.externalUrl()));
                 log.debug("QueryId [%s] mapped with proxy [%s]", queryDetail.getQueryId(), queryDetail.getBackendUrl());
             }
             catch (IOException e) {
@@ -300,7 +475,31 @@ public class ProxyRequestHandler
         return response;
     }
 
-    public static QueryHistoryManager.QueryDetail getQueryDetailsFromRequest(Request request, Optional<String> username)
+    /**
+     * Reads the top level {@code id} field without materializing the rest of the document,
+     * so that a truncated response prefix is sufficient as long as it contains the id.
+     */
+    @VisibleForTesting
+    static String extractQueryId(String body)
+            throws IOException
+    {
+        try (JsonParser parser = OBJECT_MAPPER.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Response is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                parser.nextToken();
+                if (fieldName.equals("id")) {
+                    return parser.getValueAsString();
+                }
+                parser.skipChildren();
+            }
+        }
+        return null;
+    }
+
+    public static QueryHistoryManager.QueryDetail getQueryDetailsFromRequest(Request request, BufferedRequestBody body, Optional<String> username)
     {
         QueryHistoryManager.QueryDetail queryDetail = new QueryHistoryManager.QueryDetail();
         queryDetail.setBackendUrl(getRemoteTarget(request.getUri()));
@@ -308,8 +507,7 @@ public class ProxyRequestHandler
         username.ifPresent(queryDetail::setUser);
         queryDetail.setSource(request.getHeader(SOURCE_HEADER));
 
-        String queryText = new String(((StaticBodyGenerator) request.getBodyGenerator()).getBody(), UTF_8);
-        queryDetail.setQueryText(queryText);
+        queryDetail.setQueryText(body.toUtf8String());
         return queryDetail;
     }
 
@@ -360,4 +558,38 @@ public class ProxyRequestHandler
             requestBuilder.addHeader(X_FORWARDED_HOST, serverName);
         }
     }
+
+    /**
+     * Records the time until the cluster responded, and the time to pass the response on.
+     */
+    private static class TimedResponseHandler<T>
+            implements ResponseHandler<T, RuntimeException>
+    {
+        private final ResponseHandler<T, RuntimeException> delegate;
+        private final RoutingDestination routingDestination;
+        private final ProxyHandlerStats stats;
+        private final long sentNanos = System.nanoTime();
+
+        private TimedResponseHandler(ResponseHandler<T, RuntimeException> delegate, RoutingDestination routingDestination, ProxyHandlerStats stats)
+        {
+            this.delegate = requireNonNull(delegate, "delegate is null");
+            this.routingDestination = requireNonNull(routingDestination, "routingDestination is null");
+            this.stats = requireNonNull(stats, "stats is null");
+        }
+
+        @Override
+        public T handleException(Request request, Exception exception)
+        {
+            return delegate.handleException(request, exception);
+        }
+
+        @Override
+        public T handle(Request request, io.airlift.http.client.Response response)
+        {
+            stats.recordBackendResponse(routingDestination, System.nanoTime() - sentNanos);
+            try (TimeStat.BlockTimer _ = stats.getResponseTransferTime().time()) {
+                return delegate.handle(request, response);
+            }
+        }
+    }
 }
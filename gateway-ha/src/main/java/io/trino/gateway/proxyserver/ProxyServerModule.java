@@ -26,6 +26,7 @@ public class ProxyServerModule
     public void configure(Binder binder)
     {
         jaxrsBinder(binder).bind(RouteToBackendResource.class);
+        jaxrsBinder(binder).bind(RequestTimingFilter.class);
         jaxrsBinder(binder).bind(RouterPreMatchContainerRequestFilter.class);
         jaxrsBinder(binder).bind(ProxyRequestHandler.class);
         httpClientBinder(binder).bindHttpClient("proxy", ForProxy.class);
@@ -0,0 +1,40 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.proxyserver;
+
+import io.trino.gateway.ha.security.util.GatewayFilterPriorities;
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.PreMatching;
+
+import static io.trino.gateway.ha.handler.HttpUtils.REQUEST_START_NANOS;
+
+/**
+ * Records when a request was received, before any other filter runs, so that
+ * the time spent in the filters counts towards the latency of the request.
+ *
+ * @see io.trino.gateway.ha.handler.ProxyHandlerStats
+ */
+@PreMatching
+@Priority(GatewayFilterPriorities.REQUEST_TIMING)
+public class RequestTimingFilter
+        implements ContainerRequestFilter
+{
+    @Override
+    public void filter(ContainerRequestContext request)
+    {
+        request.setProperty(REQUEST_START_NANOS, System.nanoTime());
+    }
+}
@@ -14,6 +14,7 @@
 package io.trino.gateway.proxyserver;
 
 import com.google.inject.Inject;
+import io.trino.gateway.ha.handler.BufferedRequestBody;
 import io.trino.gateway.ha.handler.ProxyHandlerStats;
 import io.trino.gateway.ha.handler.RoutingTargetHandler;
 import io.trino.gateway.ha.handler.schema.RoutingTargetResponse;
@@ -28,6 +29,10 @@ import jakarta.ws.rs.container.AsyncResponse;
 import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.Context;
 
+import java.io.IOException;
+import java.io.InputStream;
+
+import static io.trino.gateway.ha.handler.HttpUtils.REQUEST_BODY;
 import static io.trino.gateway.ha.handler.HttpUtils.V1_STATEMENT_PATH;
 import static io.trino.gateway.proxyserver.RouterPreMatchContainerRequestFilter.ROUTE_TO_BACKEND;
 import static java.util.Objects.requireNonNull;
@@ -57,15 +62,17 @@ public class RouteToBackendResource
 
     @POST
     public void postHandler(
-            String body,
+            InputStream entity,
             @Context HttpServletRequest servletRequest,
             @Suspended AsyncResponse asyncResponse)
+            throws IOException
     {
+        BufferedRequestBody body = getRequestBody(servletRequest, entity);
         MultiReadHttpServletRequest multiReadHttpServletRequest = new MultiReadHttpServletRequest(servletRequest, body);
         if (multiReadHttpServletRequest.getRequestURI().startsWith(V1_STATEMENT_PATH)) {
             proxyHandlerStats.recordRequest();
         }
-        RoutingTargetResponse result = routingTargetHandler.resolveRouting(multiReadHttpServletRequest);
+        RoutingTargetResponse result = resolveRouting(multiReadHttpServletRequest);
         proxyRequestHandler.postRequest(body, result.modifiedRequest(), asyncResponse, result.routingDestination());
     }
 
@@ -74,7 +81,7 @@ public class RouteToBackendResource
             @Context HttpServletRequest servletRequest,
             @Suspended AsyncResponse asyncResponse)
     {
-        RoutingTargetResponse result = routingTargetHandler.resolveRouting(servletRequest);
+        RoutingTargetResponse result = resolveRouting(servletRequest);
         proxyRequestHandler.getRequest(result.modifiedRequest(), asyncResponse, result.routingDestination());
     }
 
@@ -83,18 +90,20 @@ public class RouteToBackendResource
             @Context HttpServletRequest servletRequest,
             @Suspended AsyncResponse asyncResponse)
     {
-        RoutingTargetResponse result = routingTargetHandler.resolveRouting(servletRequest);
+        RoutingTargetResponse result = resolveRouting(servletRequest);
         proxyRequestHandler.deleteRequest(result.modifiedRequest(), asyncResponse, result.routingDestination());
     }
 
     @PUT
     public void putHandler(
-            String body,
+            InputStream entity,
             @Context HttpServletRequest servletRequest,
             @Suspended AsyncResponse asyncResponse)
+            throws IOException
     {
+        BufferedRequestBody body = getRequestBody(servletRequest, entity);
         MultiReadHttpServletRequest multiReadHttpServletRequest = new MultiReadHttpServletRequest(servletRequest, body);
-        RoutingTargetResponse result = routingTargetHandler.resolveRouting(multiReadHttpServletRequest);
+        RoutingTargetResponse result = resolveRouting(multiReadHttpServletRequest);
         proxyRequestHandler.putRequest(body, result.modifiedRequest(), asyncResponse, result.routingDestination());
     }
 
@@ -103,7 +112,25 @@ public class RouteToBackendResource
             @Context HttpServletRequest servletRequest,
             @Suspended AsyncResponse asyncResponse)
     {
-        RoutingTargetResponse result = routingTargetHandler.resolveRouting(servletRequest);
+        RoutingTargetResponse result = resolveRouting(servletRequest);
         proxyRequestHandler.headRequest(result.modifiedRequest(), asyncResponse, result.routingDestination());
     }
+
+    private RoutingTargetResponse resolveRouting(HttpServletRequest servletRequest)
+    {
+        proxyHandlerStats.recordRequestFilters(servletRequest);
+        return routingTargetHandler.resolveRouting(servletRequest);
+    }
+
+    /**
+     * Reuses the body captured during request analysis, if any, instead of reading the entity again.
+     */
+    private static BufferedRequestBody getRequestBody(HttpServletRequest servletRequest, InputStream entity)
+            throws IOException
+    {
+        if (servletRequest.getAttribute(REQUEST_BODY) instanceof BufferedRequestBody body) {
+            return body;
+        }
+        return BufferedRequestBody.read(entity);
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.proxyserver;
+
+import com.google.common.collect.ListMultimap;
+import io.airlift.http.client.HeaderName;
+import io.airlift.http.client.Request;
+import io.airlift.http.client.Response;
+import io.airlift.http.client.ResponseHandler;
+import io.trino.gateway.proxyserver.ProxyResponseHandler.ProxyResponse;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pipes the response of the remote Trino server to the client instead of buffering it.
+ * <p>
+ * The first {@code capturedPrefixSize} bytes are read before anything is written to the client,
+ * and are passed to the {@link PrefixListener}, so that the query id of a statement submission is
+ * recorded before the client can follow the {@code nextUri}. The captured prefix is also the body
+ * of the resulting {@link ProxyResponse}. The response body is then handed to the
+ * {@link ResponseWriter} as a {@link StreamingOutput} which must be fully written before the
+ * writer returns, because the remote input stream is closed once this handler completes.
+ */
+public class StreamingProxyResponseHandler
+        implements ResponseHandler<ProxyResponse, RuntimeException>
+{
+    private final int capturedPrefixSize;
+    private final PrefixListener prefixListener;
+    private final ResponseWriter responseWriter;
+
+    public StreamingProxyResponseHandler(int capturedPrefixSize, ResponseWriter responseWriter)
+    {
+        this(capturedPrefixSize, _ -> {}, responseWriter);
+    }
+
+    public StreamingProxyResponseHandler(int capturedPrefixSize, PrefixListener prefixListener, ResponseWriter responseWriter)
+    {
+        checkArgument(capturedPrefixSize >= 0, "capturedPrefixSize is negative");
+        this.capturedPrefixSize = capturedPrefixSize;
+        this.prefixListener = requireNonNull(prefixListener, "prefixListener is null");
+        this.responseWriter = requireNonNull(responseWriter, "responseWriter is null");
+    }
+
+    @Override
+    public ProxyResponse handleException(Request request, Exception exception)
+    {
+        throw new ProxyException("Request to remote Trino server failed", exception);
+    }
+
+    @Override
+    public ProxyResponse handle(Request request, Response response)
+    {
+        InputStream input;
+        byte[] prefix;
+        try {
+            input = response.getInputStream();
+            prefix = input.readNBytes(capturedPrefixSize);
+        }
+        catch (IOException e) {
+            throw new ProxyException("Failed to read response from remote Trino server", e);
+        }
+        ProxyResponse prefixResponse = new ProxyResponse(response.getStatusCode(), response.getHeaders(), new String(prefix, UTF_8));
+        prefixListener.prefixCaptured(prefixResponse);
+
+        responseWriter.write(response.getStatusCode(), response.getHeaders(), output -> {
+            try (input) {
+                output.write(prefix);
+                input.transferTo(output);
+            }
+            output.flush();
+        });
+        return prefixResponse;
+    }
+
+    @FunctionalInterface
+    public interface PrefixListener
+    {
+        /**
+         * Called with the captured prefix of the response, before the response is written to the client.
+         */
+        void prefixCaptured(ProxyResponse prefix);
+    }
+
+    @FunctionalInterface
+    public interface ResponseWriter
+    {
+        /**
+         * Writes the response to the client. The body must be consumed before returning.
+         */
+        void write(int statusCode, ListMultimap<HeaderName, String> headers, StreamingOutput body);
+    }
+}
@@ -0,0 +1,3 @@
+CREATE INDEX query_history_user_name_idx ON query_history(user_name, created, query_id);
+CREATE INDEX query_history_source_idx ON query_history(source, created, query_id);
+CREATE INDEX query_history_external_url_idx ON query_history(external_url, created, query_id);
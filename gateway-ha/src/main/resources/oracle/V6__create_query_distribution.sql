@@ -0,0 +1,15 @@
+-- Oracle stores empty strings as NULL, so the key columns stay nullable and the key is a unique constraint
+CREATE TABLE query_distribution (
+    created_minute NUMBER NOT NULL,
+    backend_url VARCHAR (256) NOT NULL,
+    routing_group VARCHAR (255),
+    user_name VARCHAR (255),
+    query_count NUMBER NOT NULL,
+    CONSTRAINT query_distribution_key UNIQUE (created_minute, backend_url, routing_group, user_name)
+);
+
+INSERT INTO query_distribution (created_minute, backend_url, routing_group, user_name, query_count)
+SELECT FLOOR(created / 1000 / 60), backend_url, SUBSTR(routing_group, 1, 255), SUBSTR(user_name, 1, 255), COUNT(1)
+FROM query_history
+WHERE backend_url IS NOT NULL
+GROUP BY FLOOR(created / 1000 / 60), backend_url, SUBSTR(routing_group, 1, 255), SUBSTR(user_name, 1, 255);
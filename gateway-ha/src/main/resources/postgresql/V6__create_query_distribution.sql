@@ -0,0 +1,14 @@
+CREATE TABLE IF NOT EXISTS query_distribution (
+created_minute BIGINT NOT NULL,
+backend_url VARCHAR (256) NOT NULL,
+routing_group VARCHAR (255) NOT NULL DEFAULT '',
+user_name VARCHAR (255) NOT NULL DEFAULT '',
+query_count BIGINT NOT NULL,
+CONSTRAINT query_distribution_pk PRIMARY KEY (created_minute, backend_url, routing_group, user_name)
+);
+
+INSERT INTO query_distribution (created_minute, backend_url, routing_group, user_name, query_count)
+SELECT FLOOR(created / 1000 / 60), backend_url, LEFT(COALESCE(routing_group, ''), 255), LEFT(COALESCE(user_name, ''), 255), COUNT(1)
+FROM query_history
+WHERE backend_url IS NOT NULL
+GROUP BY FLOOR(created / 1000 / 60), backend_url, LEFT(COALESCE(routing_group, ''), 255), LEFT(COALESCE(user_name, ''), 255);
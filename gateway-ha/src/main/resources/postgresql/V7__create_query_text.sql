@@ -0,0 +1,11 @@
+CREATE TABLE IF NOT EXISTS query_text (
+text_hash VARCHAR(64) PRIMARY KEY,
+compressed_text BYTEA NOT NULL,
+text_preview VARCHAR(1024),
+text_length BIGINT NOT NULL,
+created BIGINT NOT NULL
+);
+
+ALTER TABLE query_history
+    ADD query_text_hash VARCHAR(64);
+CREATE INDEX IF NOT EXISTS query_history_text_hash_idx ON query_history(query_text_hash);
@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.clustermonitor;
+
+import io.airlift.units.Duration;
+import io.trino.gateway.ha.config.MonitorConfiguration;
+import io.trino.gateway.ha.config.ProxyBackendConfiguration;
+import io.trino.gateway.ha.router.GatewayBackendManager;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static io.trino.gateway.ha.clustermonitor.ClusterStatsMonitor.getClusterStatsBuilder;
+import static io.trino.gateway.ha.clustermonitor.TrinoStatus.HEALTHY;
+import static io.trino.gateway.ha.clustermonitor.TrinoStatus.UNHEALTHY;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+final class TestActiveClusterMonitor
+{
+    @Test
+    void testSlowBackendDoesNotDelayOthers()
+            throws Exception
+    {
+        GatewayBackendManager backendManager = mock(GatewayBackendManager.class);
+        when(backendManager.getAllBackends()).thenReturn(List.of(backend("fast"), backend("hung")));
+
+        CountDownLatch release = new CountDownLatch(1);
+        ClusterStatsMonitor clusterStatsMonitor = backend -> {
+            if (backend.getName().equals("hung")) {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return getClusterStatsBuilder(backend).trinoStatus(HEALTHY).build();
+        };
+
+        BlockingQueue<ClusterStats> observed = new LinkedBlockingQueue<>();
+        TrinoClusterStatsObserver observer = observed::addAll;
+
+        MonitorConfiguration configuration = new MonitorConfiguration();
+        configuration.setTaskDelay(new Duration(1, MINUTES));
+        configuration.setTaskTimeout(new Duration(500, MILLISECONDS));
+        ActiveClusterMonitor monitor = new ActiveClusterMonitor(Set.of(observer), backendManager, configuration, clusterStatsMonitor);
+        monitor.start();
+        try {
+            ClusterStats first = observed.poll(10, SECONDS);
+            assertThat(first).isNotNull();
+            assertThat(first.clusterId()).isEqualTo("fast");
+            assertThat(first.trinoStatus()).isEqualTo(HEALTHY);
+            assertThat(monitor.isInitialized()).isFalse();
+
+            ClusterStats second = observed.poll(10, SECONDS);
+            assertThat(second).isNotNull();
+            assertThat(second.clusterId()).isEqualTo("hung");
+            assertThat(second.trinoStatus()).isEqualTo(UNHEALTHY);
+            assertThat(second.proxyTo()).isEqualTo("http://hung.trino.example.com");
+            assertThat(monitor.isInitialized()).isTrue();
+        }
+        finally {
+            release.countDown();
+            monitor.stop();
+        }
+    }
+
+    @Test
+    void testStuckCallIsNotPolledAgain()
+            throws Exception
+    {
+        GatewayBackendManager backendManager = mock(GatewayBackendManager.class);
+        when(backendManager.getAllBackends()).thenReturn(List.of(backend("stuck")));
+
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ClusterStatsMonitor clusterStatsMonitor = backend -> {
+            calls.incrementAndGet();
+            // Ignores the interrupt of the timeout, like a call blocked on the network
+            awaitUninterruptibly(release);
+            return getClusterStatsBuilder(backend).trinoStatus(HEALTHY).build();
+        };
+
+        BlockingQueue<ClusterStats> observed = new LinkedBlockingQueue<>();
+        TrinoClusterStatsObserver observer = observed::addAll;
+
+        MonitorConfiguration configuration = new MonitorConfiguration();
+        configuration.setTaskDelay(new Duration(50, MILLISECONDS));
+        configuration.setTaskTimeout(new Duration(50, MILLISECONDS));
+        configuration.setMaxBackoffDelay(new Duration(50, MILLISECONDS));
+        ActiveClusterMonitor monitor = new ActiveClusterMonitor(Set.of(observer), backendManager, configuration, clusterStatsMonitor);
+        monitor.start();
+        try {
+            // The backend is reported as unhealthy on every poll, without starting another call
+            for (int i = 0; i < 5; i++) {
+                ClusterStats stats = observed.poll(10, SECONDS);
+                assertThat(stats).isNotNull();
+                assertThat(stats.trinoStatus()).isEqualTo(UNHEALTHY);
+            }
+            assertThat(calls.get()).isEqualTo(1);
+        }
+        finally {
+            release.countDown();
+            monitor.stop();
+        }
+    }
+
+    private static ProxyBackendConfiguration backend(String name)
+    {
+        ProxyBackendConfiguration backend = new ProxyBackendConfiguration();
+        backend.setName(name);
+        backend.setRoutingGroup("adhoc");
+        backend.setProxyTo("http://%s.trino.example.com".formatted(name));
+        backend.setActive(true);
+        return backend;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.clustermonitor;
+
+import io.trino.gateway.ha.config.BackendStateConfiguration;
+import io.trino.gateway.ha.config.ProxyBackendConfiguration;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static com.google.common.net.HttpHeaders.COOKIE;
+import static com.google.common.net.HttpHeaders.SET_COOKIE;
+import static com.google.common.net.MediaType.JSON_UTF_8;
+import static io.trino.gateway.ha.handler.HttpUtils.UI_API_QUEUED_LIST_PATH;
+import static io.trino.gateway.ha.handler.HttpUtils.UI_API_STATS_PATH;
+import static io.trino.gateway.ha.handler.HttpUtils.UI_LOGIN_PATH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.TestInstance.Lifecycle.PER_CLASS;
+
+@TestInstance(PER_CLASS)
+final class TestClusterStatsHttpMonitor
+{
+    private final MockWebServer server = new MockWebServer();
+    private final AtomicInteger logins = new AtomicInteger();
+    private volatile String validToken = "token-0";
+
+    @BeforeAll
+    void setUp()
+            throws IOException
+    {
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+            {
+                String path = request.getPath();
+                if (path.equals(UI_LOGIN_PATH)) {
+                    logins.incrementAndGet();
+                    return new MockResponse().setResponseCode(200)
+                            .setHeader(SET_COOKIE, "Trino-UI-Token=" + validToken);
+                }
+                if (!("Trino-UI-Token=" + validToken).equals(request.getHeader(COOKIE))) {
+                    return new MockResponse().setResponseCode(401);
+                }
+                if (path.equals(UI_API_STATS_PATH)) {
+                    return new MockResponse().setResponseCode(200)
+                            .setHeader(CONTENT_TYPE, JSON_UTF_8)
+                            .setBody("{\"activeWorkers\": 2, \"queuedQueries\": 1, \"runningQueries\": 3}");
+                }
+                if (path.equals(UI_API_QUEUED_LIST_PATH)) {
+                    return new MockResponse().setResponseCode(200)
+                            .setHeader(CONTENT_TYPE, JSON_UTF_8)
+                            .setBody("[{\"sessionUser\": \"alice\"}]");
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        server.start();
+    }
+
+    @AfterAll
+    void tearDown()
+            throws IOException
+    {
+        server.shutdown();
+    }
+
+    @Test
+    void testSessionIsReusedAndRenewedOnUnauthorized()
+    {
+        BackendStateConfiguration backendStateConfiguration = new BackendStateConfiguration();
+        backendStateConfiguration.setUsername("admin");
+        backendStateConfiguration.setPassword("");
+        ClusterStatsHttpMonitor monitor = new ClusterStatsHttpMonitor(backendStateConfiguration);
+
+        ProxyBackendConfiguration backend = new ProxyBackendConfiguration();
+        backend.setName("trino");
+        backend.setRoutingGroup("adhoc");
+        backend.setProxyTo(server.url("/").toString().replaceAll("/$", ""));
+
+        for (int i = 0; i < 3; i++) {
+            ClusterStats stats = monitor.monitor(backend);
+            assertThat(stats.trinoStatus()).isEqualTo(TrinoStatus.HEALTHY);
+            assertThat(stats.runningQueryCount()).isEqualTo(3);
+            assertThat(stats.userQueuedCount()).isEqualTo(Map.of("alice", 1));
+        }
+        assertThat(logins.get()).isEqualTo(1);
+        assertThat(monitor.getSessionCount()).isEqualTo(1);
+
+        // The backend invalidates the session, the monitor logs in once more
+        validToken = "token-1";
+        ClusterStats stats = monitor.monitor(backend);
+        assertThat(stats.trinoStatus()).isEqualTo(TrinoStatus.HEALTHY);
+        assertThat(stats.userQueuedCount()).isEqualTo(Map.of("alice", 1));
+        assertThat(logins.get()).isEqualTo(2);
+    }
+}
@@ -74,6 +74,29 @@ final class TestClusterStatsMonitor
         testClusterStatsMonitor(backendStateConfiguration -> new ClusterStatsJdbcMonitor(backendStateConfiguration, monitorConfigurationWithTimeout));
     }
 
+    @Test
+    void testJdbcMonitorReusesConnection()
+    {
+        BackendStateConfiguration backendStateConfiguration = new BackendStateConfiguration();
+        backendStateConfiguration.setUsername("test_user");
+        ClusterStatsJdbcMonitor monitor = new ClusterStatsJdbcMonitor(backendStateConfiguration, new MonitorConfiguration());
+
+        ProxyBackendConfiguration proxyBackend = new ProxyBackendConfiguration();
+        proxyBackend.setProxyTo("http://localhost:" + trino.getMappedPort(8080));
+        proxyBackend.setName("test_cluster");
+        for (int i = 0; i < 3; i++) {
+            assertThat(monitor.monitor(proxyBackend).trinoStatus()).isEqualTo(TrinoStatus.HEALTHY);
+        }
+        assertThat(monitor.getConnectionCount()).isEqualTo(1);
+
+        // A failing backend does not keep its connection around
+        ProxyBackendConfiguration unreachableBackend = new ProxyBackendConfiguration();
+        unreachableBackend.setProxyTo("http://localhost:61234");  // assume no service running on this port
+        unreachableBackend.setName("unreachable_cluster");
+        assertThat(monitor.monitor(unreachableBackend).trinoStatus()).isEqualTo(TrinoStatus.UNHEALTHY);
+        assertThat(monitor.getConnectionCount()).isEqualTo(1);
+    }
+
     @Test
     void testJmxMonitor()
     {
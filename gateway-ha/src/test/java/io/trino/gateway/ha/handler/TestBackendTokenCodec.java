@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.handler;
+
+import io.trino.gateway.ha.handler.BackendTokenCodec.BackendToken;
+import io.trino.gateway.ha.handler.BackendTokenCodec.TokenizedPath;
+import io.trino.gateway.ha.handler.schema.RoutingDestination;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import java.net.URI;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+import static io.trino.gateway.ha.handler.BackendTokenCodec.appendToStatementUris;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+final class TestBackendTokenCodec
+{
+    private static final String STATEMENT_PATH = "/v1/statement/executing/20240101_000000_00001_abcde/y1a2b3/1";
+    private static final URI CLUSTER_URI = URI.create("http://trino-1:8080/v1/statement");
+    private static final RoutingDestination DESTINATION = new RoutingDestination("etl", "http://trino-1:8080", CLUSTER_URI, "https://trino-1.example.com");
+
+    private final BackendTokenCodec codec = new BackendTokenCodec(new SecretKeySpec("secret".getBytes(UTF_8), "HmacSHA256"));
+
+    @Test
+    void testRoundTrip()
+    {
+        String segment = codec.encode(DESTINATION).orElseThrow();
+        assertThat(segment).startsWith(BackendTokenCodec.SEGMENT_PREFIX).doesNotContain("/", "=", "+");
+
+        assertThat(codec.parse(STATEMENT_PATH + "/" + segment)).contains(new TokenizedPath(
+                STATEMENT_PATH,
+                Optional.of(new BackendToken("http://trino-1:8080", "etl", "https://trino-1.example.com"))));
+        assertThat(codec.parse(STATEMENT_PATH)).isEmpty();
+
+        RoutingDestination withoutGroup = new RoutingDestination(null, "http://trino-1:8080", CLUSTER_URI, null);
+        assertThat(codec.decode(codec.encode(withoutGroup).orElseThrow()))
+                .contains(new BackendToken("http://trino-1:8080", null, null));
+    }
+
+    @Test
+    void testRejectsForgedTokens()
+    {
+        String segment = codec.encode(DESTINATION).orElseThrow();
+        BackendTokenCodec otherKey = new BackendTokenCodec(new SecretKeySpec("other".getBytes(UTF_8), "HmacSHA256"));
+        String[] parts = segment.split("\\.");
+        String forgedPayload = "tg." + Base64.getUrlEncoder().withoutPadding().encodeToString("http://evil:80\n\n".getBytes(UTF_8)) + "." + parts[2];
+
+        for (TokenizedPath path : List.of(
+                otherKey.parse(STATEMENT_PATH + "/" + segment).orElseThrow(),
+                codec.parse(STATEMENT_PATH + "/" + forgedPayload).orElseThrow(),
+                codec.parse(STATEMENT_PATH + "/tg.not-base64!.x").orElseThrow(),
+                codec.parse(STATEMENT_PATH + "/tg.abc").orElseThrow())) {
+            // the token is removed from the path, but the backend is looked up as usual
+            assertThat(path.path()).isEqualTo(STATEMENT_PATH);
+            assertThat(path.backendToken()).isEmpty();
+        }
+    }
+
+    @Test
+    void testAppendToStatementUris()
+    {
+        String body = """
+                {"id":"20240101_000000_00001_abcde",\
+                "infoUri":"http://gateway:8080/ui/query.html?20240101_000000_00001_abcde",\
+                "partialCancelUri":"http://gateway:8080/v1/statement/executing/partialCancel/20240101_000000_00001_abcde/0/y1a2b3/1",\
+                "nextUri":"http://gateway:8080%s",\
+                "columns":[{"name":"uri","type":"varchar"}],\
+                "data":[["http://gateway:8080/v1/statement/x"]]}""".formatted(STATEMENT_PATH);
+
+        assertThat(appendToStatementUris(body, "tg.a.b", CLUSTER_URI, List.of("/v1/statement")))
+                .contains(body
+                        .replace("/y1a2b3/1\"", "/y1a2b3/1/tg.a.b\""));
+
+        // URIs pointing at the backend itself, or outside the statement paths, are left alone
+        assertThat(appendToStatementUris(body.replace("gateway:8080", "trino-1:8080"), "tg.a.b", CLUSTER_URI, List.of("/v1/statement"))).isEmpty();
+        assertThat(appendToStatementUris(body, "tg.a.b", CLUSTER_URI, List.of("/custom/statement"))).isEmpty();
+
+        // The final response has no URIs to follow
+        assertThat(appendToStatementUris("{\"id\":\"20240101_000000_00001_abcde\",\"stats\":{\"state\":\"FINISHED\"}}", "tg.a.b", CLUSTER_URI, List.of("/v1/statement"))).isEmpty();
+        assertThat(appendToStatementUris("not json", "tg.a.b", CLUSTER_URI, List.of("/v1/statement"))).isEmpty();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.handler;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+final class TestBufferedRequestBody
+{
+    @Test
+    void testReadAndDecode()
+            throws IOException
+    {
+        String query = "SELECT 'ünïcödé' FROM tbl";
+        BufferedRequestBody body = BufferedRequestBody.read(new ByteArrayInputStream(query.getBytes(UTF_8)));
+
+        assertThat(body.size()).isEqualTo(query.getBytes(UTF_8).length);
+        assertThat(body.toUtf8String()).isEqualTo(query);
+        assertThat(body.toUtf8String()).isSameAs(body.toUtf8String());
+        assertThat(body.openStream().readAllBytes()).isEqualTo(query.getBytes(UTF_8));
+        assertThat(body.toBodyGenerator().getBody()).isEqualTo(query.getBytes(UTF_8));
+    }
+
+    @Test
+    void testEmpty()
+            throws IOException
+    {
+        assertThat(BufferedRequestBody.read(null)).isSameAs(BufferedRequestBody.EMPTY);
+        assertThat(BufferedRequestBody.read(new ByteArrayInputStream(new byte[0]))).isSameAs(BufferedRequestBody.EMPTY);
+        assertThat(BufferedRequestBody.EMPTY.isEmpty()).isTrue();
+        assertThat(BufferedRequestBody.EMPTY.containsIgnoreCase("kill_query")).isFalse();
+    }
+
+    @Test
+    void testContainsIgnoreCase()
+            throws IOException
+    {
+        BufferedRequestBody body = BufferedRequestBody.read(new ByteArrayInputStream("CALL system.runtime.KILL_QUERY('q', 'ä')".getBytes(UTF_8)));
+
+        assertThat(body.containsIgnoreCase("kill_query")).isTrue();
+        assertThat(body.containsIgnoreCase("Kill_Query")).isTrue();
+        assertThat(body.containsIgnoreCase("'ä')")).isTrue();
+        assertThat(body.containsIgnoreCase("kill_querys")).isFalse();
+        assertThat(body.containsIgnoreCase("CALL system.runtime.KILL_QUERY('q', 'ä') and more")).isFalse();
+    }
+}
@@ -21,6 +21,7 @@ import io.trino.gateway.ha.config.HaGatewayConfiguration;
 import io.trino.gateway.ha.config.ProxyBackendConfiguration;
 import io.trino.gateway.ha.config.RequestAnalyzerConfig;
 import io.trino.gateway.ha.config.RulesExternalConfiguration;
+import io.trino.gateway.ha.handler.schema.RoutingDestination;
 import io.trino.gateway.ha.handler.schema.RoutingTargetResponse;
 import io.trino.gateway.ha.router.RoutingGroupSelector;
 import io.trino.gateway.ha.router.RoutingManager;
@@ -36,6 +37,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.net.URI;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +46,8 @@ import static io.trino.gateway.ha.handler.HttpUtils.USER_HEADER;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -338,6 +342,45 @@ class TestRoutingTargetHandler
         assertThat(response.routingDestination().clusterHost()).isEqualTo(backendUrl);
     }
 
+    @Test
+    void testResolveRoutingWithBackendToken()
+    {
+        String statementPath = "/v1/statement/executing/20240101_000000_00001_aaaaa/y1a2b3/1";
+        String backendUrl = "https://trino-backend.example.com";
+        HaGatewayConfiguration tokenConfig = provideGatewayConfiguration();
+        tokenConfig.getRouting().setBackendTokenEnabled(true);
+        tokenConfig.getRouting().setBackendTokenSigningSecret("secret");
+        RoutingTargetHandler tokenHandler = new RoutingTargetHandler(routingManager, RoutingGroupSelector.byRoutingGroupHeader(), tokenConfig);
+
+        String segment = BackendTokenCodec.fromConfiguration(tokenConfig.getRouting()).orElseThrow()
+                .encode(new RoutingDestination("test-group", backendUrl, URI.create(backendUrl + statementPath), null))
+                .orElseThrow();
+        HttpServletRequest pollRequest = Mockito.mock(HttpServletRequest.class);
+        when(pollRequest.getRequestURI()).thenReturn(statementPath + "/" + segment);
+
+        RoutingTargetResponse response = tokenHandler.resolveRouting(pollRequest);
+        assertThat(response.routingDestination().clusterHost()).isEqualTo(backendUrl);
+        assertThat(response.routingDestination().routingGroup()).isEqualTo("test-group");
+        assertThat(response.routingDestination().clusterUri()).isEqualTo(URI.create(backendUrl + statementPath));
+        assertThat(response.modifiedRequest().getRequestURI()).isEqualTo(statementPath);
+        verify(routingManager, never()).findBackendForQueryId(any());
+    }
+
+    @Test
+    void testResolveRoutingRecordsStageTimes()
+    {
+        ProxyHandlerStats stats = new ProxyHandlerStats();
+        RoutingTargetHandler timedHandler = new RoutingTargetHandler(routingManager, RoutingGroupSelector.byRoutingGroupHeader(), config, stats);
+
+        timedHandler.resolveRouting(request);
+
+        assertThat(stats.getRoutingTime().getAllTime().getCount()).isEqualTo(1);
+        assertThat(stats.getQueryLookupTime().getAllTime().getCount()).isEqualTo(1);
+        assertThat(stats.getRoutingRulesTime().getAllTime().getCount()).isEqualTo(1);
+        assertThat(stats.getBackendSelectionTime().getAllTime().getCount()).isEqualTo(1);
+        assertThat(stats.getBackendResponseTime().getAllTime().getCount()).isEqualTo(0);
+    }
+
     private RoutingTargetHandler createHandlerWithPropagateErrorsTrue()
     {
         config.getRoutingRules().getRulesExternalConfiguration().setPropagateErrors(true);
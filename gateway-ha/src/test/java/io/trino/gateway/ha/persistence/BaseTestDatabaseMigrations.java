@@ -99,6 +99,8 @@ public abstract class BaseTestDatabaseMigrations
     {
         verifyResultSetCount("SELECT name FROM gateway_backend", 0);
         verifyResultSetCount("SELECT query_id FROM query_history", 0);
+        verifyResultSetCount("SELECT backend_url FROM query_distribution", 0);
+        verifyResultSetCount("SELECT text_hash FROM query_text", 0);
     }
 
     protected void verifyResultSetCount(String sql, int expectedCount)
@@ -112,12 +114,16 @@ public abstract class BaseTestDatabaseMigrations
     {
         String gatewayBackendTable = "DROP TABLE IF EXISTS gateway_backend";
         String queryHistoryTable = "DROP TABLE IF EXISTS query_history";
+        String queryDistributionTable = "DROP TABLE IF EXISTS query_distribution";
+        String queryTextTable = "DROP TABLE IF EXISTS query_text";
         String flywayHistoryTable = "DROP TABLE IF EXISTS flyway_schema_history";
         Handle jdbiHandle = jdbi.open();
         String sql = "SELECT 1 FROM information_schema.tables WHERE table_schema = '%s'".formatted(schema);
-        verifyResultSetCount(sql, 3);
+        verifyResultSetCount(sql, 5);
         jdbiHandle.execute(gatewayBackendTable);
         jdbiHandle.execute(queryHistoryTable);
+        jdbiHandle.execute(queryDistributionTable);
+        jdbiHandle.execute(queryTextTable);
         jdbiHandle.execute(flywayHistoryTable);
         verifyResultSetCount(sql, 0);
         jdbiHandle.close();
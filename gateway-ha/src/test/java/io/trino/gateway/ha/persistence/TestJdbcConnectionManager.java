@@ -14,6 +14,7 @@
 package io.trino.gateway.ha.persistence;
 
 import io.trino.gateway.ha.config.DataStoreConfiguration;
+import io.trino.gateway.ha.config.QueryHistoryCleanupConfiguration;
 import org.jdbi.v3.core.Jdbi;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -107,6 +108,7 @@ final class TestJdbcConnectionManager
         // Mock the behavior of DataStoreConfiguration.getJdbcUrl
         DataStoreConfiguration dataStoreConfiguration = Mockito.mock(DataStoreConfiguration.class);
         when(dataStoreConfiguration.getJdbcUrl()).thenReturn(null);
+        when(dataStoreConfiguration.getQueryHistoryCleanup()).thenReturn(new QueryHistoryCleanupConfiguration());
 
         JdbcConnectionManager connectionManager = new JdbcConnectionManager(Jdbi.create("jdbc:h2:/mydb", "sa", "sa"), dataStoreConfiguration);
         assertThatThrownBy(() -> connectionManager.buildJdbcUrl(null))
@@ -123,6 +125,21 @@ final class TestJdbcConnectionManager
                 .hasMessage("Invalid JDBC URL: no '/' found in jdbc:h2:mem:test");
     }
 
+    @Test
+    void testRoutingGroupDatabaseJdbiIsReused()
+    {
+        JdbcConnectionManager connectionManager = createConnectionManager("jdbc:h2:mem:/mydb");
+        try {
+            Jdbi jdbi = connectionManager.getJdbi("newdb");
+            assertThat(connectionManager.getJdbi("newdb")).isSameAs(jdbi);
+            assertThat(connectionManager.getJdbi("otherdb")).isNotSameAs(jdbi);
+            assertThat(connectionManager.getJdbi(null)).isSameAs(connectionManager.getJdbi());
+        }
+        finally {
+            connectionManager.close();
+        }
+    }
+
     private static JdbcConnectionManager createConnectionManager(String jdbcUrl)
     {
         DataStoreConfiguration db = new DataStoreConfiguration(jdbcUrl, "sa", "sa", "", true, 4, true);
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.persistence;
+
+import io.trino.gateway.ha.config.ConnectionPoolConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.airlift.units.Duration.succinctDuration;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+final class TestPooledDataSource
+{
+    private static final AtomicInteger NEXT_DATABASE = new AtomicInteger();
+
+    @Test
+    void testConnectionIsReused()
+            throws SQLException
+    {
+        try (PooledDataSource dataSource = createDataSource(2)) {
+            Connection first = dataSource.getConnection();
+            first.close();
+            assertThat(first.isClosed()).isTrue();
+            // Closing a connection twice must not return it to the pool twice
+            first.close();
+
+            try (Connection second = dataSource.getConnection()) {
+                assertThat(second.isClosed()).isFalse();
+                assertThat(dataSource.getActiveConnections()).isEqualTo(1);
+            }
+            assertThat(dataSource.getCreatedConnections()).isEqualTo(1);
+            assertThat(dataSource.getIdleConnections()).isEqualTo(1);
+            assertThat(dataSource.getAcquisitionTime().getAllTime().getCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void testAcquisitionTimeout()
+            throws SQLException
+    {
+        try (PooledDataSource dataSource = createDataSource(1);
+                Connection _ = dataSource.getConnection()) {
+            assertThatThrownBy(dataSource::getConnection)
+                    .isInstanceOf(SQLTransientConnectionException.class)
+                    .hasMessageContaining("No database connection available");
+            assertThat(dataSource.getAcquisitionTimeouts().getTotalCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void testTransactionIsRolledBackOnReturn()
+            throws SQLException
+    {
+        try (PooledDataSource dataSource = createDataSource(1)) {
+            try (Connection connection = dataSource.getConnection();
+                    Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE test (id INT)");
+                connection.setAutoCommit(false);
+                statement.execute("INSERT INTO test VALUES (1)");
+            }
+
+            try (Connection connection = dataSource.getConnection();
+                    Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM test")) {
+                assertThat(connection.getAutoCommit()).isTrue();
+                assertThat(resultSet.next()).isTrue();
+                assertThat(resultSet.getLong(1)).isEqualTo(0);
+            }
+        }
+    }
+
+    @Test
+    void testClosedConnectionRejectsCalls()
+            throws SQLException
+    {
+        try (PooledDataSource dataSource = createDataSource(1)) {
+            Connection connection = dataSource.getConnection();
+            connection.close();
+            assertThatThrownBy(connection::createStatement)
+                    .isInstanceOf(SQLException.class)
+                    .hasMessage("Connection is closed");
+        }
+    }
+
+    private static PooledDataSource createDataSource(int maxSize)
+    {
+        ConnectionPoolConfiguration config = new ConnectionPoolConfiguration();
+        config.setMinSize(0);
+        config.setMaxSize(maxSize);
+        config.setConnectionTimeout(succinctDuration(100, MILLISECONDS));
+        return new PooledDataSource("jdbc:h2:mem:pool" + NEXT_DATABASE.incrementAndGet(), "sa", "sa", config);
+    }
+}
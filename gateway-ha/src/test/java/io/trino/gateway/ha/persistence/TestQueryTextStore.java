@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import static io.trino.gateway.ha.persistence.QueryTextStore.PREVIEW_LENGTH;
+import static io.trino.gateway.ha.persistence.QueryTextStore.compress;
+import static io.trino.gateway.ha.persistence.QueryTextStore.decompress;
+import static io.trino.gateway.ha.persistence.QueryTextStore.hash;
+import static io.trino.gateway.ha.persistence.QueryTextStore.preview;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+final class TestQueryTextStore
+{
+    @Test
+    void testCompression()
+    {
+        String queryText = "SELECT * FROM orders WHERE orderkey IN (%s)".formatted("1, ".repeat(10_000) + "1");
+        byte[] compressed = compress(queryText);
+        assertThat(compressed.length).isLessThan(queryText.getBytes(UTF_8).length / 10);
+        assertThat(decompress(compressed)).isEqualTo(queryText);
+
+        assertThat(decompress(compress(""))).isEmpty();
+        assertThat(decompress(compress("SELECT 'żółw 🐢'"))).isEqualTo("SELECT 'żółw 🐢'");
+    }
+
+    @Test
+    void testHash()
+    {
+        assertThat(hash("SELECT 1"))
+                .hasSize(64)
+                .isEqualTo(hash("SELECT 1"))
+                .isNotEqualTo(hash("SELECT 2"));
+    }
+
+    @Test
+    void testPreview()
+    {
+        assertThat(preview("SELECT 1")).isEqualTo("SELECT 1");
+        String longText = "x".repeat(PREVIEW_LENGTH + 10);
+        assertThat(preview(longText)).isEqualTo("x".repeat(PREVIEW_LENGTH));
+
+        // A surrogate pair is not split
+        String surrogateText = "x".repeat(PREVIEW_LENGTH - 1) + "🐢" + "x";
+        assertThat(preview(surrogateText)).isEqualTo("x".repeat(PREVIEW_LENGTH - 1));
+    }
+}
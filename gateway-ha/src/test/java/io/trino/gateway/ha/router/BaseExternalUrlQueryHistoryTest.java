@@ -16,6 +16,7 @@ package io.trino.gateway.ha.router;
 import io.trino.gateway.ha.config.DataStoreConfiguration;
 import io.trino.gateway.ha.persistence.FlywayMigration;
 import io.trino.gateway.ha.persistence.JdbcConnectionManager;
+import io.trino.gateway.ha.persistence.dao.QueryRoute;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
@@ -104,17 +105,16 @@ abstract class BaseExternalUrlQueryHistoryTest
 
         queryHistoryManager.submitQueryDetail(queryDetail);
 
-        // Test retrieving external URL by query ID
-        String externalUrl = queryHistoryManager.getExternalUrlForQueryId("external-url-test-456");
-        assertThat(externalUrl).isEqualTo("https://analytics-gateway.company.com");
+        // Test retrieving the route, including the external URL, by query ID
+        assertThat(queryHistoryManager.getQueryRoute("external-url-test-456"))
+                .contains(new QueryRoute("http://backend:8080", "analytics", "https://analytics-gateway.company.com"));
     }
 
     @Test
     void testGetExternalUrlForNonExistentQuery()
     {
-        // Test retrieving external URL for non-existent query
-        String externalUrl = queryHistoryManager.getExternalUrlForQueryId("non-existent-query");
-        assertThat(externalUrl).isNull();
+        // Test retrieving the route for non-existent query
+        assertThat(queryHistoryManager.getQueryRoute("non-existent-query")).isEmpty();
     }
 
     @Test
@@ -164,8 +164,9 @@ abstract class BaseExternalUrlQueryHistoryTest
 
         // Verify all queries were stored with correct external URLs
         for (int i = 1; i <= 3; i++) {
-            String externalUrl = queryHistoryManager.getExternalUrlForQueryId("multi-external-url-test-" + i);
-            assertThat(externalUrl).isEqualTo("https://external-" + i + ".example.com");
+            assertThat(queryHistoryManager.getQueryRoute("multi-external-url-test-" + i))
+                    .map(QueryRoute::externalUrl)
+                    .contains("https://external-" + i + ".example.com");
         }
     }
 
@@ -13,12 +13,17 @@
  */
 package io.trino.gateway.ha.router;
 
+import io.airlift.units.Duration;
 import io.trino.gateway.ha.config.DataStoreConfiguration;
+import io.trino.gateway.ha.config.QueryHistoryCleanupConfiguration;
+import io.trino.gateway.ha.config.QueryHistoryWriterConfiguration;
 import io.trino.gateway.ha.domain.TableData;
 import io.trino.gateway.ha.domain.request.QueryHistoryRequest;
 import io.trino.gateway.ha.domain.response.DistributionResponse;
 import io.trino.gateway.ha.persistence.FlywayMigration;
 import io.trino.gateway.ha.persistence.JdbcConnectionManager;
+import io.trino.gateway.ha.persistence.QueryHistoryCleaner;
+import io.trino.gateway.ha.persistence.dao.QueryRoute;
 import org.jdbi.v3.core.Jdbi;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -29,17 +34,21 @@ import org.junit.jupiter.api.TestInstance.Lifecycle;
 import org.testcontainers.containers.JdbcDatabaseContainer;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import static io.trino.gateway.ha.TestingJdbcConnectionManager.createTestingJdbcConnectionManager;
+import static io.trino.gateway.ha.config.QueryHistoryOverflowPolicy.BLOCK;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @TestInstance(Lifecycle.PER_CLASS)
 abstract class BaseTestQueryHistoryManager
 {
     protected final JdbcDatabaseContainer<?> container = startContainer();
-    private QueryHistoryManager queryHistoryManager;
+    private DataStoreConfiguration config;
+    private HaQueryHistoryManager queryHistoryManager;
     private Jdbi jdbi;
 
     protected abstract JdbcDatabaseContainer<?> startContainer();
@@ -47,7 +56,7 @@ abstract class BaseTestQueryHistoryManager
     @BeforeAll
     void setUp()
     {
-        DataStoreConfiguration config = new DataStoreConfiguration(
+        config = new DataStoreConfiguration(
                 container.getJdbcUrl(),
                 container.getUsername(),
                 container.getPassword(),
@@ -64,7 +73,12 @@ abstract class BaseTestQueryHistoryManager
     @BeforeEach
     void cleanUp()
     {
-        jdbi.useHandle(handle -> handle.execute("DELETE FROM query_history"));
+        queryHistoryManager.getDistributionRecorder().flush();
+        jdbi.useHandle(handle -> {
+            handle.execute("DELETE FROM query_history");
+            handle.execute("DELETE FROM query_distribution");
+            handle.execute("DELETE FROM query_text");
+        });
     }
 
     @AfterAll
@@ -126,6 +140,40 @@ abstract class BaseTestQueryHistoryManager
         // Should return 1 entry
         resList = queryHistoryManager.findDistribution(currentTime);
         assertThat(resList).hasSize(1);
+
+        // The count is read from the rollup table once it is flushed
+        queryHistoryManager.getDistributionRecorder().flush();
+        assertThat(jdbi.withHandle(handle -> handle.createQuery("SELECT SUM(query_count) FROM query_distribution").mapTo(Long.class).one()))
+                .isEqualTo(1);
+        resList = queryHistoryManager.findDistribution(currentTime);
+        assertThat(resList).hasSize(1);
+        assertThat(resList.getFirst().getQueryCount()).isEqualTo(1);
+        assertThat(resList.getFirst().getBackendUrl()).isEqualTo("http://localhost:9999");
+    }
+
+    @Test
+    void testDistributionFlushesAddToOneRowPerKey()
+    {
+        long currentTime = System.currentTimeMillis();
+        QueryHistoryManager.QueryDetail queryDetail = new QueryHistoryManager.QueryDetail();
+        queryDetail.setBackendUrl("http://localhost:9999");
+        queryDetail.setQueryText("select 1");
+        queryDetail.setCaptureTime(currentTime);
+        for (int flush = 0; flush < 3; flush++) {
+            for (String user : Arrays.asList("test@ea.com", null)) {
+                queryDetail.setUser(user);
+                queryDetail.setQueryId("distribution-" + flush + "-" + user);
+                queryHistoryManager.submitQueryDetail(queryDetail);
+            }
+            queryHistoryManager.getDistributionRecorder().flush();
+        }
+
+        // One row for the user and one for the queries without a user, whatever the number of flushes
+        assertThat(jdbi.withHandle(handle -> handle.createQuery("SELECT query_count FROM query_distribution").mapTo(Long.class).list()))
+                .containsExactly(3L, 3L);
+        List<DistributionResponse.LineChart> resList = queryHistoryManager.findDistribution(currentTime);
+        assertThat(resList).hasSize(1);
+        assertThat(resList.getFirst().getQueryCount()).isEqualTo(6);
     }
 
     @Test
@@ -177,6 +225,221 @@ abstract class BaseTestQueryHistoryManager
         assertThat(normalResult.getRows().get(0).getUser()).isEqualTo("injection-alice");
     }
 
+    @Test
+    void testFindQueryHistoryWithCursor()
+    {
+        long created = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            QueryHistoryManager.QueryDetail queryDetail = new QueryHistoryManager.QueryDetail();
+            queryDetail.setBackendUrl("http://localhost:9999");
+            queryDetail.setSource("cursor-source");
+            queryDetail.setUser("cursor-user");
+            queryDetail.setQueryText("select " + i);
+            queryDetail.setQueryId("cursor_test_" + i);
+            // Two queries share each creation time, the query id orders them
+            queryDetail.setCaptureTime(created - i / 2);
+            queryHistoryManager.submitQueryDetail(queryDetail);
+        }
+
+        TableData<QueryHistoryManager.QueryDetail> firstPage = queryHistoryManager.findQueryHistory(
+                new QueryHistoryRequest(1, 2, "cursor-user", null, null, null));
+        assertThat(firstPage.getTotal()).isEqualTo(5);
+        assertThat(firstPage.getRows()).extracting(QueryHistoryManager.QueryDetail::getQueryId)
+                .containsExactly("cursor_test_1", "cursor_test_0");
+        assertThat(firstPage.getNextCursor()).isNotNull();
+
+        TableData<QueryHistoryManager.QueryDetail> secondPage = queryHistoryManager.findQueryHistory(
+                new QueryHistoryRequest(2, 2, "cursor-user", null, null, null, firstPage.getNextCursor()));
+        assertThat(secondPage.getRows()).extracting(QueryHistoryManager.QueryDetail::getQueryId)
+                .containsExactly("cursor_test_3", "cursor_test_2");
+        // The same page is found by its number
+        assertThat(queryHistoryManager.findQueryHistory(new QueryHistoryRequest(2, 2, "cursor-user", null, null, null)).getRows())
+                .extracting(QueryHistoryManager.QueryDetail::getQueryId)
+                .containsExactly("cursor_test_3", "cursor_test_2");
+
+        TableData<QueryHistoryManager.QueryDetail> lastPage = queryHistoryManager.findQueryHistory(
+                new QueryHistoryRequest(3, 2, "cursor-user", null, null, null, secondPage.getNextCursor()));
+        assertThat(lastPage.getRows()).extracting(QueryHistoryManager.QueryDetail::getQueryId)
+                .containsExactly("cursor_test_4");
+        assertThat(lastPage.getNextCursor()).isNull();
+
+        // An invalid cursor falls back to the page number
+        assertThat(queryHistoryManager.findQueryHistory(new QueryHistoryRequest(3, 2, "cursor-user", null, null, null, "invalid")).getRows())
+                .extracting(QueryHistoryManager.QueryDetail::getQueryId)
+                .containsExactly("cursor_test_4");
+    }
+
+    @Test
+    void testStoredQueryText()
+    {
+        String longText = "SELECT * FROM orders WHERE orderkey IN (%s)".formatted("1, ".repeat(1000) + "1");
+        for (int i = 0; i < 3; i++) {
+            QueryHistoryManager.QueryDetail queryDetail = new QueryHistoryManager.QueryDetail();
+            queryDetail.setBackendUrl("http://localhost:9999");
+            queryDetail.setUser("text-user");
+            queryDetail.setQueryText(i < 2 ? longText : "select 1");
+            queryDetail.setQueryId("text_test_" + i);
+            queryDetail.setCaptureTime(i);
+            queryHistoryManager.submitQueryDetail(queryDetail);
+        }
+        // Each distinct text is stored once
+        assertThat(jdbi.withHandle(handle -> handle.createQuery("SELECT COUNT(*) FROM query_text").mapTo(Long.class).one()))
+                .isEqualTo(2);
+
+        // The page shows the beginning of the long text
+        TableData<QueryHistoryManager.QueryDetail> page = queryHistoryManager.findQueryHistory(
+                new QueryHistoryRequest(1, 10, "text-user", null, null, null));
+        assertThat(page.getRows()).extracting(QueryHistoryManager.QueryDetail::getQueryText)
+                .containsExactly("select 1", longText.substring(0, 200), longText.substring(0, 200));
+        assertThat(page.getRows()).extracting(QueryHistoryManager.QueryDetail::isQueryTextTruncated)
+                .containsExactly(false, true, true);
+
+        // The full text is loaded for a single query, and for the recent queries
+        QueryHistoryManager.QueryDetail queryDetail = queryHistoryManager.findQueryDetail("text_test_0").orElseThrow();
+        assertThat(queryDetail.getQueryText()).isEqualTo(longText);
+        assertThat(queryDetail.isQueryTextTruncated()).isFalse();
+        assertThat(queryHistoryManager.findQueryDetail("unknown")).isEmpty();
+        assertThat(queryHistoryManager.fetchQueryHistory(Optional.of("text-user")))
+                .extracting(QueryHistoryManager.QueryDetail::getQueryText)
+                .containsExactly("select 1", longText, longText);
+
+        // Texts are deleted with the last query referring to them
+        QueryHistoryCleaner cleaner = new QueryHistoryCleaner(jdbi, config);
+        cleaner.deleteHistoryBefore(2);
+        cleaner.deleteUnreferencedTextsBefore(Long.MAX_VALUE);
+        assertThat(cleaner.getDeletedTexts().getTotalCount()).isEqualTo(1);
+        assertThat(jdbi.withHandle(handle -> handle.createQuery("SELECT COUNT(*) FROM query_text").mapTo(Long.class).one()))
+                .isEqualTo(1);
+        assertThat(queryHistoryManager.findQueryDetail("text_test_2").orElseThrow().getQueryText()).isEqualTo("select 1");
+    }
+
+    @Test
+    void testReusedQueryTextIsRefreshed()
+    {
+        QueryHistoryCleaner cleaner = new QueryHistoryCleaner(jdbi, config);
+        submitWithNewManager("reuse_test_0", "select 'reused'");
+        jdbi.useHandle(handle -> handle.execute("UPDATE query_text SET created = 0"));
+
+        // Reusing the text refreshes it, so it is not deleted while its new record is being written
+        submitWithNewManager("reuse_test_1", "select 'reused'");
+        jdbi.useHandle(handle -> handle.execute("DELETE FROM query_history"));
+        cleaner.deleteUnreferencedTextsBefore(1000);
+        assertThat(cleaner.getDeletedTexts().getTotalCount()).isEqualTo(0);
+
+        // A text deleted by the cleanup is stored again when it is reused
+        cleaner.deleteUnreferencedTextsBefore(Long.MAX_VALUE);
+        assertThat(cleaner.getDeletedTexts().getTotalCount()).isEqualTo(1);
+        submitWithNewManager("reuse_test_2", "select 'reused'");
+        assertThat(queryHistoryManager.findQueryDetail("reuse_test_2").orElseThrow().getQueryText()).isEqualTo("select 'reused'");
+    }
+
+    private void submitWithNewManager(String queryId, String queryText)
+    {
+        // A new manager does not know the stored texts, as after a restart
+        HaQueryHistoryManager manager = new HaQueryHistoryManager(jdbi, config);
+        try {
+            QueryHistoryManager.QueryDetail queryDetail = new QueryHistoryManager.QueryDetail();
+            queryDetail.setBackendUrl("http://localhost:9999");
+            queryDetail.setQueryText(queryText);
+            queryDetail.setQueryId(queryId);
+            queryDetail.setCaptureTime(System.currentTimeMillis());
+            manager.submitQueryDetail(queryDetail);
+        }
+        finally {
+            manager.stop();
+        }
+    }
+
+    @Test
+    void testQueryHistoryCleanupInBatches()
+    {
+        // Queries 0 to 4 are past the retention, 3 and 4 share their creation time
+        long[] created = {1000, 1001, 1002, 1003, 1003, 5000, 6000};
+        for (int i = 0; i < created.length; i++) {
+            QueryHistoryManager.QueryDetail queryDetail = new QueryHistoryManager.QueryDetail();
+            queryDetail.setBackendUrl("http://localhost:9999");
+            queryDetail.setQueryText("select 1");
+            queryDetail.setQueryId("cleanup_test_" + i);
+            queryDetail.setCaptureTime(created[i]);
+            queryHistoryManager.submitQueryDetail(queryDetail);
+        }
+
+        QueryHistoryCleanupConfiguration cleanupConfiguration = new QueryHistoryCleanupConfiguration();
+        cleanupConfiguration.setBatchSize(2);
+        cleanupConfiguration.setBatchDelay(new Duration(0, MILLISECONDS));
+        DataStoreConfiguration cleanupConfig = new DataStoreConfiguration(
+                config.getJdbcUrl(),
+                config.getUser(),
+                config.getPassword(),
+                config.getDriver(),
+                true,
+                4,
+                true);
+        cleanupConfig.setQueryHistoryCleanup(cleanupConfiguration);
+        QueryHistoryCleaner cleaner = new QueryHistoryCleaner(jdbi, cleanupConfig);
+        cleaner.deleteHistoryBefore(5000);
+
+        assertThat(queryHistoryManager.fetchQueryHistory(Optional.empty()))
+                .extracting(QueryHistoryManager.QueryDetail::getQueryId)
+                .containsExactlyInAnyOrder("cleanup_test_5", "cleanup_test_6");
+        assertThat(cleaner.getLastRunDeletedRows()).isEqualTo(5);
+        assertThat(cleaner.getLastRunBatches()).isEqualTo(2);
+        assertThat(cleaner.getDeletedRows().getTotalCount()).isEqualTo(5);
+    }
+
+    @Test
+    void testAsyncBatchedWriter()
+    {
+        QueryHistoryWriterConfiguration writerConfiguration = new QueryHistoryWriterConfiguration();
+        writerConfiguration.setAsyncEnabled(true);
+        writerConfiguration.setBatchSize(10);
+        writerConfiguration.setQueueSize(5);
+        writerConfiguration.setFlushInterval(new Duration(100, MILLISECONDS));
+        writerConfiguration.setOverflowPolicy(BLOCK);
+        DataStoreConfiguration asyncConfig = new DataStoreConfiguration(
+                config.getJdbcUrl(),
+                config.getUser(),
+                config.getPassword(),
+                config.getDriver(),
+                true,
+                4,
+                true);
+        asyncConfig.setQueryHistoryWriter(writerConfiguration);
+        HaQueryHistoryManager asyncManager = new HaQueryHistoryManager(jdbi, asyncConfig);
+
+        // The same detail is reused, so the writer must copy it on submission
+        QueryHistoryManager.QueryDetail queryDetail = new QueryHistoryManager.QueryDetail();
+        queryDetail.setBackendUrl("http://localhost:9999");
+        queryDetail.setQueryText("select 1");
+        for (int i = 0; i < 25; i++) {
+            queryDetail.setQueryId("async_" + i);
+            queryDetail.setUser(i % 2 == 0 ? "even" : null);
+            queryDetail.setCaptureTime(i);
+            asyncManager.submitQueryDetail(queryDetail);
+        }
+        // Duplicate query id, rejected without losing the rest of its batch
+        queryDetail.setQueryId("async_0");
+        asyncManager.submitQueryDetail(queryDetail);
+        asyncManager.stop();
+
+        assertThat(queryHistoryManager.fetchQueryHistory(Optional.empty()))
+                .extracting(QueryHistoryManager.QueryDetail::getQueryId)
+                .hasSize(25)
+                .doesNotHaveDuplicates();
+        assertThat(queryHistoryManager.fetchQueryHistory(Optional.of("even"))).hasSize(13);
+        assertThat(queryHistoryManager.getQueryRoute("async_24")).map(QueryRoute::backend).contains("http://localhost:9999");
+        assertThat(asyncManager.getWriter().getWrittenRows().getTotalCount()).isEqualTo(25);
+        assertThat(asyncManager.getWriter().getFailedRows().getTotalCount()).isEqualTo(1);
+        assertThat(asyncManager.getWriter().getDroppedRows().getTotalCount()).isZero();
+        assertThat(asyncManager.getWriter().getQueueDepth()).isZero();
+
+        // Once closed, records are dropped instead of waiting for a writer that is gone
+        queryDetail.setQueryId("async_after_close");
+        asyncManager.submitQueryDetail(queryDetail);
+        assertThat(asyncManager.getWriter().getDroppedRows().getTotalCount()).isEqualTo(1);
+        assertThat(asyncManager.getWriter().getQueueDepth()).isZero();
+    }
+
     @Test
     void testTimestampParsing()
     {
@@ -13,6 +13,7 @@
  */
 package io.trino.gateway.ha.router;
 
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
@@ -21,6 +22,7 @@ import io.airlift.http.client.JsonBodyGenerator;
 import io.airlift.http.client.JsonResponseHandler;
 import io.airlift.http.client.Request;
 import io.airlift.json.JsonCodec;
+import io.airlift.units.Duration;
 import io.trino.gateway.ha.config.RequestAnalyzerConfig;
 import io.trino.gateway.ha.config.RulesExternalConfiguration;
 import io.trino.gateway.ha.router.schema.ExternalRouterResponse;
@@ -45,6 +47,10 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static io.airlift.http.client.HeaderNames.CONTENT_TYPE;
 import static io.airlift.http.client.JsonResponseHandler.createJsonResponseHandler;
@@ -53,10 +59,15 @@ import static io.airlift.json.JsonCodec.jsonCodec;
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_QUERY_PROPERTIES;
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_REQUEST_USER;
 import static io.trino.gateway.ha.router.RoutingGroupSelector.ROUTING_GROUP_HEADER;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -373,6 +384,163 @@ final class TestExternalRoutingGroupSelector
                 .isInstanceOfSatisfying(WebApplicationException.class, e -> assertThat(e.getResponse().getStatus()).isEqualTo(400));
     }
 
+    @Test
+    void testCachesRoutingDecision()
+    {
+        HttpClient httpClient = mock(HttpClient.class);
+        TestingTicker ticker = new TestingTicker();
+        ExternalRoutingStats stats = new ExternalRoutingStats();
+        RulesExternalConfiguration rulesExternalConfiguration = provideRoutingRuleExternalConfig();
+        rulesExternalConfiguration.setCacheTtl(new Duration(1, MINUTES));
+        RoutingGroupSelector selector = new ExternalRoutingGroupSelector(httpClient, rulesExternalConfiguration, requestAnalyzerConfig, stats, ticker);
+
+        when(httpClient.execute(any(), any())).thenReturn(new ExternalRouterResponse("test-group", null, ImmutableMap.of()));
+
+        assertThat(selector.findRoutingDestination(mockRequestWithSource("etl")).routingGroup()).isEqualTo("test-group");
+        assertThat(selector.findRoutingDestination(mockRequestWithSource("etl")).routingGroup()).isEqualTo("test-group");
+        verify(httpClient, times(1)).execute(any(), any());
+        assertThat(stats.getCacheHits().getTotalCount()).isEqualTo(1);
+
+        // A different source is a different request
+        selector.findRoutingDestination(mockRequestWithSource("dashboard"));
+        verify(httpClient, times(2)).execute(any(), any());
+
+        ticker.increment(2, MINUTES);
+        selector.findRoutingDestination(mockRequestWithSource("etl"));
+        verify(httpClient, times(3)).execute(any(), any());
+    }
+
+    @Test
+    void testCircuitBreakerOpensAndProbes()
+    {
+        HttpClient httpClient = mock(HttpClient.class);
+        TestingTicker ticker = new TestingTicker();
+        ExternalRoutingStats stats = new ExternalRoutingStats();
+        RulesExternalConfiguration rulesExternalConfiguration = provideRoutingRuleExternalConfig();
+        rulesExternalConfiguration.setCircuitBreakerFailureThreshold(2);
+        rulesExternalConfiguration.setCircuitBreakerOpenDuration(new Duration(30, SECONDS));
+        RoutingGroupSelector selector = new ExternalRoutingGroupSelector(httpClient, rulesExternalConfiguration, requestAnalyzerConfig, stats, ticker);
+
+        when(httpClient.execute(any(), any())).thenThrow(new RuntimeException("Simulated failure"));
+        for (int i = 0; i < 3; i++) {
+            assertThat(selector.findRoutingDestination(mockRequestWithSource("etl")).routingGroup()).isEqualTo("header-group");
+        }
+        // The third request did not reach the service
+        verify(httpClient, times(2)).execute(any(), any());
+        assertThat(stats.getRequestFailures().getTotalCount()).isEqualTo(2);
+        assertThat(stats.getShortCircuitedRequests().getTotalCount()).isEqualTo(1);
+        assertThat(stats.getCircuitBreakerOpened().getTotalCount()).isEqualTo(1);
+
+        // A failed probe opens the breaker again
+        ticker.increment(31, SECONDS);
+        selector.findRoutingDestination(mockRequestWithSource("etl"));
+        selector.findRoutingDestination(mockRequestWithSource("etl"));
+        verify(httpClient, times(3)).execute(any(), any());
+        assertThat(stats.getCircuitBreakerOpened().getTotalCount()).isEqualTo(2);
+
+        // A successful probe closes it
+        ticker.increment(31, SECONDS);
+        Mockito.reset(httpClient);
+        when(httpClient.execute(any(), any())).thenReturn(new ExternalRouterResponse("test-group", null, ImmutableMap.of()));
+        assertThat(selector.findRoutingDestination(mockRequestWithSource("etl")).routingGroup()).isEqualTo("test-group");
+        assertThat(selector.findRoutingDestination(mockRequestWithSource("etl")).routingGroup()).isEqualTo("test-group");
+        verify(httpClient, times(2)).execute(any(), any());
+    }
+
+    @Test
+    void testCircuitBreakerReopensAfterProbeError()
+    {
+        HttpClient httpClient = mock(HttpClient.class);
+        TestingTicker ticker = new TestingTicker();
+        ExternalRoutingStats stats = new ExternalRoutingStats();
+        RulesExternalConfiguration rulesExternalConfiguration = provideRoutingRuleExternalConfig();
+        rulesExternalConfiguration.setCircuitBreakerFailureThreshold(1);
+        rulesExternalConfiguration.setCircuitBreakerOpenDuration(new Duration(30, SECONDS));
+        RoutingGroupSelector selector = new ExternalRoutingGroupSelector(httpClient, rulesExternalConfiguration, requestAnalyzerConfig, stats, ticker);
+
+        when(httpClient.execute(any(), any())).thenThrow(new RuntimeException("Simulated failure"));
+        selector.findRoutingDestination(mockRequestWithSource("etl"));
+        assertThat(stats.getCircuitBreakerOpened().getTotalCount()).isEqualTo(1);
+
+        // The probe fails with an error rather than an exception
+        ticker.increment(31, SECONDS);
+        Mockito.reset(httpClient);
+        when(httpClient.execute(any(), any())).thenThrow(new AssertionError("Simulated error"));
+        assertThatThrownBy(() -> selector.findRoutingDestination(mockRequestWithSource("etl")))
+                .isInstanceOf(AssertionError.class);
+        assertThat(stats.getCircuitBreakerOpened().getTotalCount()).isEqualTo(2);
+
+        // The breaker is open again rather than stuck waiting for the probe, so it probes once the open duration passes
+        ticker.increment(31, SECONDS);
+        Mockito.reset(httpClient);
+        when(httpClient.execute(any(), any())).thenReturn(new ExternalRouterResponse("test-group", null, ImmutableMap.of()));
+        assertThat(selector.findRoutingDestination(mockRequestWithSource("etl")).routingGroup()).isEqualTo("test-group");
+        verify(httpClient, times(1)).execute(any(), any());
+    }
+
+    @Test
+    void testConcurrencyLimitFallsBackToHeader()
+            throws Exception
+    {
+        HttpClient httpClient = mock(HttpClient.class);
+        ExternalRoutingStats stats = new ExternalRoutingStats();
+        RulesExternalConfiguration rulesExternalConfiguration = provideRoutingRuleExternalConfig();
+        rulesExternalConfiguration.setMaxConcurrentRequests(1);
+        RoutingGroupSelector selector = new ExternalRoutingGroupSelector(httpClient, rulesExternalConfiguration, requestAnalyzerConfig, stats, Ticker.systemTicker());
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(httpClient.execute(any(), any())).thenAnswer(_ -> {
+            started.countDown();
+            release.await();
+            return new ExternalRouterResponse("test-group", null, ImmutableMap.of());
+        });
+
+        ExecutorService executor = newSingleThreadExecutor();
+        try {
+            HttpServletRequest blockedRequest = mockRequestWithSource("etl");
+            Future<RoutingSelectorResponse> blocked = executor.submit(() -> selector.findRoutingDestination(blockedRequest));
+            started.await();
+
+            assertThat(selector.findRoutingDestination(mockRequestWithSource("etl")).routingGroup()).isEqualTo("header-group");
+            assertThat(stats.getRejectedRequests().getTotalCount()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(blocked.get().routingGroup()).isEqualTo("test-group");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        verify(httpClient, times(1)).execute(any(), any());
+    }
+
+    private static HttpServletRequest mockRequestWithSource(String source)
+    {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeaderNames()).thenAnswer(_ -> Collections.enumeration(List.of("X-Trino-Source")));
+        when(request.getHeaders(anyString())).thenAnswer(invocation ->
+                "X-Trino-Source".equals(invocation.getArgument(0)) ? Collections.enumeration(List.of(source)) : Collections.emptyEnumeration());
+        lenient().when(request.getHeader(ROUTING_GROUP_HEADER)).thenReturn("header-group");
+        return request;
+    }
+
+    private static class TestingTicker
+            implements Ticker
+    {
+        private long time;
+
+        @Override
+        public synchronized long read()
+        {
+            return this.time;
+        }
+
+        private synchronized void increment(long delta, TimeUnit unit)
+        {
+            time += unit.toNanos(delta);
+        }
+    }
+
     private HttpServletRequest prepareMockRequest()
     {
         return new QueryRequestMock()
@@ -179,6 +179,35 @@ final class TestHaGatewayManager
         assertThat(haGatewayManager.getBackendByName("new-etl1").map(ProxyBackendConfiguration::getExternalUrl)).hasValue("https://etl2.trino.gateway.io:443");
     }
 
+    @Test
+    void testBackendIndex()
+    {
+        DatabaseCacheConfiguration cacheConfiguration = new DatabaseCacheConfiguration();
+        cacheConfiguration.setEnabled(true);
+        JdbcConnectionManager connectionManager = createTestingJdbcConnectionManager(dataStoreConfig());
+        HaGatewayManager haGatewayManager = new HaGatewayManager(connectionManager.getJdbi(), new RoutingConfiguration(), cacheConfiguration);
+
+        for (int i = 0; i < 3; i++) {
+            ProxyBackendConfiguration backend = new ProxyBackendConfiguration();
+            backend.setActive(i != 2);
+            backend.setRoutingGroup(i == 0 ? "adhoc" : "etl");
+            backend.setName("backend" + i);
+            backend.setProxyTo("https://backend%s.trino.gateway.io".formatted(i));
+            haGatewayManager.addBackend(backend);
+        }
+
+        assertThat(haGatewayManager.getActiveBackends("etl"))
+                .extracting(ProxyBackendConfiguration::getName)
+                .containsExactly("backend1");
+        assertThat(haGatewayManager.getActiveBackends("unknown")).isEmpty();
+        assertThat(haGatewayManager.getBackendByName("backend2").orElseThrow().isActive()).isFalse();
+
+        // Callers get copies, changing one does not affect the cached backends
+        ProxyBackendConfiguration copy = haGatewayManager.getActiveDefaultBackends().getFirst();
+        copy.setActive(false);
+        assertThat(haGatewayManager.getActiveDefaultBackends().getFirst().isActive()).isTrue();
+    }
+
     private static class TestingTicker
             implements Ticker
     {
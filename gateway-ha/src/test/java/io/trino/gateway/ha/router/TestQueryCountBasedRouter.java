@@ -14,6 +14,7 @@
 package io.trino.gateway.ha.router;
 
 import com.google.common.collect.ImmutableList;
+import io.airlift.http.client.testing.TestingHttpClient;
 import io.trino.gateway.ha.clustermonitor.ClusterStats;
 import io.trino.gateway.ha.clustermonitor.TrinoStatus;
 import io.trino.gateway.ha.config.DataStoreConfiguration;
@@ -24,9 +25,13 @@ import io.trino.gateway.ha.persistence.JdbcConnectionManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static io.trino.gateway.ha.TestingJdbcConnectionManager.createTestingJdbcConnectionManager;
 import static io.trino.gateway.ha.TestingJdbcConnectionManager.dataStoreConfig;
@@ -180,7 +185,9 @@ final class TestQueryCountBasedRouter
         JdbcConnectionManager connectionManager = createTestingJdbcConnectionManager(dataStoreConfig);
         backendManager = new HaGatewayManager(connectionManager.getJdbi(), routingConfiguration, new DatabaseCacheConfiguration());
         historyManager = new HaQueryHistoryManager(connectionManager.getJdbi(), dataStoreConfig);
-        queryCountBasedRouter = new QueryCountBasedRouter(backendManager, historyManager, routingConfiguration);
+        queryCountBasedRouter = new QueryCountBasedRouter(backendManager, historyManager, routingConfiguration, new TestingHttpClient(_ -> {
+            throw new UnsupportedOperationException();
+        }));
         populateData();
         queryCountBasedRouter.updateClusterStats(clusters);
     }
@@ -300,4 +307,35 @@ final class TestQueryCountBasedRouter
         assertThat(BACKEND_URL_5).isEqualTo(proxyTo);
         assertThat(BACKEND_URL_UNHEALTHY).isNotEqualTo(proxyTo);
     }
+
+    @Test
+    void testConcurrentSelectionCountsEveryQuery()
+            throws Exception
+    {
+        int initialRunning = queryCountBasedRouter.clusterStats().values().stream()
+                .filter(c -> "etl".equals(c.routingGroup()))
+                .mapToInt(QueryCountBasedRouter.LocalStats::runningQueryCount)
+                .sum();
+
+        int submissions = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<ProxyBackendConfiguration>> futures = new ArrayList<>();
+            for (int i = 0; i < submissions; i++) {
+                futures.add(executor.submit(() -> queryCountBasedRouter.provideBackendConfiguration("etl", "u101")));
+            }
+            for (Future<ProxyBackendConfiguration> future : futures) {
+                assertThat(future.get().getProxyTo()).isIn(BACKEND_URL_1, BACKEND_URL_2, BACKEND_URL_3);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        int finalRunning = queryCountBasedRouter.clusterStats().values().stream()
+                .filter(c -> "etl".equals(c.routingGroup()))
+                .mapToInt(QueryCountBasedRouter.LocalStats::runningQueryCount)
+                .sum();
+        assertThat(finalRunning - initialRunning).isEqualTo(submissions);
+    }
 }
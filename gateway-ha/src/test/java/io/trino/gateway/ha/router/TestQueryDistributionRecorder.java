@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.router;
+
+import io.trino.gateway.ha.persistence.dao.QueryDistributionDao;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+final class TestQueryDistributionRecorder
+{
+    @Test
+    void testFailingRowDoesNotBlockOthers()
+    {
+        QueryDistributionDao dao = mock(QueryDistributionDao.class);
+        List<String> writtenUsers = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<String> userNames = invocation.getArgument(4);
+            if (userNames.contains("bad")) {
+                throw new IllegalStateException("Simulated constraint violation");
+            }
+            writtenUsers.addAll(userNames);
+            return null;
+        }).when(dao).addDistributions(anyString(), anyList(), anyList(), anyList(), anyList(), any());
+
+        QueryDistributionRecorder recorder = new QueryDistributionRecorder(dao, "jdbc:mysql://localhost/gateway", Duration.ofHours(1));
+        try {
+            recorder.record("http://backend:8080", "adhoc", "alice", 0);
+            recorder.record("http://backend:8080", "adhoc", "bad", 0);
+            recorder.record("http://backend:8080", "adhoc", "x".repeat(300), 0);
+            recorder.flush();
+
+            // The bad row is dropped, the others are written, with the long user name truncated to fit the column
+            assertThat(writtenUsers).containsExactlyInAnyOrder("alice", "x".repeat(255));
+            assertThat(recorder.getFlushedRows().getTotalCount()).isEqualTo(2);
+            assertThat(recorder.getFailedRows().getTotalCount()).isEqualTo(1);
+            assertThat(recorder.getPendingRows()).isZero();
+
+            // It is not retried by the next flush
+            writtenUsers.clear();
+            recorder.record("http://backend:8080", "adhoc", "alice", 0);
+            recorder.flush();
+            assertThat(writtenUsers).containsExactly("alice");
+            assertThat(recorder.getFailedRows().getTotalCount()).isEqualTo(1);
+        }
+        finally {
+            recorder.close();
+        }
+    }
+}
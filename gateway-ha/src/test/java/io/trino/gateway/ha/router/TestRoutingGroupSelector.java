@@ -37,16 +37,22 @@ import java.io.IOException;
 import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Stream;
 
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_QUERY_PROPERTIES;
+import static io.trino.gateway.ha.handler.HttpUtils.TRINO_REQUEST_USER;
 import static io.trino.gateway.ha.router.RoutingGroupSelector.ROUTING_GROUP_HEADER;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -114,6 +120,28 @@ final class TestRoutingGroupSelector
         assertThat(routingGroup).isEqualTo("etl");
     }
 
+    @Test
+    void testRuleVariableReferences()
+    {
+        RoutingRule headerRule = new MVELRoutingRule(
+                "airflow",
+                null,
+                null,
+                "request.getHeader(\"X-Trino-Source\") == \"airflow\"",
+                List.of("result.put(\"routingGroup\", \"etl\")"));
+        assertThat(headerRule.mayReadVariable(TRINO_QUERY_PROPERTIES)).isFalse();
+        assertThat(headerRule.mayReadVariable(TRINO_REQUEST_USER)).isFalse();
+
+        RoutingRule propertiesRule = new MVELRoutingRule(
+                "catalog",
+                null,
+                null,
+                "trinoQueryProperties.getCatalogs().contains(\"hive\")",
+                List.of("result.put(\"routingGroup\", trinoRequestUser.getUser().orElse(\"adhoc\"))"));
+        assertThat(propertiesRule.mayReadVariable(TRINO_QUERY_PROPERTIES)).isTrue();
+        assertThat(propertiesRule.mayReadVariable(TRINO_REQUEST_USER)).isTrue();
+    }
+
     @Test
     void testGetUserFromBasicAuth()
     {
@@ -382,16 +410,128 @@ final class TestRoutingGroupSelector
                     actions:
                     - "result.put(\\"routingGroup\\", \\"etl2\\")\""""); // change from etl to etl2
         }
-        Thread.sleep(2 * refreshPeriod.toMillis());
-
+        // The rules are reloaded in the background
         when(mockRequest.getHeader(TRINO_SOURCE_HEADER)).thenReturn("airflow");
-        routingGroup = routingGroupSelector.findRoutingDestination(mockRequest).routingGroup();
+        long deadline = System.nanoTime() + SECONDS.toNanos(10);
+        do {
+            Thread.sleep(2 * refreshPeriod.toMillis());
+            routingGroup = routingGroupSelector.findRoutingDestination(mockRequest).routingGroup();
+        }
+        while (!"etl2".equals(routingGroup) && System.nanoTime() < deadline);
 
         assertThat(routingGroup).isEqualTo("etl2");
 
         file.deleteOnExit();
     }
 
+    @Test
+    void testRoutingRulesReload()
+            throws Exception
+    {
+        Path rulesDirectory = Files.createTempDirectory("routing_rules");
+        Path rulesPath = rulesDirectory.resolve("routing_rules.yml");
+        replaceRules(rulesPath, rulesRoutingTo("etl"));
+
+        RoutingRuleStats routingRuleStats = new RoutingRuleStats();
+        FileBasedRoutingGroupSelector routingGroupSelector = new FileBasedRoutingGroupSelector(
+                rulesPath.toString(),
+                oneHourRefreshPeriod,
+                requestAnalyzerConfig,
+                true,
+                routingRuleStats);
+        try {
+            HttpServletRequest mockRequest = new QueryRequestMock()
+                    .httpHeader(TRINO_SOURCE_HEADER, "airflow")
+                    .requestAnalyzerConfig(requestAnalyzerConfig)
+                    .getHttpServletRequest();
+            assertThat(routingGroupSelector.findRoutingDestination(mockRequest).routingGroup()).isEqualTo("etl");
+            assertThat(routingRuleStats.getRulesVersion()).isEqualTo(1);
+
+            // Rewriting the same content does not compile the rules again
+            replaceRules(rulesPath, rulesRoutingTo("etl"));
+            Files.setLastModifiedTime(rulesPath, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+            routingGroupSelector.reloadIfChanged();
+            assertThat(routingRuleStats.getRulesVersion()).isEqualTo(1);
+
+            // Invalid rules are reported, and the last valid rules stay in use
+            replaceRules(rulesPath, "condition: \"this is not MVEL (\"");
+            routingGroupSelector.reloadIfChanged();
+            assertThat(routingRuleStats.getReloadFailures().getTotalCount()).isEqualTo(1);
+            assertThat(routingRuleStats.getRulesVersion()).isEqualTo(1);
+            assertThat(routingGroupSelector.findRoutingDestination(mockRequest).routingGroup()).isEqualTo("etl");
+
+            replaceRules(rulesPath, rulesRoutingTo("etl2"));
+            routingGroupSelector.reloadIfChanged();
+            assertThat(routingRuleStats.getRulesVersion()).isEqualTo(2);
+            assertThat(routingGroupSelector.findRoutingDestination(mockRequest).routingGroup()).isEqualTo("etl2");
+
+            // Published rules are used without reading the file
+            routingGroupSelector.updateRules(rulesRoutingTo("etl3"));
+            assertThat(routingRuleStats.getRulesVersion()).isEqualTo(3);
+            assertThat(routingGroupSelector.findRoutingDestination(mockRequest).routingGroup()).isEqualTo("etl3");
+        }
+        finally {
+            routingGroupSelector.close();
+            Files.delete(rulesPath);
+            Files.delete(rulesDirectory);
+        }
+    }
+
+    @Test
+    void testRoutingRulesLoadedOnceFileIsFixed()
+            throws Exception
+    {
+        Path rulesDirectory = Files.createTempDirectory("routing_rules");
+        Path rulesPath = rulesDirectory.resolve("routing_rules.yml");
+
+        RoutingRuleStats routingRuleStats = new RoutingRuleStats();
+        FileBasedRoutingGroupSelector routingGroupSelector = new FileBasedRoutingGroupSelector(
+                rulesPath.toString(),
+                oneHourRefreshPeriod,
+                requestAnalyzerConfig,
+                true,
+                routingRuleStats);
+        try {
+            HttpServletRequest mockRequest = new QueryRequestMock()
+                    .httpHeader(TRINO_SOURCE_HEADER, "airflow")
+                    .requestAnalyzerConfig(requestAnalyzerConfig)
+                    .getHttpServletRequest();
+            // A missing file is reported, and no rules apply
+            assertThat(routingRuleStats.getReloadFailures().getTotalCount()).isEqualTo(1);
+            assertThat(routingGroupSelector.findRoutingDestination(mockRequest).routingGroup()).isNull();
+
+            replaceRules(rulesPath, rulesRoutingTo("etl"));
+            routingGroupSelector.reloadIfChanged();
+            assertThat(routingRuleStats.getRulesVersion()).isEqualTo(1);
+            assertThat(routingGroupSelector.findRoutingDestination(mockRequest).routingGroup()).isEqualTo("etl");
+        }
+        finally {
+            routingGroupSelector.close();
+            Files.delete(rulesPath);
+            Files.delete(rulesDirectory);
+        }
+    }
+
+    // The selector watches the file, so it is replaced at once rather than rewritten in place
+    private static void replaceRules(Path rulesPath, String content)
+            throws IOException
+    {
+        Path stagingPath = Files.createTempFile(rulesPath.getParent(), "staging", ".tmp");
+        Files.writeString(stagingPath, content, UTF_8);
+        Files.move(stagingPath, rulesPath, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private static String rulesRoutingTo(String routingGroup)
+    {
+        return """
+                ---
+                name: "airflow"
+                condition: "request.getHeader(\\"X-Trino-Source\\") == \\"airflow\\""
+                actions:
+                - "result.put(\\"routingGroup\\", \\"%s\\")"
+                """.formatted(routingGroup);
+    }
+
     private Stream<Arguments> provideTableExtractionQueries()
     {
         return Stream.of(
@@ -13,19 +13,29 @@
  */
 package io.trino.gateway.ha.router;
 
+import io.airlift.http.client.HttpClient;
+import io.airlift.http.client.testing.TestingHttpClient;
+import io.airlift.units.Duration;
 import io.trino.gateway.ha.config.RoutingConfiguration;
+import io.trino.gateway.ha.persistence.dao.QueryRoute;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
 import org.mockito.Mockito;
 
+import java.util.Optional;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.when;
 
 @TestInstance(Lifecycle.PER_CLASS)
 final class TestRoutingManagerExternalUrlCache
 {
+    private static final String BACKEND = "http://backend:8080";
+
     private StochasticRoutingManager routingManager;
     private GatewayBackendManager backendManager;
     private QueryHistoryManager queryHistoryManager;
@@ -39,8 +49,13 @@ final class TestRoutingManagerExternalUrlCache
         queryHistoryManager = Mockito.mock(QueryHistoryManager.class);
         mockQueryHistoryManager = Mockito.mock(QueryHistoryManager.class);
         routingConfiguration = Mockito.mock(RoutingConfiguration.class);
+        when(routingConfiguration.getUnknownQueryIdCacheTtl()).thenReturn(new Duration(10, SECONDS));
+        when(routingConfiguration.getQueryRouteCacheMaximumSize()).thenReturn(10_000L);
+        when(routingConfiguration.getQueryRouteCacheExpireAfterAccess()).thenReturn(new Duration(30, MINUTES));
 
-        routingManager = new TestRoutingManager(backendManager, queryHistoryManager, routingConfiguration);
+        routingManager = new TestRoutingManager(backendManager, queryHistoryManager, routingConfiguration, new TestingHttpClient(_ -> {
+            throw new UnsupportedOperationException();
+        }));
     }
 
     @Test
@@ -49,7 +64,7 @@ final class TestRoutingManagerExternalUrlCache
         String queryId = "test-query-123";
         String externalUrl = "https://external-gateway.example.com";
 
-        routingManager.setExternalUrlForQueryId(queryId, externalUrl);
+        routingManager.setQueryRoute(queryId, new QueryRoute(BACKEND, null, externalUrl));
 
         String retrievedUrl = routingManager.findExternalUrlForQueryId(queryId);
 
@@ -61,11 +76,14 @@ final class TestRoutingManagerExternalUrlCache
     {
         String queryId = "cache-miss-query-456";
         String expectedExternalUrl = "https://fallback-gateway.example.com";
-        when(queryHistoryManager.getExternalUrlForQueryId(queryId)).thenReturn(expectedExternalUrl);
+        when(queryHistoryManager.getQueryRoute(queryId)).thenReturn(Optional.of(new QueryRoute(BACKEND, "adhoc", expectedExternalUrl)));
         String retrievedUrl = routingManager.findExternalUrlForQueryId(queryId);
 
         assertThat(retrievedUrl).isEqualTo(expectedExternalUrl);
-        Mockito.verify(queryHistoryManager).getExternalUrlForQueryId(queryId);
+        assertThat(routingManager.findRoutingGroupForQueryId(queryId)).isEqualTo("adhoc");
+        assertThat(routingManager.findBackendForQueryId(queryId)).isEqualTo(BACKEND);
+        // All three lookups are served by a single query history lookup
+        Mockito.verify(queryHistoryManager).getQueryRoute(queryId);
     }
 
     @Test
@@ -75,10 +93,10 @@ final class TestRoutingManagerExternalUrlCache
         String initialUrl = "https://initial-gateway.example.com";
         String updatedUrl = "https://updated-gateway.example.com";
 
-        routingManager.setExternalUrlForQueryId(queryId, initialUrl);
+        routingManager.setQueryRoute(queryId, new QueryRoute(BACKEND, null, initialUrl));
         assertThat(routingManager.findExternalUrlForQueryId(queryId)).isEqualTo(initialUrl);
 
-        routingManager.setExternalUrlForQueryId(queryId, updatedUrl);
+        routingManager.setQueryRoute(queryId, new QueryRoute(BACKEND, null, updatedUrl));
         assertThat(routingManager.findExternalUrlForQueryId(queryId)).isEqualTo(updatedUrl);
     }
 
@@ -93,7 +111,7 @@ final class TestRoutingManagerExternalUrlCache
         };
 
         for (int i = 0; i < queryIds.length; i++) {
-            routingManager.setExternalUrlForQueryId(queryIds[i], externalUrls[i]);
+            routingManager.setQueryRoute(queryIds[i], new QueryRoute(BACKEND, null, externalUrls[i]));
         }
 
         for (int i = 0; i < queryIds.length; i++) {
@@ -107,7 +125,7 @@ final class TestRoutingManagerExternalUrlCache
     {
         String queryId = "empty-url-test";
         String emptyUrl = "";
-        routingManager.setExternalUrlForQueryId(queryId, emptyUrl);
+        routingManager.setQueryRoute(queryId, new QueryRoute(BACKEND, null, emptyUrl));
         String retrievedUrl = routingManager.findExternalUrlForQueryId(queryId);
 
         assertThat(retrievedUrl).isEqualTo(emptyUrl);
@@ -116,34 +134,40 @@ final class TestRoutingManagerExternalUrlCache
     @Test
     void testCacheWithMockQueryHistoryManager()
     {
-        RoutingManager mockRoutingManager = new TestRoutingManager(backendManager, mockQueryHistoryManager, routingConfiguration);
+        RoutingManager mockRoutingManager = new TestRoutingManager(backendManager, mockQueryHistoryManager, routingConfiguration, new TestingHttpClient(_ -> {
+            throw new UnsupportedOperationException();
+        }));
 
         String queryId = "mock-test-query";
         String expectedUrl = "https://mock-gateway.example.com";
 
-        when(mockQueryHistoryManager.getExternalUrlForQueryId(queryId)).thenReturn(expectedUrl);
+        when(mockQueryHistoryManager.getQueryRoute(queryId)).thenReturn(Optional.of(new QueryRoute(BACKEND, null, expectedUrl)));
         String retrievedUrl = mockRoutingManager.findExternalUrlForQueryId(queryId);
 
         assertThat(retrievedUrl).isEqualTo(expectedUrl);
-        Mockito.verify(mockQueryHistoryManager).getExternalUrlForQueryId(queryId);
+        Mockito.verify(mockQueryHistoryManager).getQueryRoute(queryId);
     }
 
     private static class TestRoutingManager
             extends StochasticRoutingManager
     {
+        private final QueryHistoryManager queryHistoryManager;
+
         private TestRoutingManager(
                 GatewayBackendManager gatewayBackendManager,
                 QueryHistoryManager queryHistoryManager,
-                RoutingConfiguration routingConfiguration)
+                RoutingConfiguration routingConfiguration,
+                HttpClient httpClient)
         {
-            super(gatewayBackendManager, queryHistoryManager, routingConfiguration);
+            super(gatewayBackendManager, queryHistoryManager, routingConfiguration, httpClient);
+            this.queryHistoryManager = queryHistoryManager;
         }
 
         @Override
-        protected String findBackendForUnknownQueryId(String queryId)
+        protected QueryRoute loadQueryRoute(String queryId)
         {
-            // Simple implementation for testing - return a default backend
-            return "http://default-backend:8080";
+            // Never search the backends, only the query history
+            return queryHistoryManager.getQueryRoute(queryId).orElse(null);
         }
     }
 }
@@ -13,6 +13,7 @@
  */
 package io.trino.gateway.ha.router;
 
+import io.airlift.http.client.testing.TestingHttpClient;
 import io.trino.gateway.ha.config.DataStoreConfiguration;
 import io.trino.gateway.ha.config.DatabaseCacheConfiguration;
 import io.trino.gateway.ha.config.RoutingConfiguration;
@@ -37,7 +38,9 @@ final class TestRoutingManagerNotFound
         GatewayBackendManager backendManager = new HaGatewayManager(connectionManager.getJdbi(), routingConfiguration, new DatabaseCacheConfiguration());
         QueryHistoryManager historyManager = new HaQueryHistoryManager(connectionManager.getJdbi(), dataStoreConfig);
 
-        this.routingManager = new StochasticRoutingManager(backendManager, historyManager, routingConfiguration);
+        this.routingManager = new StochasticRoutingManager(backendManager, historyManager, routingConfiguration, new TestingHttpClient(_ -> {
+            throw new UnsupportedOperationException();
+        }));
     }
 
     @Test
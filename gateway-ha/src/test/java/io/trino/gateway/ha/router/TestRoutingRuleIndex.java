@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.ha.router;
+
+import com.google.common.collect.ImmutableSet;
+import io.trino.gateway.ha.router.RoutingRuleIndex.Candidates;
+import io.trino.gateway.ha.router.RoutingRuleIndex.Discriminator;
+import io.trino.gateway.ha.router.RoutingRuleIndex.Kind;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+final class TestRoutingRuleIndex
+{
+    @Test
+    void testRecognizedConditions()
+    {
+        assertThat(RoutingRuleIndex.discriminator("request.getHeader(\"X-Trino-Source\") == \"airflow\""))
+                .contains(new Discriminator(Kind.HEADER, "X-Trino-Source", "airflow", true));
+        assertThat(RoutingRuleIndex.discriminator("\"airflow\" == request.getHeader(\"X-Trino-Source\")"))
+                .contains(new Discriminator(Kind.HEADER, "X-Trino-Source", "airflow", true));
+        assertThat(RoutingRuleIndex.discriminator("trinoRequestUser.userExistsAndEquals(\"will\")"))
+                .contains(new Discriminator(Kind.USER, "", "will", true));
+        assertThat(RoutingRuleIndex.discriminator("trinoQueryProperties.getCatalogs().contains(\"system\")\n"))
+                .contains(new Discriminator(Kind.CATALOG, "", "system", true));
+        assertThat(RoutingRuleIndex.discriminator("trinoQueryProperties.tablesContains(\"cat.schem.foo\") && trinoQueryProperties.getQueryType() == \"Query\""))
+                .contains(new Discriminator(Kind.TABLE, "", "cat.schem.foo", false));
+        assertThat(RoutingRuleIndex.discriminator(
+                "request.getHeader(\"X-Trino-Source\") == \"airflow\" && (request.getHeader(\"X-Trino-Client-Tags\") == null || request.getHeader(\"X-Trino-Client-Tags\").isEmpty())"))
+                .contains(new Discriminator(Kind.HEADER, "X-Trino-Source", "airflow", false));
+    }
+
+    @Test
+    void testOpaqueConditions()
+    {
+        assertThat(RoutingRuleIndex.discriminator("true")).isEmpty();
+        // Only the first conjunct is used
+        assertThat(RoutingRuleIndex.discriminator("state.get(\"x\") != null && request.getHeader(\"X-Trino-Source\") == \"airflow\"")).isEmpty();
+        // Anything but a plain conjunction may be true without its first conjunct
+        assertThat(RoutingRuleIndex.discriminator("request.getHeader(\"X-Trino-Source\") == \"airflow\" || true")).isEmpty();
+        assertThat(RoutingRuleIndex.discriminator("request.getHeader(\"X-Trino-Source\") == \"airflow\" ? false : true")).isEmpty();
+        assertThat(RoutingRuleIndex.discriminator("request.getHeader(\"X-Trino-Source\") == \"airflow\" or true")).isEmpty();
+        assertThat(RoutingRuleIndex.discriminator("x = request.getHeader(\"X-Trino-Source\") == \"airflow\"; true")).isEmpty();
+        assertThat(RoutingRuleIndex.discriminator("!(request.getHeader(\"X-Trino-Source\") == \"airflow\")")).isEmpty();
+        // Literals with escapes are left to MVEL
+        assertThat(RoutingRuleIndex.discriminator("trinoQueryProperties.tablesContains(\"cat.\\\"schem\\\".foo\")")).isEmpty();
+        // Comparing the header with equals fails when the header is missing, unlike ==
+        assertThat(RoutingRuleIndex.discriminator("request.getHeader(\"X-Trino-Source\").equals(\"airflow\")")).isEmpty();
+    }
+
+    @Test
+    void testCandidates()
+    {
+        List<RoutingRule> rules = List.of(
+                rule("request.getHeader(\"X-Trino-Source\") == \"airflow\""),
+                rule("request.getHeader(\"X-Trino-Source\") == \"airflow\" && request.getHeader(\"X-Trino-Client-Tags\") contains \"label=special\""),
+                rule("request.getHeader(\"X-Trino-Source\") == \"dbt\""),
+                rule("trinoRequestUser.userExistsAndEquals(\"will\")"),
+                rule("trinoQueryProperties.getCatalogs().contains(\"system\")"),
+                rule("trinoQueryProperties.tablesContains(\"cat.schem.foo\")"),
+                rule("true"));
+        RoutingRuleIndex index = RoutingRuleIndex.indexed(rules, true);
+        assertThat(index.indexedRuleCount()).isEqualTo(6);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("X-Trino-Source")).thenReturn("airflow");
+        TrinoRequestUser user = new TrinoRequestUser(Optional.of("will"), null);
+        TrinoQueryProperties queryProperties = new TrinoQueryProperties(
+                "SELECT * FROM cat.schem.foo",
+                "Query",
+                "SELECT",
+                List.of("cat.schem.foo"),
+                Optional.empty(),
+                Optional.empty(),
+                ImmutableSet.of("cat"),
+                ImmutableSet.of("schem"),
+                ImmutableSet.of("cat.schem"),
+                true,
+                Optional.empty());
+
+        Candidates candidates = index.findCandidates(request, queryProperties, user);
+        assertThat(candidates.rules().stream().boxed()).containsExactly(0, 1, 3, 5, 6);
+        // The second rule has a further condition to evaluate
+        assertThat(candidates.known().stream().boxed()).containsExactly(0, 3, 5);
+
+        // Rules on a value that is not bound are left to evaluating their condition
+        candidates = index.findCandidates(request, null, null);
+        assertThat(candidates.rules().stream().boxed()).containsExactly(0, 1, 3, 4, 5, 6);
+        assertThat(candidates.known().stream().boxed()).containsExactly(0);
+    }
+
+    @Test
+    void testWithoutRequestAnalysis()
+    {
+        List<RoutingRule> rules = List.of(
+                rule("request.getHeader(\"X-Trino-Source\") == \"airflow\""),
+                rule("trinoRequestUser.userExistsAndEquals(\"will\")"));
+        assertThat(RoutingRuleIndex.indexed(rules, false).indexedRuleCount()).isEqualTo(1);
+        assertThat(RoutingRuleIndex.sequential(rules).indexedRuleCount()).isEqualTo(0);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        Candidates candidates = RoutingRuleIndex.sequential(rules).findCandidates(request, null, null);
+        assertThat(candidates.rules().stream().boxed()).containsExactly(0, 1);
+        assertThat(candidates.known().isEmpty()).isTrue();
+    }
+
+    private static RoutingRule rule(String condition)
+    {
+        return new MVELRoutingRule("rule", null, null, condition, List.of("result.put(\"routingGroup\", \"group\")"));
+    }
+}
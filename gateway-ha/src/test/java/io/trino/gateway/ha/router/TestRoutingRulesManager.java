@@ -13,20 +13,29 @@
  */
 package io.trino.gateway.ha.router;
 
+import io.airlift.units.Duration;
 import io.trino.gateway.ha.config.HaGatewayConfiguration;
+import io.trino.gateway.ha.config.RequestAnalyzerConfig;
 import io.trino.gateway.ha.config.RoutingRulesConfiguration;
 import io.trino.gateway.ha.domain.RoutingRule;
+import jakarta.servlet.http.HttpServletRequest;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.concurrent.TimeUnit.HOURS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 final class TestRoutingRulesManager
 {
@@ -98,6 +107,40 @@ final class TestRoutingRulesManager
         assertThat(updateRoutingRules.getFirst().condition()).isEqualTo("request.getHeader(\"X-Trino-Source\") == \"airflow\"");
     }
 
+    @Test
+    void testUpdateRoutingRulePublishesRules()
+            throws IOException
+    {
+        Path rulesPath = Files.createTempFile("routing_rules", ".yml");
+        Files.copy(Path.of("src/test/resources/rules/routing_rules_update.yml"), rulesPath, REPLACE_EXISTING);
+        HaGatewayConfiguration configuration = new HaGatewayConfiguration();
+        RoutingRulesConfiguration routingRulesConfiguration = new RoutingRulesConfiguration();
+        routingRulesConfiguration.setRulesConfigPath(rulesPath.toString());
+        configuration.setRoutingRules(routingRulesConfiguration);
+        RoutingRuleStats routingRuleStats = new RoutingRuleStats();
+        FileBasedRoutingGroupSelector routingGroupSelector = new FileBasedRoutingGroupSelector(
+                rulesPath.toString(),
+                new Duration(1, HOURS),
+                new RequestAnalyzerConfig(),
+                true,
+                routingRuleStats);
+        try {
+            RoutingRulesManager routingRulesManager = new RoutingRulesManager(configuration, routingGroupSelector);
+            HttpServletRequest request = mock(HttpServletRequest.class);
+            when(request.getHeader("X-Trino-Source")).thenReturn("airflow");
+            when(request.getHeader("X-Trino-Client-Tags")).thenReturn("");
+            assertThat(routingGroupSelector.findRoutingDestination(request).routingGroup()).isEqualTo("etl");
+
+            routingRulesManager.updateRoutingRule(new RoutingRule("airflow", "if query from airflow, route to etl group", 0, List.of("result.put(\"routingGroup\", \"adhoc\")"), "request.getHeader(\"X-Trino-Source\") == \"airflow\""));
+            assertThat(routingRuleStats.getRulesVersion()).isEqualTo(2);
+            assertThat(routingGroupSelector.findRoutingDestination(request).routingGroup()).isEqualTo("adhoc");
+        }
+        finally {
+            routingGroupSelector.close();
+            Files.delete(rulesPath);
+        }
+    }
+
     @Test
     void testUpdateRoutingRulesNoSuchFileException()
     {
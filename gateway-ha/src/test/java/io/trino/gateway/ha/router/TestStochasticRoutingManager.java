@@ -13,6 +13,9 @@
  */
 package io.trino.gateway.ha.router;
 
+import io.airlift.http.client.HttpClient;
+import io.airlift.http.client.HttpStatus;
+import io.airlift.http.client.testing.TestingHttpClient;
 import io.trino.gateway.ha.clustermonitor.TrinoStatus;
 import io.trino.gateway.ha.config.DataStoreConfiguration;
 import io.trino.gateway.ha.config.DatabaseCacheConfiguration;
@@ -24,6 +27,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
+import static io.airlift.http.client.testing.TestingResponse.mockResponse;
 import static io.trino.gateway.ha.TestingJdbcConnectionManager.createTestingJdbcConnectionManager;
 import static io.trino.gateway.ha.TestingJdbcConnectionManager.dataStoreConfig;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -43,7 +51,9 @@ final class TestStochasticRoutingManager
         RoutingConfiguration routingConfiguration = new RoutingConfiguration();
         backendManager = new HaGatewayManager(connectionManager.getJdbi(), routingConfiguration, new DatabaseCacheConfiguration());
         historyManager = new HaQueryHistoryManager(connectionManager.getJdbi(), dataStoreConfig);
-        haRoutingManager = new StochasticRoutingManager(backendManager, historyManager, routingConfiguration);
+        haRoutingManager = new StochasticRoutingManager(backendManager, historyManager, routingConfiguration, new TestingHttpClient(_ -> {
+            throw new UnsupportedOperationException();
+        }));
     }
 
     @Test
@@ -76,4 +86,43 @@ final class TestStochasticRoutingManager
         assertThat(haRoutingManager.provideBackendConfiguration(groupName, "").getProxyTo())
                 .isEqualTo("test_group0.trino.example.com");
     }
+
+    @Test
+    void testSearchAllBackendsForUnknownQueryId()
+    {
+        DataStoreConfiguration dataStoreConfig = dataStoreConfig();
+        JdbcConnectionManager connectionManager = createTestingJdbcConnectionManager(dataStoreConfig);
+        RoutingConfiguration routingConfiguration = new RoutingConfiguration();
+        GatewayBackendManager gatewayBackendManager = new HaGatewayManager(connectionManager.getJdbi(), routingConfiguration, new DatabaseCacheConfiguration());
+        for (String name : List.of("adhoc1", "adhoc2", "etl1")) {
+            ProxyBackendConfiguration proxyBackend = new ProxyBackendConfiguration();
+            proxyBackend.setActive(true);
+            proxyBackend.setRoutingGroup(name.replaceAll("\\d", ""));
+            proxyBackend.setName(name);
+            proxyBackend.setProxyTo("http://%s.trino.example.com".formatted(name));
+            gatewayBackendManager.addBackend(proxyBackend);
+        }
+
+        AtomicInteger probes = new AtomicInteger();
+        HttpClient httpClient = new TestingHttpClient(request -> {
+            probes.incrementAndGet();
+            if (request.getUri().toString().equals("http://etl1.trino.example.com/v1/query/known")) {
+                return mockResponse(HttpStatus.OK, PLAIN_TEXT_UTF_8, "");
+            }
+            return mockResponse(HttpStatus.NOT_FOUND, PLAIN_TEXT_UTF_8, "");
+        });
+        RoutingManager routingManager = new StochasticRoutingManager(
+                gatewayBackendManager,
+                new HaQueryHistoryManager(connectionManager.getJdbi(), dataStoreConfig),
+                routingConfiguration,
+                httpClient);
+
+        assertThat(routingManager.findBackendForQueryId("known")).isEqualTo("http://etl1.trino.example.com");
+        assertThat(probes.get()).isEqualTo(3);
+
+        // Unknown queries fall back to the default routing group, and are not searched again right away
+        assertThat(routingManager.findBackendForQueryId("unknown")).isEqualTo("http://adhoc1.trino.example.com");
+        assertThat(routingManager.findBackendForQueryId("unknown")).isEqualTo("http://adhoc1.trino.example.com");
+        assertThat(probes.get()).isEqualTo(6);
+    }
 }
@@ -17,6 +17,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.reflect.ClassPath;
 import io.airlift.json.JsonCodec;
+import io.trino.gateway.ha.config.RequestAnalyzerConfig;
+import io.trino.gateway.ha.handler.BufferedRequestBody;
 import io.trino.sql.parser.SqlParser;
 import io.trino.sql.tree.Call;
 import io.trino.sql.tree.DropFunction;
@@ -540,6 +542,23 @@ final class TestTrinoQueryProperties
         assertThat(trinoQueryProperties.getTables()).isEmpty();
     }
 
+    @Test
+    void testStatementIsAnalyzedOnFirstAccess()
+            throws IOException
+    {
+        QueryAnalysisCache analysisCache = new QueryAnalysisCache(new RequestAnalyzerConfig());
+        ContainerRequestContext mockRequest = prepareMockRequest("SELECT * FROM mycatalog.myschema.mytable");
+        BufferedRequestBody body = BufferedRequestBody.read(mockRequest.getEntityStream());
+
+        TrinoQueryProperties trinoQueryProperties = new TrinoQueryProperties(mockRequest, body, false, 1024 * 1024, analysisCache);
+        assertThat(trinoQueryProperties.isNewQuerySubmission()).isTrue();
+        assertThat(analysisCache.getMissCount()).isEqualTo(0);
+
+        assertThat(trinoQueryProperties.getCatalogs()).containsExactly("mycatalog");
+        assertThat(trinoQueryProperties.getQueryType()).isEqualTo("Query");
+        assertThat(analysisCache.getMissCount()).isEqualTo(1);
+    }
+
     @Test
     void testWithoutMediaType()
     {
@@ -17,10 +17,15 @@ import com.auth0.jwt.JWT;
 import com.auth0.jwt.algorithms.Algorithm;
 import io.airlift.json.JsonCodec;
 import io.trino.gateway.ha.config.RequestAnalyzerConfig;
+import io.trino.gateway.ha.router.TrinoRequestUser.TrinoRequestUserProvider;
 import io.trino.gateway.ha.util.QueryRequestMock;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.util.Base64;
 import java.util.Date;
@@ -32,6 +37,8 @@ import static io.trino.gateway.ha.handler.HttpUtils.USER_HEADER;
 import static jakarta.ws.rs.core.HttpHeaders.AUTHORIZATION;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 final class TestTrinoRequestUser
 {
@@ -106,4 +113,41 @@ final class TestTrinoRequestUser
 
         assertThat(trinoRequestUser.getUser()).hasValue(username);
     }
+
+    @Test
+    void testUserInfoIsCachedAcrossRequests()
+            throws IOException
+    {
+        try (MockWebServer userInfoServer = new MockWebServer()) {
+            userInfoServer.enqueue(new MockResponse().setResponseCode(200)
+                    .setHeader("Content-Type", "application/json")
+                    .setBody("{\"sub\": \"user@example.com\"}"));
+            userInfoServer.enqueue(new MockResponse().setResponseCode(401)
+                    .setHeader("WWW-Authenticate", "Bearer error=\"invalid_token\""));
+            userInfoServer.start();
+
+            RequestAnalyzerConfig requestAnalyzerConfig = new RequestAnalyzerConfig();
+            requestAnalyzerConfig.setOauthTokenInfoUrl(userInfoServer.url("/userinfo").toString());
+            TrinoRequestUserProvider provider = new TrinoRequestUserProvider(requestAnalyzerConfig);
+
+            for (int i = 0; i < 3; i++) {
+                assertThat(provider.getInstance(bearerRequest("valid-token")).getUser()).hasValue("user@example.com");
+            }
+            // Rejected tokens are cached as well
+            for (int i = 0; i < 3; i++) {
+                assertThat(provider.getInstance(bearerRequest("rejected-token")).getUser()).isEmpty();
+            }
+
+            assertThat(userInfoServer.getRequestCount()).isEqualTo(2);
+            assertThat(provider.getUserInfoCacheMissCount()).isEqualTo(2);
+            assertThat(provider.getUserInfoCacheHitCount()).isEqualTo(4);
+        }
+    }
+
+    private static ContainerRequestContext bearerRequest(String token)
+    {
+        ContainerRequestContext request = mock(ContainerRequestContext.class);
+        when(request.getHeaderString(AUTHORIZATION)).thenReturn("Bearer " + token);
+        return request;
+    }
 }
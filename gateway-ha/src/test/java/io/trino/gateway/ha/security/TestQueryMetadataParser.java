@@ -15,8 +15,10 @@ package io.trino.gateway.ha.security;
 
 import io.trino.gateway.ha.config.HaGatewayConfiguration;
 import io.trino.gateway.ha.config.RequestAnalyzerConfig;
+import io.trino.gateway.ha.handler.BufferedRequestBody;
 import io.trino.gateway.ha.handler.HttpUtils;
 import io.trino.gateway.ha.router.PathFilter;
+import io.trino.gateway.ha.router.QueryAnalysisCache;
 import io.trino.gateway.ha.router.TrinoQueryProperties;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.MediaType;
@@ -32,10 +34,13 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 
+import static io.trino.gateway.ha.handler.HttpUtils.REQUEST_BODY;
 import static io.trino.gateway.ha.handler.HttpUtils.TRINO_QUERY_PROPERTIES;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -44,6 +49,7 @@ final class TestQueryMetadataParser
     private QueryMetadataParser filter;
     private RequestAnalyzerConfig requestAnalyzerConfig;
     private PathFilter pathFilter;
+    private QueryAnalysisCache analysisCache;
 
     TestQueryMetadataParser()
     {
@@ -52,7 +58,8 @@ final class TestQueryMetadataParser
         requestAnalyzerConfig.setAnalyzeRequest(true);
         config.setRequestAnalyzerConfig(requestAnalyzerConfig);
         pathFilter = new PathFilter(config);
-        filter = new QueryMetadataParser(config, pathFilter);
+        analysisCache = new QueryAnalysisCache(requestAnalyzerConfig);
+        filter = new QueryMetadataParser(config, pathFilter, analysisCache);
     }
 
     @Test
@@ -82,7 +89,8 @@ final class TestQueryMetadataParser
 
         ArgumentCaptor<TrinoQueryProperties> captor = ArgumentCaptor.forClass(TrinoQueryProperties.class);
         verify(requestContext).setProperty(eq(TRINO_QUERY_PROPERTIES), captor.capture());
-        verify((ContainerRequest) requestContext).bufferEntity();
+        verify(requestContext).setProperty(eq(REQUEST_BODY), any(BufferedRequestBody.class));
+        verify(requestContext).setEntityStream(any());
         verify(requestContext).getEntityStream();
     }
 
@@ -113,7 +121,8 @@ final class TestQueryMetadataParser
 
         ArgumentCaptor<TrinoQueryProperties> captor = ArgumentCaptor.forClass(TrinoQueryProperties.class);
         verify(requestContext).setProperty(eq(TRINO_QUERY_PROPERTIES), captor.capture());
-        verify((ContainerRequest) requestContext).bufferEntity();
+        verify(requestContext).setProperty(eq(REQUEST_BODY), any(BufferedRequestBody.class));
+        verify(requestContext).setEntityStream(any());
         verify(requestContext).getEntityStream();
     }
 
@@ -143,7 +152,8 @@ final class TestQueryMetadataParser
         verify(requestContext).setProperty(eq(TRINO_QUERY_PROPERTIES), captor.capture());
         TrinoQueryProperties queryProperties = (TrinoQueryProperties) requestContext.getProperty(TRINO_QUERY_PROPERTIES);
         assertThat(queryProperties).isEqualTo(null);
-        verify((ContainerRequest) requestContext).bufferEntity();
+        verify(requestContext).setProperty(eq(REQUEST_BODY), any(BufferedRequestBody.class));
+        verify(requestContext).setEntityStream(any());
     }
 
     @Test
@@ -173,7 +183,8 @@ final class TestQueryMetadataParser
 
         ArgumentCaptor<TrinoQueryProperties> captor = ArgumentCaptor.forClass(TrinoQueryProperties.class);
         verify(requestContext).setProperty(eq(TRINO_QUERY_PROPERTIES), captor.capture());
-        verify((ContainerRequest) requestContext).bufferEntity();
+        verify(requestContext).setProperty(eq(REQUEST_BODY), any(BufferedRequestBody.class));
+        verify(requestContext).setEntityStream(any());
         verify(requestContext).getEntityStream();
 
         TrinoQueryProperties queryProperties = (TrinoQueryProperties) requestContext.getProperty(TRINO_QUERY_PROPERTIES);
@@ -203,6 +214,39 @@ final class TestQueryMetadataParser
 
         ArgumentCaptor<TrinoQueryProperties> captor = ArgumentCaptor.forClass(TrinoQueryProperties.class);
         verify(requestContext).setProperty(eq(TRINO_QUERY_PROPERTIES), captor.capture());
-        verify((ContainerRequest) requestContext).bufferEntity();
+        verify(requestContext, never()).setEntityStream(any());
+    }
+
+    @Test
+    void testRepeatedStatementIsAnalyzedOnce()
+            throws Exception
+    {
+        String query = "SELECT xyz FROM cat1.schema1.repeated_table";
+        TrinoQueryProperties first = filterStatement(query);
+        TrinoQueryProperties second = filterStatement(query);
+
+        assertThat(second.getQueryType()).isEqualTo(first.getQueryType()).isEqualTo("Query");
+        assertThat(second.getTables()).isEqualTo(first.getTables());
+        assertThat(second.tablesContains("cat1.schema1.repeated_table")).isTrue();
+        assertThat(analysisCache.getMissCount()).isEqualTo(1);
+        assertThat(analysisCache.getHitCount()).isEqualTo(1);
+    }
+
+    private TrinoQueryProperties filterStatement(String query)
+            throws Exception
+    {
+        ContainerRequestContext requestContext = mock(ContainerRequest.class);
+        when(requestContext.getMethod()).thenReturn("POST");
+        UriInfo uriInfo = mock(ExtendedUriInfo.class);
+        when(uriInfo.getRequestUri()).thenReturn(new URI("http://localhost" + HttpUtils.V1_STATEMENT_PATH));
+        when(requestContext.getUriInfo()).thenReturn(uriInfo);
+        when(requestContext.getEntityStream()).thenReturn(new ByteArrayInputStream(query.getBytes(StandardCharsets.UTF_8)));
+        when(requestContext.hasEntity()).thenReturn(true);
+
+        filter.filter(requestContext);
+
+        ArgumentCaptor<TrinoQueryProperties> captor = ArgumentCaptor.forClass(TrinoQueryProperties.class);
+        verify(requestContext).setProperty(eq(TRINO_QUERY_PROPERTIES), captor.capture());
+        return captor.getValue();
     }
 }
@@ -18,6 +18,7 @@ import io.trino.gateway.ha.config.RequestAnalyzerConfig;
 import io.trino.gateway.ha.handler.HttpUtils;
 import io.trino.gateway.ha.router.PathFilter;
 import io.trino.gateway.ha.router.TrinoRequestUser;
+import io.trino.gateway.ha.router.TrinoRequestUser.TrinoRequestUserProvider;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
@@ -35,6 +36,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 final class TestQueryUserInfoParser
@@ -50,7 +52,7 @@ final class TestQueryUserInfoParser
 
         PathFilter pathFilter = new PathFilter(config);
 
-        filter = new QueryUserInfoParser(config, pathFilter);
+        filter = new QueryUserInfoParser(new TrinoRequestUserProvider(requestAnalyzerConfig), pathFilter);
     }
 
     @Test
@@ -75,4 +77,26 @@ final class TestQueryUserInfoParser
         ArgumentCaptor<TrinoRequestUser> userCaptor = ArgumentCaptor.forClass(TrinoRequestUser.class);
         verify(requestContext).setProperty(eq(HttpUtils.TRINO_REQUEST_USER), userCaptor.capture());
     }
+
+    @Test
+    void testFilterDoesNotResolveUser()
+            throws Exception
+    {
+        ContainerRequestContext requestContext = mock(ContainerRequest.class);
+        UriInfo uriInfo = mock(ExtendedUriInfo.class);
+        when(uriInfo.getRequestUri()).thenReturn(new URI("http://localhost" + V1_STATEMENT_PATH));
+        when(requestContext.getUriInfo()).thenReturn(uriInfo);
+
+        TrinoRequestUser user = mock(TrinoRequestUser.class);
+        TrinoRequestUserProvider userProvider = mock(TrinoRequestUserProvider.class);
+        when(userProvider.getInstance(requestContext)).thenReturn(user);
+        HaGatewayConfiguration config = new HaGatewayConfiguration();
+        QueryUserInfoParser lazyFilter = new QueryUserInfoParser(userProvider, new PathFilter(config));
+
+        lazyFilter.filter(requestContext);
+
+        verify(requestContext).setProperty(HttpUtils.TRINO_REQUEST_USER, user);
+        // Routing rules that read the user resolve it, the filter only stores it
+        verifyNoInteractions(user);
+    }
 }
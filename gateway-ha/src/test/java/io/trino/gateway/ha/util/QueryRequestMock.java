@@ -17,8 +17,10 @@ import io.trino.gateway.ha.config.HaGatewayConfiguration;
 import io.trino.gateway.ha.config.RequestAnalyzerConfig;
 import io.trino.gateway.ha.handler.HttpUtils;
 import io.trino.gateway.ha.router.PathFilter;
+import io.trino.gateway.ha.router.QueryAnalysisCache;
 import io.trino.gateway.ha.router.TrinoQueryProperties;
 import io.trino.gateway.ha.router.TrinoRequestUser;
+import io.trino.gateway.ha.router.TrinoRequestUser.TrinoRequestUserProvider;
 import io.trino.gateway.ha.security.QueryMetadataParser;
 import io.trino.gateway.ha.security.QueryUserInfoParser;
 import jakarta.servlet.ReadListener;
@@ -144,7 +146,7 @@ public class QueryRequestMock
 
         PathFilter pathFilter = new PathFilter(config);
 
-        QueryUserInfoParser userInfoParser = new QueryUserInfoParser(config, pathFilter);
+        QueryUserInfoParser userInfoParser = new QueryUserInfoParser(new TrinoRequestUserProvider(requestAnalyzerConfig), pathFilter);
         try {
             userInfoParser.filter(requestContext);
             ArgumentCaptor<TrinoRequestUser> captorUserInfo = ArgumentCaptor.forClass(TrinoRequestUser.class);
@@ -155,7 +157,7 @@ public class QueryRequestMock
             return null;
         }
 
-        QueryMetadataParser queryMetadataParser = new QueryMetadataParser(config, pathFilter);
+        QueryMetadataParser queryMetadataParser = new QueryMetadataParser(config, pathFilter, new QueryAnalysisCache(requestAnalyzerConfig));
         try {
             if (requestAnalyzerConfig.isAnalyzeRequest()) {
                 queryMetadataParser.filter(requestContext);
@@ -14,6 +14,7 @@
 package io.trino.gateway.proxyserver;
 
 import io.trino.gateway.ha.HaGatewayLauncher;
+import io.trino.gateway.ha.handler.BufferedRequestBody;
 import io.trino.gateway.ha.router.QueryHistoryManager;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -30,19 +31,21 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.testcontainers.postgresql.PostgreSQLContainer;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.util.Optional;
 
 import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
 import static com.google.common.net.MediaType.JSON_UTF_8;
 import static io.airlift.http.client.Request.Builder.preparePost;
-import static io.airlift.http.client.StaticBodyGenerator.createStaticBodyGenerator;
 import static io.trino.gateway.ha.HaGatewayTestUtils.buildGatewayConfig;
 import static io.trino.gateway.ha.HaGatewayTestUtils.prepareMockBackend;
 import static io.trino.gateway.ha.HaGatewayTestUtils.setUpBackend;
 import static io.trino.gateway.ha.handler.HttpUtils.V1_STATEMENT_PATH;
 import static io.trino.gateway.ha.handler.ProxyUtils.SOURCE_HEADER;
+import static io.trino.gateway.ha.handler.ProxyUtils.rewriteStatementUris;
 import static io.trino.gateway.ha.util.TestcontainersUtils.createPostgreSqlContainer;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -153,6 +156,7 @@ final class TestProxyRequestHandler
 
     @Test
     void testGetQueryDetailsFromRequest()
+            throws IOException
     {
         // A sample query longer than 200 characters to test against truncation.
         String longQuery =
@@ -169,20 +173,36 @@ final class TestProxyRequestHandler
                         ON c.customer_id = o.customer_id
                 WHERE
                 o.order_date >= date '2023-01-01'""";
+        BufferedRequestBody body = BufferedRequestBody.read(new ByteArrayInputStream(longQuery.getBytes(UTF_8)));
 
         io.airlift.http.client.Request request = preparePost()
                 .setUri(URI.create("http://localhost:" + routerPort + V1_STATEMENT_PATH))
                 .addHeader(SOURCE_HEADER, "trino-cli")
-                .setBodyGenerator(createStaticBodyGenerator(longQuery, UTF_8))
+                .setBodyGenerator(body.toBodyGenerator())
                 .build();
 
         Optional<String> username = Optional.of("test_user");
 
-        QueryHistoryManager.QueryDetail queryDetail = ProxyRequestHandler.getQueryDetailsFromRequest(request, username);
+        QueryHistoryManager.QueryDetail queryDetail = ProxyRequestHandler.getQueryDetailsFromRequest(request, body, username);
 
         assertThat(queryDetail.getQueryText()).isEqualTo(longQuery).hasSizeGreaterThan(200);
         assertThat(queryDetail.getUser()).isEqualTo(username.get());
         assertThat(queryDetail.getSource()).isEqualTo("trino-cli");
         assertThat(queryDetail.getBackendUrl()).isEqualTo("http://localhost:" + routerPort);
     }
+
+    @Test
+    void testPollCoordinatorDirectly()
+    {
+        String nextUri = "http://gateway:8080/v1/statement/queued/20240101_000000_00001_abcde/y1a2b3/1";
+        assertThat(ProxyRequestHandler.withExternalUrl(nextUri, "https://trino-1.example.com/"))
+                .contains("https://trino-1.example.com/v1/statement/queued/20240101_000000_00001_abcde/y1a2b3/1");
+        assertThat(ProxyRequestHandler.withExternalUrl(nextUri + "?slug=x", "https://trino-1.example.com"))
+                .contains("https://trino-1.example.com/v1/statement/queued/20240101_000000_00001_abcde/y1a2b3/1?slug=x");
+        assertThat(ProxyRequestHandler.withExternalUrl("/v1/statement/queued", "https://trino-1.example.com")).isEmpty();
+
+        String body = "{\"id\":\"20240101_000000_00001_abcde\",\"infoUri\":\"http://gateway:8080/ui/query.html\",\"nextUri\":\"%s\",\"data\":[]}".formatted(nextUri);
+        assertThat(rewriteStatementUris(body, uri -> ProxyRequestHandler.withExternalUrl(uri, "https://trino-1.example.com")))
+                .contains(body.replace("http://gateway:8080/v1", "https://trino-1.example.com/v1"));
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.trino.gateway.proxyserver;
+
+import com.google.common.net.MediaType;
+import io.airlift.http.client.HttpStatus;
+import io.airlift.http.client.Request;
+import io.trino.gateway.proxyserver.ProxyResponseHandler.ProxyResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.airlift.http.client.Request.Builder.prepareGet;
+import static io.airlift.http.client.testing.TestingResponse.mockResponse;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+final class TestStreamingProxyResponseHandler
+{
+    private static final Request REQUEST = prepareGet().setUri(URI.create("http://localhost:8080/v1/statement")).build();
+
+    @Test
+    void testStreamsFullBodyAndCapturesPrefix()
+    {
+        String body = "{\"id\":\"20240101_000000_00000_abcde\",\"data\":\"" + "x".repeat(100_000) + "\"}";
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        AtomicInteger writtenStatus = new AtomicInteger();
+
+        StreamingProxyResponseHandler handler = new StreamingProxyResponseHandler(64, (statusCode, _, output) -> {
+            writtenStatus.set(statusCode);
+            try {
+                output.write(written);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        ProxyResponse response = handler.handle(REQUEST, mockResponse(HttpStatus.OK, MediaType.JSON_UTF_8, body));
+
+        assertThat(writtenStatus.get()).isEqualTo(200);
+        assertThat(written.toString(UTF_8)).isEqualTo(body);
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).isEqualTo(body.substring(0, 64));
+    }
+
+    @Test
+    void testPrefixCapturedBeforeResponseIsWritten()
+    {
+        String body = "{\"id\":\"20240101_000000_00000_abcde\",\"nextUri\":\"http://localhost:8080/v1/statement/queued/1\"}";
+        List<String> events = new ArrayList<>();
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        StreamingProxyResponseHandler handler = new StreamingProxyResponseHandler(
+                16,
+                prefix -> events.add("prefix " + prefix.body()),
+                (_, _, output) -> {
+                    events.add("write");
+                    try {
+                        output.write(written);
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+
+        handler.handle(REQUEST, mockResponse(HttpStatus.OK, MediaType.JSON_UTF_8, body));
+
+        assertThat(events).containsExactly("prefix " + body.substring(0, 16), "write");
+        assertThat(written.toString(UTF_8)).isEqualTo(body);
+    }
+
+    @Test
+    void testNoPrefixCaptured()
+    {
+        StreamingProxyResponseHandler handler = new StreamingProxyResponseHandler(0, (_, _, output) -> {
+            try {
+                output.write(new ByteArrayOutputStream());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        ProxyResponse response = handler.handle(REQUEST, mockResponse(HttpStatus.OK, MediaType.JSON_UTF_8, "{\"id\":\"abc\"}"));
+        assertThat(response.body()).isEmpty();
+    }
+
+    @Test
+    void testExceptionIsWrapped()
+    {
+        StreamingProxyResponseHandler handler = new StreamingProxyResponseHandler(0, (_, _, _) -> {});
+        assertThatThrownBy(() -> handler.handleException(REQUEST, new IOException("connection refused")))
+                .isInstanceOf(ProxyException.class)
+                .hasMessage("Request to remote Trino server failed");
+    }
+
+    @Test
+    void testExtractQueryIdFromTruncatedPrefix()
+            throws IOException
+    {
+        String prefix = "{\"infoUri\":{\"nested\":[1,2]},\"id\":\"20240101_000000_00000_abcde\",\"nextUri\":\"http://loc";
+        assertThat(ProxyRequestHandler.extractQueryId(prefix)).isEqualTo("20240101_000000_00000_abcde");
+        assertThat(ProxyRequestHandler.extractQueryId("{\"nextUri\":\"http://localhost\"}")).isNull();
+        assertThatThrownBy(() -> ProxyRequestHandler.extractQueryId("not json"))
+                .isInstanceOf(IOException.class);
+    }
+}
@@ -4,3 +4,7 @@ import { api } from "../base";
 export async function queryHistoryApi(body: Record<string, any>): Promise<HistoryData> {
   return api.post('/webapp/findQueryHistory', body)
 }
+
+export async function queryTextApi(body: Record<string, any>): Promise<string> {
+  return api.post('/webapp/getQueryText', body)
+}
@@ -3,7 +3,7 @@ import styles from './history.module.scss';
 import Locale from "../locales";
 import { Button, Card, Form, Table, Tag, Modal, Typography, CodeHighlight } from "@douyinfe/semi-ui";
 import Column from "@douyinfe/semi-ui/lib/es/table/Column";
-import { queryHistoryApi } from "../api/webapp/history";
+import { queryHistoryApi, queryTextApi } from "../api/webapp/history";
 import { HistoryData, HistoryDetail } from "../types/history";
 import { formatTimestamp } from "../utils/time";
 import { backendsApi } from "../api/webapp/cluster";
@@ -19,6 +19,8 @@ export function History() {
   const [historyData, setHistoryData] = useState<HistoryData>();
   const [backendMapping, setBackendMapping] = useState<Record<string, string>>({});
   const [page, setPage] = useState(1);
+  // Cursors of the pages following a loaded page, to fetch them without an offset
+  const [cursors, setCursors] = useState<Record<number, string>>({});
   const [size] = useState(15);
   const [form, setForm] = useState(() => {
     const username = sessionStorage.getItem('username');
@@ -44,21 +46,27 @@ export function History() {
   }, []);
 
   useEffect(() => {
-    list(1);
+    setCursors({});
+    list(1, {});
   }, [form]);
 
   useEffect(() => {
     sessionStorage.setItem('username', JSON.stringify({ user: form.user }));
   }, [form]);
 
-  const list = (p: number) => {
+  const list = (p: number, pageCursors: Record<number, string> = cursors) => {
     setPage(p);
     queryHistoryApi({
       page: p,
       size: size,
+      cursor: pageCursors[p],
       ...form
     }).then(data => {
       setHistoryData(data);
+      const nextCursor = data.nextCursor;
+      if (nextCursor) {
+        setCursors(current => ({ ...current, [p + 1]: nextCursor }));
+      }
     }).catch(() => { });
   }
 
@@ -80,14 +88,19 @@ export function History() {
     );
   }
 
-    const handleShowModal = (text: string) => {
-        setSelectedText(text);
+    const handleShowModal = (record: HistoryDetail) => {
+        setSelectedText(record.queryText);
         setModalVisible(true);
+        if (record.queryTextTruncated) {
+            queryTextApi({ queryId: record.queryId })
+                .then(queryText => setSelectedText(queryText))
+                .catch(() => { });
+        }
     };
 
-    const queryTextRender = (text: string) => (
+    const queryTextRender = (text: string, record: HistoryDetail) => (
       <Typography.Text
-         link={{ onClick: () => handleShowModal(text) }}
+         link={{ onClick: () => handleShowModal(record) }}
          underline
          style={{ cursor: "pointer", width: "300px"}}
          ellipsis={{ showTooltip: true }}
@@ -133,7 +146,7 @@ export function History() {
           currentPage: page,
           pageSize: size,
           total: historyData?.total || 0,
-          onPageChange: list,
+          onPageChange: (p: number) => list(p),
         }}>
           <Column title="QueryId" dataIndex="queryId" key="queryId" render={linkQueryRender} />
           <Column title="RoutingGroup" dataIndex="routingGroup" key="routingGroup"
@@ -1,6 +1,8 @@
 export interface HistoryDetail {
   queryId: string;
   queryText: string;
+  // The query text only holds the beginning of the text, the full text is fetched separately
+  queryTextTruncated?: boolean;
   user: string;
   source: string;
   backendUrl: string;
@@ -12,4 +14,5 @@ export interface HistoryDetail {
 export interface HistoryData {
   total: number;
   rows: HistoryDetail[];
+  nextCursor?: string;
 }